@@ -0,0 +1,131 @@
+#!/usr/bin/perl
+use v5.10; use strict; use warnings;
+#==============================================================================
+# FILE:         ajax_getmulti.cgi
+# DESCRIPTION:
+#   Several runs in one request, for comparing scenarios:
+#     1. Takes any number of serialized forms ('data', repeated)
+#     2. Runs them together, sharing i0 between forms with the same model,
+#        dials and parameters, and running the forms in parallel
+#     3. Returns {"runs":[...]} with the browser object of each form in order
+#   See MultiRun.java.
+#==============================================================================
+
+use CGI qw/:standard/;
+use IO::Select;
+use IO::Socket::INET;
+use IO::Compress::Gzip qw(gzip $GzipError);
+$CGI::POST_MAX = 1024 * 1024 * 10; # Max 10MB posts
+$CGI::DISABLE_UPLOADS = 1;         # No uploads
+
+#====================================================================
+# Compile time items
+#====================================================================
+my @S_NAME;
+my $F_ROOT;
+BEGIN {
+
+    # Folder root
+    @S_NAME = split(/\//, $ENV{SCRIPT_NAME});
+    $F_ROOT = $S_NAME[1];
+
+    # Document root
+    if(!$ENV{DOCUMENT_ROOT}) {
+        $ENV{DOCUMENT_ROOT} = '/home/www';
+    }
+
+    # Restrict this script to AJAX calls only. See ajax_getplot.cgi.
+    if (exists $ENV{HTTP_X_REQUESTED_WITH} &&
+               $ENV{HTTP_X_REQUESTED_WITH} eq "XMLHttpRequest") {
+        # Looks good
+    } else {
+        # Return a message and exit
+        my $q = CGI->new();
+        print
+            $q->header(-status=>'400 Bad Request',-type=>'text/html'),
+            $q->start_html(-title=>'Bad Request'),
+            $q->h1('Bad Request'),
+            $q->end_html();
+        exit 0;
+    }
+}
+
+#====================================================================
+# Generate JSON output
+#====================================================================
+use lib $ENV{DOCUMENT_ROOT}."/$F_ROOT/pm";
+use THYROSIM;
+
+my $thsim = THYROSIM->new(setshow => 'default',
+                          docRoot => $ENV{DOCUMENT_ROOT},
+                          fRoot   => $F_ROOT);
+
+# New CGI object and read the forms. Serialized forms have no whitespace.
+my $q = new CGI;
+my @forms = grep { /^\S+$/ } $q->multi_param('data');
+
+#----------------------------------------------------------
+# Arguments are the mode, the options and the forms, see MultiRun.java
+#----------------------------------------------------------
+my $encoding = ($q->param('encoding') // '') eq 'delta4' ? 'delta4' : 'json';
+my @args = ('multi', "encoding=$encoding", @forms);
+
+# Prefer the solver server, which keeps i0 end states between requests. Fall
+# back to starting the solver. Forms hold shell characters, so the solver is
+# started without a shell.
+my $json = runOnServer("@args");
+if (!defined $json) {
+    my @solver = split(' ', $thsim->getSolver('MultiRun'));
+    open(my $fh, '-|', @solver, @args) or die "died: $!";
+    local $/;
+    $json = <$fh>;
+    close $fh;
+}
+
+#----------------------------------------------------------
+# Print to browser. Gzip the response if the browser accepts it.
+#----------------------------------------------------------
+my $gz;
+if (($ENV{HTTP_ACCEPT_ENCODING} // '') =~ /\bgzip\b/
+    && gzip(\$json => \$gz)) {
+    print $q->header(-type => "text/html", -Content_Encoding => "gzip");
+    print $gz;
+} else {
+    print $q->header("text/html");
+    print $json;
+}
+
+#----------------------------------------------------------
+# Send arguments to the solver server. Returns undef if the server can't be
+# reached. THYROSIM_PORT and THYROSIM_DEADLINE (ms) override the defaults.
+#----------------------------------------------------------
+sub runOnServer {
+    my ($args) = @_;
+    my $sock = IO::Socket::INET->new(PeerAddr => '127.0.0.1',
+                                     PeerPort => $ENV{THYROSIM_PORT} // 8711,
+                                     Proto    => 'tcp',
+                                     Timeout  => 1) or return undef;
+    my $client   = $ENV{REMOTE_ADDR} // 'local';
+    my $deadline = $ENV{THYROSIM_DEADLINE} // 0;
+    print $sock "$client $deadline $args\n";
+
+    # The CGI is not told when the browser goes away, so the request runs
+    # until it is done or its deadline passes. Stop waiting when the browser
+    # does (the 2 minute timeout in js/thyrosim.js); closing the connection
+    # cancels the request.
+    my $sel = IO::Select->new($sock);
+    my $end = time + 120;
+    my $res = '';
+    while (1) {
+        my $left = $end - time;
+        if ($left <= 0 || !$sel->can_read($left)) {
+            close $sock;
+            return '{"error":"Timed out"}';
+        }
+        my $n = sysread($sock, my $buf, 65536);
+        last unless $n;
+        $res .= $buf;
+    }
+    close $sock;
+    return $res;
+}
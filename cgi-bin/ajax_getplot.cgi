@@ -13,6 +13,10 @@ use v5.10; use strict; use warnings;
 use CGI qw/:standard/;
 use Data::Dumper;
 use JSON::Syck;                    # Convert between JSON and Perl objects
+use IO::Select;
+use IO::Socket::INET;
+use IO::Compress::Gzip qw(gzip $GzipError);
+use Fcntl qw(:flock);
 $Data::Dumper::Sortkeys = 1;
 $CGI::POST_MAX = 1024 * 1024 * 10; # Max 10MB posts
 $CGI::DISABLE_UPLOADS = 1;         # No uploads
@@ -67,6 +71,10 @@ my $q = new CGI;
 my $dat = $q->param('data'); # Form values are passed as 1 string
 $thsim->processForm($dat);
 
+# Record the form for load tests (see LoadTest.java) when THYROSIM_CAPTURE
+# names a corpus file
+captureForm($ENV{THYROSIM_CAPTURE}, $dat) if $ENV{THYROSIM_CAPTURE};
+
 #----------------------------------------------------------
 # Define command. Currently using Java ODE solver. Command arguments are
 # generated in the section below.
@@ -77,8 +85,10 @@ $thsim->processForm($dat);
 # 21 - 24: Dial values (secretion/absorption).
 # 25 - 26: Infusion values.
 # 27:      The thysim parameters to load.
-# 28:      Whether to initialize IC (recalculate IC).
+# 28:      Whether to initialize IC (recalculate IC), or 'browser' to run
+#          all integrations and print the browser object.
 # 29 - 77: Parameters kdelay and p1 - p48.
+# 78+:     Browser mode options, see Thyrosim.runBrowser().
 #----------------------------------------------------------
 my $solver = $thsim->getSolver();
 my $thysim = $thsim->getThysim();
@@ -97,39 +107,99 @@ my $ps     = $thsim->getParams();
 #----------------------------------------------------------
 my $dials = $thsim->getDialString(); # Only needed once
 my $ickey = $thsim->getICKey();
-if ($thsim->hasICKey($ickey) || !$thsim->recalcIC()) { # Skipping i0
-    $thsim->processKeyVal($ickey,'0');
-} else {
-    my $ICstr = $thsim->getICString('0');
+my $warmup = ($thsim->hasICKey($ickey) || !$thsim->recalcIC()) ? 0 : 1;
+my $ICstr = $warmup ? $thsim->getICString('0')
+                    : $thsim->getKeyICString($ickey);
+
+#----------------------------------------------------------
+# Perform i0 to iX integrations.
+# The solver runs in browser mode: all integrations determined in detIntSteps()
+# are run in one go, with inputs added at the start of each integration. The
+# solver does what processResults() and getBrowserObj() used to do and prints
+# the browser object as JSON. Only show compartments are computed.
+#----------------------------------------------------------
+my $simtime = $thsim->getLvl1('simTime');
+my $shows   = $thsim->getShowString();
+my $segs    = $thsim->getSegmentString();
+
+# The browser may ask for packed values, see DeltaCodec.java
+my $encoding = ($q->param('encoding') // '') eq 'delta4' ? 'delta4' : 'json';
+
+# Or a quick preview, see RosenbrockIntegrator.java, or tolerances from the
+# shown decimals, see AccuracyBudget.java
+my $accuracy = $q->param('accuracy') // '';
+$accuracy = 'full' unless $accuracy =~ /^(preview|budget)$/;
 
-    my $cmd = "$solver $ICstr 0 1008 $dials 0 0 $thysim initic $ps";
-    my @res = `$cmd` or die "died: $!";
-    $thsim->processResults(\@res,'0');
+my $args = "$ICstr 0 1008 $dials 0 0 $thysim browser $ps"
+         . "simtime=$simtime warmup=$warmup encoding=$encoding "
+         . "accuracy=$accuracy show=$shows$segs";
+
+# Prefer the solver server (SimulationServer.java), which runs requests on a
+# bounded pool with per-client fairness and a deadline. Fall back to starting
+# the solver if no server is running.
+my $json = runOnServer($args) // `$solver $args` or die "died: $!";
+
+#----------------------------------------------------------
+# Print to browser. Gzip the response if the browser accepts it.
+#----------------------------------------------------------
+my $gz;
+if (($ENV{HTTP_ACCEPT_ENCODING} // '') =~ /\bgzip\b/
+    && gzip(\$json => \$gz)) {
+    print $q->header(-type => "text/html", -Content_Encoding => "gzip");
+    print $gz;
+} else {
+    print $q->header("text/html");
+    print $json;
 }
 
 #----------------------------------------------------------
-# Perform i1 to iX integrations.
-# Integration intervals were determined in detIntSteps(), so here we retrieve
-# them and call the solver.
+# Send solver arguments to the solver server. Returns undef if the server can't
+# be reached. THYROSIM_PORT and THYROSIM_DEADLINE (ms) override the defaults.
 #----------------------------------------------------------
-my $iXs = $thsim->getIntCount();
-foreach my $iThis (@$iXs) {
-    my $start = $thsim->toHour($thsim->getIntStart('thisStep',$iThis));
-    my $end   = $thsim->toHour($thsim->getIntBound('thisStep',$iThis));
-    my $ICstr = $thsim->getICString($iThis);
-    my $u     = $thsim->getInfValue($iThis);
-
-    my $cmd = "$solver $ICstr $start $end $dials $u $thysim noinit $ps";
-    my @res = `$cmd` or die "died: $!";
-    $thsim->processResults(\@res,$iThis);
+sub runOnServer {
+    my ($args) = @_;
+    my $sock = IO::Socket::INET->new(PeerAddr => '127.0.0.1',
+                                     PeerPort => $ENV{THYROSIM_PORT} // 8711,
+                                     Proto    => 'tcp',
+                                     Timeout  => 1) or return undef;
+    my $client   = $ENV{REMOTE_ADDR} // 'local';
+    my $deadline = $ENV{THYROSIM_DEADLINE} // 0;
+    print $sock "$client $deadline $args\n";
+
+    # The CGI is not told when the browser goes away, so the request runs
+    # until it is done or its deadline passes. Stop waiting when the browser
+    # does (the 2 minute timeout in js/thyrosim.js); closing the connection
+    # cancels the request.
+    my $sel = IO::Select->new($sock);
+    my $end = time + 120;
+    my $res = '';
+    while (1) {
+        my $left = $end - time;
+        if ($left <= 0 || !$sel->can_read($left)) {
+            close $sock;
+            return '{"error":"Timed out"}';
+        }
+        my $n = sysread($sock, my $buf, 65536);
+        last unless $n;
+        $res .= $buf;
+    }
+    close $sock;
+    return $res;
 }
 
 #----------------------------------------------------------
-# Convert to JSON and print to browser
+# Append the form to a load test corpus, one per line. Requests may run at the
+# same time, so the file is locked.
 #----------------------------------------------------------
-my $browserObj = $thsim->getBrowserObj();
-print $q->header("text/html");
-print JSON::Syck::Dump($browserObj);
+sub captureForm {
+    my ($file,$dat) = @_;
+    return unless defined $dat && $dat ne '';
+    open my $fh, '>>', $file or return;
+    flock $fh, LOCK_EX;
+    $dat =~ s/[\r\n]//g;
+    print $fh "$dat\n";
+    close $fh;
+}
 
 #----------------------------------------------------------
 # Error checking
@@ -0,0 +1,122 @@
+#!/usr/bin/perl
+use v5.10; use strict; use warnings;
+#==============================================================================
+# FILE:         ajax_preview.cgi
+# DESCRIPTION:
+#   Predicted steady state for the current dial values, for showing while the
+#   sliders are dragged:
+#     1. Takes form values from the browser
+#     2. Looks up the dials in the precomputed response surface, or solves the
+#        steady state if 'exact' is set
+#     3. Returns mean/min/max TSH, FT4 and FT3 over a day as JSON
+#   See ResponseSurface.java.
+#==============================================================================
+
+use CGI qw/:standard/;
+use IO::Select;
+use IO::Socket::INET;
+$CGI::POST_MAX = 1024 * 1024 * 10; # Max 10MB posts
+$CGI::DISABLE_UPLOADS = 1;         # No uploads
+
+#====================================================================
+# Compile time items
+#====================================================================
+my @S_NAME;
+my $F_ROOT;
+BEGIN {
+
+    # Folder root
+    @S_NAME = split(/\//, $ENV{SCRIPT_NAME});
+    $F_ROOT = $S_NAME[1];
+
+    # Document root
+    if(!$ENV{DOCUMENT_ROOT}) {
+        $ENV{DOCUMENT_ROOT} = '/home/www';
+    }
+
+    # Restrict this script to AJAX calls only. See ajax_getplot.cgi.
+    if (exists $ENV{HTTP_X_REQUESTED_WITH} &&
+               $ENV{HTTP_X_REQUESTED_WITH} eq "XMLHttpRequest") {
+        # Looks good
+    } else {
+        # Return a message and exit
+        my $q = CGI->new();
+        print
+            $q->header(-status=>'400 Bad Request',-type=>'text/html'),
+            $q->start_html(-title=>'Bad Request'),
+            $q->h1('Bad Request'),
+            $q->end_html();
+        exit 0;
+    }
+}
+
+#====================================================================
+# Generate JSON output
+#====================================================================
+use lib $ENV{DOCUMENT_ROOT}."/$F_ROOT/pm";
+use THYROSIM;
+
+# Create THYROSIM object
+my $thsim = THYROSIM->new(setshow => 'default',
+                          docRoot => $ENV{DOCUMENT_ROOT},
+                          fRoot   => $F_ROOT);
+
+# New CGI object and read form values from UI.
+my $q = new CGI;
+my $dat = $q->param('data'); # Form values are passed as 1 string
+$thsim->processForm($dat);
+
+#----------------------------------------------------------
+# Arguments are the mode, the thysim and the dials in percent. 'preview'
+# interpolates the response surface, 'steady' runs the solver.
+#----------------------------------------------------------
+my $mode   = $q->param('exact') ? 'steady' : 'preview';
+my $thysim = $thsim->getThysim();
+my $dials  = join(' ', map { $thsim->getLvl2('dial',$_) } 1 .. 4);
+my $args   = "$mode $thysim $dials";
+
+# Prefer the solver server, which answers previews without queueing. Fall back
+# to starting the solver.
+my $solver = $thsim->getSolver('ResponseSurface');
+my $json = runOnServer($args) // `$solver $args` or die "died: $!";
+
+#----------------------------------------------------------
+# Print to browser
+#----------------------------------------------------------
+print $q->header("text/html");
+print $json;
+
+#----------------------------------------------------------
+# Send arguments to the solver server. Returns undef if the server can't be
+# reached. THYROSIM_PORT and THYROSIM_DEADLINE (ms) override the defaults.
+#----------------------------------------------------------
+sub runOnServer {
+    my ($args) = @_;
+    my $sock = IO::Socket::INET->new(PeerAddr => '127.0.0.1',
+                                     PeerPort => $ENV{THYROSIM_PORT} // 8711,
+                                     Proto    => 'tcp',
+                                     Timeout  => 1) or return undef;
+    my $client   = $ENV{REMOTE_ADDR} // 'local';
+    my $deadline = $ENV{THYROSIM_DEADLINE} // 0;
+    print $sock "$client $deadline $args\n";
+
+    # The CGI is not told when the browser goes away, so the request runs
+    # until it is done or its deadline passes. Stop waiting when the browser
+    # does (the 2 minute timeout in js/thyrosim.js); closing the connection
+    # cancels the request.
+    my $sel = IO::Select->new($sock);
+    my $end = time + 120;
+    my $res = '';
+    while (1) {
+        my $left = $end - time;
+        if ($left <= 0 || !$sel->can_read($left)) {
+            close $sock;
+            return '{"error":"Timed out"}';
+        }
+        my $n = sysread($sock, my $buf, 65536);
+        last unless $n;
+        $res .= $buf;
+    }
+    close $sock;
+    return $res;
+}
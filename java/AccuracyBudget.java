@@ -0,0 +1,181 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import org.apache.commons.math3.ode.FirstOrderIntegrator;
+
+// Tolerances worked out from what the browser shows (accuracy=budget, see
+// RunOptions). Values are shown in display units with a fixed number of
+// decimals, so an error below half a unit of the last decimal, spread over
+// the run, does not change them. For each shown column the budget is turned
+// into an absolute tolerance on the states it is computed from:
+//   q1 - q19   half unit / conversion factor (see ConversionFactors)
+//   FT4, FT3   half unit / their slope in q1 and q4 at the start state
+// divided by SAFETY for the error that builds up over steps. States that are
+// not shown get the tightest relative tolerance of the shown ones, loosened
+// by HIDDEN, as they only reach the shown values through the ODEs.
+//
+// DormandPrince853 gains nothing from these tolerances, as its step is bound
+// by the stiffness of the model, not by accuracy. The budget is run with the
+// stiff Ros4Integrator, which takes about a third of the steps at 4 decimals.
+//
+// The budget can be checked against a full run (verify=1): the budget run is
+// compared with each value the full run shows (see ReferenceTrack), and the
+// largest difference per shown column is reported. The full result is sent
+// instead whenever a difference reaches half a unit, so verified runs never
+// show other values.
+public class AccuracyBudget
+{
+    public static final int DEFAULT_DECIMALS = 4;
+
+    private static final double SAFETY = 3;
+    private static final double HIDDEN = 100;
+
+    // Scale of states that start at 0, e.g. the gut compartments (mols)
+    private static final double FLOOR = 1.0e-3;
+
+    private static final double MIN_STEP   = 1.0e-8;
+    private static final double MAX_STEP   = 24;
+    private static final double FIRST_STEP = 0.01;
+
+    private final int decimals;
+    private final double[] absTol;
+
+    // Budget for show (see Projection) at decimals, from the start state q
+    // and FT4/FT3 coefficients p
+    public AccuracyBudget(int decimals, int[] show, ConversionFactors cfs,
+                          double[] p, double[] q)
+    {
+        if (decimals < 0 || decimals > 8) {
+            throw new IllegalArgumentException("Bad decimals: " + decimals);
+        }
+        this.decimals = decimals;
+        this.absTol = new double[q.length];
+
+        double half = halfUnit(decimals) / SAFETY;
+        double q1 = q[0];
+        boolean shown = false;
+        for (int c : show) {
+            if (c > 0 && c < Projection.FT4) {
+                tighten(c - 1, half / cfs.forColumn(c));
+            } else if (c == Projection.FT4) {
+                double slope = p[0] + 2 * p[1] * q1 + 3 * p[2] * q1 * q1
+                             + 4 * p[3] * q1 * q1 * q1;
+                tighten(0, half / (slope * cfs.ft4));
+            } else if (c == Projection.FT3) {
+                double free = p[4] + p[5] * q1 + p[6] * q1 * q1
+                            + p[7] * q1 * q1 * q1;
+                double slope = (p[5] + 2 * p[6] * q1 + 3 * p[7] * q1 * q1)
+                             * q[3];
+                tighten(3, half / (free * cfs.ft3));
+                tighten(0, half / (slope * cfs.ft3));
+            } else {
+                continue;
+            }
+            shown = true;
+        }
+        if (!shown) {
+            // E.g. show=none with metrics: budget the default columns
+            AccuracyBudget d = new AccuracyBudget(decimals, Projection.DEFAULT,
+                                                  cfs, p, q);
+            System.arraycopy(d.absTol, 0, absTol, 0, absTol.length);
+            return;
+        }
+
+        double rel = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < q.length; i++) {
+            if (absTol[i] > 0) {
+                rel = Math.min(rel, absTol[i] / Math.max(Math.abs(q[i]),
+                                                         FLOOR));
+            }
+        }
+        for (int i = 0; i < q.length; i++) {
+            if (absTol[i] == 0) {
+                absTol[i] = HIDDEN * rel * Math.max(Math.abs(q[i]), FLOOR);
+            }
+        }
+    }
+
+    // Lower the tolerance of state i to tol, if it is a usable bound
+    private void tighten(int i, double tol)
+    {
+        tol = Math.abs(tol);
+        if (tol > 0 && !Double.isInfinite(tol) && !Double.isNaN(tol)
+            && (absTol[i] == 0 || tol < absTol[i])) {
+            absTol[i] = tol;
+        }
+    }
+
+    // Half a unit of the last of decimals, in display units
+    public static double halfUnit(int decimals)
+    {
+        return 0.5 * Math.pow(10, -decimals);
+    }
+
+    public int getDecimals()
+    {
+        return decimals;
+    }
+
+    // Absolute tolerance per state, q1 - q19
+    public double[] getTolerances()
+    {
+        return absTol.clone();
+    }
+
+    public FirstOrderIntegrator newIntegrator()
+    {
+        return new Ros4Integrator(MIN_STEP, MAX_STEP, FIRST_STEP, absTol, 0);
+    }
+
+    // Whether the differences of a verify=1 run stay within the budget
+    public boolean holds(double[] maxError)
+    {
+        double half = halfUnit(decimals);
+        for (double e : maxError) {
+            if (!(e < half)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Append how the budget integrates, as a JSON object. maxError has the
+    // largest differences per shown column of a verify=1 run, or is null.
+    public void appendTo(StringBuilder sb, double[] maxError,
+                         boolean fallback)
+    {
+        sb.append('{');
+        Json.appendKey(sb, "accuracy");
+        Json.appendString(sb, RunOptions.BUDGET);
+        sb.append(',');
+        Json.appendKey(sb, "method");
+        Json.appendString(sb, fallback ? Thyrosim.newIntegrator().getName()
+                                       : "ROS4");
+        sb.append(',');
+        Json.appendKey(sb, "decimals");
+        sb.append(decimals).append(',');
+        Json.appendKey(sb, "absTol");
+        sb.append('[');
+        for (int i = 0; i < absTol.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append((float) absTol[i]);
+        }
+        sb.append(']');
+        if (maxError != null) {
+            sb.append(',');
+            Json.appendKey(sb, "verified");
+            sb.append(!fallback).append(',');
+            Json.appendKey(sb, "maxError");
+            sb.append('[');
+            for (int o = 0; o < maxError.length; o++) {
+                if (o > 0) {
+                    sb.append(',');
+                }
+                sb.append((float) maxError[o]);
+            }
+            sb.append(']');
+        }
+        sb.append('}');
+    }
+}
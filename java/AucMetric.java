@@ -0,0 +1,80 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import org.apache.commons.math3.ode.sampling.StepInterpolator;
+
+// Area under the curve, overall and per dosing interval. Each step is
+// integrated with Gauss-Legendre quadrature on the step interpolator, which is
+// exact up to the interpolator's own error. A dosing interval starts with every
+// integration that has inputs, and with the first integration.
+public class AucMetric extends MetricAccumulator
+{
+    private final DoubleList starts = new DoubleList(16);
+    private final DoubleList aucs   = new DoubleList(16);
+    private double total;
+    private double current;
+    private boolean newInterval;
+
+    public AucMetric(int col, ConversionFactors cfs, double[] p)
+    {
+        super(col, cfs, p);
+    }
+
+    @Override
+    public void beginSegment(Segment segment, double offset)
+    {
+        super.beginSegment(segment, offset);
+        newInterval = segment.hasInputs() || starts.size() == 0;
+    }
+
+    protected void start(double t, double v)
+    {
+        if (newInterval) {
+            closeInterval();
+            starts.add(t);
+        }
+    }
+
+    protected void step(StepInterpolator interpolator, double t0, double t1)
+    {
+        double half = 0.5 * (t1 - t0);
+        double mid  = 0.5 * (t1 + t0);
+        double sum  = 0;
+        for (int i = 0; i < GL_NODES.length; i++) {
+            sum += GL_WEIGHTS[i] * valueAt(interpolator, mid + half * GL_NODES[i]);
+        }
+        current += half * sum;
+    }
+
+    private void closeInterval()
+    {
+        if (starts.size() > aucs.size()) {
+            aucs.add(current);
+            total += current;
+        }
+        current = 0;
+    }
+
+    public void appendSummary(StringBuilder sb)
+    {
+        closeInterval();
+        appendHeader(sb, "auc");
+        Json.appendKey(sb, "total");
+        Json.appendQuoted4(sb, total);
+        sb.append(',');
+        Json.appendKey(sb, "intervals");
+        sb.append('[');
+        for (int i = 0; i < aucs.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('{');
+            Json.appendKey(sb, "start");
+            Json.appendQuoted4(sb, starts.get(i));
+            sb.append(',');
+            Json.appendKey(sb, "auc");
+            Json.appendQuoted4(sb, aucs.get(i));
+            sb.append('}');
+        }
+        sb.append("]}");
+    }
+}
@@ -0,0 +1,345 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// The browser's serialized form (the 'data' of ajax_getplot.cgi), turned into
+// a browser mode run the way THYROSIM.pm does it: _processForm() reads the
+// fields, detIntSteps() splits the simulation into integrations at every
+// input time, getInputAdjustments() and getInfValue() give the inputs of each
+// integration and getDialString() the solver dials. Used by the solver
+// services that take form strings directly instead of going through the CGI,
+// see LiveServer.
+//
+// Form fields:
+//   simtime        Simulation time in days, at most SIM_TIME_MAX
+//   recalcIC       Run i0 with the dials when they are not the defaults
+//   dialinput1-4   Dials in percent
+//   thysim         Model variant, see ModelRegistry
+//   kdelay, pN     Parameter values, replacing the variant's
+//   <name>-<n>     Field name of input n: type (1 oral, 2 IV, 3 infusion),
+//                  hormone (3 or 4), dose (mcg, or mcg/day for infusions),
+//                  start, end and int (days) and singledose
+// Other fields are ignored. Disabled inputs are not in the form, the browser
+// does not send disabled fields.
+//
+// Perl keeps input times as hash keys and passes numbers to the solver as
+// strings, which rounds them to 15 significant digits. Times, doses, dials and
+// infusion rates are rounded the same way here, so that a form gives the same
+// run as through ajax_getplot.cgi.
+//
+// From the command line, print the solver arguments ajax_getplot.cgi uses:
+//   BrowserForm FORM [ENCODING]
+public class BrowserForm
+{
+    public static final double SIM_TIME_MAX = 100;
+
+    // i0 runs from 0 to WARMUP hours, see ajax_getplot.cgi
+    public static final double WARMUP = 1008;
+
+    private static final Pattern INPUT = Pattern.compile("(\\w+)-(\\d+)");
+    private static final Pattern PARAM = Pattern.compile("p(\\d+).*");
+
+    private String thysim = "Thyrosim";
+    private String simTime = "5";
+    private boolean recalcIC = false;
+    private final double[] dials = ResponseSurface.DEFAULT_DIALS.clone();
+    private final Map<Integer, String> params = new HashMap<Integer, String>();
+    private final TreeMap<String, Map<String, String>> inputs =
+        new TreeMap<String, Map<String, String>>();
+
+    private BrowserForm()
+    {
+    }
+
+    public static BrowserForm parse(String data)
+    {
+        BrowserForm f = new BrowserForm();
+        if (data == null) {
+            return f;
+        }
+        for (String var : data.split("&")) {
+            if (var.isEmpty()) {
+                continue;
+            }
+            int eq = var.indexOf('=');
+            String key = decode(eq < 0 ? var : var.substring(0, eq));
+            String val = eq < 0 ? "" : decode(var.substring(eq + 1));
+            f.set(key, val);
+        }
+        return f;
+    }
+
+    private void set(String key, String val)
+    {
+        Matcher m;
+        if (key.equals("simtime")) {
+            simTime = number(key, val) > SIM_TIME_MAX
+                    ? format(SIM_TIME_MAX) : val;
+        } else if (key.equals("recalcIC")) {
+            recalcIC = isTrue(val);
+        } else if (key.matches("dialinput[1-4].*")) {
+            dials[key.charAt(9) - '1'] = number(key, val);
+        } else if (key.equals("thysim")) {
+            thysim = val;
+        } else if (key.equals("kdelay")) {
+            params.put(0, val);
+        } else if ((m = PARAM.matcher(key)).matches()) {
+            params.put(Integer.valueOf(m.group(1)), val);
+        } else if ((m = INPUT.matcher(key)).find()) {
+            Map<String, String> in = inputs.get(m.group(2));
+            if (in == null) {
+                in = new HashMap<String, String>();
+                inputs.put(m.group(2), in);
+            }
+            in.put(m.group(1), val);
+        }
+    }
+
+    public String getThysim()
+    {
+        return thysim;
+    }
+
+    // As sent, for the browser object
+    public String getSimTime()
+    {
+        return simTime;
+    }
+
+    // Dials in percent
+    public double[] getDials()
+    {
+        return dials.clone();
+    }
+
+    // { kdelay, p1 - p48 }: the variant's, with the form's values
+    public double[] getParameters()
+    {
+        double[] kp = ModelRegistry.get(thysim).getParameters();
+        for (Map.Entry<Integer, String> e : params.entrySet()) {
+            if (e.getKey() >= kp.length) {
+                throw new IllegalArgumentException("Unknown parameter: p"
+                                                   + e.getKey());
+            }
+            kp[e.getKey()] = number("p" + e.getKey(), e.getValue());
+        }
+        return kp;
+    }
+
+    // Dials as the solver takes them, see getDialString()
+    public double[] getSolverDials()
+    {
+        double[] d = ResponseSurface.solverDials(dials, getParameters());
+        for (int i = 0; i < d.length; i++) {
+            d[i] = perl(d[i]);
+        }
+        return d;
+    }
+
+    // Whether i0 must be run. getICKey() only knows the steady state at the
+    // default dials, so i0 runs whenever recalcIC is on and a dial is changed
+    // at the resolution of the key (0.1 percent).
+    public boolean needsWarmup()
+    {
+        return recalcIC && !SimulationModel.isDefault(dials);
+    }
+
+    // The IC of i0, or of i1 without i0: the variant's steady state
+    public double[] getInitialState()
+    {
+        double[] q = ModelRegistry.get(thysim).getSteadyState();
+        for (int i = 0; i < q.length; i++) {
+            q[i] = perl(q[i]);
+        }
+        return q;
+    }
+
+    // Integrations i1 - iX, see detIntSteps() and getSegmentString()
+    public List<Segment> getSegments()
+    {
+        return toRegimen().getSegments();
+    }
+
+    // The form's inputs over simtime. Oral and IV inputs of other hormones
+    // are ignored, like getInputAdjustments() does.
+    public Regimen toRegimen()
+    {
+        Regimen.Builder rb = new Regimen.Builder(number("simtime", simTime));
+        for (Map<String, String> in : inputs.values()) {
+            int type = (int) number(in, "type");
+            if (type < 1 || type > 3) {
+                continue;
+            }
+            int hormone = (int) number(in, "hormone");
+            if (type != 3 && hormone != 3 && hormone != 4) {
+                continue;
+            }
+            double dose = number(in, "dose");
+            double start = number(in, "start");
+            if (type == 1 && isTrue(in.get("singledose"))) {
+                rb.oral(hormone, dose, start);
+            } else if (type == 1) {
+                rb.oral(hormone, dose, start, number(in, "end"),
+                        number(in, "int"));
+            } else if (type == 2) {
+                rb.iv(hormone, dose, start);
+            } else {
+                rb.infusion(hormone, dose, start, number(in, "end"));
+            }
+        }
+        return rb.build();
+    }
+
+    // Options of a browser mode run of this form. warmup is set when i0
+    // must be run, see needsWarmup().
+    public RunOptions toRunOptions(String encoding)
+    {
+        RunOptions o = new RunOptions();
+        o.simTime = simTime;
+        o.warmup = needsWarmup();
+        o.encoding = encoding;
+        o.segments.addAll(getSegments());
+        return o;
+    }
+
+    // Run the form at accuracy (see RunOptions) and return the browser
+    // object, like Thyrosim.execute() does with toArgs(). The end state of i0
+    // is taken from cache when it has it and added otherwise; cache and token
+    // may be null.
+    public StringBuilder run(String encoding, String accuracy,
+                             WarmupCache cache, CancellationToken token)
+    {
+        double[] kp = getParameters();
+        double[] dials = getSolverDials();
+        double[] q = getInitialState();
+        RunOptions opts = toRunOptions(encoding);
+        opts.accuracy = accuracy;
+        if (opts.warmup && cache != null) {
+            q = warmUp(cache, accuracy, token);
+            opts.warmup = false;
+            opts.warmed = true;
+        }
+        ThyroidModel ode = Thyrosim.create(thysim, dials, 0, 0, kp, null);
+        return Thyrosim.runBrowser(ode, q, 0, WARMUP,
+                                   Thyrosim.freeCoefficients(kp),
+                                   new ConversionFactors(kp[47], kp[48]),
+                                   opts, token);
+    }
+
+    // The end state of i0 at accuracy, from cache when it has it. Forms with
+    // the same getWarmupKey() share it.
+    public double[] warmUp(WarmupCache cache, String accuracy,
+                           CancellationToken token)
+    {
+        return cache.get(thysim, getSolverDials(), getParameters(),
+                         getInitialState(), WARMUP, accuracy, token);
+    }
+
+    // What the end state of i0 depends on, or null if i0 is not run
+    public String getWarmupKey()
+    {
+        if (!needsWarmup()) {
+            return null;
+        }
+        return WarmupCache.key(thysim, getSolverDials(), getParameters(),
+                               getInitialState(), WARMUP);
+    }
+
+    // Arguments for Thyrosim.execute(), as ajax_getplot.cgi builds them
+    public String[] toArgs(String encoding)
+    {
+        List<String> args = new ArrayList<String>();
+        for (double v : getInitialState()) {
+            args.add(String.valueOf(v));
+        }
+        args.add("0");
+        args.add(format(WARMUP));
+        for (double v : getSolverDials()) {
+            args.add(String.valueOf(v));
+        }
+        args.add("0");
+        args.add("0");
+        args.add(thysim);
+        args.add("browser");
+        for (double v : getParameters()) {
+            args.add(String.valueOf(v));
+        }
+        args.add("simtime=" + simTime);
+        args.add("warmup=" + (needsWarmup() ? 1 : 0));
+        args.add("encoding=" + encoding);
+        for (Segment seg : getSegments()) {
+            args.add("seg=" + seg);
+        }
+        return args.toArray(new String[args.size()]);
+    }
+
+    // Perl's string value of x as a number: rounded to 15 significant digits
+    static double perl(double x)
+    {
+        if (x == 0 || Double.isNaN(x) || Double.isInfinite(x)) {
+            return x;
+        }
+        return new BigDecimal(x).round(new MathContext(15,
+                                       RoundingMode.HALF_EVEN)).doubleValue();
+    }
+
+    private static String format(double x)
+    {
+        return x == Math.rint(x) ? String.valueOf((long) x) : String.valueOf(x);
+    }
+
+    // Perl truth: set, and neither empty nor "0"
+    private static boolean isTrue(String s)
+    {
+        return s != null && !s.isEmpty() && !s.equals("0");
+    }
+
+    private static double number(Map<String, String> in, String name)
+    {
+        return number(name, in.get(name));
+    }
+
+    private static double number(String name, String val)
+    {
+        if (val == null) {
+            throw new IllegalArgumentException("Missing " + name);
+        }
+        try {
+            return Double.parseDouble(val.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Bad " + name + ": " + val);
+        }
+    }
+
+    private static String decode(String s)
+    {
+        try {
+            return URLDecoder.decode(s, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        } catch (IllegalArgumentException ex) {
+            return s;
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        String[] a = parse(args[0]).toArgs(args.length > 1 ? args[1] : "json");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < a.length; i++) {
+            sb.append(i > 0 ? " " : "").append(a[i]);
+        }
+        System.out.println(sb);
+    }
+}
@@ -0,0 +1,65 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import org.apache.commons.math3.ode.sampling.StepHandler;
+import org.apache.commons.math3.ode.sampling.StepInterpolator;
+
+// Cooperative cancellation for one request. Added to the integrator as a step
+// handler, it stops the integration at the next step once the request is
+// cancelled or its deadline has passed, by throwing
+// SimulationCancelledException.
+public class CancellationToken implements StepHandler
+{
+    private final long deadline; // System.nanoTime(), 0 for none
+    private volatile boolean cancelled;
+
+    // timeoutMillis <= 0 means no deadline
+    public CancellationToken(long timeoutMillis)
+    {
+        deadline = timeoutMillis > 0
+                 ? System.nanoTime() + timeoutMillis * 1000000L : 0;
+    }
+
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    public boolean isExpired()
+    {
+        return deadline != 0 && System.nanoTime() - deadline > 0;
+    }
+
+    // Milliseconds left until the deadline, Long.MAX_VALUE if none
+    public long remainingMillis()
+    {
+        if (deadline == 0) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, (deadline - System.nanoTime()) / 1000000L);
+    }
+
+    public void check()
+    {
+        if (cancelled) {
+            throw new SimulationCancelledException(false);
+        }
+        if (isExpired()) {
+            throw new SimulationCancelledException(true);
+        }
+    }
+
+    public void init(double t0, double[] y0, double t)
+    {
+        check();
+    }
+
+    public void handleStep(StepInterpolator interpolator, boolean isLast)
+    {
+        check();
+    }
+}
@@ -0,0 +1,97 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import org.apache.commons.math3.ode.sampling.StepInterpolator;
+
+// Cmax and Tmax after each oral dose. Each dose is followed until the next
+// oral dose or the end of the run. Tmax is in hours after the dose. Nothing
+// is recorded before the first oral dose.
+public class CmaxMetric extends MetricAccumulator
+{
+    // Per dose: dose time, cmax, tmax
+    private final DoubleList doses = new DoubleList(48);
+    private boolean newDose;
+    private boolean open;
+    private double doseT, cmax, tmax;
+
+    public CmaxMetric(int col, ConversionFactors cfs, double[] p)
+    {
+        super(col, cfs, p);
+    }
+
+    @Override
+    public void beginSegment(Segment segment, double offset)
+    {
+        super.beginSegment(segment, offset);
+        newDose = segment.hasOralDose();
+    }
+
+    protected void start(double t, double v)
+    {
+        if (newDose) {
+            closeDose();
+            doseT = t;
+            cmax  = v;
+            tmax  = 0;
+            open  = true;
+        } else {
+            sample(t, v);
+        }
+    }
+
+    protected void step(StepInterpolator interpolator, double t0, double t1)
+    {
+        if (!open) {
+            return;
+        }
+        double half = 0.5 * (t1 - t0);
+        double mid  = 0.5 * (t1 + t0);
+        for (int i = 0; i < GL_NODES.length; i++) {
+            double t = mid + half * GL_NODES[i];
+            sample(t + offset, valueAt(interpolator, t));
+        }
+        sample(t1 + offset, valueAt(interpolator, t1));
+    }
+
+    private void sample(double t, double v)
+    {
+        if (open && v > cmax) {
+            cmax = v;
+            tmax = t - doseT;
+        }
+    }
+
+    private void closeDose()
+    {
+        if (!open) {
+            return;
+        }
+        doses.add(doseT);
+        doses.add(cmax);
+        doses.add(tmax);
+        open = false;
+    }
+
+    public void appendSummary(StringBuilder sb)
+    {
+        closeDose();
+        appendHeader(sb, "cmax");
+        Json.appendKey(sb, "doses");
+        sb.append('[');
+        for (int i = 0; i + 2 < doses.size(); i += 3) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('{');
+            Json.appendKey(sb, "dose");
+            Json.appendQuoted4(sb, doses.get(i));
+            sb.append(',');
+            Json.appendKey(sb, "cmax");
+            Json.appendQuoted4(sb, doses.get(i + 1));
+            sb.append(',');
+            Json.appendKey(sb, "tmax");
+            Json.appendQuoted4(sb, doses.get(i + 2));
+            sb.append('}');
+        }
+        sb.append("]}");
+    }
+}
@@ -0,0 +1,429 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Columnar on-disk store for many simulation runs, e.g. every draw of a bands
+// run or every patient of a cohort. A store is a directory with
+//   t.f64            Time of every row, 64 bit
+//   <comp>.f32|.f64  One column per compartment, 32 or 64 bit
+//   index.bin        Header (columns and their widths), then one record per
+//                    run: patient, run, first row, number of rows
+// Numbers are little endian, so the column files can also be used directly
+// from e.g. numpy.memmap. Runs are written by ColumnStoreWriter.
+//
+// The columns are read through FileChannel.map, in chunks of up to 1 GB, so
+// opening a store only reads the index. trajectory() returns a view of the
+// mapped file without copying; crossSection() reads one interpolated value
+// per run. Safe for concurrent readers. If a patient and run were written
+// more than once, lookups find the last one.
+//
+// From the command line:
+//   ColumnStore DIR runs
+//   ColumnStore DIR trajectory PATIENT RUN COMP
+//   ColumnStore DIR slice COMP T
+public class ColumnStore implements Closeable
+{
+    static final int MAGIC   = 0x54485953; // "THYS"
+    static final int VERSION = 1;
+    static final String INDEX = "index.bin";
+
+    private static final long CHUNK = 1L << 30; // Bytes per mapping
+
+    // One run in the index
+    public static final class Run
+    {
+        public final String patient;
+        public final int run;
+        final long firstRow;
+        final int rows;
+
+        Run(String patient, int run, long firstRow, int rows)
+        {
+            this.patient  = patient;
+            this.run      = run;
+            this.firstRow = firstRow;
+            this.rows     = rows;
+        }
+
+        public int size()
+        {
+            return rows;
+        }
+    }
+
+    // Values of one column over a range of rows. Backed by the mapped file.
+    public static final class Slice
+    {
+        private final ByteBuffer bytes;
+        private final int width;
+        private final int size;
+
+        Slice(ByteBuffer bytes, int width)
+        {
+            this.bytes = bytes;
+            this.width = width;
+            this.size  = bytes.remaining() / width;
+        }
+
+        public int size()
+        {
+            return size;
+        }
+
+        public double get(int i)
+        {
+            return width == 8 ? bytes.getDouble(i * 8)
+                              : bytes.getFloat(i * 4);
+        }
+
+        // The values as a buffer, without copying. Only for 64 bit columns.
+        public DoubleBuffer asDoubleBuffer()
+        {
+            if (width != 8) {
+                throw new IllegalStateException("Column is 32 bit");
+            }
+            return bytes.duplicate().order(ByteOrder.LITTLE_ENDIAN)
+                        .asDoubleBuffer();
+        }
+
+        // The values as a buffer, without copying. Only for 32 bit columns.
+        public FloatBuffer asFloatBuffer()
+        {
+            if (width != 4) {
+                throw new IllegalStateException("Column is 64 bit");
+            }
+            return bytes.duplicate().order(ByteOrder.LITTLE_ENDIAN)
+                        .asFloatBuffer();
+        }
+
+        public double[] toArray()
+        {
+            double[] a = new double[size];
+            for (int i = 0; i < size; i++) {
+                a[i] = get(i);
+            }
+            return a;
+        }
+    }
+
+    // A mapped column file
+    private static final class Column
+    {
+        final int width;
+        final FileChannel ch;
+        final MappedByteBuffer[] chunks;
+
+        Column(File f, int width, long rows) throws IOException
+        {
+            this.width = width;
+            this.ch = new RandomAccessFile(f, "r").getChannel();
+            long bytes = rows * width;
+            if (ch.size() < bytes) {
+                throw new IOException(f + " is shorter than its index");
+            }
+            chunks = new MappedByteBuffer[(int) ((bytes + CHUNK - 1) / CHUNK)];
+            for (int i = 0; i < chunks.length; i++) {
+                long pos = i * CHUNK;
+                chunks[i] = ch.map(FileChannel.MapMode.READ_ONLY, pos,
+                                   Math.min(CHUNK, bytes - pos));
+                chunks[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+
+        double get(long row)
+        {
+            long pos = row * width;
+            MappedByteBuffer b = chunks[(int) (pos / CHUNK)];
+            int off = (int) (pos % CHUNK);
+            return width == 8 ? b.getDouble(off) : b.getFloat(off);
+        }
+
+        Slice slice(long row, int n) throws IOException
+        {
+            long pos = row * width;
+            long len = (long) n * width;
+            int c = (int) (pos / CHUNK);
+            int off = (int) (pos % CHUNK);
+            ByteBuffer b;
+            if (off + len <= CHUNK) {
+                b = chunks[c].duplicate();
+                b.position(off).limit((int) (off + len));
+                b = b.slice();
+            } else {
+                // Crosses a chunk boundary, map it on its own
+                b = ch.map(FileChannel.MapMode.READ_ONLY, pos, len);
+            }
+            return new Slice(b.order(ByteOrder.LITTLE_ENDIAN), width);
+        }
+    }
+
+    private final List<String> names = new ArrayList<String>();
+    private final Map<String, Column> columns = new HashMap<String, Column>();
+    private final List<Run> runs = new ArrayList<Run>();
+    private final Map<String, Run> byKey = new HashMap<String, Run>();
+
+    private ColumnStore()
+    {
+    }
+
+    public static ColumnStore open(File dir) throws IOException
+    {
+        ColumnStore s = new ColumnStore();
+        s.load(dir);
+        return s;
+    }
+
+    // Compartment columns, without t
+    public List<String> getColumns()
+    {
+        return Collections.unmodifiableList(names);
+    }
+
+    // All runs in the order they were written
+    public List<Run> getRuns()
+    {
+        return Collections.unmodifiableList(runs);
+    }
+
+    public Run getRun(String patient, int run)
+    {
+        Run r = byKey.get(key(patient, run));
+        if (r == null) {
+            throw new IllegalArgumentException("No run " + run + " for "
+                                               + patient);
+        }
+        return r;
+    }
+
+    // Column comp (or t) of one run
+    public Slice trajectory(String patient, int run, String comp)
+        throws IOException
+    {
+        Run r = getRun(patient, run);
+        return column(comp).slice(r.firstRow, r.rows);
+    }
+
+    // Column comp of every run at time t, in getRuns() order, linearly
+    // interpolated between rows. NaN for runs that do not cover t.
+    public double[] crossSection(String comp, double t)
+    {
+        Column time = column("t");
+        Column col  = column(comp);
+        double[] out = new double[runs.size()];
+        for (int k = 0; k < runs.size(); k++) {
+            Run r = runs.get(k);
+            out[k] = Double.NaN;
+            if (r.rows == 0) {
+                continue;
+            }
+            long lo = r.firstRow;
+            long hi = r.firstRow + r.rows - 1;
+            if (t < time.get(lo) || t > time.get(hi)) {
+                continue;
+            }
+            // Last row with time <= t
+            while (lo < hi) {
+                long mid = (lo + hi + 1) >>> 1;
+                if (time.get(mid) <= t) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            double t0 = time.get(lo);
+            double v0 = col.get(lo);
+            if (t0 == t || lo == r.firstRow + r.rows - 1) {
+                out[k] = v0;
+            } else {
+                double t1 = time.get(lo + 1);
+                double v1 = col.get(lo + 1);
+                out[k] = v0 + (v1 - v0) * (t - t0) / (t1 - t0);
+            }
+        }
+        return out;
+    }
+
+    public void close() throws IOException
+    {
+        for (Column c : columns.values()) {
+            c.ch.close();
+        }
+    }
+
+    private Column column(String comp)
+    {
+        Column c = columns.get(comp);
+        if (c == null) {
+            throw new IllegalArgumentException("No column " + comp);
+        }
+        return c;
+    }
+
+    private void load(File dir) throws IOException
+    {
+        File f = new File(dir, INDEX);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(f)));
+        int[] widths;
+        long rows = 0;
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a column store: " + dir);
+            }
+            int n = in.readInt();
+            widths = new int[n];
+            for (int c = 0; c < n; c++) {
+                names.add(in.readUTF());
+                widths[c] = in.readByte();
+            }
+            Run r;
+            while ((r = readRun(in)) != null) {
+                runs.add(r);
+                byKey.put(key(r.patient, r.run), r);
+                rows = r.firstRow + r.rows;
+            }
+        } finally {
+            in.close();
+        }
+
+        columns.put("t", new Column(new File(dir, fileName("t", 8)), 8, rows));
+        for (int c = 0; c < names.size(); c++) {
+            String name = names.get(c);
+            columns.put(name, new Column(new File(dir, fileName(name, widths[c])),
+                                         widths[c], rows));
+        }
+    }
+
+    // The next index record, or null at the end of the index or at a record
+    // that was not completely written
+    static Run readRun(DataInputStream in) throws IOException
+    {
+        try {
+            String patient = in.readUTF();
+            int run = in.readInt();
+            long first = in.readLong();
+            int rows = in.readInt();
+            return new Run(patient, run, first, rows);
+        } catch (EOFException ex) {
+            return null;
+        }
+    }
+
+    static String fileName(String column, int width)
+    {
+        return column + (width == 8 ? ".f64" : ".f32");
+    }
+
+    private static String key(String patient, int run)
+    {
+        return patient + '\u0000' + run;
+    }
+
+    // Counts the bytes read through it, to find where the complete records
+    // of an index end
+    static final class CountingStream extends FilterInputStream
+    {
+        long count;
+
+        CountingStream(InputStream in)
+        {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        ColumnStore s = open(new File(args[0]));
+        try {
+            StringBuilder sb = new StringBuilder();
+            String cmd = args[1];
+            if (cmd.equals("runs")) {
+                sb.append('[');
+                for (int i = 0; i < s.runs.size(); i++) {
+                    Run r = s.runs.get(i);
+                    sb.append(i > 0 ? "," : "").append('{');
+                    Json.appendKey(sb, "patient");
+                    Json.appendString(sb, r.patient);
+                    sb.append(',');
+                    Json.appendKey(sb, "run");
+                    sb.append(r.run).append(',');
+                    Json.appendKey(sb, "rows");
+                    sb.append(r.rows).append('}');
+                }
+                sb.append(']');
+            } else if (cmd.equals("trajectory")) {
+                Slice t = s.trajectory(args[2], Integer.parseInt(args[3]), "t");
+                Slice v = s.trajectory(args[2], Integer.parseInt(args[3]),
+                                       args[4]);
+                sb.append('{');
+                appendValues(sb, "t", t.toArray());
+                sb.append(',');
+                appendValues(sb, args[4], v.toArray());
+                sb.append('}');
+            } else if (cmd.equals("slice")) {
+                sb.append('{');
+                appendValues(sb, args[2],
+                             s.crossSection(args[2], Double.parseDouble(args[3])));
+                sb.append('}');
+            } else {
+                throw new IllegalArgumentException("Unknown command: " + cmd);
+            }
+            System.out.println(sb);
+        } finally {
+            s.close();
+        }
+    }
+
+    private static void appendValues(StringBuilder sb, String key, double[] v)
+    {
+        Json.appendKey(sb, key);
+        sb.append('[');
+        for (int i = 0; i < v.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            Json.appendQuoted4(sb, v[i]);
+        }
+        sb.append(']');
+    }
+}
@@ -0,0 +1,172 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+// Appends runs to a ColumnStore directory. A run is one trajectory of one
+// patient (e.g. one bands draw): a time column and one column per compartment.
+// Column data is written first and the index record last, so readers never
+// see a partly written run. Opening an existing store appends to it; its
+// columns must match, and rows after the last indexed run (from a write that
+// did not finish) are dropped, as is an incomplete last index record.
+//
+// write() is synchronized, so parallel workers can share one writer.
+public class ColumnStoreWriter implements Closeable
+{
+    private final String[] names;
+    private final int[] widths;       // Bytes per value, 4 or 8
+    private final FileChannel time;
+    private final FileChannel[] cols;
+    private final DataOutputStream index;
+    private long rows;
+    private long indexBytes;          // Length of the complete index records
+    private ByteBuffer buf = ByteBuffer.allocate(1 << 16)
+                                       .order(ByteOrder.LITTLE_ENDIAN);
+
+    // names are Projection names other than t. bits is 32 or 64 and applies
+    // to all compartment columns; time is always 64 bit.
+    public ColumnStoreWriter(File dir, String[] names, int bits)
+        throws IOException
+    {
+        if (bits != 32 && bits != 64) {
+            throw new IllegalArgumentException("Bits must be 32 or 64: " + bits);
+        }
+        this.names  = names.clone();
+        this.widths = new int[names.length];
+        java.util.Arrays.fill(widths, bits / 8);
+
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create " + dir);
+        }
+        File indexFile = new File(dir, ColumnStore.INDEX);
+        boolean exists = indexFile.exists();
+        long indexed = exists ? readIndex(indexFile) : 0;
+
+        time = append(new File(dir, ColumnStore.fileName("t", 8)));
+        cols = new FileChannel[names.length];
+        for (int c = 0; c < names.length; c++) {
+            cols[c] = append(new File(dir, ColumnStore.fileName(names[c],
+                                                                widths[c])));
+        }
+        rows = indexed;
+        time.truncate(rows * 8);
+        for (int c = 0; c < names.length; c++) {
+            cols[c].truncate(rows * widths[c]);
+        }
+
+        FileOutputStream indexOut = new FileOutputStream(indexFile, true);
+        if (exists) {
+            indexOut.getChannel().truncate(indexBytes);
+        }
+        index = new DataOutputStream(new BufferedOutputStream(indexOut));
+        if (!exists) {
+            index.writeInt(ColumnStore.MAGIC);
+            index.writeInt(ColumnStore.VERSION);
+            index.writeInt(names.length);
+            for (int c = 0; c < names.length; c++) {
+                index.writeUTF(names[c]);
+                index.writeByte(widths[c]);
+            }
+            index.flush();
+        }
+    }
+
+    // Append n rows of a run. values[c][i] is column c at time t[i].
+    public synchronized void write(String patient, int run, double[] t,
+                                   double[][] values, int n)
+        throws IOException
+    {
+        writeColumn(time, t, n, 8);
+        for (int c = 0; c < cols.length; c++) {
+            writeColumn(cols[c], values[c], n, widths[c]);
+        }
+        index.writeUTF(patient);
+        index.writeInt(run);
+        index.writeLong(rows);
+        index.writeInt(n);
+        index.flush();
+        rows += n;
+    }
+
+    public synchronized void close() throws IOException
+    {
+        index.close();
+        time.close();
+        for (FileChannel ch : cols) {
+            ch.close();
+        }
+    }
+
+    private void writeColumn(FileChannel ch, double[] v, int n, int width)
+        throws IOException
+    {
+        if (buf.capacity() < n * width) {
+            buf = ByteBuffer.allocate(n * width).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        buf.clear();
+        if (width == 8) {
+            for (int i = 0; i < n; i++) {
+                buf.putDouble(v[i]);
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                buf.putFloat((float) v[i]);
+            }
+        }
+        buf.flip();
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+    }
+
+    private static FileChannel append(File f) throws IOException
+    {
+        return new FileOutputStream(f, true).getChannel();
+    }
+
+    // Check that the existing header has the same columns, and return the
+    // number of indexed rows. Sets indexBytes to where the last complete
+    // record ends.
+    private long readIndex(File f) throws IOException
+    {
+        ColumnStore.CountingStream counter = new ColumnStore.CountingStream(
+            new BufferedInputStream(new FileInputStream(f)));
+        DataInputStream in = new DataInputStream(counter);
+        try {
+            if (in.readInt() != ColumnStore.MAGIC
+                || in.readInt() != ColumnStore.VERSION) {
+                throw new IOException("Not a column store: " + f);
+            }
+            int n = in.readInt();
+            boolean same = n == names.length;
+            for (int c = 0; c < n && same; c++) {
+                same = in.readUTF().equals(names[c])
+                    && in.readByte() == widths[c];
+            }
+            if (!same) {
+                throw new IOException("Columns differ from the store in "
+                                      + f.getParent());
+            }
+            long end = 0;
+            indexBytes = counter.count;
+            ColumnStore.Run r;
+            while ((r = ColumnStore.readRun(in)) != null) {
+                end = r.firstRow + r.rows;
+                indexBytes = counter.count;
+            }
+            return end;
+        } finally {
+            in.close();
+        }
+    }
+}
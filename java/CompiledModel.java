@@ -0,0 +1,83 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+// ODE system built from an SbmlModel by ModelCompiler. Parameters are held in
+// p, in SbmlModel.getParameterNames() order. Everything in the right-hand
+// side that depends only on parameters is kept in k and recomputed by
+// updateInvariants() whenever a parameter changes, so computeDerivatives()
+// only does the work that depends on t and the state.
+//
+// Not thread safe; use one instance per integration.
+public abstract class CompiledModel implements ThyroidModel
+{
+    protected final double[] p;
+    protected final double[] k;
+    private final SbmlModel model;
+    private final int u1, u4; // Infusion parameters, -1 if the model has none
+
+    protected CompiledModel(SbmlModel model, int invariants)
+    {
+        this.model = model;
+        this.p     = model.getDefaultParameters();
+        this.k     = new double[invariants];
+        this.u1    = model.parameterIndex("u1");
+        this.u4    = model.parameterIndex("u4");
+    }
+
+    // Recompute k from p
+    protected abstract void updateInvariants();
+
+    public SbmlModel getModel()
+    {
+        return model;
+    }
+
+    public int getDimension()
+    {
+        return model.getDimension();
+    }
+
+    public boolean hasParameter(String name)
+    {
+        return model.parameterIndex(name) >= 0;
+    }
+
+    public double getParameter(String name)
+    {
+        return p[index(name)];
+    }
+
+    public void setParameter(String name, double v)
+    {
+        p[index(name)] = v;
+        updateInvariants();
+    }
+
+    // Set many parameters with one update. Names the model does not have are
+    // skipped, so the same names can be used for all variants.
+    public void setParameters(String[] names, double[] values)
+    {
+        for (int i = 0; i < names.length; i++) {
+            int j = model.parameterIndex(names[i]);
+            if (j >= 0) {
+                p[j] = values[i];
+            }
+        }
+        updateInvariants();
+    }
+
+    public void setInfusion(double inf1, double inf4)
+    {
+        if (u1 >= 0) p[u1] = inf1;
+        if (u4 >= 0) p[u4] = inf4;
+        updateInvariants();
+    }
+
+    private int index(String name)
+    {
+        int i = model.parameterIndex(name);
+        if (i < 0) {
+            throw new IllegalArgumentException("Unknown parameter: " + name);
+        }
+        return i;
+    }
+}
@@ -0,0 +1,372 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.ode.FirstOrderIntegrator;
+
+// Dose-response curves: the periodic steady state of a thysim variant while
+// one control is stepped over a range. Controls are
+//   t4dose   Daily oral T4 dose in mcg, added to q10 at the start of each day
+//   t3dose   Daily oral T3 dose in mcg, added to q12
+//   dial1-4  A dial in percent, see ResponseSurface
+// Each point reports the mean, min and max of TSH, FT4 and FT3 over the
+// periodic day, like ResponseSurface.
+//
+// A periodic steady state is found by running whole days until the state at
+// the start of a day stops changing. The slowest mode (T4, with a half-life
+// of about a week) dominates, so once the day-to-day change shrinks by a
+// steady ratio the state jumps to the limit of that geometric series.
+//
+// Only the first point starts cold, from the variant's steady state. Every
+// other point starts from the previous converged state, extrapolated along
+// the curve from the last two points. The step in the control grows while
+// the outputs change little between points and is halved (and the point
+// redone) when they change by more than maxchange.
+//
+// From the command line, or as a request to SimulationServer:
+//   Continuation curve THYSIM CONTROL FROM TO [name=value]...
+// Options:
+//   dials=D1,D2,D3,D4  Dials in percent (default 100,88,100,88)
+//   t4dose=MCG         Daily T4 dose when the control is not t4dose
+//   t3dose=MCG         Daily T3 dose when the control is not t3dose
+//   maxchange=X        Largest relative change of TSH or FT4 mean between
+//                      points (default 0.05)
+//   points=N           Initial number of steps over the range (default 20)
+//   tol=X              Relative day-to-day change for convergence (1e-7)
+//   cold=1             Start every point from the variant's steady state,
+//                      to compare costs
+public class Continuation
+{
+    private static final int MAX_DAYS = 400;
+
+    // Smallest and largest step, as parts of the range
+    private static final double MIN_STEP = 1.0 / 1000;
+    private static final double MAX_STEP = 1.0 / 5;
+
+    private final ModelVariant variant;
+    private final double[] kp;
+    private final String control;
+    private final double from, to;
+    private final double[] dials;
+    private final double[] doses = new double[2]; // T4, T3 mcg per day
+    private double maxChange = 0.05;
+    private int points = 20;
+    private double tol = 1e-7;
+    private boolean cold = false;
+    private final CancellationToken token; // May be null
+
+    // Results
+    private final List<Double> xs = new ArrayList<Double>();
+    private final List<Integer> days = new ArrayList<Integer>();
+    private final List<double[]> outs = new ArrayList<double[]>();
+    private int totalDays;
+
+    public Continuation(String thysim, String control, double from, double to,
+                        CancellationToken token)
+    {
+        this.variant = ModelRegistry.get(thysim);
+        this.kp      = variant.getParameters();
+        this.control = control;
+        this.from    = from;
+        this.to      = to;
+        this.dials   = ResponseSurface.DEFAULT_DIALS.clone();
+        this.token   = token;
+        if (!control.equals("t4dose") && !control.equals("t3dose")
+            && !control.matches("dial[1-4]")) {
+            throw new IllegalArgumentException("Unknown control: " + control);
+        }
+        if (to == from) {
+            throw new IllegalArgumentException("Empty range");
+        }
+    }
+
+    // Set name=value options, see above
+    public void setOption(String name, String value)
+    {
+        if (name.equals("dials")) {
+            String[] f = value.split(",");
+            if (f.length != 4) {
+                throw new IllegalArgumentException("Expected 4 dials: " + value);
+            }
+            for (int a = 0; a < 4; a++) {
+                dials[a] = Double.parseDouble(f[a]);
+            }
+        } else if (name.equals("t4dose")) {
+            doses[0] = Double.parseDouble(value);
+        } else if (name.equals("t3dose")) {
+            doses[1] = Double.parseDouble(value);
+        } else if (name.equals("maxchange")) {
+            maxChange = Double.parseDouble(value);
+        } else if (name.equals("points")) {
+            points = Math.max(1, Integer.parseInt(value));
+        } else if (name.equals("tol")) {
+            tol = Double.parseDouble(value);
+        } else if (name.equals("cold")) {
+            cold = value.equals("1");
+        } else {
+            throw new IllegalArgumentException("Unknown option: " + name);
+        }
+    }
+
+    public void run()
+    {
+        double range = to - from;
+        double dir   = Math.signum(range);
+        double span  = Math.abs(range);
+        double step  = span / points;
+
+        double[] q = variant.getSteadyState();
+        int d0 = converge(from, q);
+        totalDays += d0;
+        double[] prevQ = null;
+        double prevX   = from;
+        double x       = from;
+        double[] out   = sampleDay(from, q.clone());
+        add(from, out, d0);
+
+        while (dir * (to - x) > 1e-12 * span) {
+            double next = x + dir * Math.min(step, Math.abs(to - x));
+            double[] guess;
+            if (cold) {
+                guess = variant.getSteadyState();
+            } else {
+                guess = q.clone();
+                if (prevQ != null) {
+                    // Secant predictor along the curve
+                    double f = (next - x) / (x - prevX);
+                    for (int i = 0; i < guess.length; i++) {
+                        guess[i] = Math.max(0, q[i] + f * (q[i] - prevQ[i]));
+                    }
+                }
+            }
+            int d = converge(next, guess);
+            totalDays += d;
+            double[] nextOut = sampleDay(next, guess.clone());
+
+            double change = Math.max(relChange(out[0], nextOut[0]),
+                                     relChange(out[3], nextOut[3]));
+            if (change > maxChange && step > MIN_STEP * span * 1.0001) {
+                step = Math.max(step / 2, MIN_STEP * span);
+                continue;
+            }
+            add(next, nextOut, d);
+            prevQ = q;
+            prevX = x;
+            q     = guess;
+            x     = next;
+            out   = nextOut;
+            if (change < maxChange / 3) {
+                step = Math.min(step * 1.5, MAX_STEP * span);
+            }
+        }
+    }
+
+    private void add(double x, double[] out, int d)
+    {
+        xs.add(x);
+        days.add(d);
+        outs.add(out);
+    }
+
+    private static double relChange(double a, double b)
+    {
+        return Math.abs(b - a) / Math.max(Math.abs(a), 1e-12);
+    }
+
+    // Dials (solver units) and daily doses (mols) at control value x
+    private ThyroidModel model(double x, double[] dose)
+    {
+        double[] d = dials.clone();
+        if (control.startsWith("dial")) {
+            d[control.charAt(4) - '1'] = x;
+        }
+        double t4 = control.equals("t4dose") ? x : doses[0];
+        double t3 = control.equals("t3dose") ? x : doses[1];
+        dose[9]  = t4 / ConversionFactors.T4_MOLS;
+        dose[11] = t3 / ConversionFactors.T3_MOLS;
+        return variant.create(ResponseSurface.solverDials(d, kp), 0, 0, kp);
+    }
+
+    private FirstOrderIntegrator integrator()
+    {
+        FirstOrderIntegrator foi = Thyrosim.newIntegrator();
+        foi.setMaxEvaluations(ResponseSurface.MAX_EVALUATIONS);
+        if (token != null) {
+            foi.addStepHandler(token);
+        }
+        return foi;
+    }
+
+    // Run days from q, the state at the start of a day, until it is
+    // periodic. q holds that periodic state afterwards. Returns the number of
+    // days run.
+    int converge(double x, double[] q)
+    {
+        double[] dose = new double[19];
+        ThyroidModel ode = model(x, dose);
+        try {
+            return periodic(ode, integrator(), dose, q, tol);
+        } catch (IllegalStateException ex) {
+            throw new IllegalStateException(ex.getMessage() + " at "
+                                            + control + " = " + x);
+        }
+    }
+
+    // Run days of ode with foi from q, the state at the start of a day, adding
+    // dose at the start of each day, until the relative day-to-day change is
+    // below tol. q holds the periodic state afterwards. Returns the number of
+    // days run.
+    static int periodic(ThyroidModel ode, FirstOrderIntegrator foi,
+                        double[] dose, double[] q, double tol)
+    {
+        double[] start = new double[q.length];
+        double[] delta = new double[q.length];
+        double prevNorm  = Double.NaN;
+        double prevRatio = Double.NaN;
+        for (int day = 1; day <= MAX_DAYS; day++) {
+            System.arraycopy(q, 0, start, 0, q.length);
+            for (int i = 0; i < q.length; i++) {
+                q[i] += dose[i];
+            }
+            try {
+                foi.integrate(ode, 0, q, 24, q);
+            } catch (MaxCountExceededException ex) {
+                throw new IllegalStateException("No steady state");
+            }
+
+            double norm = 0;
+            for (int i = 0; i < q.length; i++) {
+                delta[i] = q[i] - start[i];
+                norm = Math.max(norm, Math.abs(delta[i])
+                                      / (Math.abs(q[i]) + 1e-6));
+            }
+            if (norm < tol) {
+                return day;
+            }
+
+            // Once the change shrinks by a steady ratio, jump to the limit
+            double ratio = norm / prevNorm;
+            if (ratio > 0 && ratio < 0.99
+                && Math.abs(ratio - prevRatio) < 0.02 * ratio) {
+                double f = ratio / (1 - ratio);
+                for (int i = 0; i < q.length; i++) {
+                    q[i] = Math.max(0, q[i] + f * delta[i]);
+                }
+                prevNorm  = Double.NaN;
+                prevRatio = Double.NaN;
+                continue;
+            }
+            prevNorm  = norm;
+            prevRatio = ratio;
+        }
+        throw new IllegalStateException("No periodic steady state after "
+                                        + MAX_DAYS + " days");
+    }
+
+    // Outputs over one day from the periodic state q
+    private double[] sampleDay(double x, double[] q)
+    {
+        double[] dose = new double[19];
+        ThyroidModel ode = model(x, dose);
+        for (int i = 0; i < q.length; i++) {
+            q[i] += dose[i];
+        }
+        return ResponseSurface.sampleDay(ode, integrator(), q,
+                                         variant.getConversionFactors(), kp);
+    }
+
+    // The curve as
+    //   {"control":"t4dose","totalDays":N,"x":[...],"days":[...],
+    //    "tsh":{"mean":[...],"min":[...],"max":[...]},"ft4":{...},"ft3":{...}}
+    // days[i] is the number of days run to converge point i. totalDays also
+    // counts points that were redone with a smaller step.
+    public StringBuilder toJson()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        Json.appendKey(sb, "control");
+        Json.appendString(sb, control);
+        sb.append(',');
+        Json.appendKey(sb, "totalDays");
+        sb.append(totalDays).append(',');
+        Json.appendKey(sb, "x");
+        sb.append('[');
+        for (int i = 0; i < xs.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            Json.appendQuoted4(sb, xs.get(i));
+        }
+        sb.append("],");
+        Json.appendKey(sb, "days");
+        sb.append('[');
+        for (int i = 0; i < days.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(days.get(i));
+        }
+        sb.append(']');
+        for (int h = 0; h < ResponseSurface.HORMONES.length; h++) {
+            sb.append(',');
+            Json.appendKey(sb, ResponseSurface.HORMONES[h]);
+            sb.append('{');
+            for (int st = 0; st < ResponseSurface.STATS.length; st++) {
+                if (st > 0) {
+                    sb.append(',');
+                }
+                Json.appendKey(sb, ResponseSurface.STATS[st]);
+                sb.append('[');
+                for (int i = 0; i < outs.size(); i++) {
+                    if (i > 0) {
+                        sb.append(',');
+                    }
+                    Json.appendQuoted4(sb, outs.get(i)[h * 3 + st]);
+                }
+                sb.append(']');
+            }
+            sb.append('}');
+        }
+        sb.append('}');
+        return sb;
+    }
+
+    public int getTotalDays()
+    {
+        return totalDays;
+    }
+
+    public static boolean isMode(String mode)
+    {
+        return mode.equals("curve");
+    }
+
+    // Answer a curve request: { "curve", thysim, control, from, to,
+    // name=value... }. token may be null.
+    public static StringBuilder execute(String[] args, CancellationToken token)
+    {
+        if (args.length < 5 || !isMode(args[0])) {
+            throw new IllegalArgumentException(
+                "Expected curve THYSIM CONTROL FROM TO [name=value]...");
+        }
+        Continuation c = new Continuation(args[1], args[2],
+                                          Double.parseDouble(args[3]),
+                                          Double.parseDouble(args[4]), token);
+        for (int i = 5; i < args.length; i++) {
+            int eq = args[i].indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Bad option: " + args[i]);
+            }
+            c.setOption(args[i].substring(0, eq), args[i].substring(eq + 1));
+        }
+        c.run();
+        return c.toJson();
+    }
+
+    public static void main(String[] args)
+    {
+        System.out.print(execute(args, null));
+        System.out.flush();
+    }
+}
@@ -0,0 +1,45 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+// Conversion factors from mols to display units. Must match
+// loadConversionFactors() in THYROSIM.pm.
+public class ConversionFactors
+{
+    // Molecular weights of T3 & T4, and TSH conversion
+    public static final double T4_MOLS  = 777;
+    public static final double T3_MOLS  = 651;
+    public static final double TSH_MOLS = 5.6;
+
+    private static final double FT4_FACTOR = 0.45; // Temp factor for free T4
+    private static final double FT3_FACTOR = 0.50; // Temp factor for free T3
+
+    public final double t4;  // mcg/L
+    public final double t3;  // mcg/L
+    public final double tsh; // mU/L
+    public final double ft4; // ng/L
+    public final double ft3; // ng/L
+
+    // p47: plasma volume (L), p48: TSH volume (L)
+    public ConversionFactors(double p47, double p48)
+    {
+        t4  = T4_MOLS  / p47;
+        t3  = T3_MOLS  / p47;
+        tsh = TSH_MOLS / p48;
+        ft4 = FT4_FACTOR * 1000 * t4;
+        ft3 = FT3_FACTOR * 1000 * t3;
+    }
+
+    // Factor for a result column, using the column order of getLine():
+    // 0 = t, 1 - 19 = q1 - q19, 20 = FT4, 21 = FT3. Columns that are not
+    // converted return 1.
+    public double forColumn(int col)
+    {
+        switch (col) {
+            case 1:  return t4;
+            case 4:  return t3;
+            case 7:  return tsh;
+            case 20: return ft4;
+            case 21: return ft3;
+            default: return 1;
+        }
+    }
+}
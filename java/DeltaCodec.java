@@ -0,0 +1,68 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Base64;
+
+// Packs a series of values for the browser, as an alternative to a JSON array
+// of "%.4f" strings. Values are rounded to 4 decimal places, the same as in
+// JSON, so nothing is lost. Each value is stored as the difference from the
+// previous one in units of 0.0001, zigzag encoded (0, -1, 1, -2, ... =>
+// 0, 1, 2, 3, ...) and written as a little-endian base 128 varint: 7 bits
+// per byte, high bit set on all but the last byte. The bytes are base64
+// encoded. Trajectories change slowly between solver steps, so most values
+// take 1 - 3 bytes. See decodeDelta4() in js/thyrosim.js.
+public final class DeltaCodec
+{
+    public static final String ENCODING = "delta4";
+    private static final double SCALE = 10000;
+
+    // Values are packed if smaller than this in magnitude. Larger ones, NaN
+    // and infinity are sent as JSON instead, see canEncode(). decodeDelta4()
+    // works in doubles, which hold integers exactly up to 2^53: a delta is
+    // below 2 * LIMIT * SCALE = 4e15 units and zigzags to below 8e15.
+    private static final double LIMIT = 2.0e11;
+
+    private DeltaCodec()
+    {
+    }
+
+    // Whether all values can be packed
+    public static boolean canEncode(DoubleList v)
+    {
+        for (int i = 0; i < v.size(); i++) {
+            double x = v.get(i);
+            if (!(Math.abs(x) < LIMIT)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static byte[] encode(DoubleList v)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(v.size() * 2);
+        long prev = 0;
+        for (int i = 0; i < v.size(); i++) {
+            double x = v.get(i);
+            // Round half away from zero, like appendFixed4()
+            long r = x < 0 ? -Math.round(-x * SCALE) : Math.round(x * SCALE);
+            long d = r - prev;
+            prev = r;
+            long z = (d << 1) ^ (d >> 63);
+            while ((z & ~0x7FL) != 0) {
+                out.write((int) ((z & 0x7F) | 0x80));
+                z >>>= 7;
+            }
+            out.write((int) z);
+        }
+        return out.toByteArray();
+    }
+
+    // Append "v" as base64
+    public static void appendEncoded(StringBuilder sb, DoubleList v)
+    {
+        sb.append('"');
+        sb.append(Base64.getEncoder().encodeToString(encode(v)));
+        sb.append('"');
+    }
+}
@@ -0,0 +1,51 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import java.util.Arrays;
+
+// Growable double[] so that results can be kept without boxing.
+public class DoubleList
+{
+    private double[] data;
+    private int size;
+
+    public DoubleList()
+    {
+        this(256);
+    }
+
+    public DoubleList(int capacity)
+    {
+        data = new double[Math.max(capacity, 1)];
+    }
+
+    public void add(double v)
+    {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, size << 1);
+        }
+        data[size++] = v;
+    }
+
+    public double get(int i)
+    {
+        if (i >= size) {
+            throw new IndexOutOfBoundsException(i + " >= " + size);
+        }
+        return data[i];
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public void clear()
+    {
+        size = 0;
+    }
+
+    public double[] toArray()
+    {
+        return Arrays.copyOf(data, size);
+    }
+}
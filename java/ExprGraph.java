@@ -0,0 +1,277 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import java.util.HashMap;
+
+// Expression DAG for model right-hand sides, see SbmlModel. Nodes are hash
+// consed, so building the same subexpression twice returns the same node
+// (common subexpression elimination), and operations on constants are folded
+// as nodes are built. Children always have smaller ids than their parents, so
+// evaluating nodes in id order is a valid schedule.
+//
+// A node is invariant when it depends only on parameters and constants. Those
+// are evaluated once whenever parameters change instead of on every call, see
+// CompiledModel.
+public class ExprGraph
+{
+    public static final int CONST = 0;
+    public static final int TIME  = 1;
+    public static final int STATE = 2; // a = state index
+    public static final int PARAM = 3; // a = parameter index
+    public static final int NEG   = 4;
+    public static final int ADD   = 5;
+    public static final int SUB   = 6;
+    public static final int MUL   = 7;
+    public static final int DIV   = 8;
+    public static final int POW   = 9;
+    public static final int EXP   = 10;
+    public static final int LOG   = 11;
+    public static final int SIN   = 12;
+    public static final int COS   = 13;
+    public static final int SQRT  = 14;
+    public static final int ABS   = 15;
+
+    // Integer powers up to this are expanded into multiplications
+    private static final int MAX_EXPANDED_POWER = 16;
+
+    private int[] op = new int[64];
+    private int[] a  = new int[64];
+    private int[] b  = new int[64];
+    private double[] value = new double[64]; // CONST only
+    private boolean[] invariant = new boolean[64];
+    private int size;
+
+    private final HashMap<Long, Integer> consts = new HashMap<Long, Integer>();
+    private final HashMap<Long, Integer> nodes  = new HashMap<Long, Integer>();
+
+    public int size()
+    {
+        return size;
+    }
+
+    public int op(int n)
+    {
+        return op[n];
+    }
+
+    public int a(int n)
+    {
+        return a[n];
+    }
+
+    public int b(int n)
+    {
+        return b[n];
+    }
+
+    public double value(int n)
+    {
+        return value[n];
+    }
+
+    public boolean isConst(int n)
+    {
+        return op[n] == CONST;
+    }
+
+    public boolean isInvariant(int n)
+    {
+        return invariant[n];
+    }
+
+    public int constant(double v)
+    {
+        Long key = Double.doubleToLongBits(v);
+        Integer n = consts.get(key);
+        if (n == null) {
+            n = add(CONST, 0, 0, v, true);
+            consts.put(key, n);
+        }
+        return n;
+    }
+
+    public int time()
+    {
+        return node(TIME, 0, 0);
+    }
+
+    public int state(int i)
+    {
+        return node(STATE, i, 0);
+    }
+
+    public int param(int i)
+    {
+        return node(PARAM, i, 0);
+    }
+
+    public int neg(int x)
+    {
+        if (isConst(x)) {
+            return constant(-value[x]);
+        }
+        if (op[x] == NEG) {
+            return a[x];
+        }
+        return node(NEG, x, 0);
+    }
+
+    public int add(int x, int y)
+    {
+        if (isConst(x) && isConst(y)) {
+            return constant(value[x] + value[y]);
+        }
+        if (isZero(x)) return y;
+        if (isZero(y)) return x;
+        if (op[y] == NEG) {
+            return sub(x, a[y]);
+        }
+        return node(ADD, Math.min(x, y), Math.max(x, y));
+    }
+
+    public int sub(int x, int y)
+    {
+        if (isConst(x) && isConst(y)) {
+            return constant(value[x] - value[y]);
+        }
+        if (isZero(y)) return x;
+        if (isZero(x)) return neg(y);
+        if (op[y] == NEG) {
+            return add(x, a[y]);
+        }
+        return node(SUB, x, y);
+    }
+
+    public int mul(int x, int y)
+    {
+        if (isConst(x) && isConst(y)) {
+            return constant(value[x] * value[y]);
+        }
+        if (isOne(x)) return y;
+        if (isOne(y)) return x;
+        if (isConst(x) && value[x] == -1) return neg(y);
+        if (isConst(y) && value[y] == -1) return neg(x);
+        return node(MUL, Math.min(x, y), Math.max(x, y));
+    }
+
+    public int div(int x, int y)
+    {
+        if (isConst(x) && isConst(y)) {
+            return constant(value[x] / value[y]);
+        }
+        if (isOne(y)) return x;
+        return node(DIV, x, y);
+    }
+
+    // x^y. Small integer powers become multiplications by repeated squaring,
+    // which is faster than Math.pow and shares the squares between uses.
+    public int pow(int x, int y)
+    {
+        if (isConst(x) && isConst(y)) {
+            return constant(Math.pow(value[x], value[y]));
+        }
+        if (isConst(y)) {
+            double e = value[y];
+            if (e == 0) return constant(1);
+            if (e == 1) return x;
+            if (e == 0.5) return apply(SQRT, x);
+            if (e == Math.rint(e) && Math.abs(e) <= MAX_EXPANDED_POWER) {
+                int n = (int) Math.abs(e);
+                int result = -1;
+                int square = x;
+                while (n > 0) {
+                    if ((n & 1) != 0) {
+                        result = result < 0 ? square : mul(result, square);
+                    }
+                    n >>= 1;
+                    if (n > 0) {
+                        square = mul(square, square);
+                    }
+                }
+                return e < 0 ? div(constant(1), result) : result;
+            }
+        }
+        return node(POW, x, y);
+    }
+
+    // Unary functions: EXP, LOG, SIN, COS, SQRT, ABS
+    public int apply(int f, int x)
+    {
+        if (isConst(x)) {
+            return constant(eval(f, value[x], 0));
+        }
+        return node(f, x, 0);
+    }
+
+    // Apply a binary or unary operator to already evaluated operands
+    public static double eval(int op, double x, double y)
+    {
+        switch (op) {
+            case NEG:  return -x;
+            case ADD:  return x + y;
+            case SUB:  return x - y;
+            case MUL:  return x * y;
+            case DIV:  return x / y;
+            case POW:  return Math.pow(x, y);
+            case EXP:  return Math.exp(x);
+            case LOG:  return Math.log(x);
+            case SIN:  return Math.sin(x);
+            case COS:  return Math.cos(x);
+            case SQRT: return Math.sqrt(x);
+            case ABS:  return Math.abs(x);
+            default:
+                throw new IllegalArgumentException("Not an operator: " + op);
+        }
+    }
+
+    public static boolean isUnary(int op)
+    {
+        return op == NEG || op >= EXP;
+    }
+
+    private boolean isZero(int n)
+    {
+        return isConst(n) && value[n] == 0;
+    }
+
+    private boolean isOne(int n)
+    {
+        return isConst(n) && value[n] == 1;
+    }
+
+    private int node(int o, int x, int y)
+    {
+        long key = ((long) o << 58) | ((long) x << 29) | y;
+        Integer n = nodes.get(key);
+        if (n == null) {
+            boolean inv;
+            if (o == TIME || o == STATE) {
+                inv = false;
+            } else if (o == PARAM) {
+                inv = true;
+            } else {
+                inv = invariant[x] && (isUnary(o) || invariant[y]);
+            }
+            n = add(o, x, y, 0, inv);
+            nodes.put(key, n);
+        }
+        return n;
+    }
+
+    private int add(int o, int x, int y, double v, boolean inv)
+    {
+        if (size == op.length) {
+            int cap = size * 2;
+            op        = java.util.Arrays.copyOf(op, cap);
+            a         = java.util.Arrays.copyOf(a, cap);
+            b         = java.util.Arrays.copyOf(b, cap);
+            value     = java.util.Arrays.copyOf(value, cap);
+            invariant = java.util.Arrays.copyOf(invariant, cap);
+        }
+        op[size]        = o;
+        a[size]         = x;
+        b[size]         = y;
+        value[size]     = v;
+        invariant[size] = inv;
+        return size++;
+    }
+}
@@ -0,0 +1,92 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import org.apache.commons.math3.ode.sampling.StepHandler;
+import org.apache.commons.math3.ode.sampling.StepInterpolator;
+
+// Samples output columns on a fixed time grid 0, h, 2h, ... using the step
+// interpolator, and hands each sample to a Sink. Time is continuous over
+// integrations. A grid point that falls on an input is sampled before the
+// input is added.
+public class GridSampler implements StepHandler, SegmentListener
+{
+    public interface Sink
+    {
+        // Value of output o (index into cols) at grid point i
+        void sample(int i, int o, double v);
+    }
+
+    private final double h;
+    private final int points;
+    private final int[] cols;
+    private final double[] cf;
+    private final double[] p;
+    private Sink sink;
+
+    private double offset;
+    private int next; // Next grid point to sample
+
+    public GridSampler(double h, double hours, int[] cols,
+                       ConversionFactors cfs, double[] p)
+    {
+        this.h      = h;
+        this.points = points(h, hours);
+        this.cols   = cols.clone();
+        this.cf     = new double[cols.length];
+        this.p      = p;
+        for (int o = 0; o < cols.length; o++) {
+            cf[o] = cfs.forColumn(cols[o]);
+        }
+    }
+
+    public int getPoints()
+    {
+        return points;
+    }
+
+    // Number of grid points every h over hours, both ends included
+    public static int points(double h, double hours)
+    {
+        return (int) Math.floor(hours / h + 1e-9) + 1;
+    }
+
+    public double time(int i)
+    {
+        return i * h;
+    }
+
+    // Start sampling from grid point 0 into sink
+    public void reset(Sink sink)
+    {
+        this.sink = sink;
+        this.next = 0;
+    }
+
+    public void beginSegment(Segment segment, double offset)
+    {
+        this.offset = offset;
+    }
+
+    public void init(double t0, double[] y0, double t)
+    {
+    }
+
+    public void handleStep(StepInterpolator interpolator, boolean isLast)
+    {
+        double t0 = interpolator.getPreviousTime();
+        double t1 = interpolator.getCurrentTime();
+        if (next >= points || time(next) > t1 + offset) {
+            return;
+        }
+        while (next < points && time(next) <= t1 + offset + 1e-9) {
+            double t = Math.min(t1, Math.max(t0, time(next) - offset));
+            interpolator.setInterpolatedTime(t);
+            double[] y = interpolator.getInterpolatedState();
+            for (int o = 0; o < cols.length; o++) {
+                sink.sample(next, o, Projection.value(cols[o], t, y, p) * cf[o]);
+            }
+            next++;
+        }
+        // The interpolator is shared with the other step handlers
+        interpolator.setInterpolatedTime(t1);
+    }
+}
@@ -0,0 +1,63 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+// Small helpers for writing the JSON sent to the browser. There are no
+// intermediate objects: values are appended straight to a StringBuilder.
+public final class Json
+{
+    private Json()
+    {
+    }
+
+    // Append v with 4 decimal places, the same as sprintf("%.4f") in Perl
+    public static void appendFixed4(StringBuilder sb, double v)
+    {
+        double a = Math.abs(v);
+        if (Double.isNaN(v) || Double.isInfinite(v) || a >= 1.0e14) {
+            sb.append(String.format("%.4f", v));
+            return;
+        }
+        long r = Math.round(a * 10000);
+        if (v < 0) {
+            sb.append('-');
+        }
+        sb.append(r / 10000).append('.');
+        long frac = r % 10000;
+        if (frac < 1000) sb.append('0');
+        if (frac < 100)  sb.append('0');
+        if (frac < 10)   sb.append('0');
+        sb.append(frac);
+    }
+
+    // Append "v" with 4 decimal places
+    public static void appendQuoted4(StringBuilder sb, double v)
+    {
+        sb.append('"');
+        appendFixed4(sb, v);
+        sb.append('"');
+    }
+
+    // Append a quoted string. Only escapes what may appear in our keys.
+    public static void appendString(StringBuilder sb, String s)
+    {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\');
+            }
+            if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    // Append "key":
+    public static void appendKey(StringBuilder sb, String key)
+    {
+        appendString(sb, key);
+        sb.append(':');
+    }
+}
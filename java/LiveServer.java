@@ -0,0 +1,515 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Live mode: the browser keeps a WebSocket open and re-runs the simulation as
+// dials, inputs or the simulation time change, see liveSend() in
+// js/thyrosim.js. Each message is
+//   <seq> <form>
+// where form is the serialized form, as sent to ajax_getplot.cgi (see
+// BrowserForm), and seq a number that grows with every message. Each form is
+// run twice, first as a preview, then at full accuracy (see RunOptions), and
+// answered with
+//   {"seq":N,"event":"preview","accuracy":{...},"millis":M,"run":{...}}
+//   {"seq":N,"event":"result","accuracy":{...},"millis":M,"run":{...}}
+// or {"seq":N,"event":"error","error":"..."}, where run is the browser object
+// with values packed as delta4 (see DeltaCodec) and accuracy describes the
+// solver, see Thyrosim.appendAccuracy(). The full run is skipped when a newer
+// message arrived during the preview.
+//
+// Only the latest message of a session matters. A message that arrives while
+// an earlier one waits replaces it, and one that arrives while an earlier one
+// runs cancels that run at its next integration step, so a burst of slider
+// moves costs at most one cancelled and one complete run. A run that finishes
+// is sent even if a newer message came in meanwhile; the browser only draws
+// runs newer than the one it shows, and the result of a preview it shows.
+//
+// The end state of i0 only depends on the model, the dials and the
+// parameters, so it is kept in a WarmupCache shared by all sessions. Changing
+// an input or the simulation time then skips i0.
+//
+// Runs go through a SimulationScheduler, with one queue per client address.
+// Unlike SimulationServer, this server listens on all addresses, since the
+// browser connects to it directly.
+//
+// Usage: LiveServer [port [workers [maxSessions [deadlineMillis]]]]
+public class LiveServer
+{
+    public static final int DEFAULT_PORT = 8712;
+
+    private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int MAX_HEADER  = 8192;
+    private static final int MAX_MESSAGE = 1 << 20;
+    private static final int IDLE_MILLIS = 10 * 60 * 1000;
+    private static final int WAIT_MILLIS = 1000;
+    private static final int WARMUP_STATES = 256;
+
+    // Frame opcodes
+    private static final int CONTINUATION = 0x0;
+    private static final int TEXT  = 0x1;
+    private static final int CLOSE = 0x8;
+    private static final int PING  = 0x9;
+    private static final int PONG  = 0xA;
+
+    private final SimulationScheduler scheduler;
+    private final WarmupCache warmups = new WarmupCache(WARMUP_STATES);
+    private final long deadline;
+    private final int maxSessions;
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+
+    public LiveServer(SimulationScheduler scheduler, int maxSessions,
+                      long deadline)
+    {
+        this.scheduler   = scheduler;
+        this.maxSessions = maxSessions;
+        this.deadline    = deadline;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int workers = args.length > 1 ? Integer.parseInt(args[1])
+                    : Runtime.getRuntime().availableProcessors();
+        int maxSessions = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        long deadline = args.length > 3 ? Long.parseLong(args[3]) : 30000;
+
+        // A session has at most one request waiting
+        final LiveServer server =
+            new LiveServer(new SimulationScheduler(workers, maxSessions),
+                           maxSessions, deadline);
+        ServerSocket ss = new ServerSocket(port, 128);
+        System.err.println("Thyrosim live server on port " + port + ", "
+                           + workers + " workers");
+        while (true) {
+            final Socket s = ss.accept();
+            server.threads.execute(new Runnable() {
+                public void run()
+                {
+                    server.serve(s);
+                }
+            });
+        }
+    }
+
+    // Handle one connection
+    public void serve(Socket s)
+    {
+        Session session = null;
+        try {
+            s.setSoTimeout(IDLE_MILLIS);
+            s.setTcpNoDelay(true);
+            InputStream in = s.getInputStream();
+            OutputStream out = s.getOutputStream();
+            if (!handshake(in, out)) {
+                return;
+            }
+            session = new Session(s.getInetAddress().getHostAddress(), out);
+            final Session worker = session;
+            threads.execute(new Runnable() {
+                public void run()
+                {
+                    worker.work();
+                }
+            });
+
+            String msg;
+            while ((msg = readMessage(in, out)) != null) {
+                int sp = msg.indexOf(' ');
+                try {
+                    String seq = sp < 0 ? msg : msg.substring(0, sp);
+                    session.offer(Long.parseLong(seq),
+                                  sp < 0 ? "" : msg.substring(sp + 1));
+                } catch (NumberFormatException ex) {
+                    session.send(error(-1, "Bad message"));
+                }
+            }
+        } catch (IOException ex) {
+            // The client went away or sent something that is not WebSocket
+        } finally {
+            if (session != null) {
+                session.close();
+                sessions.decrementAndGet();
+            }
+            try {
+                s.close();
+            } catch (IOException ex) {
+                // Ignore
+            }
+        }
+    }
+
+    // One browser connection
+    private class Session
+    {
+        private final String client;
+        private final OutputStream out;
+
+        private String pending;          // Latest form not yet run
+        private long pendingSeq;
+        private SimulationScheduler.Ticket running;
+        private boolean closed;
+
+        Session(String client, OutputStream out)
+        {
+            this.client = client;
+            this.out    = out;
+        }
+
+        // A new form replaces the waiting one and cancels the running one
+        synchronized void offer(long seq, String form)
+        {
+            pending    = form;
+            pendingSeq = seq;
+            if (running != null) {
+                running.cancel();
+            }
+            notifyAll();
+        }
+
+        synchronized void close()
+        {
+            closed = true;
+            if (running != null) {
+                running.cancel();
+            }
+            notifyAll();
+        }
+
+        // Run the latest form until the session is closed
+        void work()
+        {
+            while (true) {
+                String form;
+                long seq;
+                synchronized (this) {
+                    while (pending == null && !closed) {
+                        try {
+                            wait();
+                        } catch (InterruptedException ex) {
+                            return;
+                        }
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    form    = pending;
+                    seq     = pendingSeq;
+                    pending = null;
+                }
+                try {
+                    if (runPhase(form, seq, RunOptions.PREVIEW)) {
+                        runPhase(form, seq, RunOptions.FULL);
+                    }
+                } catch (InterruptedException ex) {
+                    return;
+                } catch (IOException ex) {
+                    close();
+                    return;
+                }
+            }
+        }
+
+        // Run form at accuracy and send the outcome. Returns whether it was
+        // sent as a result, so a next phase is worth running.
+        private boolean runPhase(final String form, long seq,
+                                 final String accuracy)
+            throws InterruptedException, IOException
+        {
+            SimulationScheduler.Ticket ticket;
+            synchronized (this) {
+                if (pending != null || closed) {
+                    return false;
+                }
+                ticket = scheduler.submit(client,
+                    new SimulationScheduler.Job() {
+                        public String run(CancellationToken token)
+                        {
+                            return BrowserForm.parse(form)
+                                .run(DeltaCodec.ENCODING, accuracy, warmups,
+                                     token)
+                                .toString();
+                        }
+                    }, deadline);
+                running = ticket;
+            }
+
+            long start = System.nanoTime();
+            try {
+                while (!ticket.await(WAIT_MILLIS)) {
+                    // Still running
+                }
+            } catch (InterruptedException ex) {
+                ticket.cancel();
+                throw ex;
+            }
+            boolean superseded;
+            synchronized (this) {
+                running = null;
+                superseded = pending != null || closed;
+            }
+
+            String event;
+            boolean ok = false;
+            switch (ticket.getState()) {
+                case SimulationScheduler.DONE:
+                    event = result(seq, accuracy, (System.nanoTime() - start)
+                                                  / 1000000L,
+                                   ticket.getResult());
+                    ok = true;
+                    break;
+                case SimulationScheduler.CANCELLED:
+                    if (superseded) {
+                        return false;
+                    }
+                    event = error(seq, "Cancelled");
+                    break;
+                case SimulationScheduler.REJECTED:
+                    event = error(seq, "Server busy");
+                    break;
+                case SimulationScheduler.EXPIRED:
+                    event = error(seq, "Deadline exceeded");
+                    break;
+                default:
+                    Throwable t = ticket.getError();
+                    event = error(seq, t.getMessage() != null
+                                       ? t.getMessage() : t.toString());
+            }
+            send(event);
+            return ok;
+        }
+
+        void send(String text) throws IOException
+        {
+            writeFrame(out, TEXT, text.getBytes("UTF-8"));
+        }
+    }
+
+    private static String result(long seq, String accuracy, long millis,
+                                 String run)
+    {
+        StringBuilder sb = new StringBuilder(run.length() + 128);
+        sb.append('{');
+        Json.appendKey(sb, "seq");
+        sb.append(seq).append(',');
+        Json.appendKey(sb, "event");
+        Json.appendString(sb, accuracy.equals(RunOptions.PREVIEW)
+                              ? "preview" : "result");
+        sb.append(',');
+        Json.appendKey(sb, "accuracy");
+        Thyrosim.appendAccuracy(sb, accuracy);
+        sb.append(',');
+        Json.appendKey(sb, "millis");
+        sb.append(millis).append(',');
+        Json.appendKey(sb, "run");
+        sb.append(run).append('}');
+        return sb.toString();
+    }
+
+    private static String error(long seq, String msg)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        Json.appendKey(sb, "seq");
+        sb.append(seq).append(',');
+        Json.appendKey(sb, "event");
+        Json.appendString(sb, "error");
+        sb.append(',');
+        Json.appendKey(sb, "error");
+        Json.appendString(sb, msg);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    //--------------------------------------------------------------------
+    // WebSocket (RFC 6455), text messages only
+    //--------------------------------------------------------------------
+
+    // Read the HTTP upgrade request and accept it. Returns false if the
+    // request was refused.
+    private boolean handshake(InputStream in, OutputStream out)
+        throws IOException
+    {
+        // The request up to the empty line
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        int last4 = 0;
+        while (last4 != 0x0D0A0D0A) {
+            if (buf.size() >= MAX_HEADER) {
+                return refuse(out, "431 Request Header Fields Too Large");
+            }
+            int b = readByte(in);
+            buf.write(b);
+            last4 = (last4 << 8) | b;
+        }
+        String[] lines = buf.toString("ISO-8859-1").split("\r\n");
+        Map<String, String> headers = new HashMap<String, String>();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon > 0) {
+                headers.put(lines[i].substring(0, colon).trim().toLowerCase(),
+                            lines[i].substring(colon + 1).trim());
+            }
+        }
+        String key = headers.get("sec-websocket-key");
+        if (!lines[0].startsWith("GET ") || key == null
+            || !"websocket".equalsIgnoreCase(headers.get("upgrade"))) {
+            return refuse(out, "400 Bad Request");
+        }
+        if (!"13".equals(headers.get("sec-websocket-version"))) {
+            out.write(("HTTP/1.1 426 Upgrade Required\r\n"
+                       + "Sec-WebSocket-Version: 13\r\n"
+                       + "Content-Length: 0\r\n\r\n").getBytes("ISO-8859-1"));
+            out.flush();
+            return false;
+        }
+        if (sessions.incrementAndGet() > maxSessions) {
+            sessions.decrementAndGet();
+            return refuse(out, "503 Service Unavailable");
+        }
+
+        String accept;
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            accept = Base64.getEncoder().encodeToString(
+                sha1.digest((key + GUID).getBytes("ISO-8859-1")));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        out.write(("HTTP/1.1 101 Switching Protocols\r\n"
+                   + "Upgrade: websocket\r\n"
+                   + "Connection: Upgrade\r\n"
+                   + "Sec-WebSocket-Accept: " + accept + "\r\n\r\n")
+                  .getBytes("ISO-8859-1"));
+        out.flush();
+        return true;
+    }
+
+    private static boolean refuse(OutputStream out, String status)
+        throws IOException
+    {
+        out.write(("HTTP/1.1 " + status + "\r\nContent-Length: 0\r\n"
+                   + "Connection: close\r\n\r\n").getBytes("ISO-8859-1"));
+        out.flush();
+        return false;
+    }
+
+    // The next text message, or null when the connection is closed. Answers
+    // pings and close frames. Throws IOException on a protocol error.
+    private static String readMessage(InputStream in, OutputStream out)
+        throws IOException
+    {
+        ByteArrayOutputStream msg = new ByteArrayOutputStream();
+        boolean inMessage = false;
+        while (true) {
+            int b0 = in.read();
+            if (b0 < 0) {
+                return null;
+            }
+            int b1 = readByte(in);
+            boolean fin = (b0 & 0x80) != 0;
+            int opcode = b0 & 0x0F;
+            long len = b1 & 0x7F;
+            if (len == 126) {
+                len = (readByte(in) << 8) | readByte(in);
+            } else if (len == 127) {
+                len = 0;
+                for (int i = 0; i < 8; i++) {
+                    len = (len << 8) | readByte(in);
+                }
+            }
+            // Clients must mask their frames
+            if ((b1 & 0x80) == 0 || len < 0 || msg.size() + len > MAX_MESSAGE) {
+                writeFrame(out, CLOSE, new byte[] { 0x03, (byte) 0xF1 });
+                throw new IOException("Bad frame");
+            }
+            byte[] mask = readFully(in, 4);
+            byte[] data = readFully(in, (int) len);
+            for (int i = 0; i < data.length; i++) {
+                data[i] ^= mask[i & 3];
+            }
+
+            if (opcode == CLOSE) {
+                writeFrame(out, CLOSE, data.length >= 2
+                           ? new byte[] { data[0], data[1] } : new byte[0]);
+                return null;
+            } else if (opcode == PING) {
+                writeFrame(out, PONG, data);
+            } else if (opcode == PONG) {
+                // Nothing to do
+            } else if (opcode == TEXT && !inMessage
+                       || opcode == CONTINUATION && inMessage) {
+                msg.write(data);
+                inMessage = !fin;
+                if (fin) {
+                    return msg.toString("UTF-8");
+                }
+            } else {
+                // Binary, or a continuation out of place
+                writeFrame(out, CLOSE, new byte[] { 0x03, (byte) 0xEB });
+                throw new IOException("Unsupported frame");
+            }
+        }
+    }
+
+    private static void writeFrame(OutputStream out, int opcode, byte[] data)
+        throws IOException
+    {
+        byte[] head;
+        if (data.length < 126) {
+            head = new byte[] { (byte) (0x80 | opcode), (byte) data.length };
+        } else if (data.length < 65536) {
+            head = new byte[] { (byte) (0x80 | opcode), 126,
+                                (byte) (data.length >> 8), (byte) data.length };
+        } else {
+            head = new byte[10];
+            head[0] = (byte) (0x80 | opcode);
+            head[1] = 127;
+            for (int i = 0; i < 8; i++) {
+                head[9 - i] = (byte) ((long) data.length >> (8 * i));
+            }
+        }
+        // Events and control frames come from different threads
+        synchronized (out) {
+            out.write(head);
+            out.write(data);
+            out.flush();
+        }
+    }
+
+    private static int readByte(InputStream in) throws IOException
+    {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    private static byte[] readFully(InputStream in, int n) throws IOException
+    {
+        byte[] b = new byte[n];
+        int off = 0;
+        while (off < n) {
+            int r = in.read(b, off, n - off);
+            if (r < 0) {
+                throw new EOFException();
+            }
+            off += r;
+        }
+        return b;
+    }
+}
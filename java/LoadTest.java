@@ -0,0 +1,508 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+// Replays a corpus of browser requests against the solver and reports
+// throughput and latency percentiles, to size servers and to prove
+// performance work end to end:
+//   LoadTest CORPUS TARGET [name=value...]
+// CORPUS has one ajax_getplot.cgi 'data' string per line; empty lines and
+// lines starting with # are skipped. test/loadtest.corpus has the
+// getExperiment() presets; ajax_getplot.cgi appends the requests it gets to
+// the file in THYROSIM_CAPTURE. TARGET is one of
+//   inproc         BrowserForm.run() in this JVM, i.e. the solver alone
+//   server[:PORT]  a SimulationServer on localhost, port 8711 by default
+//   http://...     ajax_getplot.cgi behind a web server, e.g.
+//                  http://localhost/thyrosim/cgi-bin/ajax_getplot.cgi
+// Options:
+//   concurrency=N  requests in flight, 1 by default
+//   rate=R         requests per second; 0 (default) sends the next request
+//                  as soon as one of the concurrency slots is free
+//   requests=N     requests to measure, 100 by default
+//   duration=S     stop sending after S seconds; 0 (default) for no limit
+//   warmup=N       requests sent first and not measured, 10 by default
+//   encoding=E     json (default) or delta4, see DeltaCodec
+//   accuracy=A     full (default), preview or budget, see RunOptions
+//   baseline=FILE  the report of an earlier run, to compare with
+// Requests go through the corpus in order, round robin, so runs with the
+// same options send the same requests. With a rate, latency is measured from
+// when a request was due, not when it was sent, so that a slow server does
+// not hide its queueing by holding back requests.
+//
+// The report is one JSON line with the options, the corpus size and
+// checksum, and
+//   "ok":N,"errors":N,"seconds":S,"throughput":R,
+//   "latency":{"mean":M,"p50":M,"p95":M,"p99":M,"max":M}
+// in requests per second and milliseconds over the measured requests that
+// did not fail. With baseline=FILE, "baseline" has the ratios of throughput
+// and latencies to the earlier report's (above 1 is more throughput or
+// slower answers).
+public class LoadTest
+{
+    private static final int TIMEOUT_MILLIS = 60000;
+
+    // What the baseline is compared on, as named in the report
+    private static final String[] COMPARED =
+        { "throughput", "mean", "p50", "p95", "p99", "max" };
+
+    private final List<String> corpus;
+    private final String target;
+    private int concurrency = 1;
+    private double rate = 0;
+    private int requests = 100;
+    private double duration = 0;
+    private int warmup = 10;
+    private String encoding = "json";
+    private String accuracy = RunOptions.FULL;
+    private String baseline;
+
+    // Per measured request: latency in ms, NaN for errors. Written by the
+    // workers, each to its own index.
+    private double[] latencies;
+    private final AtomicInteger sent = new AtomicInteger();
+    private final AtomicInteger done = new AtomicInteger();
+    private volatile long measureStart;
+    private volatile long measureEnd;
+    private volatile String lastError;
+
+    public LoadTest(List<String> corpus, String target)
+    {
+        if (corpus.isEmpty()) {
+            throw new IllegalArgumentException("Empty corpus");
+        }
+        if (!target.equals("inproc") && !target.startsWith("server")
+            && !target.startsWith("http://")
+            && !target.startsWith("https://")) {
+            throw new IllegalArgumentException("Unknown target: " + target);
+        }
+        this.corpus = corpus;
+        this.target = target;
+    }
+
+    // Set an option given as name=value
+    public void setOption(String arg)
+    {
+        int eq = arg.indexOf('=');
+        if (eq < 0) {
+            throw new IllegalArgumentException("Bad option: " + arg);
+        }
+        String name = arg.substring(0, eq);
+        String val = arg.substring(eq + 1);
+        if (name.equals("concurrency")) {
+            concurrency = Integer.parseInt(val);
+            if (concurrency < 1) {
+                throw new IllegalArgumentException("Bad concurrency: " + val);
+            }
+        } else if (name.equals("rate")) {
+            rate = Double.parseDouble(val);
+        } else if (name.equals("requests")) {
+            requests = Integer.parseInt(val);
+        } else if (name.equals("duration")) {
+            duration = Double.parseDouble(val);
+        } else if (name.equals("warmup")) {
+            warmup = Integer.parseInt(val);
+        } else if (name.equals("encoding")) {
+            if (!val.equals("json") && !val.equals(DeltaCodec.ENCODING)) {
+                throw new IllegalArgumentException("Unknown encoding: " + val);
+            }
+            encoding = val;
+        } else if (name.equals("accuracy")) {
+            if (!val.equals(RunOptions.FULL)
+                && !val.equals(RunOptions.PREVIEW)
+                && !val.equals(RunOptions.BUDGET)) {
+                throw new IllegalArgumentException("Unknown accuracy: " + val);
+            }
+            accuracy = val;
+        } else if (name.equals("baseline")) {
+            baseline = val;
+        } else {
+            throw new IllegalArgumentException("Unknown option: " + name);
+        }
+    }
+
+    // Send all requests and return the report
+    public StringBuilder run() throws IOException
+    {
+        if (requests < 1 || warmup < 0) {
+            throw new IllegalArgumentException("Bad request count");
+        }
+        latencies = new double[requests];
+        Arrays.fill(latencies, Double.NaN);
+        final int total = warmup + requests;
+        final long start = System.nanoTime();
+        final long stop = duration > 0
+                        ? start + (long) (duration * 1e9) : Long.MAX_VALUE;
+        measureStart = warmup == 0 ? start : 0;
+
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        try {
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            if (rate > 0) {
+                // Open loop: request i is due at start + i / rate, whether
+                // or not earlier ones are done
+                for (int i = 0; i < total; i++) {
+                    long due = start + (long) (i / rate * 1e9);
+                    if (due >= stop) {
+                        break;
+                    }
+                    sleepUntil(due);
+                    futures.add(pool.submit(task(i, due)));
+                }
+            } else {
+                // Closed loop: each slot sends its next request when the last
+                // one is answered
+                for (int w = 0; w < concurrency; w++) {
+                    futures.add(pool.submit(new Callable<Object>() {
+                        public Object call() throws Exception
+                        {
+                            int i;
+                            while (System.nanoTime() < stop
+                                   && (i = sent.getAndIncrement()) < total) {
+                                task(i, System.nanoTime()).call();
+                            }
+                            return null;
+                        }
+                    }));
+                }
+            }
+            for (Future<Object> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+        return report();
+    }
+
+    // Send request i, due at the given time
+    private Callable<Object> task(final int i, final long due)
+    {
+        return new Callable<Object>() {
+            public Object call()
+            {
+                if (i == warmup) {
+                    measureStart = due;
+                }
+                String form = corpus.get(i % corpus.size());
+                double ms;
+                try {
+                    String res = send(form, i % concurrency);
+                    ms = (System.nanoTime() - due) / 1e6;
+                    if (res.startsWith("{\"error\"")) {
+                        lastError = res;
+                        ms = Double.NaN;
+                    }
+                } catch (IOException ex) {
+                    lastError = ex.toString();
+                    ms = Double.NaN;
+                } catch (RuntimeException ex) {
+                    lastError = ex.toString();
+                    ms = Double.NaN;
+                }
+                if (i >= warmup) {
+                    latencies[i - warmup] = ms;
+                    done.incrementAndGet();
+                    finished(System.nanoTime());
+                }
+                return null;
+            }
+        };
+    }
+
+    private synchronized void finished(long nanos)
+    {
+        measureEnd = Math.max(measureEnd, nanos);
+    }
+
+    // The answer of the target to form. client tells the slots apart, so that
+    // a server's per-client fairness sees them as different browsers.
+    private String send(String form, int client) throws IOException
+    {
+        if (target.equals("inproc")) {
+            return BrowserForm.parse(form).run(encoding, accuracy, null, null)
+                              .toString();
+        }
+        if (target.startsWith("server")) {
+            return sendToServer(form, client);
+        }
+        return sendToCgi(form);
+    }
+
+    private String sendToServer(String form, int client) throws IOException
+    {
+        int port = SimulationServer.DEFAULT_PORT;
+        int colon = target.indexOf(':');
+        if (colon >= 0) {
+            port = Integer.parseInt(target.substring(colon + 1));
+        }
+        StringBuilder line = new StringBuilder();
+        line.append("loadtest").append(client).append(" 0");
+        for (String a : BrowserForm.parse(form).toArgs(encoding)) {
+            line.append(' ').append(a);
+        }
+        line.append(" accuracy=").append(accuracy).append('\n');
+
+        Socket s = new Socket(InetAddress.getLoopbackAddress(), port);
+        try {
+            s.setSoTimeout(TIMEOUT_MILLIS);
+            OutputStream out = s.getOutputStream();
+            out.write(line.toString().getBytes("UTF-8"));
+            out.flush();
+            return readAll(s.getInputStream());
+        } finally {
+            s.close();
+        }
+    }
+
+    // POST the form the way ajax_getplot() in js/thyrosim.js does
+    private String sendToCgi(String form) throws IOException
+    {
+        String body = "data=" + URLEncoder.encode(form, "UTF-8")
+                    + "&encoding=" + encoding + "&accuracy=" + accuracy;
+        HttpURLConnection c =
+            (HttpURLConnection) new URL(target).openConnection();
+        try {
+            c.setConnectTimeout(TIMEOUT_MILLIS);
+            c.setReadTimeout(TIMEOUT_MILLIS);
+            c.setDoOutput(true);
+            c.setRequestMethod("POST");
+            c.setRequestProperty("Content-Type",
+                                 "application/x-www-form-urlencoded");
+            c.setRequestProperty("X-Requested-With", "XMLHttpRequest");
+            OutputStream out = c.getOutputStream();
+            out.write(body.getBytes("UTF-8"));
+            out.close();
+            if (c.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + c.getResponseCode());
+            }
+            return readAll(c.getInputStream());
+        } finally {
+            c.disconnect();
+        }
+    }
+
+    private static String readAll(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            bytes.write(buf, 0, n);
+        }
+        return bytes.toString("UTF-8");
+    }
+
+    private static void sleepUntil(long nanos) throws InterruptedException
+    {
+        long wait;
+        while ((wait = nanos - System.nanoTime()) > 0) {
+            Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+        }
+    }
+
+    private StringBuilder report() throws IOException
+    {
+        DoubleList ok = new DoubleList(requests);
+        int measured = done.get();
+        for (int i = 0; i < measured && i < latencies.length; i++) {
+            if (!Double.isNaN(latencies[i])) {
+                ok.add(latencies[i]);
+            }
+        }
+        double[] ms = ok.toArray();
+        Arrays.sort(ms);
+        double seconds = measureEnd > measureStart
+                       ? (measureEnd - measureStart) / 1e9 : 0;
+        double sum = 0;
+        for (double v : ms) {
+            sum += v;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        Json.appendKey(sb, "target");
+        Json.appendString(sb, target);
+        sb.append(',');
+        Json.appendKey(sb, "corpus");
+        sb.append(corpus.size()).append(',');
+        Json.appendKey(sb, "corpusCrc");
+        Json.appendString(sb, Long.toHexString(checksum(corpus)));
+        sb.append(',');
+        Json.appendKey(sb, "concurrency");
+        sb.append(concurrency).append(',');
+        Json.appendKey(sb, "rate");
+        sb.append(rate).append(',');
+        Json.appendKey(sb, "warmup");
+        sb.append(warmup).append(',');
+        Json.appendKey(sb, "encoding");
+        Json.appendString(sb, encoding);
+        sb.append(',');
+        Json.appendKey(sb, "accuracy");
+        Json.appendString(sb, accuracy);
+        sb.append(',');
+        Json.appendKey(sb, "ok");
+        sb.append(ms.length).append(',');
+        Json.appendKey(sb, "errors");
+        sb.append(measured - ms.length).append(',');
+        Json.appendKey(sb, "seconds");
+        Json.appendFixed4(sb, seconds);
+        sb.append(',');
+        Json.appendKey(sb, "throughput");
+        Json.appendFixed4(sb, seconds > 0 ? ms.length / seconds : 0);
+        sb.append(',');
+        Json.appendKey(sb, "latency");
+        sb.append('{');
+        Json.appendKey(sb, "mean");
+        Json.appendFixed4(sb, ms.length > 0 ? sum / ms.length : 0);
+        sb.append(',');
+        Json.appendKey(sb, "p50");
+        Json.appendFixed4(sb, percentile(ms, 50));
+        sb.append(',');
+        Json.appendKey(sb, "p95");
+        Json.appendFixed4(sb, percentile(ms, 95));
+        sb.append(',');
+        Json.appendKey(sb, "p99");
+        Json.appendFixed4(sb, percentile(ms, 99));
+        sb.append(',');
+        Json.appendKey(sb, "max");
+        Json.appendFixed4(sb, ms.length > 0 ? ms[ms.length - 1] : 0);
+        sb.append('}');
+        if (lastError != null) {
+            sb.append(',');
+            Json.appendKey(sb, "lastError");
+            Json.appendString(sb, lastError);
+        }
+        if (baseline != null) {
+            sb.append(',');
+            Json.appendKey(sb, "baseline");
+            appendComparison(sb, sb.toString(), readFile(baseline));
+        }
+        sb.append('}');
+        return sb;
+    }
+
+    // Nearest rank percentile of sorted values, 0 if there are none
+    static double percentile(double[] sorted, double pct)
+    {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(pct / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    // Ratios of the COMPARED values of report to those of an earlier one
+    private static void appendComparison(StringBuilder sb, String report,
+                                         String earlier)
+    {
+        sb.append('{');
+        boolean first = true;
+        for (String name : COMPARED) {
+            double now = value(report, name);
+            double then = value(earlier, name);
+            if (Double.isNaN(now) || Double.isNaN(then) || then == 0) {
+                continue;
+            }
+            if (!first) {
+                sb.append(',');
+            }
+            Json.appendKey(sb, name);
+            Json.appendFixed4(sb, now / then);
+            first = false;
+        }
+        sb.append('}');
+    }
+
+    // A number in a report, by name, NaN if it has none
+    private static double value(String report, String name)
+    {
+        Matcher m = Pattern.compile("\"" + name + "\":\"?([-0-9.Ee]+)")
+                           .matcher(report);
+        return m.find() ? Double.parseDouble(m.group(1)) : Double.NaN;
+    }
+
+    private static long checksum(List<String> corpus) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        for (String form : corpus) {
+            crc.update(form.getBytes("UTF-8"));
+            crc.update('\n');
+        }
+        return crc.getValue();
+    }
+
+    private static String readFile(String path) throws IOException
+    {
+        InputStream in = new FileInputStream(path);
+        try {
+            return readAll(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    // The forms in a corpus file, see above
+    public static List<String> readCorpus(String path) throws IOException
+    {
+        List<String> forms = new ArrayList<String>();
+        BufferedReader r = new BufferedReader(
+            new InputStreamReader(new FileInputStream(path), "UTF-8"));
+        try {
+            String line;
+            while ((line = r.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    forms.add(line);
+                }
+            }
+        } finally {
+            r.close();
+        }
+        return forms;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 2) {
+            System.err.println("Usage: LoadTest CORPUS TARGET [name=value...]");
+            System.exit(1);
+        }
+        LoadTest lt = new LoadTest(readCorpus(args[0]), args[1]);
+        for (int i = 2; i < args.length; i++) {
+            lt.setOption(args[i]);
+        }
+        System.out.println(lt.run());
+    }
+}
@@ -0,0 +1,129 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import org.apache.commons.math3.ode.sampling.StepHandler;
+import org.apache.commons.math3.ode.sampling.StepInterpolator;
+
+// A clinical metric computed online while integrating. Accumulators are
+// attached to the integrator as step handlers next to ResultProcessor, see
+// Thyrosim.runBrowser(). They use the step interpolator directly, so they do
+// not depend on which values are shown, and keep a fixed amount of state per
+// dosing interval instead of the trajectory.
+//
+// Values are in display units (see ConversionFactors) and times in hours,
+// continuous over integrations. On the command line, metrics are given as
+// metric=type:comp[:args], e.g.
+//   metric=auc:ft4          AUC overall and per dosing interval
+//   metric=peak:ft4         Peak and trough per dosing interval
+//   metric=range:7:0.3:4    Time below/within/above [0.3, 4]
+//   metric=cmax:1           Cmax/Tmax after each oral dose
+// comp is a Projection name other than t.
+public abstract class MetricAccumulator implements StepHandler, SegmentListener
+{
+    // 4-point Gauss-Legendre nodes and weights on [-1, 1]. Exact for
+    // polynomials up to degree 7, which is the degree of the Dormand-Prince
+    // 8(5,3) dense output.
+    protected static final double[] GL_NODES =
+        { -0.8611363115940526, -0.3399810435848563,
+           0.3399810435848563,  0.8611363115940526 };
+    protected static final double[] GL_WEIGHTS =
+        {  0.3478548451374538,  0.6521451548625461,
+           0.6521451548625461,  0.3478548451374538 };
+
+    protected final int col;
+    private final double cf;
+    private final double[] p;
+
+    protected double offset;     // Start time of the current integration
+    protected boolean firstStep; // Whether the next step is the first one
+
+    protected MetricAccumulator(int col, ConversionFactors cfs, double[] p)
+    {
+        if (col == 0) {
+            throw new IllegalArgumentException("Metrics need a compartment");
+        }
+        this.col = col;
+        this.cf  = cfs.forColumn(col);
+        this.p   = p;
+    }
+
+    public static MetricAccumulator parse(String spec, ConversionFactors cfs,
+                                          double[] p)
+    {
+        String[] f = spec.split(":");
+        if (f.length < 2) {
+            throw new IllegalArgumentException("Bad metric: " + spec);
+        }
+        int col = Projection.column(f[1]);
+        if (f[0].equals("auc")) {
+            return new AucMetric(col, cfs, p);
+        }
+        if (f[0].equals("peak")) {
+            return new PeakTroughMetric(col, cfs, p);
+        }
+        if (f[0].equals("range") && f.length == 4) {
+            return new TimeInRangeMetric(col, cfs, p,
+                                         Double.parseDouble(f[2]),
+                                         Double.parseDouble(f[3]));
+        }
+        if (f[0].equals("cmax")) {
+            return new CmaxMetric(col, cfs, p);
+        }
+        throw new IllegalArgumentException("Bad metric: " + spec);
+    }
+
+    public void init(double t0, double[] y0, double t)
+    {
+    }
+
+    public void beginSegment(Segment segment, double offset)
+    {
+        this.offset    = offset;
+        this.firstStep = true;
+    }
+
+    public void handleStep(StepInterpolator interpolator, boolean isLast)
+    {
+        double t0 = interpolator.getPreviousTime();
+        double t1 = interpolator.getCurrentTime();
+        if (firstStep) {
+            start(t0 + offset, valueAt(interpolator, t0));
+            firstStep = false;
+        }
+        step(interpolator, t0, t1);
+
+        // The interpolator is shared with the other step handlers, which
+        // expect it to be at the current time.
+        interpolator.setInterpolatedTime(t1);
+    }
+
+    // Called once per integration with the value right after inputs were
+    // added. t is continuous over integrations.
+    protected abstract void start(double t, double v);
+
+    // Called once per step. t0 and t1 are local to the integration.
+    protected abstract void step(StepInterpolator interpolator,
+                                 double t0, double t1);
+
+    // Write this metric's summary as a JSON object
+    public abstract void appendSummary(StringBuilder sb);
+
+    // Value in display units at local time t
+    protected double valueAt(StepInterpolator interpolator, double t)
+    {
+        interpolator.setInterpolatedTime(t);
+        double[] y = interpolator.getInterpolatedState();
+        return Projection.value(col, t, y, p) * cf;
+    }
+
+    // Start of the summary: {"type":"...","comp":"...",
+    protected void appendHeader(StringBuilder sb, String type)
+    {
+        sb.append('{');
+        Json.appendKey(sb, "type");
+        Json.appendString(sb, type);
+        sb.append(',');
+        Json.appendKey(sb, "comp");
+        Json.appendString(sb, Projection.name(col));
+        sb.append(',');
+    }
+}
@@ -0,0 +1,402 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+
+// Turns an SbmlModel into a CompiledModel subclass at runtime. The ExprGraph
+// is scheduled once: nodes that depend only on parameters go into
+// updateInvariants(), the rest into computeDerivatives(), where nodes used
+// more than once become locals and the others are inlined. The generated Java
+// source is compiled in memory with the JDK's compiler and loaded into its own
+// class loader, so the JIT treats it like the hand-written Thyrosim.
+//
+// Without a JDK (ToolProvider has no compiler), the same schedule is run by
+// TapeModel, an interpreter that is slower but gives the same results.
+public final class ModelCompiler
+{
+    private static final String PACKAGE =
+        "edu.ucla.distefanolab.thyrosim.algorithm";
+    private static final AtomicInteger COUNT = new AtomicInteger();
+
+    public interface Factory
+    {
+        CompiledModel newInstance();
+
+        // Whether instances run generated bytecode, as opposed to TapeModel
+        boolean isCompiled();
+    }
+
+    private ModelCompiler()
+    {
+    }
+
+    public static Factory compile(SbmlModel model)
+    {
+        Schedule s = new Schedule(model);
+        String name = "GeneratedModel" + COUNT.incrementAndGet();
+        Factory f = compileSource(model, s.invariants, name,
+                                  generate(s, name));
+        return f != null ? f : interpreted(model, s);
+    }
+
+    // Compile the model with TapeModel only
+    public static Factory interpret(SbmlModel model)
+    {
+        return interpreted(model, new Schedule(model));
+    }
+
+    // Java source of the generated model
+    public static String source(SbmlModel model)
+    {
+        return generate(new Schedule(model), "GeneratedModel");
+    }
+
+    // Which nodes to compute where. Only nodes reachable from a root count.
+    static final class Schedule
+    {
+        final ExprGraph g;
+        final int[] roots;
+        final boolean[] reachable;
+        final int[] uses;     // Uses from derivative code
+        final int[] invUses;  // Uses from invariant code
+        final int[] slot;     // Index into k, -1 if none
+        final int invariants;
+
+        Schedule(SbmlModel model)
+        {
+            g = model.getGraph();
+            roots = model.getRoots();
+            int n = g.size();
+            reachable = new boolean[n];
+            uses      = new int[n];
+            invUses   = new int[n];
+            slot      = new int[n];
+            Arrays.fill(slot, -1);
+            for (int r : roots) {
+                reachable[r] = true;
+                uses[r]++;
+            }
+            for (int i = n - 1; i >= 0; i--) {
+                if (!reachable[i] || isLeaf(i)) {
+                    continue;
+                }
+                int[] kids = ExprGraph.isUnary(g.op(i))
+                           ? new int[] { g.a(i) }
+                           : new int[] { g.a(i), g.b(i) };
+                for (int c : kids) {
+                    reachable[c] = true;
+                    if (g.isInvariant(i)) {
+                        invUses[c]++;
+                    } else {
+                        uses[c]++;
+                    }
+                }
+            }
+            // Invariants used by the derivative code are kept in k
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                if (reachable[i] && g.isInvariant(i) && !isLeaf(i)
+                    && uses[i] > 0) {
+                    slot[i] = k++;
+                }
+            }
+            invariants = k;
+        }
+
+        boolean isLeaf(int i)
+        {
+            int op = g.op(i);
+            return op == ExprGraph.CONST || op == ExprGraph.TIME
+                || op == ExprGraph.STATE || op == ExprGraph.PARAM;
+        }
+    }
+
+    private static String generate(Schedule s, String name)
+    {
+        ExprGraph g = s.g;
+        int n = g.size();
+        StringBuilder sb = new StringBuilder();
+        sb.append("package ").append(PACKAGE).append(";\n\n");
+        sb.append("public final class ").append(name)
+          .append(" extends CompiledModel\n{\n");
+        sb.append("    public ").append(name)
+          .append("(SbmlModel m, int k)\n    {\n        super(m, k);\n    }\n\n");
+
+        // Invariants: locals for shared nodes, k for the ones used later
+        sb.append("    protected void updateInvariants()\n    {\n");
+        sb.append("        final double[] p = this.p;\n");
+        sb.append("        final double[] k = this.k;\n");
+        boolean[] local = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            if (s.reachable[i] && g.isInvariant(i) && !s.isLeaf(i)
+                && (s.invUses[i] > 1 || s.slot[i] >= 0)) {
+                sb.append("        final double v").append(i).append(" = ");
+                appendExpr(sb, s, i, local, true);
+                sb.append(";\n");
+                local[i] = true;
+                if (s.slot[i] >= 0) {
+                    sb.append("        k[").append(s.slot[i]).append("] = v")
+                      .append(i).append(";\n");
+                }
+            }
+        }
+        sb.append("    }\n\n");
+
+        // Derivatives
+        Arrays.fill(local, false);
+        sb.append("    public void computeDerivatives(double t, double[] y, "
+                  + "double[] yDot)\n    {\n");
+        sb.append("        final double[] p = this.p;\n");
+        sb.append("        final double[] k = this.k;\n");
+        for (int i = 0; i < n; i++) {
+            if (s.reachable[i] && !g.isInvariant(i) && !s.isLeaf(i)
+                && s.uses[i] > 1) {
+                sb.append("        final double v").append(i).append(" = ");
+                appendExpr(sb, s, i, local, false);
+                sb.append(";\n");
+                local[i] = true;
+            }
+        }
+        for (int r = 0; r < s.roots.length; r++) {
+            sb.append("        yDot[").append(r).append("] = ");
+            appendRef(sb, s, s.roots[r], local, false);
+            sb.append(";\n");
+        }
+        sb.append("    }\n}\n");
+        return sb.toString();
+    }
+
+    // Reference to node i: a leaf, a local, k or the inlined expression
+    private static void appendRef(StringBuilder sb, Schedule s, int i,
+                                  boolean[] local, boolean inv)
+    {
+        ExprGraph g = s.g;
+        switch (g.op(i)) {
+            case ExprGraph.CONST:
+                appendConst(sb, g.value(i));
+                return;
+            case ExprGraph.TIME:
+                sb.append('t');
+                return;
+            case ExprGraph.STATE:
+                sb.append("y[").append(g.a(i)).append(']');
+                return;
+            case ExprGraph.PARAM:
+                sb.append("p[").append(g.a(i)).append(']');
+                return;
+            default:
+                break;
+        }
+        if (local[i]) {
+            sb.append('v').append(i);
+        } else if (!inv && s.slot[i] >= 0) {
+            sb.append("k[").append(s.slot[i]).append(']');
+        } else {
+            sb.append('(');
+            appendExpr(sb, s, i, local, inv);
+            sb.append(')');
+        }
+    }
+
+    private static void appendExpr(StringBuilder sb, Schedule s, int i,
+                                   boolean[] local, boolean inv)
+    {
+        ExprGraph g = s.g;
+        int op = g.op(i);
+        String f = null;
+        switch (op) {
+            case ExprGraph.NEG:
+                sb.append('-');
+                appendRef(sb, s, g.a(i), local, inv);
+                return;
+            case ExprGraph.ADD: binary(sb, s, i, " + ", local, inv); return;
+            case ExprGraph.SUB: binary(sb, s, i, " - ", local, inv); return;
+            case ExprGraph.MUL: binary(sb, s, i, " * ", local, inv); return;
+            case ExprGraph.DIV: binary(sb, s, i, " / ", local, inv); return;
+            case ExprGraph.POW:
+                sb.append("Math.pow(");
+                appendRef(sb, s, g.a(i), local, inv);
+                sb.append(", ");
+                appendRef(sb, s, g.b(i), local, inv);
+                sb.append(')');
+                return;
+            case ExprGraph.EXP:  f = "Math.exp";  break;
+            case ExprGraph.LOG:  f = "Math.log";  break;
+            case ExprGraph.SIN:  f = "Math.sin";  break;
+            case ExprGraph.COS:  f = "Math.cos";  break;
+            case ExprGraph.SQRT: f = "Math.sqrt"; break;
+            case ExprGraph.ABS:  f = "Math.abs";  break;
+            default:
+                appendRef(sb, s, i, local, inv);
+                return;
+        }
+        sb.append(f).append('(');
+        appendRef(sb, s, g.a(i), local, inv);
+        sb.append(')');
+    }
+
+    private static void binary(StringBuilder sb, Schedule s, int i, String op,
+                               boolean[] local, boolean inv)
+    {
+        appendRef(sb, s, s.g.a(i), local, inv);
+        sb.append(op);
+        appendRef(sb, s, s.g.b(i), local, inv);
+    }
+
+    private static void appendConst(StringBuilder sb, double v)
+    {
+        if (Double.isNaN(v)) {
+            sb.append("Double.NaN");
+        } else if (Double.isInfinite(v)) {
+            sb.append(v > 0 ? "Double.POSITIVE_INFINITY"
+                            : "Double.NEGATIVE_INFINITY");
+        } else {
+            sb.append('(').append(Double.toString(v)).append(')');
+        }
+    }
+
+    // Compile and load the generated class. null if there is no compiler.
+    private static Factory compileSource(final SbmlModel model,
+                                         final int invariants,
+                                         final String name, String source)
+    {
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if (javac == null) {
+            return null;
+        }
+        final String binary = PACKAGE + "." + name;
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        StandardJavaFileManager std =
+            javac.getStandardFileManager(null, null, null);
+        JavaFileManager fm =
+            new ForwardingJavaFileManager<StandardJavaFileManager>(std) {
+                @Override
+                public JavaFileObject getJavaFileForOutput(
+                        Location location, String className,
+                        JavaFileObject.Kind kind, FileObject sibling)
+                {
+                    return new SimpleJavaFileObject(
+                            URI.create("mem:///" + className.replace('.', '/')
+                                       + kind.extension), kind) {
+                        @Override
+                        public OutputStream openOutputStream()
+                        {
+                            return bytes;
+                        }
+                    };
+                }
+            };
+        final String src = source;
+        JavaFileObject file = new SimpleJavaFileObject(
+                URI.create("mem:///" + binary.replace('.', '/') + ".java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreErrors)
+            {
+                return src;
+            }
+        };
+
+        List<String> options = new ArrayList<String>();
+        options.add("-classpath");
+        options.add(classPath());
+        options.add("-g:none");
+        options.add("-proc:none");
+        options.add("-nowarn");
+        StringWriter errors = new StringWriter();
+        boolean ok = javac.getTask(errors, fm, null, options, null,
+                                   Arrays.asList(file)).call();
+        if (!ok) {
+            throw new IllegalStateException("Generated model does not compile: "
+                                            + errors);
+        }
+
+        final byte[] code = bytes.toByteArray();
+        ClassLoader loader = new ClassLoader(CompiledModel.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String cn) throws ClassNotFoundException
+            {
+                if (cn.equals(binary)) {
+                    return defineClass(cn, code, 0, code.length);
+                }
+                throw new ClassNotFoundException(cn);
+            }
+        };
+        final java.lang.reflect.Constructor<?> ctor;
+        try {
+            ctor = loader.loadClass(binary)
+                         .getConstructor(SbmlModel.class, int.class);
+        } catch (Exception ex) {
+            throw new IllegalStateException("Can't load generated model", ex);
+        }
+        return new Factory() {
+            public CompiledModel newInstance()
+            {
+                try {
+                    CompiledModel m = (CompiledModel) ctor.newInstance(
+                        model, invariants);
+                    m.updateInvariants();
+                    return m;
+                } catch (Exception ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+
+            public boolean isCompiled()
+            {
+                return true;
+            }
+        };
+    }
+
+    private static Factory interpreted(final SbmlModel model, final Schedule s)
+    {
+        return new Factory() {
+            public CompiledModel newInstance()
+            {
+                TapeModel m = new TapeModel(model, s);
+                m.updateInvariants();
+                return m;
+            }
+
+            public boolean isCompiled()
+            {
+                return false;
+            }
+        };
+    }
+
+    // Where this package and commons-math come from, for compiling against
+    private static String classPath()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (Class<?> c : new Class<?>[] { CompiledModel.class,
+                                           FirstOrderDifferentialEquations.class }) {
+            try {
+                File f = new File(c.getProtectionDomain().getCodeSource()
+                                   .getLocation().toURI());
+                sb.append(f.getPath()).append(File.pathSeparatorChar);
+            } catch (Exception ex) {
+                // Fall back to the class path below
+            }
+        }
+        sb.append(System.getProperty("java.class.path"));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,178 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// All thysim models, keyed the same way as $self->{thysim} in THYROSIM.pm:
+//   Thyrosim       The general model, Thyrosim ODEs
+//   ThyrosimJr     The model adapted for babies, Thyrosim ODEs
+//   ThyrosimHyper  The hyperthyroid variant, ThyrosimHyper ODEs
+// Parameters are read from config/<name>.params once, the first time the
+// registry is used, so a request only does a map lookup. The config directory
+// is the system property thyrosim.config, or ../config (as seen from cgi-bin)
+// or config. A variant whose file is missing is still registered, without
+// parameters.
+public final class ModelRegistry
+{
+    // Steady states at dials 100/88/100/88. Thyrosim and ThyrosimJr are the
+    // ICKey values in THYROSIM.pm. ThyrosimHyper was calculated by running
+    // ThyrosimHyper for 1008 hours from the Thyrosim steady state.
+    private static final double[] THYROSIM_SS = {
+        0.322114215761171,   0.201296960359917,  0.638967411907560,
+        0.00663104034826483, 0.0112595761822961, 0.0652960640300348,
+        1.78829584764370,    7.05727560072869,   7.05714474742141,
+        0, 0, 0, 0,
+        3.34289716182018,    3.69277248068433,   3.87942133769244,
+        3.90061903207543,    3.77875734283571,   3.55364471589659 };
+    private static final double[] THYROSIM_JR_SS = {
+        0.08537986566616353,   0.11151355189891558,  0.11757879939521299,
+        0.0021584999885251883, 0.003844919701867285, 0.02891231073810239,
+        5.201125786290925,     5.553663927601651,    5.556354748291701,
+        0, 0, 0, 0,
+        10.134192450244074,    11.557153559626624,   12.431906546150651,
+        12.71040493270924,     12.443498542246873,   11.75608393106433 };
+    private static final double[] THYROSIM_HYPER_SS = {
+        0.3675975497719688,    0.23968767296462798,  0.7571590207690494,
+        0.0058546354781447785, 0.010126179356829195, 0.05992936429933151,
+        1.6374141724055578,    7.145813346097558,    7.145695481229129,
+        0, 0, 0, 0,
+        3.0623730808917884,    3.384687436945591,    3.557528937510119,
+        3.5784625201014553,    3.4677517871957235,   3.2617932012806947 };
+
+    private ModelRegistry()
+    {
+    }
+
+    // Loaded on first use of the registry
+    private static final class Holder
+    {
+        static final Map<String, ModelVariant> VARIANTS = load(configDir());
+    }
+
+    public static ModelVariant get(String thysim)
+    {
+        ModelVariant v = Holder.VARIANTS.get(thysim);
+        if (v == null) {
+            throw new IllegalArgumentException("Unknown thysim: " + thysim);
+        }
+        return v;
+    }
+
+    public static boolean has(String thysim)
+    {
+        return Holder.VARIANTS.containsKey(thysim);
+    }
+
+    public static Set<String> names()
+    {
+        return Holder.VARIANTS.keySet();
+    }
+
+    // Build all variants with parameters from dir
+    public static Map<String, ModelVariant> load(File dir)
+    {
+        Map<String, ModelVariant> m = new LinkedHashMap<String, ModelVariant>();
+        add(m, new ModelVariant("Thyrosim", readParams(dir, "Thyrosim"),
+                                THYROSIM_SS) {
+            public ThyroidModel create(double[] dials, double inf1,
+                                       double inf4, double[] kp)
+            {
+                return Thyrosim.create(dials, inf1, inf4, kp);
+            }
+        });
+        add(m, new ModelVariant("ThyrosimJr", readParams(dir, "ThyrosimJr"),
+                                THYROSIM_JR_SS) {
+            public ThyroidModel create(double[] dials, double inf1,
+                                       double inf4, double[] kp)
+            {
+                return Thyrosim.create(dials, inf1, inf4, kp);
+            }
+        });
+        add(m, new ModelVariant("ThyrosimHyper",
+                                readParams(dir, "ThyrosimHyper"),
+                                THYROSIM_HYPER_SS) {
+            public ThyroidModel create(double[] dials, double inf1,
+                                       double inf4, double[] kp)
+            {
+                return new ThyrosimHyper(dials, inf1, inf4, kp);
+            }
+        });
+        return Collections.unmodifiableMap(m);
+    }
+
+    private static void add(Map<String, ModelVariant> m, ModelVariant v)
+    {
+        m.put(v.getName(), v);
+    }
+
+    static File configDir()
+    {
+        String prop = System.getProperty("thyrosim.config");
+        if (prop != null) {
+            return new File(prop);
+        }
+        File up = new File("../config");
+        return up.isDirectory() ? up : new File("config");
+    }
+
+    // Index into { kdelay, p1 - p48 } of a parameter name
+    public static int paramIndex(String name)
+    {
+        if (name.equals("kdelay")) {
+            return 0;
+        }
+        if (name.startsWith("p")) {
+            int i = Integer.parseInt(name.substring(1));
+            if (i >= 1 && i <= 48) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown parameter: " + name);
+    }
+
+    // { kdelay, p1 - p48 } from dir/<name>.params, null if there is no file
+    static double[] readParams(File dir, String name)
+    {
+        File f = new File(dir, name + ".params");
+        if (!f.isFile()) {
+            return null;
+        }
+        double[] kp = new double[49];
+        boolean[] seen = new boolean[49];
+        try {
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(f), "UTF-8"));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    int eq = line.indexOf('=');
+                    if (eq < 0) {
+                        continue;
+                    }
+                    String key = line.substring(0, eq).trim();
+                    int i = paramIndex(key);
+                    kp[i] = Double.parseDouble(line.substring(eq + 1).trim());
+                    seen[i] = true;
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Can't read " + f, ex);
+        }
+        for (int i = 0; i < seen.length; i++) {
+            if (!seen[i]) {
+                throw new IllegalStateException(f + " has no "
+                                                + Thyrosim.PARAM_NAMES[6 + i]);
+            }
+        }
+        return kp;
+    }
+}
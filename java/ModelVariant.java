@@ -0,0 +1,65 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+// One thysim model: its parameters (config/<name>.params), its steady state at
+// the default dials 100/88/100/88 (the same values as ICKey in THYROSIM.pm),
+// conversion factors, and the ODEs to run it with. Variants are immutable and
+// shared between requests, see ModelRegistry. Getters return copies.
+public abstract class ModelVariant
+{
+    private final String name;
+    private final double[] kp;          // kdelay, p1 - p48; null if not found
+    private final double[] steadyState; // q1 - q19
+    private final ConversionFactors cfs;
+
+    protected ModelVariant(String name, double[] kp, double[] steadyState)
+    {
+        this.name        = name;
+        this.kp          = kp == null ? null : kp.clone();
+        this.steadyState = steadyState.clone();
+        this.cfs         = kp == null ? null
+                                      : new ConversionFactors(kp[47], kp[48]);
+    }
+
+    // The ODEs of this variant for the given dials, infusions and parameters
+    public abstract ThyroidModel create(double[] dials, double inf1,
+                                        double inf4, double[] kp);
+
+    // The ODEs with this variant's own parameters
+    public ThyroidModel create(double[] dials, double inf1, double inf4)
+    {
+        return create(dials, inf1, inf4, getParameters());
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public boolean hasParameters()
+    {
+        return kp != null;
+    }
+
+    // { kdelay, p1 - p48 }
+    public double[] getParameters()
+    {
+        if (kp == null) {
+            throw new IllegalStateException("No parameters for " + name);
+        }
+        return kp.clone();
+    }
+
+    public double[] getSteadyState()
+    {
+        return steadyState.clone();
+    }
+
+    // Display unit conversion for the default p47 and p48
+    public ConversionFactors getConversionFactors()
+    {
+        if (cfs == null) {
+            throw new IllegalStateException("No parameters for " + name);
+        }
+        return cfs;
+    }
+}
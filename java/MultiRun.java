@@ -0,0 +1,216 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+// Several scenarios in one request, e.g. the runs the browser overlays in
+// different colors. A request is
+//   multi [name=value...] FORM...
+// where each FORM is a serialized form as sent to ajax_getplot.cgi, see
+// BrowserForm. The only option is the one ajax_getmulti.cgi adds; forms come
+// from the client, so no other name=value is taken as an option:
+//   encoding=E    json (default) or delta4, see DeltaCodec
+// The answer is
+//   {"runs":[...],"distinct":D,"warmups":W}
+// with the browser object of each form in order, or {"error":"..."} for a
+// form that failed. distinct is the number of different forms and warmups the
+// number of i0 integrations they needed.
+//
+// Work that scenarios share is done once. Forms that are the same are run
+// once, and i0 is run once for each model, dials and parameters before the
+// scenarios start (see WarmupCache). The scenarios then run in parallel from
+// their i0 end states on the SharedPool, so comparing scenarios that differ
+// in their inputs takes about as long as a single run if the pool has threads
+// to spare.
+public class MultiRun
+{
+    public static final int MAX_RUNS = 16;
+
+    private final List<String> forms;
+    private final RunOptions opts;
+    private final WarmupCache cache;
+    private final CancellationToken token;
+
+    // cache may be shared with other requests; token may be null
+    public MultiRun(List<String> forms, RunOptions opts, WarmupCache cache,
+                    CancellationToken token)
+    {
+        if (forms.isEmpty()) {
+            throw new IllegalArgumentException("No forms");
+        }
+        if (forms.size() > MAX_RUNS) {
+            throw new IllegalArgumentException("At most " + MAX_RUNS
+                                               + " forms");
+        }
+        this.forms = forms;
+        this.opts  = opts;
+        this.cache = cache;
+        this.token = token;
+    }
+
+    public StringBuilder run()
+    {
+        // Different forms, and the first of them for each i0
+        final Map<String, String> results =
+            new LinkedHashMap<String, String>();
+        Map<String, BrowserForm> parsed = new HashMap<String, BrowserForm>();
+        Map<String, BrowserForm> warmups =
+            new LinkedHashMap<String, BrowserForm>();
+        for (String form : forms) {
+            if (results.containsKey(form)) {
+                continue;
+            }
+            try {
+                BrowserForm bf = BrowserForm.parse(form);
+                String key = bf.getWarmupKey();
+                if (key != null && !warmups.containsKey(key)) {
+                    warmups.put(key, bf);
+                }
+                parsed.put(form, bf);
+                results.put(form, null);
+            } catch (RuntimeException ex) {
+                results.put(form, error(ex));
+            }
+        }
+
+        List<Future<Object>> futures = new ArrayList<Future<Object>>();
+        try {
+            // i0 first, so that no two scenarios run the same one. A form
+            // whose i0 fails reports it when it is run below.
+            for (final BrowserForm bf : warmups.values()) {
+                futures.add(SharedPool.submit(new Callable<Object>() {
+                    public Object call()
+                    {
+                        try {
+                            bf.warmUp(cache, opts.accuracy, token);
+                        } catch (SimulationCancelledException ex) {
+                            throw ex;
+                        } catch (RuntimeException ex) {
+                            // See above
+                        }
+                        return null;
+                    }
+                }));
+            }
+            await(futures);
+
+            futures.clear();
+            for (final Map.Entry<String, BrowserForm> e : parsed.entrySet()) {
+                futures.add(SharedPool.submit(new Callable<Object>() {
+                    public Object call()
+                    {
+                        String r;
+                        try {
+                            r = e.getValue().run(opts.encoding, opts.accuracy,
+                                                 cache, token).toString();
+                        } catch (SimulationCancelledException ex) {
+                            throw ex;
+                        } catch (RuntimeException ex) {
+                            r = error(ex);
+                        }
+                        synchronized (results) {
+                            results.put(e.getKey(), r);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            await(futures);
+        } finally {
+            // Only left to do if something failed
+            SharedPool.cancel(futures);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        Json.appendKey(sb, "runs");
+        sb.append('[');
+        for (int i = 0; i < forms.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(results.get(forms.get(i)));
+        }
+        sb.append("],");
+        Json.appendKey(sb, "distinct");
+        sb.append(results.size()).append(',');
+        Json.appendKey(sb, "warmups");
+        sb.append(warmups.size());
+        sb.append('}');
+        return sb;
+    }
+
+    // Wait for all futures, rethrowing what went wrong in a worker, e.g. a
+    // cancellation
+    private static void await(List<Future<Object>> futures)
+    {
+        try {
+            for (Future<Object> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SimulationCancelledException(false);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private static String error(RuntimeException ex)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        Json.appendKey(sb, "error");
+        Json.appendString(sb, ex.getMessage() != null ? ex.getMessage()
+                                                      : ex.toString());
+        sb.append('}');
+        return sb.toString();
+    }
+
+    public static boolean isMode(String mode)
+    {
+        return mode.equals("multi");
+    }
+
+    // Answer a multi request: { "multi", name=value..., FORM... }. token may
+    // be null.
+    public static StringBuilder execute(String[] args, WarmupCache cache,
+                                        CancellationToken token)
+    {
+        if (args.length < 2 || !isMode(args[0])) {
+            throw new IllegalArgumentException(
+                "Expected multi [name=value]... FORM...");
+        }
+        int first = 1;
+        while (first < args.length && isOption(args[first])) {
+            first++;
+        }
+        RunOptions opts = RunOptions.parse(
+            Arrays.copyOfRange(args, 0, first), 1);
+        List<String> forms = Arrays.asList(args).subList(first, args.length);
+        return new MultiRun(forms, opts, cache, token).run();
+    }
+
+    // Options are told from forms by their names
+    private static boolean isOption(String arg)
+    {
+        return arg.startsWith("encoding=");
+    }
+
+    public static void main(String[] args)
+    {
+        System.out.print(execute(args, new WarmupCache(MAX_RUNS), null));
+        System.out.flush();
+    }
+}
@@ -0,0 +1,105 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import org.apache.commons.math3.ode.sampling.StepInterpolator;
+
+// Peak and trough, with their times, per dosing interval. Each step is sampled
+// at its end and at the Gauss-Legendre nodes, so extrema inside long steps are
+// found too. Dosing intervals are as in AucMetric.
+public class PeakTroughMetric extends MetricAccumulator
+{
+    // Per interval: start, peak, tpeak, trough, ttrough
+    private final DoubleList intervals = new DoubleList(80);
+    private boolean newInterval;
+    private double peak, tPeak, trough, tTrough;
+    private boolean open;
+
+    public PeakTroughMetric(int col, ConversionFactors cfs, double[] p)
+    {
+        super(col, cfs, p);
+    }
+
+    @Override
+    public void beginSegment(Segment segment, double offset)
+    {
+        super.beginSegment(segment, offset);
+        newInterval = segment.hasInputs() || !open;
+    }
+
+    protected void start(double t, double v)
+    {
+        if (newInterval) {
+            closeInterval();
+            intervals.add(t);
+            peak   = trough  = v;
+            tPeak  = tTrough = t;
+            open = true;
+        } else {
+            sample(t, v);
+        }
+    }
+
+    protected void step(StepInterpolator interpolator, double t0, double t1)
+    {
+        double half = 0.5 * (t1 - t0);
+        double mid  = 0.5 * (t1 + t0);
+        for (int i = 0; i < GL_NODES.length; i++) {
+            double t = mid + half * GL_NODES[i];
+            sample(t + offset, valueAt(interpolator, t));
+        }
+        sample(t1 + offset, valueAt(interpolator, t1));
+    }
+
+    private void sample(double t, double v)
+    {
+        if (v > peak) {
+            peak  = v;
+            tPeak = t;
+        }
+        if (v < trough) {
+            trough  = v;
+            tTrough = t;
+        }
+    }
+
+    private void closeInterval()
+    {
+        if (!open) {
+            return;
+        }
+        intervals.add(peak);
+        intervals.add(tPeak);
+        intervals.add(trough);
+        intervals.add(tTrough);
+        open = false;
+    }
+
+    public void appendSummary(StringBuilder sb)
+    {
+        closeInterval();
+        appendHeader(sb, "peak");
+        Json.appendKey(sb, "intervals");
+        sb.append('[');
+        for (int i = 0; i + 4 < intervals.size(); i += 5) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('{');
+            Json.appendKey(sb, "start");
+            Json.appendQuoted4(sb, intervals.get(i));
+            sb.append(',');
+            Json.appendKey(sb, "peak");
+            Json.appendQuoted4(sb, intervals.get(i + 1));
+            sb.append(',');
+            Json.appendKey(sb, "tpeak");
+            Json.appendQuoted4(sb, intervals.get(i + 2));
+            sb.append(',');
+            Json.appendKey(sb, "trough");
+            Json.appendQuoted4(sb, intervals.get(i + 3));
+            sb.append(',');
+            Json.appendKey(sb, "ttrough");
+            Json.appendQuoted4(sb, intervals.get(i + 4));
+            sb.append('}');
+        }
+        sb.append("]}");
+    }
+}
@@ -0,0 +1,102 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+// Which result columns the solver computes and prints. Columns follow
+// getLine(): 0 = t, 1 - 19 = q1 - q19, 20 = FT4, 21 = FT3. FT4 and FT3 are
+// derived from the state, so they are only computed when projected.
+//
+// On the command line a projection is a comma separated list of names, the
+// same names THYROSIM.pm uses for $self->{show}:
+//   t,1,4,7,ft4,ft3
+// t4, t3 and tsh are accepted for 1, 4 and 7. Display unit conversion applies
+// to 1, 4, 7, ft4 and ft3 in browser mode, see ConversionFactors. 'all' and
+// 'none' are also accepted.
+public final class Projection
+{
+    public static final int COLUMNS = 22;
+    public static final int FT4 = 20;
+    public static final int FT3 = 21;
+
+    // Compartments sent to the browser by default. See $self->{show}.
+    public static final int[] DEFAULT = { 0, 1, 4, 7, FT4, FT3 };
+
+    // Everything getLine() prints
+    public static final int[] ALL;
+    static {
+        ALL = new int[COLUMNS];
+        for (int c = 0; c < COLUMNS; c++) {
+            ALL[c] = c;
+        }
+    }
+
+    private Projection()
+    {
+    }
+
+    // Parse a list of names into columns, in the given order, without repeats
+    public static int[] parse(String str)
+    {
+        if (str.equals("all")) {
+            return ALL.clone();
+        }
+        if (str.equals("none")) { // e.g. when only metrics are wanted
+            return new int[0];
+        }
+        boolean[] has = new boolean[COLUMNS];
+        String[] names = str.split(",");
+        int[] cols = new int[names.length];
+        int n = 0;
+        for (String name : names) {
+            int c = column(name.trim());
+            if (!has[c]) {
+                has[c] = true;
+                cols[n++] = c;
+            }
+        }
+        return java.util.Arrays.copyOf(cols, n);
+    }
+
+    public static int column(String name)
+    {
+        String s = name.toLowerCase();
+        if (s.equals("t"))   return 0;
+        if (s.equals("t4"))  return 1;
+        if (s.equals("t3"))  return 4;
+        if (s.equals("tsh")) return 7;
+        if (s.equals("ft4")) return FT4;
+        if (s.equals("ft3")) return FT3;
+        try {
+            int c = Integer.parseInt(s);
+            if (c >= 1 && c <= 19) {
+                return c;
+            }
+        } catch (NumberFormatException ex) {
+            // Fall through
+        }
+        throw new IllegalArgumentException("Unknown compartment: " + name);
+    }
+
+    public static String name(int c)
+    {
+        if (c == FT4) return "ft4";
+        if (c == FT3) return "ft3";
+        if (c == 0)   return "t";
+        return Integer.toString(c);
+    }
+
+    // Value of column c at (t, y) in mols. p holds the FT4/FT3 coefficients
+    // p7-p10 and p24-p27.
+    public static double value(int c, double t, double[] y, double[] p)
+    {
+        if (c == 0) {
+            return t;
+        }
+        if (c < FT4) {
+            return y[c - 1];
+        }
+        double y0 = y[0];
+        if (c == FT4) {
+            return (p[0] + p[1]*y0 + p[2]*y0*y0 + p[3]*y0*y0*y0) * y0;
+        }
+        return (p[4] + p[5]*y0 + p[6]*y0*y0 + p[7]*y0*y0*y0) * y[3];
+    }
+}
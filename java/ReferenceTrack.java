@@ -0,0 +1,104 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import org.apache.commons.math3.ode.sampling.StepHandler;
+import org.apache.commons.math3.ode.sampling.StepInterpolator;
+
+// The values a full run shows, to check a budget run against (verify=1, see
+// AccuracyBudget). Added to the full run, it keeps cols at each step end in
+// display units, the points ResultProcessor shows. After compare() it is
+// added to the budget run, which is interpolated at those points, and keeps
+// the largest difference per column. Points are matched within their
+// integration, so values just before and after an input are not mixed up.
+public class ReferenceTrack implements StepHandler, SegmentListener
+{
+    private final int[] cols;
+    private final double[] cf;
+    private final double[] p;
+
+    private final DoubleList segments = new DoubleList();
+    private final DoubleList times    = new DoubleList();
+    private final DoubleList[] values;
+    private final double[] maxError;
+
+    private boolean comparing;
+    private int segment = -1; // Integration the steps belong to
+    private double offset;
+    private int next;         // Next point to compare
+
+    public ReferenceTrack(int[] cols, ConversionFactors cfs, double[] p)
+    {
+        this.cols     = cols.clone();
+        this.cf       = new double[cols.length];
+        this.p        = p;
+        this.values   = new DoubleList[cols.length];
+        this.maxError = new double[cols.length];
+        for (int o = 0; o < cols.length; o++) {
+            cf[o]     = cfs.forColumn(cols[o]);
+            values[o] = new DoubleList();
+        }
+    }
+
+    // Compare the steps that follow with the points kept so far
+    public void compare()
+    {
+        comparing = true;
+        segment   = -1;
+        next      = 0;
+    }
+
+    // Largest difference per column of the compared run, in display units
+    public double[] getMaxError()
+    {
+        return maxError.clone();
+    }
+
+    public void beginSegment(Segment seg, double offset)
+    {
+        this.segment++;
+        this.offset = offset;
+    }
+
+    public void init(double t0, double[] y0, double t)
+    {
+    }
+
+    public void handleStep(StepInterpolator interpolator, boolean isLast)
+    {
+        double t0 = interpolator.getPreviousTime();
+        double t1 = interpolator.getCurrentTime();
+        if (!comparing) {
+            double[] y = interpolator.getInterpolatedState();
+            segments.add(segment);
+            times.add(t1);
+            for (int o = 0; o < cols.length; o++) {
+                values[o].add(value(o, t1, y));
+            }
+            return;
+        }
+        while (next < times.size() && segments.get(next) < segment) {
+            next++;
+        }
+        boolean moved = false;
+        while (next < times.size() && segments.get(next) == segment
+               && times.get(next) <= t1 + 1e-9) {
+            double t = Math.min(t1, Math.max(t0, times.get(next)));
+            interpolator.setInterpolatedTime(t);
+            double[] y = interpolator.getInterpolatedState();
+            for (int o = 0; o < cols.length; o++) {
+                double e = Math.abs(value(o, t, y) - values[o].get(next));
+                maxError[o] = Math.max(maxError[o], e);
+            }
+            next++;
+            moved = true;
+        }
+        if (moved) {
+            // The interpolator is shared with the other step handlers
+            interpolator.setInterpolatedTime(t1);
+        }
+    }
+
+    private double value(int o, double t, double[] y)
+    {
+        return Projection.value(cols[o], t + offset, y, p) * cf[o];
+    }
+}
@@ -0,0 +1,238 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+// The inputs of a run over a number of days, split into integrations i1 - iX
+// the way detIntSteps() does it in THYROSIM.pm: a new integration starts at
+// every dose and wherever an infusion starts or ends. Inputs are the ones of
+// the browser form (see BrowserForm):
+//   oral       T3 or T4 pills, once or every interval days from start to end;
+//              the dose goes into the pill compartment (q12 or q10)
+//   iv         a T3 or T4 bolus into plasma (q4 or q1)
+//   infusion   mcg/day of T3 or T4 from start (inclusive) to end (exclusive)
+// Days and doses are rounded the way Perl passes them to the solver, so that
+// a regimen gives the same segments as the form through ajax_getplot.cgi.
+//
+// Regimens are immutable and may be shared between threads:
+//   Regimen r = new Regimen.Builder(30)
+//       .oral(4, 100, 1, 30, 1)
+//       .infusion(3, 10, 5, 10)
+//       .build();
+public final class Regimen
+{
+    // Molecular weights of T3 and T4, to convert mcg to mols
+    private static final double T3_MOLS = 651;
+    private static final double T4_MOLS = 777;
+
+    private final List<Segment> segments;
+
+    private Regimen(List<Segment> segments)
+    {
+        this.segments = Collections.unmodifiableList(segments);
+    }
+
+    // Integrations i1 - iX
+    public List<Segment> getSegments()
+    {
+        return segments;
+    }
+
+    // Total length in hours
+    public double getHours()
+    {
+        double hours = 0;
+        for (Segment seg : segments) {
+            hours += seg.getEnd();
+        }
+        return hours;
+    }
+
+    public static class Builder
+    {
+        private final double days;
+        private final List<Input> inputs = new ArrayList<Input>();
+
+        // A regimen over days
+        public Builder(double days)
+        {
+            if (!(days >= 0)) {
+                throw new IllegalArgumentException("Bad simulation time: "
+                                                   + days);
+            }
+            this.days = days;
+        }
+
+        // A single oral dose of mcg of hormone 3 or 4 on day
+        public Builder oral(int hormone, double mcg, double day)
+        {
+            return add(new Input(1, hormone, mcg, day, day, 0, true));
+        }
+
+        // Oral doses of mcg every interval days from start to end
+        public Builder oral(int hormone, double mcg, double start, double end,
+                            double interval)
+        {
+            if (!(interval > 0)) {
+                throw new IllegalArgumentException(
+                    "Dosing interval must be > 0");
+            }
+            return add(new Input(1, hormone, mcg, start, end, interval, false));
+        }
+
+        // An IV bolus of mcg on day
+        public Builder iv(int hormone, double mcg, double day)
+        {
+            return add(new Input(2, hormone, mcg, day, day, 0, true));
+        }
+
+        // An infusion of mcg per day from start to end
+        public Builder infusion(int hormone, double mcgPerDay, double start,
+                                double end)
+        {
+            return add(new Input(3, hormone, mcgPerDay, start, end, 0, false));
+        }
+
+        private Builder add(Input in)
+        {
+            toMols(in.hormone);
+            inputs.add(in);
+            return this;
+        }
+
+        public Regimen build()
+        {
+            return new Regimen(segments());
+        }
+
+        private List<Segment> segments()
+        {
+            // Times where inputs start or infusions end. 0 is always one.
+            TreeSet<Double> times = new TreeSet<Double>();
+            times.add(0.0);
+            for (Input in : inputs) {
+                if (in.type == 1 && !in.single) {
+                    for (double t = in.start; t <= in.end; t += in.interval) {
+                        times.add(BrowserForm.perl(t));
+                    }
+                } else {
+                    times.add(BrowserForm.perl(in.start));
+                    if (in.type == 3) {
+                        times.add(BrowserForm.perl(in.end));
+                    }
+                }
+            }
+
+            List<Segment> segs = new ArrayList<Segment>();
+            double prior = 0;
+            boolean first = true;
+            for (double time : times) {
+                if (!first) {
+                    if (time >= days) {
+                        segs.add(segment(prior, days));
+                        return segs;
+                    }
+                    segs.add(segment(prior, time));
+                }
+                prior = time;
+                first = false;
+            }
+            segs.add(segment(prior, days));
+            return segs;
+        }
+
+        // The integration from day start to day end, with the inputs given
+        // at start and the infusions running then
+        private Segment segment(double start, double end)
+        {
+            double u1 = 0, u4 = 0;
+            double[] dose = null;
+            for (Input in : inputs) {
+                if (in.type == 3) {
+                    if (start >= in.start && start < in.end) {
+                        double rate = in.dose / toMols(in.hormone) / 24;
+                        if (in.hormone == 3) {
+                            u4 += rate;
+                        } else {
+                            u1 += rate;
+                        }
+                    }
+                    continue;
+                }
+                if (!in.givenAt(start)) {
+                    continue;
+                }
+                int c;
+                if (in.hormone == 3) {
+                    c = in.type == 1 ? 12 : 4;
+                } else {
+                    c = in.type == 1 ? 10 : 1;
+                }
+                if (dose == null) {
+                    dose = new double[19];
+                }
+                dose[c - 1] += in.dose / toMols(in.hormone);
+            }
+            if (dose != null) {
+                for (int i = 0; i < dose.length; i++) {
+                    dose[i] = BrowserForm.perl(dose[i]);
+                }
+            }
+            return new Segment(0, BrowserForm.perl((end - start) * 24),
+                               BrowserForm.perl(u1), BrowserForm.perl(u4),
+                               dose);
+        }
+    }
+
+    // One input: type 1 oral, 2 IV, 3 infusion, as in the form
+    private static final class Input
+    {
+        final int type;
+        final int hormone;
+        final double dose;
+        final double start;
+        final double end;
+        final double interval;
+        final boolean single;
+
+        Input(int type, int hormone, double dose, double start, double end,
+              double interval, boolean single)
+        {
+            this.type     = type;
+            this.hormone  = hormone;
+            this.dose     = dose;
+            this.start    = start;
+            this.end      = end;
+            this.interval = interval;
+            this.single   = single;
+        }
+
+        // Whether an oral or IV input is given at day t
+        boolean givenAt(double t)
+        {
+            if (single) {
+                return BrowserForm.perl(start) == t;
+            }
+            for (double s = start; s <= end && BrowserForm.perl(s) <= t;
+                 s += interval) {
+                if (BrowserForm.perl(s) == t) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static double toMols(int hormone)
+    {
+        if (hormone == 3) {
+            return T3_MOLS;
+        }
+        if (hormone == 4) {
+            return T4_MOLS;
+        }
+        throw new IllegalArgumentException("Unknown hormone: " + hormone);
+    }
+}
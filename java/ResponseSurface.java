@@ -0,0 +1,461 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.ode.FirstOrderIntegrator;
+import org.apache.commons.math3.ode.sampling.StepHandler;
+
+// Periodic steady state of a thysim variant over the four dials, for
+// previewing the dials while they are dragged. Dials are the percentages of
+// the UI sliders: T4 secretion 0-125, T4 absorption 0-100, T3 secretion
+// 0-125, T3 absorption 0-100.
+//
+// For every point of a 4-D grid the variant is run with its own parameters
+// from its steady state for 1008 hours (like i0), then for one more day,
+// sampled every 0.1 hours. The outputs are the mean, min and max over that
+// day of TSH (mU/L), FT4 and FT3 (ng/L). Grids are built offline, in
+// parallel, into config/<thysim>.surface (float values), and looked up with
+// multilinear interpolation between the 16 surrounding grid points.
+//
+// Without doses the gut compartments stay empty, so the absorption dials do
+// not change the steady state, and the default grid has one point on those
+// axes. An axis with one point is solved at the default dial (100 or 88) and
+// ignored when looking up. Grid points where the solver finds no steady
+// state (both secretion dials at 0) are stored as NaN.
+//
+// From the command line:
+//   ResponseSurface build THYSIM [POINTS [THREADS [FILE]]]
+//   ResponseSurface preview THYSIM D1 D2 D3 D4
+//   ResponseSurface steady THYSIM D1 D2 D3 D4
+// POINTS is the number of grid points per axis, e.g. 26,1,26,1 (the default,
+// every 5%). preview interpolates, steady solves.
+public class ResponseSurface
+{
+    public static final double[] DIAL_MAX = { 125, 100, 125, 100 };
+    public static final double[] DEFAULT_DIALS = { 100, 88, 100, 88 };
+    public static final int[] DEFAULT_POINTS = { 26, 1, 26, 1 };
+
+    // Outputs, in file order
+    public static final String[] HORMONES = { "tsh", "ft4", "ft3" };
+    public static final String[] STATS = { "mean", "min", "max" };
+    private static final int[] COLS = { 7, Projection.FT4, Projection.FT3 };
+    static final int OUTPUTS = HORMONES.length * STATS.length;
+
+    private static final int MAGIC   = 0x54485352; // "THSR"
+    private static final int VERSION = 1;
+
+    private static final double WARMUP = 1008; // Hours, a multiple of 24
+    private static final double SAMPLE = 0.1;  // Hours between samples
+    static final int MAX_EVALUATIONS = 4000000; // ~5x a normal run
+
+    private static final Map<String, ResponseSurface> LOADED =
+        new HashMap<String, ResponseSurface>();
+
+    private final String thysim;
+    private final int[] points;
+    private final int[] stride;  // Grid points between neighbours on an axis
+    private final float[] values; // [grid point][output]
+
+    private ResponseSurface(String thysim, int[] points, float[] values)
+    {
+        this.thysim = thysim;
+        this.points = points.clone();
+        this.values = values;
+        stride = new int[4];
+        int s = 1;
+        for (int a = 3; a >= 0; a--) {
+            stride[a] = s;
+            s *= points[a];
+        }
+    }
+
+    // The surface of thysim from the config directory, loaded once. Throws
+    // IllegalStateException if it has not been built.
+    public static ResponseSurface get(String thysim)
+    {
+        synchronized (LOADED) {
+            ResponseSurface s = LOADED.get(thysim);
+            if (s == null) {
+                File f = file(thysim);
+                if (!f.isFile()) {
+                    throw new IllegalStateException("No response surface for "
+                                                    + thysim);
+                }
+                try {
+                    s = read(f);
+                } catch (IOException ex) {
+                    throw new IllegalStateException("Can't read " + f, ex);
+                }
+                LOADED.put(thysim, s);
+            }
+            return s;
+        }
+    }
+
+    public static File file(String thysim)
+    {
+        return new File(ModelRegistry.configDir(), thysim + ".surface");
+    }
+
+    public String getThysim()
+    {
+        return thysim;
+    }
+
+    // Outputs at the given dials (percent), interpolated. Dials outside the
+    // slider ranges are clamped. out is indexed hormone * 3 + stat. Grid
+    // points without a steady state are left out; NaN if all are.
+    public double[] predict(double[] dials)
+    {
+        int base = 0;
+        double[] frac = new double[4];
+        for (int a = 0; a < 4; a++) {
+            if (points[a] == 1) {
+                continue;
+            }
+            double x = Math.min(Math.max(dials[a], 0), DIAL_MAX[a])
+                     / DIAL_MAX[a] * (points[a] - 1);
+            int i = Math.min((int) x, points[a] - 2);
+            frac[a] = x - i;
+            base += i * stride[a];
+        }
+
+        double[] out = new double[OUTPUTS];
+        double total = 0;
+        for (int corner = 0; corner < 16; corner++) {
+            double w = 1;
+            int at = base;
+            for (int a = 0; a < 4 && w != 0; a++) {
+                if ((corner & (1 << a)) != 0) {
+                    w  *= frac[a];
+                    at += stride[a];
+                } else {
+                    w  *= 1 - frac[a];
+                }
+            }
+            at *= OUTPUTS;
+            if (w == 0 || Float.isNaN(values[at])) {
+                continue;
+            }
+            total += w;
+            for (int o = 0; o < OUTPUTS; o++) {
+                out[o] += w * values[at + o];
+            }
+        }
+        for (int o = 0; o < OUTPUTS; o++) {
+            out[o] /= total;
+        }
+        return out;
+    }
+
+    // Solve the periodic steady state of thysim at the given dials (percent)
+    // with the variant's own parameters. token may be null.
+    public static double[] solve(String thysim, double[] dials,
+                                 CancellationToken token)
+    {
+        ModelVariant v = ModelRegistry.get(thysim);
+        double[] kp = v.getParameters();
+        ThyroidModel ode = v.create(solverDials(dials, kp), 0, 0, kp);
+        double[] q = v.getSteadyState();
+
+        FirstOrderIntegrator foi = Thyrosim.newIntegrator();
+        foi.setMaxEvaluations(MAX_EVALUATIONS);
+        if (token != null) {
+            foi.addStepHandler(token);
+        }
+        try {
+            foi.integrate(ode, 0, q, WARMUP, q);
+        } catch (MaxCountExceededException ex) {
+            // E.g. with both secretion dials at 0 TSH grows without bound
+            throw new IllegalStateException("No steady state at these dials");
+        }
+
+        return sampleDay(ode, foi, q, v.getConversionFactors(), kp);
+    }
+
+    // Integrate one day from q with foi, sampling the outputs every SAMPLE
+    // hours, and return their mean, min and max, indexed hormone * 3 + stat.
+    // q holds the state at the end of the day afterwards. The sampler is
+    // removed from foi again, other step handlers are kept.
+    static double[] sampleDay(ThyroidModel ode, FirstOrderIntegrator foi,
+                              double[] q, ConversionFactors cfs, double[] kp)
+    {
+        final double[] out = new double[OUTPUTS];
+        for (int h = 0; h < HORMONES.length; h++) {
+            out[h * 3 + 1] = Double.POSITIVE_INFINITY;
+            out[h * 3 + 2] = Double.NEGATIVE_INFINITY;
+        }
+        final GridSampler sampler = new GridSampler(
+            SAMPLE, 24, COLS, cfs, Thyrosim.freeCoefficients(kp));
+        sampler.reset(new GridSampler.Sink() {
+            public void sample(int i, int o, double val)
+            {
+                // The last sample is the first one of the next day
+                if (i < sampler.getPoints() - 1) {
+                    out[o * 3] += val;
+                }
+                out[o * 3 + 1] = Math.min(out[o * 3 + 1], val);
+                out[o * 3 + 2] = Math.max(out[o * 3 + 2], val);
+            }
+        });
+        List<StepHandler> handlers =
+            new ArrayList<StepHandler>(foi.getStepHandlers());
+        foi.addStepHandler(sampler);
+        try {
+            foi.integrate(ode, 0, q, 24, q);
+        } finally {
+            foi.clearStepHandlers();
+            for (StepHandler h : handlers) {
+                foi.addStepHandler(h);
+            }
+        }
+        for (int h = 0; h < HORMONES.length; h++) {
+            out[h * 3] /= sampler.getPoints() - 1;
+        }
+        return out;
+    }
+
+    // Slider percentages to the dials the ODEs take. Same as getDialString()
+    // in THYROSIM.pm.
+    public static double[] solverDials(double[] dials, double[] kp)
+    {
+        double d1 = dials[0] / 100;
+        double d2 = dials[1] / 100;
+        double d3 = dials[2] / 100;
+        double d4 = dials[3] / 100;
+        double t4absorb = d2 == 0 ? 0 : kp[11] * (1 - d2) / d2 / kp[44];
+        double t3absorb = d4 == 0 ? 0 : kp[28] * (1 - d4) / d4 / kp[46];
+        return new double[] { d1, t4absorb, d3, t3absorb };
+    }
+
+    // Solve every grid point on threads workers
+    public static ResponseSurface build(final String thysim, int[] points,
+                                        int threads)
+    {
+        final int[] pts = points.clone();
+        int n = 1;
+        for (int a = 0; a < 4; a++) {
+            if (pts[a] < 1) {
+                throw new IllegalArgumentException("Bad number of points: "
+                                                   + pts[a]);
+            }
+            n *= pts[a];
+        }
+        final int cells = n;
+        final float[] values = new float[cells * OUTPUTS];
+        final ResponseSurface s = new ResponseSurface(thysim, pts, values);
+        final AtomicInteger next = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        try {
+            for (int w = 0; w < threads; w++) {
+                futures.add(pool.submit(new Callable<Void>() {
+                    public Void call()
+                    {
+                        int c;
+                        while ((c = next.getAndIncrement()) < cells) {
+                            double[] out;
+                            try {
+                                out = solve(thysim, s.dialsAt(c), null);
+                            } catch (IllegalStateException ex) {
+                                out = new double[OUTPUTS];
+                                java.util.Arrays.fill(out, Double.NaN);
+                            }
+                            for (int o = 0; o < OUTPUTS; o++) {
+                                values[c * OUTPUTS + o] = (float) out[o];
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+        return s;
+    }
+
+    // Dials (percent) of grid point c
+    private double[] dialsAt(int c)
+    {
+        double[] d = new double[4];
+        for (int a = 0; a < 4; a++) {
+            int i = c / stride[a] % points[a];
+            d[a] = points[a] == 1 ? DEFAULT_DIALS[a]
+                                  : DIAL_MAX[a] * i / (points[a] - 1);
+        }
+        return d;
+    }
+
+    public void write(File f) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(f)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(thysim);
+            for (int a = 0; a < 4; a++) {
+                out.writeInt(points[a]);
+            }
+            for (float v : values) {
+                out.writeFloat(v);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    public static ResponseSurface read(File f) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(f)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a response surface: " + f);
+            }
+            String thysim = in.readUTF();
+            int[] points = new int[4];
+            int n = OUTPUTS;
+            for (int a = 0; a < 4; a++) {
+                points[a] = in.readInt();
+                n *= points[a];
+            }
+            float[] values = new float[n];
+            for (int i = 0; i < n; i++) {
+                values[i] = in.readFloat();
+            }
+            return new ResponseSurface(thysim, points, values);
+        } finally {
+            in.close();
+        }
+    }
+
+    // The outputs as
+    //   {"dials":[...],"exact":false,"tsh":{"mean":"..","min":"..","max":".."},
+    //    "ft4":{...},"ft3":{...}}
+    public static StringBuilder toJson(double[] dials, double[] out,
+                                       boolean exact)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        Json.appendKey(sb, "dials");
+        sb.append('[');
+        for (int a = 0; a < 4; a++) {
+            if (a > 0) {
+                sb.append(',');
+            }
+            Json.appendQuoted4(sb, dials[a]);
+        }
+        sb.append("],");
+        Json.appendKey(sb, "exact");
+        sb.append(exact);
+        appendOutputs(sb, out);
+        sb.append('}');
+        return sb;
+    }
+
+    // Append ,"tsh":{"mean":"..","min":"..","max":".."},"ft4":{...},
+    // "ft3":{...}
+    static void appendOutputs(StringBuilder sb, double[] out)
+    {
+        for (int h = 0; h < HORMONES.length; h++) {
+            sb.append(',');
+            Json.appendKey(sb, HORMONES[h]);
+            sb.append('{');
+            for (int st = 0; st < STATS.length; st++) {
+                if (st > 0) {
+                    sb.append(',');
+                }
+                Json.appendKey(sb, STATS[st]);
+                Json.appendQuoted4(sb, out[h * 3 + st]);
+            }
+            sb.append('}');
+        }
+    }
+
+    // Modes handled by execute()
+    public static boolean isMode(String mode)
+    {
+        return mode.equals("preview") || mode.equals("steady");
+    }
+
+    // Answer a preview or steady request: { mode, thysim, d1, d2, d3, d4 }.
+    // token may be null.
+    public static StringBuilder execute(String[] args, CancellationToken token)
+    {
+        if (args.length != 6) {
+            throw new IllegalArgumentException("Expected MODE THYSIM D1 D2 D3 D4");
+        }
+        double[] dials = new double[4];
+        for (int a = 0; a < 4; a++) {
+            dials[a] = Double.parseDouble(args[2 + a]);
+        }
+        if (args[0].equals("preview")) {
+            return toJson(dials, get(args[1]).predict(dials), false);
+        }
+        if (args[0].equals("steady")) {
+            return toJson(dials, solve(args[1], dials, token), true);
+        }
+        throw new IllegalArgumentException("Unknown mode: " + args[0]);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length > 0 && args[0].equals("build")) {
+            String thysim = args[1];
+            int[] points = DEFAULT_POINTS;
+            if (args.length > 2) {
+                String[] f = args[2].split(",");
+                if (f.length != 4) {
+                    throw new IllegalArgumentException("Expected 4 axes: "
+                                                       + args[2]);
+                }
+                points = new int[4];
+                for (int a = 0; a < 4; a++) {
+                    points[a] = Integer.parseInt(f[a]);
+                }
+            }
+            int threads = args.length > 3 ? Integer.parseInt(args[3])
+                        : Runtime.getRuntime().availableProcessors();
+            File f = args.length > 4 ? new File(args[4]) : file(thysim);
+            long start = System.nanoTime();
+            build(thysim, points, threads).write(f);
+            System.err.println("Wrote " + f + " in "
+                               + (System.nanoTime() - start) / 1000000 + " ms");
+            return;
+        }
+        System.out.print(execute(args, null));
+        System.out.flush();
+    }
+}
@@ -0,0 +1,141 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import org.apache.commons.math3.ode.sampling.StepHandler;
+import org.apache.commons.math3.ode.sampling.StepInterpolator;
+
+// Builds the browser object directly from the integrator. This is the Java
+// version of processResults() followed by getBrowserObj() in THYROSIM.pm:
+//   - Time is made continuous across integrations: 0 1 2 3 0 1 2 3 => 0 - 7
+//   - min/max/end are tracked per show compartment as values arrive
+//   - Values are converted to display units as they arrive
+//   - Everything is written out with 4 decimal places once at the end, as
+//     JSON arrays or packed, see DeltaCodec
+// Only the projected columns are computed and kept, see Projection.
+public class ResultProcessor implements StepHandler, SegmentListener
+{
+    private static final int COLUMNS = Projection.COLUMNS;
+
+    private final int[] show;
+    private final double[] cf;
+    private final double[] p; // FT4/FT3 coefficients p7-p10, p24-p27
+
+    private final DoubleList[] values = new DoubleList[COLUMNS];
+    private final double[] min = new double[COLUMNS];
+    private final double[] max = new double[COLUMNS];
+    private final double[] end = new double[COLUMNS];
+    private final boolean[] seen = new boolean[COLUMNS];
+
+    private double offset; // Time offset of the current integration
+
+    public ResultProcessor(int[] show, ConversionFactors cfs, double[] p)
+    {
+        this.show = show.clone();
+        this.p    = p;
+        this.cf   = new double[COLUMNS];
+        for (int c = 0; c < COLUMNS; c++) {
+            cf[c] = cfs.forColumn(c);
+        }
+        for (int c : this.show) {
+            values[c] = new DoubleList();
+        }
+    }
+
+    public void beginSegment(Segment segment, double offset)
+    {
+        this.offset = offset;
+    }
+
+    // The end state of i0 is not shown to users, but it does count toward
+    // min/max, the same as in processResults(). That includes its time t,
+    // which is not offset as i0 comes before the shown integrations.
+    public void seed(double t, double[] y)
+    {
+        for (int c : show) {
+            track(c, Projection.value(c, t, y, p) * cf[c]);
+        }
+    }
+
+    public void init(double t0, double[] y0, double t)
+    {
+    }
+
+    public void handleStep(StepInterpolator interpolator, boolean isLast)
+    {
+        double   t = interpolator.getCurrentTime();
+        double[] y = interpolator.getInterpolatedState();
+        for (int c : show) {
+            double v = Projection.value(c, t + offset, y, p) * cf[c];
+            values[c].add(v);
+            track(c, v);
+            end[c] = v;
+        }
+    }
+
+    private void track(int c, double v)
+    {
+        if (!seen[c]) {
+            min[c]  = v;
+            max[c]  = v;
+            seen[c] = true;
+        } else if (v < min[c]) {
+            min[c] = v;
+        } else if (v > max[c]) {
+            max[c] = v;
+        }
+    }
+
+    // Write "data":{...}, i.e. $obj->{data}->{$c} for all show compartments
+    public void appendData(StringBuilder sb)
+    {
+        appendData(sb, false);
+    }
+
+    // As above. If packed, each compartment has "packed" (see DeltaCodec)
+    // instead of "values", unless its values can't be packed.
+    public void appendData(StringBuilder sb, boolean packed)
+    {
+        Json.appendKey(sb, "data");
+        sb.append('{');
+        for (int i = 0; i < show.length; i++) {
+            int c = show[i];
+            DoubleList v = values[c];
+            if (i > 0) {
+                sb.append(',');
+            }
+            Json.appendKey(sb, Projection.name(c));
+            sb.append('{');
+            Json.appendKey(sb, "name");
+            Json.appendString(sb, Projection.name(c));
+            sb.append(',');
+            Json.appendKey(sb, "idx");
+            sb.append(c).append(',');
+            Json.appendKey(sb, "count");
+            sb.append(v.size()).append(',');
+            Json.appendKey(sb, "min");
+            Json.appendQuoted4(sb, min[c]);
+            sb.append(',');
+            Json.appendKey(sb, "max");
+            Json.appendQuoted4(sb, max[c]);
+            sb.append(',');
+            Json.appendKey(sb, "end");
+            Json.appendQuoted4(sb, end[c]);
+            sb.append(',');
+            if (packed && DeltaCodec.canEncode(v)) {
+                Json.appendKey(sb, "packed");
+                DeltaCodec.appendEncoded(sb, v);
+                sb.append('}');
+                continue;
+            }
+            Json.appendKey(sb, "values");
+            sb.append('[');
+            for (int j = 0; j < v.size(); j++) {
+                if (j > 0) {
+                    sb.append(',');
+                }
+                Json.appendQuoted4(sb, v.get(j));
+            }
+            sb.append("]}");
+        }
+        sb.append('}');
+    }
+}
@@ -0,0 +1,339 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import org.apache.commons.math3.ode.AbstractIntegrator;
+import org.apache.commons.math3.ode.ExpandableStatefulODE;
+import org.apache.commons.math3.ode.sampling.AbstractStepInterpolator;
+import org.apache.commons.math3.ode.sampling.StepInterpolator;
+
+// Adaptive, fourth order Rosenbrock integrator with Shampine's A-stable
+// coefficients (Kaps and Rentrop, Numer. Math. 33, 1979; the stiff() routine
+// of Numerical Recipes). Each step solves four linear systems with
+//   W = I / (g h) - J,   g = 1/2
+// and an embedded third order solution gives the error, which is kept below
+// absTol[i] + relTol |y[i]| in every component. J and df/dt are taken by
+// finite differences once per step.
+//
+// Unlike DormandPrince853, whose step is bound by the fastest mode of the
+// model (about 365/h) rather than by accuracy, the step here follows the
+// tolerances. With the tolerances of an AccuracyBudget it is several times
+// longer.
+//
+// States between steps are cubic Hermite interpolations. Event handlers are
+// not supported.
+public class Ros4Integrator extends AbstractIntegrator
+{
+    private static final double GAM = 1.0 / 2;
+    private static final double A21 = 2, A31 = 48.0 / 25, A32 = 6.0 / 25;
+    private static final double C21 = -8, C31 = 372.0 / 25, C32 = 12.0 / 5;
+    private static final double C41 = -112.0 / 125, C42 = -54.0 / 125;
+    private static final double C43 = -2.0 / 5;
+    private static final double B1 = 19.0 / 9, B2 = 1.0 / 2;
+    private static final double B3 = 25.0 / 108, B4 = 125.0 / 108;
+    private static final double E1 = 17.0 / 54, E2 = 7.0 / 36;
+    private static final double E3 = 0, E4 = 125.0 / 108;
+    private static final double C1X = 1.0 / 2, C2X = -3.0 / 2;
+    private static final double C3X = 121.0 / 50, C4X = 29.0 / 250;
+    private static final double A2X = 1, A3X = 3.0 / 5;
+
+    // Step size control
+    private static final double SAFETY = 0.9;
+    private static final double GROW   = 1.5;
+    private static final double SHRINK = 0.5;
+    private static final double PGROW  = -0.25;
+    private static final double PSHRNK = -1.0 / 3;
+    private static final double ERRCON = Math.pow(GROW / SAFETY, 1 / PGROW);
+
+    private final double minStep;
+    private final double maxStep;
+    private final double firstStep;
+    private final double[] absTol;
+    private final double relTol;
+
+    // Steps from minStep to maxStep hours, starting each integration at
+    // firstStep; absTol per component
+    public Ros4Integrator(double minStep, double maxStep, double firstStep,
+                          double[] absTol, double relTol)
+    {
+        super("ROS4");
+        this.minStep   = minStep;
+        this.maxStep   = maxStep;
+        this.firstStep = firstStep;
+        this.absTol    = absTol.clone();
+        this.relTol    = relTol;
+    }
+
+    @Override
+    public void integrate(ExpandableStatefulODE equations, double t)
+    {
+        sanityChecks(equations, t);
+        setEquations(equations);
+        boolean forward = t > equations.getTime();
+        double sign = forward ? 1 : -1;
+
+        double[] y0 = equations.getCompleteState();
+        double[] y = y0.clone();
+        int n = y.length;
+        if (n != absTol.length) {
+            throw new IllegalArgumentException("Expected " + absTol.length
+                                               + " tolerances");
+        }
+        double[] ySave  = new double[n];
+        double[] f      = new double[n];
+        double[] fSave  = new double[n];
+        double[] dfdt   = new double[n];
+        double[] rhs    = new double[n];
+        double[] err    = new double[n];
+        double[] g1 = new double[n], g2 = new double[n];
+        double[] g3 = new double[n], g4 = new double[n];
+        double[][] jac = new double[n][n];
+        double[][] lu  = new double[n][n];
+        int[] pivot = new int[n];
+
+        HermiteInterpolator interpolator = new HermiteInterpolator();
+        interpolator.init(y, forward, equations);
+        interpolator.storeTime(equations.getTime());
+
+        stepStart = equations.getTime();
+        stepSize  = sign * Math.min(firstStep, maxStep);
+        initIntegration(equations.getTime(), y0, t);
+
+        computeDerivatives(stepStart, y, f);
+        interpolator.setDerivatives(f);
+        isLastStep = false;
+        do {
+            interpolator.shift();
+            System.arraycopy(y, 0, ySave, 0, n);
+            System.arraycopy(f, 0, fSave, 0, n);
+            jacobian(stepStart, ySave, fSave, jac, dfdt, err, rhs);
+
+            double h;
+            while (true) {
+                h = stepSize;
+                if (forward ? stepStart + h >= t : stepStart + h <= t) {
+                    h = t - stepStart;
+                }
+                for (int i = 0; i < n; i++) {
+                    for (int j = 0; j < n; j++) {
+                        lu[i][j] = -jac[i][j];
+                    }
+                    lu[i][i] += 1 / (GAM * h);
+                }
+                RosenbrockIntegrator.factor(lu, pivot);
+
+                for (int i = 0; i < n; i++) {
+                    rhs[i] = fSave[i] + h * C1X * dfdt[i];
+                }
+                RosenbrockIntegrator.solve(lu, pivot, rhs, g1);
+                for (int i = 0; i < n; i++) {
+                    y[i] = ySave[i] + A21 * g1[i];
+                }
+                computeDerivatives(stepStart + A2X * h, y, f);
+                for (int i = 0; i < n; i++) {
+                    rhs[i] = f[i] + h * C2X * dfdt[i] + C21 * g1[i] / h;
+                }
+                RosenbrockIntegrator.solve(lu, pivot, rhs, g2);
+                for (int i = 0; i < n; i++) {
+                    y[i] = ySave[i] + A31 * g1[i] + A32 * g2[i];
+                }
+                computeDerivatives(stepStart + A3X * h, y, f);
+                for (int i = 0; i < n; i++) {
+                    rhs[i] = f[i] + h * C3X * dfdt[i]
+                           + (C31 * g1[i] + C32 * g2[i]) / h;
+                }
+                RosenbrockIntegrator.solve(lu, pivot, rhs, g3);
+                for (int i = 0; i < n; i++) {
+                    rhs[i] = f[i] + h * C4X * dfdt[i]
+                           + (C41 * g1[i] + C42 * g2[i] + C43 * g3[i]) / h;
+                }
+                RosenbrockIntegrator.solve(lu, pivot, rhs, g4);
+
+                double errMax = 0;
+                for (int i = 0; i < n; i++) {
+                    y[i] = ySave[i] + B1 * g1[i] + B2 * g2[i]
+                         + B3 * g3[i] + B4 * g4[i];
+                    err[i] = E1 * g1[i] + E2 * g2[i] + E3 * g3[i]
+                           + E4 * g4[i];
+                    double tol = absTol[i] + relTol * Math.abs(ySave[i]);
+                    errMax = Math.max(errMax, Math.abs(err[i]) / tol);
+                }
+                if (errMax <= 1) {
+                    double next = errMax > ERRCON
+                                ? SAFETY * h * Math.pow(errMax, PGROW)
+                                : GROW * h;
+                    stepSize = sign * Math.min(Math.abs(next), maxStep);
+                    break;
+                }
+                stepSize = sign * Math.max(SAFETY * Math.abs(h)
+                                           * Math.pow(errMax, PSHRNK),
+                                           SHRINK * Math.abs(h));
+                if (Math.abs(stepSize) < minStep) {
+                    throw new IllegalStateException("Step size below "
+                                                    + minStep + " at t = "
+                                                    + stepStart);
+                }
+            }
+
+            // f at the end of the step: for the interpolator, and the start
+            // of the next step
+            computeDerivatives(stepStart + h, y, f);
+            interpolator.setDerivatives(f);
+            interpolator.storeTime(stepStart + h);
+            stepStart = acceptStep(interpolator, y, f, t);
+            if (!isLastStep) {
+                interpolator.storeTime(stepStart);
+            }
+        } while (!isLastStep);
+
+        equations.setTime(stepStart);
+        equations.setCompleteState(y);
+        stepStart = Double.NaN;
+        stepSize  = Double.NaN;
+    }
+
+    // Forward difference Jacobian and df/dt of f at (t, y); f0 = f(t, y).
+    // yTmp and tmp are scratch space.
+    private void jacobian(double t, double[] y, double[] f0, double[][] jac,
+                          double[] dfdt, double[] yTmp, double[] tmp)
+    {
+        int n = y.length;
+        System.arraycopy(y, 0, yTmp, 0, n);
+        for (int j = 0; j < n; j++) {
+            double d = 1.0e-7 * Math.max(Math.abs(y[j]), 1.0e-5);
+            yTmp[j] = y[j] + d;
+            computeDerivatives(t, yTmp, tmp);
+            yTmp[j] = y[j];
+            for (int i = 0; i < n; i++) {
+                jac[i][j] = (tmp[i] - f0[i]) / d;
+            }
+        }
+        double dt = 1.0e-7 * Math.max(Math.abs(t), 1);
+        computeDerivatives(t + dt, y, tmp);
+        for (int i = 0; i < n; i++) {
+            dfdt[i] = (tmp[i] - f0[i]) / dt;
+        }
+    }
+
+    // Cubic through the states and derivatives at the ends of a step
+    private static final class HermiteInterpolator
+        extends AbstractStepInterpolator
+    {
+        private static final long serialVersionUID = 1L;
+
+        private double[] previousState;
+        private double[] previousDerivative;
+        private double[] currentDerivative;
+
+        HermiteInterpolator()
+        {
+        }
+
+        HermiteInterpolator(HermiteInterpolator other)
+        {
+            super(other);
+            previousState = copy(other.previousState);
+            previousDerivative = copy(other.previousDerivative);
+            currentDerivative = copy(other.currentDerivative);
+        }
+
+        private static double[] copy(double[] a)
+        {
+            return a == null ? null : a.clone();
+        }
+
+        void init(double[] y, boolean forward, ExpandableStatefulODE equations)
+        {
+            reinitialize(y, forward, equations.getPrimaryMapper(),
+                         equations.getSecondaryMappers());
+            previousState      = new double[y.length];
+            previousDerivative = new double[y.length];
+            currentDerivative  = new double[y.length];
+        }
+
+        // Derivatives at the current state, set before storeTime()
+        void setDerivatives(double[] f)
+        {
+            System.arraycopy(f, 0, currentDerivative, 0, f.length);
+        }
+
+        @Override
+        public void shift()
+        {
+            super.shift();
+            System.arraycopy(currentState, 0, previousState, 0,
+                             currentState.length);
+            System.arraycopy(currentDerivative, 0, previousDerivative, 0,
+                             currentDerivative.length);
+        }
+
+        @Override
+        protected StepInterpolator doCopy()
+        {
+            return new HermiteInterpolator(this);
+        }
+
+        @Override
+        protected void computeInterpolatedStateAndDerivatives(
+            double theta, double oneMinusThetaH)
+        {
+            double th2 = theta * theta;
+            double th3 = th2 * theta;
+            double h00 = 2 * th3 - 3 * th2 + 1;
+            double h10 = th3 - 2 * th2 + theta;
+            double h01 = -2 * th3 + 3 * th2;
+            double h11 = th3 - th2;
+            double d00 = 6 * th2 - 6 * theta;
+            double d10 = 3 * th2 - 4 * theta + 1;
+            double d11 = 3 * th2 - 2 * theta;
+            for (int i = 0; i < currentState.length; i++) {
+                double y0 = previousState[i], y1 = currentState[i];
+                double f0 = previousDerivative[i], f1 = currentDerivative[i];
+                interpolatedState[i] = h00 * y0 + h * h10 * f0
+                                     + h01 * y1 + h * h11 * f1;
+                interpolatedDerivatives[i] = h == 0 ? f1
+                    : d00 * (y0 - y1) / h + d10 * f0 + d11 * f1;
+            }
+        }
+
+        @Override
+        public void writeExternal(ObjectOutput out) throws IOException
+        {
+            writeBaseExternal(out);
+            write(out, previousState);
+            write(out, previousDerivative);
+            write(out, currentDerivative);
+        }
+
+        @Override
+        public void readExternal(ObjectInput in)
+            throws IOException, ClassNotFoundException
+        {
+            double t = readBaseExternal(in);
+            previousState      = read(in);
+            previousDerivative = read(in);
+            currentDerivative  = read(in);
+            setInterpolatedTime(t);
+        }
+
+        private static void write(ObjectOutput out, double[] a)
+            throws IOException
+        {
+            out.writeInt(a == null ? -1 : a.length);
+            for (int i = 0; a != null && i < a.length; i++) {
+                out.writeDouble(a[i]);
+            }
+        }
+
+        private static double[] read(ObjectInput in) throws IOException
+        {
+            int n = in.readInt();
+            double[] a = n < 0 ? null : new double[n];
+            for (int i = 0; i < n; i++) {
+                a[i] = in.readDouble();
+            }
+            return a;
+        }
+    }
+}
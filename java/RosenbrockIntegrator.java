@@ -0,0 +1,285 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import org.apache.commons.math3.ode.AbstractIntegrator;
+import org.apache.commons.math3.ode.ExpandableStatefulODE;
+import org.apache.commons.math3.ode.sampling.AbstractStepInterpolator;
+import org.apache.commons.math3.ode.sampling.StepInterpolator;
+
+// Fixed step, linearly implicit integrator for quick previews: the two stage
+// Rosenbrock method ROS2 (Verwer et al., SIAM J. Sci. Comput. 20, 1999)
+//   (I - g h J) k1 = f(t, y)
+//   (I - g h J) k2 = f(t + h, y + h k1) - 2 k1
+//   y' = y + 3/2 h k1 + 1/2 h k2,   g = 1 + 1/sqrt(2)
+// It is second order for any J, so the Jacobian (by finite differences) is
+// only updated every refresh steps once the step has reached its full size.
+// It is L-stable, so unlike DormandPrince853 its step is not bound by the
+// fastest mode of the model (T3 exchange between q4 and q5, about 365/h).
+// At a quarter of an hour a 30 day run takes a tenth of the time of the
+// adaptive solver, and stays within a few percent of it.
+//
+// Step handlers see every step; states between steps are interpolated
+// linearly. Event handlers are not supported.
+public class RosenbrockIntegrator extends AbstractIntegrator
+{
+    private static final double GAMMA = 1 + 1 / Math.sqrt(2);
+
+    // Each integration starts at step / RAMP and grows by GROWTH per step
+    private static final double RAMP   = 64;
+    private static final double GROWTH = 1.1;
+
+    private final double step;
+    private final int refresh;
+
+    // step in hours; refresh is the number of steps between Jacobians
+    public RosenbrockIntegrator(double step, int refresh)
+    {
+        super("ROS2");
+        this.step    = step;
+        this.refresh = Math.max(1, refresh);
+    }
+
+    @Override
+    public void integrate(ExpandableStatefulODE equations, double t)
+    {
+        sanityChecks(equations, t);
+        setEquations(equations);
+        boolean forward = t > equations.getTime();
+
+        double[] y0 = equations.getCompleteState();
+        double[] y = y0.clone();
+        int n = y.length;
+        double[] f    = new double[n];
+        double[] k1   = new double[n];
+        double[] k2   = new double[n];
+        double[] yTmp = new double[n];
+        double[][] jac = new double[n][n];
+        double[][] lu  = new double[n][n];
+        int[] pivot = new int[n];
+
+        LinearInterpolator interpolator = new LinearInterpolator();
+        interpolator.init(y, forward, equations);
+        interpolator.storeTime(equations.getTime());
+
+        // Start small, as each segment opens with a fast transient (a dose or
+        // a jump in the dials), and grow to step
+        stepStart = equations.getTime();
+        stepSize  = (forward ? step : -step) / RAMP;
+        initIntegration(equations.getTime(), y0, t);
+
+        int age = refresh;
+        double luStep = Double.NaN;
+        isLastStep = false;
+        do {
+            interpolator.shift();
+            double h = stepSize;
+            if (forward ? stepStart + h >= t : stepStart + h <= t) {
+                h = t - stepStart;
+            }
+
+            computeDerivatives(stepStart, y, f);
+            if (age >= refresh || Math.abs(stepSize) < step) {
+                jacobian(stepStart, y, f, jac, yTmp, k2);
+                age = 0;
+                luStep = Double.NaN;
+            }
+            if (h != luStep) {
+                // W = I - g h J
+                for (int i = 0; i < n; i++) {
+                    for (int j = 0; j < n; j++) {
+                        lu[i][j] = (i == j ? 1 : 0) - GAMMA * h * jac[i][j];
+                    }
+                }
+                factor(lu, pivot);
+                luStep = h;
+            }
+            age++;
+
+            solve(lu, pivot, f, k1);
+            for (int i = 0; i < n; i++) {
+                yTmp[i] = y[i] + h * k1[i];
+            }
+            computeDerivatives(stepStart + h, yTmp, f);
+            for (int i = 0; i < n; i++) {
+                f[i] -= 2 * k1[i];
+            }
+            solve(lu, pivot, f, k2);
+            for (int i = 0; i < n; i++) {
+                y[i] += h * (1.5 * k1[i] + 0.5 * k2[i]);
+            }
+
+            interpolator.storeTime(stepStart + h);
+            stepStart = acceptStep(interpolator, y, f, t);
+            if (Math.abs(stepSize) < step) {
+                stepSize = forward ? Math.min(stepSize * GROWTH, step)
+                                   : Math.max(stepSize * GROWTH, -step);
+            }
+            if (!isLastStep) {
+                interpolator.storeTime(stepStart);
+            }
+        } while (!isLastStep);
+
+        equations.setTime(stepStart);
+        equations.setCompleteState(y);
+        stepStart = Double.NaN;
+        stepSize  = Double.NaN;
+    }
+
+    // Forward difference Jacobian of f at (t, y); f0 = f(t, y)
+    private void jacobian(double t, double[] y, double[] f0, double[][] jac,
+                          double[] yTmp, double[] f1)
+    {
+        int n = y.length;
+        System.arraycopy(y, 0, yTmp, 0, n);
+        for (int j = 0; j < n; j++) {
+            double d = 1.0e-7 * Math.max(Math.abs(y[j]), 1.0e-5);
+            yTmp[j] = y[j] + d;
+            computeDerivatives(t, yTmp, f1);
+            yTmp[j] = y[j];
+            for (int i = 0; i < n; i++) {
+                jac[i][j] = (f1[i] - f0[i]) / d;
+            }
+        }
+    }
+
+    // LU decomposition in place, with partial pivoting
+    static void factor(double[][] a, int[] pivot)
+    {
+        int n = a.length;
+        for (int k = 0; k < n; k++) {
+            int p = k;
+            for (int i = k + 1; i < n; i++) {
+                if (Math.abs(a[i][k]) > Math.abs(a[p][k])) {
+                    p = i;
+                }
+            }
+            pivot[k] = p;
+            if (p != k) {
+                double[] r = a[p];
+                a[p] = a[k];
+                a[k] = r;
+            }
+            if (a[k][k] == 0) {
+                throw new IllegalStateException("Singular iteration matrix");
+            }
+            for (int i = k + 1; i < n; i++) {
+                double m = a[i][k] / a[k][k];
+                a[i][k] = m;
+                if (m != 0) {
+                    for (int j = k + 1; j < n; j++) {
+                        a[i][j] -= m * a[k][j];
+                    }
+                }
+            }
+        }
+    }
+
+    // Solve LU x = b, with the rows swapped as recorded in pivot
+    static void solve(double[][] lu, int[] pivot, double[] b, double[] x)
+    {
+        int n = lu.length;
+        System.arraycopy(b, 0, x, 0, n);
+        for (int k = 0; k < n; k++) {
+            int p = pivot[k];
+            if (p != k) {
+                double s = x[p];
+                x[p] = x[k];
+                x[k] = s;
+            }
+        }
+        for (int i = 1; i < n; i++) {
+            double s = x[i];
+            for (int j = 0; j < i; j++) {
+                s -= lu[i][j] * x[j];
+            }
+            x[i] = s;
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            double s = x[i];
+            for (int j = i + 1; j < n; j++) {
+                s -= lu[i][j] * x[j];
+            }
+            x[i] = s / lu[i][i];
+        }
+    }
+
+    // Straight line between the states at the ends of a step
+    private static final class LinearInterpolator
+        extends AbstractStepInterpolator
+    {
+        private static final long serialVersionUID = 1L;
+
+        private double[] previousState;
+
+        LinearInterpolator()
+        {
+        }
+
+        LinearInterpolator(LinearInterpolator other)
+        {
+            super(other);
+            previousState = other.previousState == null
+                          ? null : other.previousState.clone();
+        }
+
+        void init(double[] y, boolean forward, ExpandableStatefulODE equations)
+        {
+            reinitialize(y, forward, equations.getPrimaryMapper(),
+                         equations.getSecondaryMappers());
+        }
+
+        @Override
+        public void shift()
+        {
+            super.shift();
+            if (previousState == null) {
+                previousState = new double[currentState.length];
+            }
+            System.arraycopy(currentState, 0, previousState, 0,
+                             currentState.length);
+        }
+
+        @Override
+        protected StepInterpolator doCopy()
+        {
+            return new LinearInterpolator(this);
+        }
+
+        @Override
+        protected void computeInterpolatedStateAndDerivatives(
+            double theta, double oneMinusThetaH)
+        {
+            for (int i = 0; i < currentState.length; i++) {
+                double d = currentState[i] - previousState[i];
+                interpolatedState[i] = previousState[i] + theta * d;
+                interpolatedDerivatives[i] = h == 0 ? 0 : d / h;
+            }
+        }
+
+        @Override
+        public void writeExternal(ObjectOutput out) throws IOException
+        {
+            writeBaseExternal(out);
+            int n = previousState == null ? -1 : previousState.length;
+            out.writeInt(n);
+            for (int i = 0; i < n; i++) {
+                out.writeDouble(previousState[i]);
+            }
+        }
+
+        @Override
+        public void readExternal(ObjectInput in)
+            throws IOException, ClassNotFoundException
+        {
+            double t = readBaseExternal(in);
+            int n = in.readInt();
+            previousState = n < 0 ? null : new double[n];
+            for (int i = 0; i < n; i++) {
+                previousState[i] = in.readDouble();
+            }
+            setInterpolatedTime(t);
+        }
+    }
+}
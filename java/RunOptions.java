@@ -0,0 +1,128 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Options passed as name=value after the parameters (args 78+). Modes only
+// look at the options they use.
+//   simtime=X     Total simulation time in days, copied to the browser
+//   warmup=0|1    Whether to run i0 from t1 to t2 first. When 0, the IC is
+//                 already the SS and i0 is skipped.
+//   warmed=1      The IC is the end state of an earlier i0, e.g. kept by
+//                 WarmupCache. i0 is skipped, but its end values count for
+//                 min and max as with warmup=1.
+//   seg=...       Integrations i1 - iX in order. See Segment.
+//   show=...      Columns to compute and send, see Projection.
+//   metric=...    Clinical metric, may be repeated. See MetricAccumulator.
+//   model=FILE    SBML model to run instead of Thyrosim, see SbmlModel
+//   encoding=E    browser, multi: json (default) or delta4 to pack values,
+//                 see DeltaCodec
+//   accuracy=A    browser: full (default), preview for a quick
+//                 first look within a few percent, see
+//                 Thyrosim.newIntegrator(), or budget for tolerances from
+//                 the shown decimals, see AccuracyBudget
+//   decimals=D    browser: decimals a budget keeps, 4 by default
+//   verify=0|1    browser: check a budget against a full run
+//   draws=K       bands: number of parameter draws
+//   cv=p1:0.1,... bands: coefficient of variation per parameter
+//   grid=H        bands: output grid spacing in hours
+//   threads=N     bands: number of workers, at most SharedPool.SIZE
+//   seed=S        bands: random seed
+//   store=DIR     bands: also append every draw to a ColumnStore in DIR
+//   storebits=B   bands: 32 (default) or 64 bit store columns
+public class RunOptions
+{
+    public static final String FULL    = "full";
+    public static final String PREVIEW = "preview";
+    public static final String BUDGET  = "budget";
+
+    public String simTime = "0";
+    public boolean warmup = false;
+    public boolean warmed = false;
+    public int[] show = Projection.DEFAULT;
+    public final List<Segment> segments = new ArrayList<Segment>();
+    public final List<String> metrics = new ArrayList<String>();
+    public String model = null;
+    public String encoding = "json";
+    public String accuracy = FULL;
+    public int decimals = AccuracyBudget.DEFAULT_DECIMALS;
+    public boolean verify = false;
+
+    public int draws = 100;
+    public String cv = "";
+    public double grid = 1;
+    public int threads = SharedPool.SIZE;
+    public long seed = 1;
+    public String store = null;
+    public int storeBits = 32;
+
+    public static RunOptions parse(String[] args, int from)
+    {
+        RunOptions o = new RunOptions();
+        for (int i = from; i < args.length; i++) {
+            String arg = args[i];
+            int eq = arg.indexOf('=');
+            String key = eq < 0 ? arg : arg.substring(0, eq);
+            String val = eq < 0 ? "" : arg.substring(eq + 1);
+            if (key.equals("simtime")) {
+                o.simTime = val;
+            } else if (key.equals("warmup")) {
+                o.warmup = val.equals("1");
+            } else if (key.equals("warmed")) {
+                o.warmed = val.equals("1");
+            } else if (key.equals("seg")) {
+                o.segments.add(Segment.parse(val));
+            } else if (key.equals("show")) {
+                o.show = Projection.parse(val);
+            } else if (key.equals("metric")) {
+                o.metrics.add(val);
+            } else if (key.equals("model")) {
+                o.model = val;
+            } else if (key.equals("encoding")) {
+                if (!val.equals("json") && !val.equals(DeltaCodec.ENCODING)) {
+                    throw new IllegalArgumentException("Unknown encoding: "
+                                                       + val);
+                }
+                o.encoding = val;
+            } else if (key.equals("accuracy")) {
+                if (!val.equals(FULL) && !val.equals(PREVIEW)
+                    && !val.equals(BUDGET)) {
+                    throw new IllegalArgumentException("Unknown accuracy: "
+                                                       + val);
+                }
+                o.accuracy = val;
+            } else if (key.equals("decimals")) {
+                o.decimals = Integer.parseInt(val);
+            } else if (key.equals("verify")) {
+                o.verify = val.equals("1");
+            } else if (key.equals("draws")) {
+                o.draws = Integer.parseInt(val);
+            } else if (key.equals("cv")) {
+                o.cv = val;
+            } else if (key.equals("grid")) {
+                o.grid = Double.parseDouble(val);
+            } else if (key.equals("threads")) {
+                o.threads = Math.max(1, Integer.parseInt(val));
+            } else if (key.equals("seed")) {
+                o.seed = Long.parseLong(val);
+            } else if (key.equals("store")) {
+                o.store = val;
+            } else if (key.equals("storebits")) {
+                o.storeBits = Integer.parseInt(val);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        return o;
+    }
+
+    // Total time of i1 - iX in hours
+    public double totalHours()
+    {
+        double total = 0;
+        for (Segment seg : segments) {
+            total += seg.getEnd();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,504 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+// A model read from SBML, e.g. resource/sbml/thyrosim.xml, turned into an
+// ExprGraph with one root per state. newInstance() returns an ODE system
+// compiled to bytecode by ModelCompiler, so model variants can be run without
+// hand-porting them to Java.
+//
+// States are the variables of rate rules in document order, followed by the
+// species changed by reactions. A reaction adds stoichiometry x kinetic law to
+// the rates of its reactants and products; species are taken as amounts.
+// Assignment rules are substituted into the expressions that use them. All
+// other parameters, species and compartments are parameters of the compiled
+// model and can be changed per instance.
+//
+// Supported MathML: cn, ci, pi, exponentiale, csymbol time, and apply with
+// plus, minus, times, divide, power, root, exp, ln, log, abs, sin, cos, tan.
+// Events, algebraic rules, initial assignments and function definitions are
+// not supported and are rejected.
+public class SbmlModel
+{
+    private static final String TIME_URL =
+        "http://www.sbml.org/sbml/symbols/time";
+
+    // Models loaded by load(), by canonical path
+    private static final ConcurrentHashMap<String, SbmlModel> CACHE =
+        new ConcurrentHashMap<String, SbmlModel>();
+
+    private final ExprGraph graph = new ExprGraph();
+    private final List<String> states = new ArrayList<String>();
+    private final List<String> params = new ArrayList<String>();
+    private final Map<String, Integer> paramIndex =
+        new HashMap<String, Integer>();
+    private final DoubleList initial = new DoubleList(32);
+    private final DoubleList defaults = new DoubleList(64);
+    private int[] roots;
+    private long lastModified;
+
+    // Ids of everything with a value, and the rules defining them
+    private final LinkedHashMap<String, Double> values =
+        new LinkedHashMap<String, Double>();
+    private final Map<String, Element> rateRules =
+        new LinkedHashMap<String, Element>();
+    private final Map<String, Element> assignments =
+        new HashMap<String, Element>();
+    private final Map<String, Integer> assigned = new HashMap<String, Integer>();
+    private final HashSet<String> resolving = new HashSet<String>();
+
+    private ModelCompiler.Factory factory; // Guarded by this
+
+    private SbmlModel()
+    {
+    }
+
+    // Load an SBML file, reusing the parsed and compiled model while the file
+    // is unchanged
+    public static SbmlModel load(String path) throws IOException
+    {
+        File f = new File(path).getCanonicalFile();
+        String key = f.getPath();
+        SbmlModel m = CACHE.get(key);
+        if (m == null || m.lastModified != f.lastModified()) {
+            InputStream in = new FileInputStream(f);
+            try {
+                m = parse(in);
+            } finally {
+                in.close();
+            }
+            m.lastModified = f.lastModified();
+            CACHE.put(key, m);
+        }
+        return m;
+    }
+
+    public static SbmlModel parse(InputStream in) throws IOException
+    {
+        Document doc;
+        try {
+            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+            dbf.setNamespaceAware(true);
+            dbf.setExpandEntityReferences(false);
+            dbf.setFeature(
+                "http://apache.org/xml/features/disallow-doctype-decl", true);
+            DocumentBuilder db = dbf.newDocumentBuilder();
+            doc = db.parse(in);
+        } catch (IOException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException("Can't parse SBML: " + ex.getMessage(), ex);
+        }
+        Element model = child(doc.getDocumentElement(), "model");
+        if (model == null) {
+            throw new IOException("No model in SBML");
+        }
+        SbmlModel m = new SbmlModel();
+        m.build(model);
+        return m;
+    }
+
+    public int getDimension()
+    {
+        return states.size();
+    }
+
+    public List<String> getStateNames()
+    {
+        return java.util.Collections.unmodifiableList(states);
+    }
+
+    public List<String> getParameterNames()
+    {
+        return java.util.Collections.unmodifiableList(params);
+    }
+
+    // Index of a parameter of the compiled model, -1 if there is none
+    public int parameterIndex(String name)
+    {
+        Integer i = paramIndex.get(name);
+        return i == null ? -1 : i;
+    }
+
+    // Parameter values given in the SBML
+    public double[] getDefaultParameters()
+    {
+        return defaults.toArray();
+    }
+
+    // State values given in the SBML
+    public double[] getInitialState()
+    {
+        return initial.toArray();
+    }
+
+    public ExprGraph getGraph()
+    {
+        return graph;
+    }
+
+    // Node per state holding its derivative
+    public int[] getRoots()
+    {
+        return roots.clone();
+    }
+
+    // A new ODE system with the default parameters. The model is compiled
+    // the first time this is called.
+    public CompiledModel newInstance()
+    {
+        ModelCompiler.Factory f;
+        synchronized (this) {
+            if (factory == null) {
+                factory = ModelCompiler.compile(this);
+            }
+            f = factory;
+        }
+        return f.newInstance();
+    }
+
+    private void build(Element model) throws IOException
+    {
+        for (String unsupported : new String[] { "listOfEvents",
+                "listOfInitialAssignments", "listOfFunctionDefinitions",
+                "listOfConstraints" }) {
+            Element e = child(model, unsupported);
+            if (e != null && !children(e).isEmpty()) {
+                throw new IOException("Unsupported SBML: " + unsupported);
+            }
+        }
+
+        // Everything with a value
+        List<String> species = new ArrayList<String>();
+        HashSet<String> fixedSpecies = new HashSet<String>();
+        for (Element c : children(child(model, "listOfCompartments"))) {
+            values.put(c.getAttribute("id"), number(c, "size", 1));
+        }
+        for (Element s : children(child(model, "listOfSpecies"))) {
+            String id = s.getAttribute("id");
+            double v = s.hasAttribute("initialAmount")
+                     ? number(s, "initialAmount", 0)
+                     : number(s, "initialConcentration", 0);
+            values.put(id, v);
+            species.add(id);
+            if ("true".equals(s.getAttribute("boundaryCondition"))
+                || "true".equals(s.getAttribute("constant"))) {
+                fixedSpecies.add(id);
+            }
+        }
+        for (Element p : children(child(model, "listOfParameters"))) {
+            values.put(p.getAttribute("id"), number(p, "value", Double.NaN));
+        }
+
+        // Rules
+        for (Element r : children(child(model, "listOfRules"))) {
+            String var = r.getAttribute("variable");
+            Element math = child(r, "math");
+            if (r.getLocalName().equals("rateRule")) {
+                rateRules.put(var, math);
+            } else if (r.getLocalName().equals("assignmentRule")) {
+                assignments.put(var, math);
+            } else {
+                throw new IOException("Unsupported SBML: " + r.getLocalName());
+            }
+        }
+
+        // States: rate rules, then species changed by reactions
+        List<Element> reactions = children(child(model, "listOfReactions"));
+        states.addAll(rateRules.keySet());
+        for (String s : species) {
+            if (!fixedSpecies.contains(s) && !states.contains(s)
+                && changedBy(s, reactions)) {
+                states.add(s);
+            }
+        }
+        for (String s : states) {
+            initial.add(valueOf(s));
+        }
+
+        // Parameters: everything else that has a value
+        for (Map.Entry<String, Double> e : values.entrySet()) {
+            String id = e.getKey();
+            if (!states.contains(id) && !assignments.containsKey(id)) {
+                paramIndex.put(id, params.size());
+                params.add(id);
+                defaults.add(e.getValue());
+            }
+        }
+
+        // Derivatives
+        int[] rates = new int[states.size()];
+        Map<String, Integer> none = new HashMap<String, Integer>();
+        for (int i = 0; i < states.size(); i++) {
+            Element math = rateRules.get(states.get(i));
+            rates[i] = math == null ? graph.constant(0)
+                                    : convert(single(math), none);
+        }
+        for (Element r : reactions) {
+            addReaction(r, rates);
+        }
+        roots = rates;
+    }
+
+    private void addReaction(Element r, int[] rates) throws IOException
+    {
+        Element law = child(r, "kineticLaw");
+        if (law == null) {
+            return;
+        }
+        // Local parameters hide global ids inside the kinetic law
+        Map<String, Integer> local = new HashMap<String, Integer>();
+        for (String list : new String[] { "listOfLocalParameters",
+                                          "listOfParameters" }) {
+            for (Element p : children(child(law, list))) {
+                local.put(p.getAttribute("id"),
+                          graph.constant(number(p, "value", Double.NaN)));
+            }
+        }
+        int rate = convert(single(child(law, "math")), local);
+        for (Element ref : children(child(r, "listOfReactants"))) {
+            addFlux(ref, rate, -1, rates);
+        }
+        for (Element ref : children(child(r, "listOfProducts"))) {
+            addFlux(ref, rate, 1, rates);
+        }
+    }
+
+    private void addFlux(Element ref, int rate, double sign, int[] rates)
+    {
+        int i = states.indexOf(ref.getAttribute("species"));
+        if (i < 0) {
+            return; // Boundary or constant species
+        }
+        double st = sign * number(ref, "stoichiometry", 1);
+        rates[i] = graph.add(rates[i], graph.mul(graph.constant(st), rate));
+    }
+
+    private boolean changedBy(String s, List<Element> reactions)
+    {
+        for (Element r : reactions) {
+            for (String list : new String[] { "listOfReactants",
+                                              "listOfProducts" }) {
+                for (Element ref : children(child(r, list))) {
+                    if (s.equals(ref.getAttribute("species"))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // MathML element to graph node
+    private int convert(Element e, Map<String, Integer> local)
+        throws IOException
+    {
+        String name = e.getLocalName();
+        if (name.equals("cn")) {
+            return graph.constant(parseCn(e));
+        }
+        if (name.equals("ci")) {
+            return resolve(e.getTextContent().trim(), local);
+        }
+        if (name.equals("pi")) {
+            return graph.constant(Math.PI);
+        }
+        if (name.equals("exponentiale")) {
+            return graph.constant(Math.E);
+        }
+        if (name.equals("csymbol")) {
+            if (TIME_URL.equals(e.getAttribute("definitionURL"))) {
+                return graph.time();
+            }
+            throw new IOException("Unsupported csymbol: "
+                                  + e.getAttribute("definitionURL"));
+        }
+        if (!name.equals("apply")) {
+            throw new IOException("Unsupported MathML: " + name);
+        }
+
+        List<Element> kids = children(e);
+        String op = kids.get(0).getLocalName();
+        int n = kids.size() - 1;
+        int[] x = new int[n];
+        Element degree = null;
+        int k = 0;
+        for (Element arg : kids.subList(1, kids.size())) {
+            String an = arg.getLocalName();
+            if (an.equals("degree") || an.equals("logbase")) {
+                degree = arg;
+            } else {
+                x[k++] = convert(arg, local);
+            }
+        }
+        n = k;
+
+        if (op.equals("plus")) {
+            int r = graph.constant(0);
+            for (int i = 0; i < n; i++) {
+                r = graph.add(r, x[i]);
+            }
+            return r;
+        }
+        if (op.equals("times")) {
+            int r = graph.constant(1);
+            for (int i = 0; i < n; i++) {
+                r = graph.mul(r, x[i]);
+            }
+            return r;
+        }
+        if (op.equals("minus")) {
+            return n == 1 ? graph.neg(x[0]) : graph.sub(x[0], x[1]);
+        }
+        if (op.equals("divide")) {
+            return graph.div(x[0], x[1]);
+        }
+        if (op.equals("power")) {
+            return graph.pow(x[0], x[1]);
+        }
+        if (op.equals("root")) {
+            int d = degree == null ? graph.constant(2)
+                                   : convert(single(degree), local);
+            return graph.pow(x[0], graph.div(graph.constant(1), d));
+        }
+        if (op.equals("exp")) {
+            return graph.apply(ExprGraph.EXP, x[0]);
+        }
+        if (op.equals("ln")) {
+            return graph.apply(ExprGraph.LOG, x[0]);
+        }
+        if (op.equals("log")) {
+            int base = degree == null ? graph.constant(10)
+                                      : convert(single(degree), local);
+            return graph.div(graph.apply(ExprGraph.LOG, x[0]),
+                             graph.apply(ExprGraph.LOG, base));
+        }
+        if (op.equals("abs")) {
+            return graph.apply(ExprGraph.ABS, x[0]);
+        }
+        if (op.equals("sin")) {
+            return graph.apply(ExprGraph.SIN, x[0]);
+        }
+        if (op.equals("cos")) {
+            return graph.apply(ExprGraph.COS, x[0]);
+        }
+        if (op.equals("tan")) {
+            return graph.div(graph.apply(ExprGraph.SIN, x[0]),
+                             graph.apply(ExprGraph.COS, x[0]));
+        }
+        throw new IOException("Unsupported MathML operator: " + op);
+    }
+
+    // Node for an identifier: local parameter, state, assignment rule or
+    // parameter
+    private int resolve(String id, Map<String, Integer> local)
+        throws IOException
+    {
+        Integer n = local.get(id);
+        if (n != null) {
+            return n;
+        }
+        int s = states.indexOf(id);
+        if (s >= 0) {
+            return graph.state(s);
+        }
+        Element math = assignments.get(id);
+        if (math != null) {
+            n = assigned.get(id);
+            if (n == null) {
+                if (!resolving.add(id)) {
+                    throw new IOException("Circular assignment rule: " + id);
+                }
+                n = convert(single(math), new HashMap<String, Integer>());
+                resolving.remove(id);
+                assigned.put(id, n);
+            }
+            return n;
+        }
+        Integer p = paramIndex.get(id);
+        if (p == null) {
+            throw new IOException("Unknown identifier: " + id);
+        }
+        return graph.param(p);
+    }
+
+    private double valueOf(String id)
+    {
+        Double v = values.get(id);
+        return v == null ? 0 : v;
+    }
+
+    private static double parseCn(Element e)
+    {
+        String type = e.getAttribute("type");
+        List<Element> sep = children(e);
+        if (!sep.isEmpty() && (type.equals("e-notation")
+                               || type.equals("rational"))) {
+            // <cn type="e-notation"> 1 <sep/> -3 </cn>
+            Node first = e.getFirstChild();
+            Node last = sep.get(0).getNextSibling();
+            double m = Double.parseDouble(first.getTextContent().trim());
+            double x = Double.parseDouble(last.getTextContent().trim());
+            return type.equals("rational") ? m / x : m * Math.pow(10, x);
+        }
+        return Double.parseDouble(e.getTextContent().trim());
+    }
+
+    private static double number(Element e, String attr, double def)
+    {
+        String s = e.getAttribute(attr);
+        return s.isEmpty() ? def : Double.parseDouble(s);
+    }
+
+    // The only element child of e, e.g. of <math>
+    private static Element single(Element e) throws IOException
+    {
+        List<Element> kids = children(e);
+        if (kids.size() != 1) {
+            throw new IOException("Expected one element in " + e.getLocalName());
+        }
+        return kids.get(0);
+    }
+
+    private static Element child(Element e, String name)
+    {
+        if (e == null) {
+            return null;
+        }
+        for (Element c : children(e)) {
+            if (c.getLocalName().equals(name)) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+    private static List<Element> children(Element e)
+    {
+        List<Element> list = new ArrayList<Element>();
+        if (e == null) {
+            return list;
+        }
+        for (Node n = e.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE) {
+                list.add((Element) n);
+            }
+        }
+        return list;
+    }
+}
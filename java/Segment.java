@@ -0,0 +1,101 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+// One integration interval (iX in THYROSIM.pm). Integration always starts
+// at t = 0 of the interval and runs to end hours. Inputs given at the start of
+// the interval are added to the carried over state before integrating, which
+// is what setAdjustedIC() does on the Perl side.
+//
+// On the command line a segment looks like:
+//   start:end:u1:u4[:c=amount]...
+// where c is the 1-based compartment number and amount is in mols, e.g.
+//   0:24:0:0:10=0.514800514800515
+public class Segment
+{
+    private final double start;
+    private final double end;
+    private final double u1;
+    private final double u4;
+    private final double[] dose; // Additions to q1 - q19, null if no input
+
+    public Segment(double start, double end, double u1, double u4,
+                   double[] dose)
+    {
+        this.start = start;
+        this.end   = end;
+        this.u1    = u1;
+        this.u4    = u4;
+        this.dose  = dose;
+    }
+
+    public double getStart() { return start; }
+    public double getEnd()   { return end; }
+    public double getU1()    { return u1; }
+    public double getU4()    { return u4; }
+
+    // Whether anything is added to the state at segment start. A new dosing
+    // interval starts with each such segment.
+    public boolean hasInputs()
+    {
+        return dose != null;
+    }
+
+    // Whether an oral T4 (q10) or T3 (q12) dose is given at segment start
+    public boolean hasOralDose()
+    {
+        return dose != null && (dose[9] != 0 || dose[11] != 0);
+    }
+
+    // Add this segment's inputs to y in place
+    public void applyInputs(double[] y)
+    {
+        if (dose == null) {
+            return;
+        }
+        for (int i = 0; i < dose.length; i++) {
+            y[i] += dose[i];
+        }
+    }
+
+    // The command line form, see parse()
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(start).append(':').append(end).append(':')
+          .append(u1).append(':').append(u4);
+        if (dose != null) {
+            for (int i = 0; i < dose.length; i++) {
+                if (dose[i] != 0) {
+                    sb.append(':').append(i + 1).append('=').append(dose[i]);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    public static Segment parse(String str)
+    {
+        String[] f = str.split(":");
+        if (f.length < 4) {
+            throw new IllegalArgumentException("Bad segment: " + str);
+        }
+        double[] dose = null;
+        for (int i = 4; i < f.length; i++) {
+            int eq = f[i].indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Bad segment input: " + f[i]);
+            }
+            int c = Integer.parseInt(f[i].substring(0, eq));
+            if (c < 1 || c > 19) {
+                throw new IllegalArgumentException("Bad compartment: " + c);
+            }
+            if (dose == null) {
+                dose = new double[19];
+            }
+            dose[c - 1] += Double.parseDouble(f[i].substring(eq + 1));
+        }
+        return new Segment(Double.parseDouble(f[0]), Double.parseDouble(f[1]),
+                           Double.parseDouble(f[2]), Double.parseDouble(f[3]),
+                           dose);
+    }
+}
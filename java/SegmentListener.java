@@ -0,0 +1,9 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+// Step handlers that need to know where an integration sits in the whole run.
+// Called before each integration i1 - iX. offset is where the previous
+// integration ended, so that time is continuous across integrations.
+public interface SegmentListener
+{
+    void beginSegment(Segment segment, double offset);
+}
@@ -0,0 +1,54 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Worker threads shared by the requests that split their work: MultiRun
+// scenarios and UncertaintyBands draws. Requests only decide how to split
+// their work; how many threads run it is set once per JVM, so requests
+// running at the same time on the SimulationScheduler workers never start
+// more threads between them.
+//
+// The size is the number of processors, or the thyrosim.poolThreads system
+// property if set, e.g. -Dthyrosim.poolThreads=4 for SimulationServer. Tasks
+// must not wait for other tasks of the pool.
+public final class SharedPool
+{
+    public static final int SIZE = Math.max(1, Integer.getInteger(
+        "thyrosim.poolThreads", Runtime.getRuntime().availableProcessors()));
+
+    private static final ExecutorService POOL =
+        Executors.newFixedThreadPool(SIZE, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "thyrosim-pool-"
+                                         + count.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+    private SharedPool()
+    {
+    }
+
+    public static <T> Future<T> submit(Callable<T> task)
+    {
+        return POOL.submit(task);
+    }
+
+    // Cancel the tasks that have not started yet and interrupt the others
+    public static void cancel(List<? extends Future<?>> futures)
+    {
+        for (Future<?> f : futures) {
+            f.cancel(true);
+        }
+    }
+}
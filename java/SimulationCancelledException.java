@@ -0,0 +1,22 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+// Thrown from inside an integration when its request was cancelled or ran
+// past its deadline. See CancellationToken.
+public class SimulationCancelledException extends RuntimeException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final boolean deadline;
+
+    public SimulationCancelledException(boolean deadline)
+    {
+        super(deadline ? "Deadline exceeded" : "Cancelled");
+        this.deadline = deadline;
+    }
+
+    // Whether the deadline passed, as opposed to an explicit cancel
+    public boolean isDeadline()
+    {
+        return deadline;
+    }
+}
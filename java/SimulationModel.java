@@ -0,0 +1,123 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.ode.FirstOrderIntegrator;
+
+// A patient for the embedding API: a thysim variant (see ModelRegistry) with
+// its dials and parameters, and what runs of it start from. Everything that
+// does not depend on the inputs is worked out once here: the solver dials,
+// the FT4/FT3 coefficients, the conversion factors and the start state of
+// i1. With recalcIC and dials other than the defaults, that is the end state
+// of i0, which is run by the constructor, the way BrowserForm does it.
+//
+// Models are immutable and may be shared between threads. Runs are made
+// with a Workspace per thread:
+//   SimulationModel m = new SimulationModel("Thyrosim", dials, kp, true);
+//   Regimen r = new Regimen.Builder(30).oral(4, 100, 1, 30, 1).build();
+//   Workspace.forThread().run(m, r, 1, Projection.DEFAULT, out);
+public final class SimulationModel
+{
+    private final ModelVariant variant;
+    private final double[] dials;        // percent
+    private final double[] solverDials;
+    private final double[] kp;           // kdelay, p1 - p48
+    private final double[] p;            // p7 - p10, p24 - p27
+    private final ConversionFactors cfs;
+    private final double[] initialState; // q1 - q19 at the start of i1
+
+    // The variant at the default dials with its own parameters
+    public SimulationModel(String thysim)
+    {
+        this(thysim, ResponseSurface.DEFAULT_DIALS,
+             ModelRegistry.get(thysim).getParameters(), false);
+    }
+
+    // dials in percent; kp = { kdelay, p1 - p48 }
+    public SimulationModel(String thysim, double[] dials, double[] kp,
+                           boolean recalcIC)
+    {
+        if (dials.length != 4) {
+            throw new IllegalArgumentException("Expected 4 dials");
+        }
+        if (kp.length != 49) {
+            throw new IllegalArgumentException("Expected 49 parameters");
+        }
+        this.variant     = ModelRegistry.get(thysim);
+        this.dials       = dials.clone();
+        this.kp          = kp.clone();
+        this.solverDials = ResponseSurface.solverDials(dials, kp);
+        this.p           = Thyrosim.freeCoefficients(kp);
+        this.cfs         = new ConversionFactors(kp[47], kp[48]);
+
+        double[] q = variant.getSteadyState();
+        if (recalcIC && !isDefault(dials)) {
+            FirstOrderIntegrator foi = Thyrosim.newIntegrator();
+            foi.setMaxEvaluations(ResponseSurface.MAX_EVALUATIONS);
+            try {
+                foi.integrate(newOde(), 0, q, BrowserForm.WARMUP, q);
+            } catch (MaxCountExceededException ex) {
+                throw new IllegalStateException(
+                    "No steady state at these dials");
+            }
+        }
+        this.initialState = q;
+    }
+
+    // Whether dials are the defaults at the resolution of getICKey() in
+    // THYROSIM.pm (0.1 percent), whose steady state the variant has
+    static boolean isDefault(double[] dials)
+    {
+        for (int i = 0; i < dials.length; i++) {
+            if ((long) (dials[i] * 10)
+                != (long) (ResponseSurface.DEFAULT_DIALS[i] * 10)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String getThysim()
+    {
+        return variant.getName();
+    }
+
+    public double[] getDials()
+    {
+        return dials.clone();
+    }
+
+    // { kdelay, p1 - p48 }
+    public double[] getParameters()
+    {
+        return kp.clone();
+    }
+
+    public ConversionFactors getConversionFactors()
+    {
+        return cfs;
+    }
+
+    public double[] getInitialState()
+    {
+        return initialState.clone();
+    }
+
+    // New ODEs of this model. They are not shared: only the infusions
+    // change between integrations, and each Workspace sets its own.
+    ThyroidModel newOde()
+    {
+        return variant.create(solverDials, 0, 0, kp);
+    }
+
+    // Copy the start state of i1 into q
+    void copyInitialState(double[] q)
+    {
+        System.arraycopy(initialState, 0, q, 0, initialState.length);
+    }
+
+    // FT4/FT3 coefficients, see Projection.value(). Not copied.
+    double[] freeCoefficients()
+    {
+        return p;
+    }
+}
@@ -0,0 +1,321 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Runs simulation requests on a fixed number of worker threads, so that many
+// concurrent requests share the CPUs instead of each starting its own JVM.
+//
+// Requests wait in one queue per client and workers take from the clients in
+// round-robin order, so a client that submits many requests (e.g. a bands
+// run per dial change) can not starve the others. When more than maxQueued
+// requests are waiting, new ones are rejected right away.
+//
+// Every request has a CancellationToken with its deadline. A request that is
+// cancelled or expires while queued is dropped without running; one that is
+// running stops at its next integration step.
+public class SimulationScheduler
+{
+    // The work of one request, e.g. Thyrosim.execute()
+    public interface Job
+    {
+        String run(CancellationToken token) throws Exception;
+    }
+
+    public static final int QUEUED    = 0;
+    public static final int RUNNING   = 1;
+    public static final int DONE      = 2;
+    public static final int FAILED    = 3;
+    public static final int CANCELLED = 4;
+    public static final int EXPIRED   = 5;
+    public static final int REJECTED  = 6;
+
+    // Handle on a submitted request
+    public class Ticket
+    {
+        private final String client;
+        private final Job job;
+        private final CancellationToken token;
+        private final long submitted = System.nanoTime();
+        private int state = QUEUED; // Guarded by the scheduler
+        private String result;
+        private Throwable error;
+
+        private Ticket(String client, Job job, long timeoutMillis)
+        {
+            this.client = client;
+            this.job    = job;
+            this.token  = new CancellationToken(timeoutMillis);
+        }
+
+        // Cancel the request. A queued request is removed from its queue.
+        public void cancel()
+        {
+            token.cancel();
+            synchronized (SimulationScheduler.this) {
+                if (state == QUEUED && remove(this)) {
+                    finish(this, CANCELLED);
+                }
+            }
+        }
+
+        // Wait up to millis for the request to finish. Returns whether it did.
+        public boolean await(long millis) throws InterruptedException
+        {
+            long end = System.nanoTime() + millis * 1000000L;
+            synchronized (SimulationScheduler.this) {
+                while (state <= RUNNING) {
+                    long left = (end - System.nanoTime()) / 1000000L;
+                    if (left <= 0) {
+                        return false;
+                    }
+                    SimulationScheduler.this.wait(left);
+                }
+                return true;
+            }
+        }
+
+        public int getState()
+        {
+            synchronized (SimulationScheduler.this) {
+                return state;
+            }
+        }
+
+        // The job's output, null unless DONE
+        public String getResult()
+        {
+            synchronized (SimulationScheduler.this) {
+                return result;
+            }
+        }
+
+        // What the job threw, null unless FAILED
+        public Throwable getError()
+        {
+            synchronized (SimulationScheduler.this) {
+                return error;
+            }
+        }
+    }
+
+    private final int maxQueued;
+    private final Thread[] workers;
+
+    // Waiting requests per client, in round-robin order
+    private final LinkedHashMap<String, ArrayDeque<Ticket>> queues =
+        new LinkedHashMap<String, ArrayDeque<Ticket>>();
+    private int queued;
+    private int running;
+    private boolean shutdown;
+
+    // Counters, see appendStats()
+    private long submittedCount, doneCount, failedCount, cancelledCount,
+                 expiredCount, rejectedCount;
+    private long waitCount;
+    private double waitTotal, waitMax;
+    private final TDigest waitDigest = new TDigest(100);
+
+    public SimulationScheduler(int threads, int maxQueued)
+    {
+        this.maxQueued = maxQueued;
+        workers = new Thread[Math.max(1, threads)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(new Runnable() {
+                public void run()
+                {
+                    work();
+                }
+            }, "thyrosim-worker-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    // Queue job for client. timeoutMillis <= 0 means no deadline. The ticket
+    // is REJECTED right away if the queue is full.
+    public synchronized Ticket submit(String client, Job job, long timeoutMillis)
+    {
+        Ticket t = new Ticket(client, job, timeoutMillis);
+        submittedCount++;
+        if (shutdown || queued >= maxQueued) {
+            finish(t, REJECTED);
+            return t;
+        }
+        ArrayDeque<Ticket> q = queues.get(client);
+        if (q == null) {
+            q = new ArrayDeque<Ticket>();
+            queues.put(client, q);
+        }
+        q.add(t);
+        queued++;
+        notifyAll();
+        return t;
+    }
+
+    // Stop the workers once the running requests are done. Queued requests
+    // are cancelled.
+    public synchronized void shutdown()
+    {
+        shutdown = true;
+        for (ArrayDeque<Ticket> q : queues.values()) {
+            for (Ticket t : q) {
+                t.token.cancel();
+                finish(t, CANCELLED);
+            }
+        }
+        queues.clear();
+        queued = 0;
+        notifyAll();
+    }
+
+    private void work()
+    {
+        while (true) {
+            Ticket t;
+            synchronized (this) {
+                t = next();
+                while (t == null && !shutdown) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    t = next();
+                }
+                if (t == null) {
+                    return;
+                }
+                t.state = RUNNING;
+                running++;
+                recordWait((System.nanoTime() - t.submitted) / 1e6);
+            }
+
+            String result = null;
+            Throwable error = null;
+            try {
+                t.token.check();
+                result = t.job.run(t.token);
+            } catch (Throwable ex) {
+                error = ex;
+            }
+
+            synchronized (this) {
+                running--;
+                if (error == null) {
+                    t.result = result;
+                    finish(t, DONE);
+                } else if (error instanceof SimulationCancelledException) {
+                    boolean deadline =
+                        ((SimulationCancelledException) error).isDeadline();
+                    finish(t, deadline ? EXPIRED : CANCELLED);
+                } else {
+                    t.error = error;
+                    finish(t, FAILED);
+                }
+            }
+        }
+    }
+
+    // Take the next request to run, round-robin over clients. Requests that
+    // were cancelled or expired while waiting are dropped on the way.
+    private Ticket next()
+    {
+        Iterator<Map.Entry<String, ArrayDeque<Ticket>>> it =
+            queues.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, ArrayDeque<Ticket>> e = it.next();
+            ArrayDeque<Ticket> q = e.getValue();
+            Ticket found = null;
+            while (found == null && !q.isEmpty()) {
+                Ticket t = q.poll();
+                queued--;
+                if (t.token.isCancelled()) {
+                    finish(t, CANCELLED);
+                } else if (t.token.isExpired()) {
+                    finish(t, EXPIRED);
+                } else {
+                    found = t;
+                }
+            }
+            it.remove();
+            if (found != null) {
+                // Move the client to the back of the line
+                if (!q.isEmpty()) {
+                    queues.put(e.getKey(), q);
+                }
+                return found;
+            }
+        }
+        return null;
+    }
+
+    private boolean remove(Ticket t)
+    {
+        ArrayDeque<Ticket> q = queues.get(t.client);
+        if (q == null || !q.remove(t)) {
+            return false;
+        }
+        queued--;
+        if (q.isEmpty()) {
+            queues.remove(t.client);
+        }
+        return true;
+    }
+
+    private void finish(Ticket t, int state)
+    {
+        t.state = state;
+        switch (state) {
+            case DONE:      doneCount++;      break;
+            case FAILED:    failedCount++;    break;
+            case CANCELLED: cancelledCount++; break;
+            case EXPIRED:   expiredCount++;   break;
+            case REJECTED:  rejectedCount++;  break;
+            default:        break;
+        }
+        notifyAll();
+    }
+
+    private void recordWait(double millis)
+    {
+        waitCount++;
+        waitTotal += millis;
+        waitMax = Math.max(waitMax, millis);
+        waitDigest.add(millis);
+    }
+
+    // Write the counters as a JSON object
+    public synchronized void appendStats(StringBuilder sb)
+    {
+        sb.append('{');
+        appendCount(sb, "workers",   workers.length);
+        appendCount(sb, "queued",    queued);
+        appendCount(sb, "running",   running);
+        appendCount(sb, "submitted", submittedCount);
+        appendCount(sb, "done",      doneCount);
+        appendCount(sb, "failed",    failedCount);
+        appendCount(sb, "cancelled", cancelledCount);
+        appendCount(sb, "expired",   expiredCount);
+        appendCount(sb, "rejected",  rejectedCount);
+        Json.appendKey(sb, "waitMs");
+        sb.append('{');
+        Json.appendKey(sb, "mean");
+        Json.appendQuoted4(sb, waitCount > 0 ? waitTotal / waitCount : 0);
+        sb.append(',');
+        Json.appendKey(sb, "p95");
+        Json.appendQuoted4(sb, waitCount > 0 ? waitDigest.quantile(0.95) : 0);
+        sb.append(',');
+        Json.appendKey(sb, "max");
+        Json.appendQuoted4(sb, waitMax);
+        sb.append("}}");
+    }
+
+    private static void appendCount(StringBuilder sb, String key, long n)
+    {
+        Json.appendKey(sb, key);
+        sb.append(n).append(',');
+    }
+}
@@ -0,0 +1,266 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Long running solver for ajax_getplot.cgi. Instead of starting a JVM per
+// request, the CGI sends the solver arguments to this server, which runs them
+// on a SimulationScheduler and answers with the same JSON the browser and
+// bands modes print.
+//
+// The protocol is one line per connection:
+//   <client> <deadlineMillis> <arguments as for Thyrosim.main()>
+// The answer is the JSON, or {"error":"..."} if the request was rejected,
+// cancelled, ran past its deadline or failed. deadlineMillis <= 0 uses the
+// server default. If the connection is closed before the answer is ready the
+// request is cancelled. The CGI is not told when the browser goes away, so
+// in practice that only happens when the CGI stops waiting at the browser's
+// 2 minute timeout; until then an abandoned request keeps its worker until it
+// is done or its deadline passes. The default deadline is just below that
+// timeout, so an answer is never computed for a browser that gave up.
+//
+// The arguments may also be a ResponseSurface request, e.g.
+//   <client> <deadlineMillis> preview Thyrosim 100 88 100 88
+// preview is a table lookup and is answered right away without queueing;
+// steady solves and is queued like any other run, as are Continuation
+// requests (curve ...), Surrogate requests (emulate ..., exact ...) and
+// MultiRun requests (multi ...). The end states of i0 that MultiRun needs are
+// kept between requests.
+//
+// The line STATS returns the scheduler counters instead.
+//
+// Each connection takes a thread while it waits, up to maxQueued + workers;
+// connections beyond that are answered {"error":"Server busy"} right away
+// instead of waiting unwatched.
+//
+// Usage: SimulationServer [port [workers [maxQueued [deadlineMillis]]]]
+// The server only listens on localhost.
+public class SimulationServer
+{
+    public static final int DEFAULT_PORT = 8711;
+
+    // How often to check a waiting connection for a disconnect
+    private static final int POLL_MILLIS = 50;
+
+    // i0 end states kept for MultiRun requests
+    private static final int WARMUP_STATES = 256;
+
+    // Below the 2 minute timeout in js/thyrosim.js, so that the browser
+    // still gets the error
+    public static final long DEFAULT_DEADLINE = 110000;
+
+    private final SimulationScheduler scheduler;
+    private final long defaultDeadline;
+    private final WarmupCache warmups = new WarmupCache(WARMUP_STATES);
+
+    public SimulationServer(SimulationScheduler scheduler, long defaultDeadline)
+    {
+        this.scheduler       = scheduler;
+        this.defaultDeadline = defaultDeadline;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int workers = args.length > 1 ? Integer.parseInt(args[1])
+                    : Runtime.getRuntime().availableProcessors();
+        int maxQueued = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        long deadline = args.length > 3 ? Long.parseLong(args[3])
+                      : DEFAULT_DEADLINE;
+
+        final SimulationServer server =
+            new SimulationServer(new SimulationScheduler(workers, maxQueued),
+                                 deadline);
+        ServerSocket ss = new ServerSocket(port, 128,
+                                           InetAddress.getLoopbackAddress());
+        System.err.println("Thyrosim server on port " + port + ", " + workers
+                           + " workers");
+
+        // Connections mostly wait for the scheduler, so they get their own
+        // threads. Queued plus running requests bound how many are useful;
+        // the pool has no queue, so further connections are rejected.
+        int threads = maxQueued + workers;
+        ThreadPoolExecutor connections =
+            new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                                   new SynchronousQueue<Runnable>());
+        connections.prestartAllCoreThreads();
+        while (true) {
+            final Socket s = ss.accept();
+            try {
+                connections.execute(new Runnable() {
+                    public void run()
+                    {
+                        server.serve(s);
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                server.reject(s);
+            }
+        }
+    }
+
+    // Answer a connection there is no thread for. The request is read
+    // first, but only for a moment, so that closing the socket does not
+    // reset the connection before the client has read the answer.
+    public void reject(Socket s)
+    {
+        try {
+            s.setSoTimeout(POLL_MILLIS);
+            InputStream in = s.getInputStream();
+            byte[] buf = new byte[8192];
+            try {
+                int n;
+                while ((n = in.read(buf)) > 0 && buf[n - 1] != '\n') {
+                    // Skip
+                }
+            } catch (SocketTimeoutException ex) {
+                // Answer anyway
+            }
+            OutputStream out = s.getOutputStream();
+            out.write(error("Server busy").getBytes("UTF-8"));
+            out.flush();
+        } catch (IOException ex) {
+            // The client went away, nothing to answer
+        } finally {
+            try {
+                s.close();
+            } catch (IOException ex) {
+                // Ignore
+            }
+        }
+    }
+
+    // Handle one connection
+    public void serve(Socket s)
+    {
+        try {
+            InputStream in = s.getInputStream();
+            String line = new BufferedReader(new InputStreamReader(in, "UTF-8"))
+                              .readLine();
+            String answer = line == null ? null : answer(line.trim(), s, in);
+            if (answer != null) {
+                OutputStream out = s.getOutputStream();
+                out.write(answer.getBytes("UTF-8"));
+                out.flush();
+            }
+        } catch (IOException ex) {
+            // The client went away, nothing to answer
+        } finally {
+            try {
+                s.close();
+            } catch (IOException ex) {
+                // Ignore
+            }
+        }
+    }
+
+    // The answer to a request line, or null if the client went away
+    private String answer(String line, Socket s, InputStream in)
+        throws IOException
+    {
+        StringBuilder sb = new StringBuilder();
+        if (line.equals("STATS")) {
+            scheduler.appendStats(sb);
+            return sb.toString();
+        }
+
+        final String[] f = line.split("\\s+");
+        if (f.length < 3) {
+            return error("Bad request");
+        }
+        long deadline;
+        try {
+            deadline = Long.parseLong(f[1]);
+        } catch (NumberFormatException ex) {
+            return error("Bad deadline: " + f[1]);
+        }
+        if (deadline <= 0) {
+            deadline = defaultDeadline;
+        }
+        final String[] args = new String[f.length - 2];
+        System.arraycopy(f, 2, args, 0, args.length);
+        if (args[0].equals("preview")) {
+            try {
+                return ResponseSurface.execute(args, null).toString();
+            } catch (RuntimeException ex) {
+                return error(ex.getMessage() != null ? ex.getMessage()
+                                                     : ex.toString());
+            }
+        }
+
+        SimulationScheduler.Ticket ticket = scheduler.submit(f[0],
+            new SimulationScheduler.Job() {
+                public String run(CancellationToken token)
+                {
+                    if (ResponseSurface.isMode(args[0])) {
+                        return ResponseSurface.execute(args, token).toString();
+                    }
+                    if (Continuation.isMode(args[0])) {
+                        return Continuation.execute(args, token).toString();
+                    }
+                    if (Surrogate.isMode(args[0])) {
+                        return Surrogate.execute(args, token).toString();
+                    }
+                    if (MultiRun.isMode(args[0])) {
+                        return MultiRun.execute(args, warmups, token)
+                                   .toString();
+                    }
+                    return Thyrosim.execute(args, token).toString();
+                }
+            }, deadline);
+
+        // Wait for the answer, watching for the client closing the socket
+        s.setSoTimeout(1);
+        try {
+            while (!ticket.await(POLL_MILLIS)) {
+                try {
+                    if (in.read() < 0) {
+                        ticket.cancel();
+                        return null;
+                    }
+                } catch (SocketTimeoutException ex) {
+                    // Still connected
+                }
+            }
+        } catch (InterruptedException ex) {
+            ticket.cancel();
+            return null;
+        }
+
+        switch (ticket.getState()) {
+            case SimulationScheduler.DONE:
+                return ticket.getResult();
+            case SimulationScheduler.REJECTED:
+                return error("Server busy");
+            case SimulationScheduler.EXPIRED:
+                return error("Deadline exceeded");
+            case SimulationScheduler.CANCELLED:
+                return error("Cancelled");
+            default:
+                Throwable t = ticket.getError();
+                return error(t.getMessage() != null ? t.getMessage()
+                                                    : t.toString());
+        }
+    }
+
+    private static String error(String msg)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        Json.appendKey(sb, "error");
+        Json.appendString(sb, msg);
+        sb.append('}');
+        return sb.toString();
+    }
+}
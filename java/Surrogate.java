@@ -0,0 +1,733 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.QRDecomposition;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.ode.FirstOrderIntegrator;
+
+// Emulator of the periodic steady state of a thysim variant, for screening
+// many parameter sets or regimens where a prediction must take microseconds
+// instead of the second or so of a solve. The outputs are those of
+// ResponseSurface: the mean, min and max of TSH, FT4 and FT3 over the
+// periodic day. The inputs are ranges of any of
+//   dial1-4          Dials in percent
+//   t4dose, t3dose   Daily oral dose in mcg, given at the start of each day
+//   kdelay, p1-p48   Parameters of the variant
+// Inputs without a range keep their defaults: the default dials, no doses and
+// the variant's parameters.
+//
+// Training solves the full model at the points of a Latin hypercube over the
+// ranges, in parallel, and fits the log of each output with a polynomial
+// chaos expansion: products of Legendre polynomials of the inputs scaled to
+// [-1, 1], up to a total degree, by least squares. A second hypercube of
+// held-out solves gives the validation error of each output, as the RMS and
+// the largest relative error. Points where the model has no periodic steady
+// state are left out and counted.
+//
+// evaluate() answers from the expansion inside the ranges and falls back to
+// the full model outside them, so callers can use it in place of solve().
+//
+// From the command line:
+//   Surrogate train NAME THYSIM RANGE,... [DEGREE [TRAIN [TEST [THREADS]]]]
+//   Surrogate emulate NAME [name=value]...
+//   Surrogate exact NAME [name=value]...
+//   Surrogate info NAME
+// RANGE is name:lo:hi, e.g. t4dose:0:200,p1:0.0024:0.003. train writes
+// config/NAME.surrogate and prints the same as info: the ranges and the
+// validation errors. emulate and exact print the outputs at the given inputs
+// with "exact" telling whether the full model was run; exact always runs it.
+// Both are also SimulationServer requests.
+public class Surrogate
+{
+    public static final int DEFAULT_DEGREE = 3;
+    public static final int DEFAULT_TEST = 50;
+
+    private static final int MAGIC   = 0x54485043; // "THPC"
+    private static final int VERSION = 1;
+
+    // Relative day-to-day change at which a state counts as periodic
+    private static final double TOL = 1e-7;
+
+    private static final Map<String, Surrogate> LOADED =
+        new HashMap<String, Surrogate>();
+
+    private final String name;
+    private final String thysim;
+    private final String[] inputs;
+    private final double[] lo, hi;
+    private final int degree;
+    private final int[][] terms;   // [term][input] Legendre degrees
+    private final double[][] coef; // [output][term], fitted to log(output)
+
+    // Validation
+    private final double[][] errors; // [output] { rms, max } relative error
+    private int trained, tested, failed;
+
+    private Surrogate(String name, String thysim, String[] inputs, double[] lo,
+                      double[] hi, int degree, double[][] coef)
+    {
+        this.name   = name;
+        this.thysim = thysim;
+        this.inputs = inputs;
+        this.lo     = lo;
+        this.hi     = hi;
+        this.degree = degree;
+        this.terms  = terms(inputs.length, degree);
+        this.coef   = coef;
+        this.errors = new double[ResponseSurface.OUTPUTS][2];
+    }
+
+    // Exponents of all products of at most degree in n inputs, constant first
+    static int[][] terms(int n, int degree)
+    {
+        List<int[]> out = new ArrayList<int[]>();
+        for (int total = 0; total <= degree; total++) {
+            addTerms(new int[n], 0, total, out);
+        }
+        return out.toArray(new int[out.size()][]);
+    }
+
+    private static void addTerms(int[] t, int i, int left, List<int[]> out)
+    {
+        if (i == t.length - 1) {
+            t[i] = left;
+            out.add(t.clone());
+            return;
+        }
+        for (int k = left; k >= 0; k--) {
+            t[i] = k;
+            addTerms(t, i + 1, left - k, out);
+        }
+    }
+
+    //--------------------------------------------------------------------
+    // The full model
+    //--------------------------------------------------------------------
+
+    // Outputs of the periodic steady state of thysim at inputs (name to
+    // value, see above), indexed like ResponseSurface. token may be null.
+    public static double[] solve(String thysim, Map<String, Double> inputs,
+                                 CancellationToken token)
+    {
+        ModelVariant v = ModelRegistry.get(thysim);
+        double[] kp = v.getParameters();
+        double[] dials = ResponseSurface.DEFAULT_DIALS.clone();
+        double[] dose = new double[19];
+        for (Map.Entry<String, Double> e : inputs.entrySet()) {
+            String n = e.getKey();
+            double x = e.getValue();
+            if (n.matches("dial[1-4]")) {
+                dials[n.charAt(4) - '1'] = x;
+            } else if (n.equals("t4dose")) {
+                dose[9] = x / ConversionFactors.T4_MOLS;
+            } else if (n.equals("t3dose")) {
+                dose[11] = x / ConversionFactors.T3_MOLS;
+            } else {
+                kp[ModelRegistry.paramIndex(n)] = x;
+            }
+        }
+
+        ThyroidModel ode = v.create(ResponseSurface.solverDials(dials, kp),
+                                    0, 0, kp);
+        FirstOrderIntegrator foi = Thyrosim.newIntegrator();
+        foi.setMaxEvaluations(ResponseSurface.MAX_EVALUATIONS);
+        if (token != null) {
+            foi.addStepHandler(token);
+        }
+        double[] q = v.getSteadyState();
+        Continuation.periodic(ode, foi, dose, q, TOL);
+        for (int i = 0; i < q.length; i++) {
+            q[i] += dose[i];
+        }
+        return ResponseSurface.sampleDay(ode, foi, q,
+                                         new ConversionFactors(kp[47], kp[48]),
+                                         kp);
+    }
+
+    // The value of input name when it has no range
+    static double defaultValue(String thysim, String name)
+    {
+        if (name.matches("dial[1-4]")) {
+            return ResponseSurface.DEFAULT_DIALS[name.charAt(4) - '1'];
+        }
+        if (name.equals("t4dose") || name.equals("t3dose")) {
+            return 0;
+        }
+        return ModelRegistry.get(thysim)
+                   .getParameters()[ModelRegistry.paramIndex(name)];
+    }
+
+    //--------------------------------------------------------------------
+    // The emulator
+    //--------------------------------------------------------------------
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public String getThysim()
+    {
+        return thysim;
+    }
+
+    // The inputs as a point of the ranges, in input order, or null if an
+    // input is outside its range or has no range and is not at its default
+    public double[] point(Map<String, Double> values)
+    {
+        double[] x = new double[inputs.length];
+        boolean[] seen = new boolean[inputs.length];
+        for (Map.Entry<String, Double> e : values.entrySet()) {
+            int i = indexOf(e.getKey());
+            if (i < 0) {
+                if (e.getValue() != defaultValue(thysim, e.getKey())) {
+                    return null;
+                }
+                continue;
+            }
+            x[i] = e.getValue();
+            seen[i] = true;
+        }
+        for (int i = 0; i < inputs.length; i++) {
+            if (!seen[i]) {
+                x[i] = defaultValue(thysim, inputs[i]);
+            }
+            if (!(x[i] >= lo[i] && x[i] <= hi[i])) {
+                return null;
+            }
+        }
+        return x;
+    }
+
+    private int indexOf(String input)
+    {
+        for (int i = 0; i < inputs.length; i++) {
+            if (inputs[i].equals(input)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Outputs at x, a point of the ranges in input order
+    public double[] predict(double[] x)
+    {
+        double[] b = basis(x);
+        double[] out = new double[ResponseSurface.OUTPUTS];
+        for (int o = 0; o < out.length; o++) {
+            double sum = 0;
+            for (int t = 0; t < b.length; t++) {
+                sum += coef[o][t] * b[t];
+            }
+            out[o] = Math.exp(sum);
+        }
+        return out;
+    }
+
+    // Whether evaluate() answers values from the emulator
+    public boolean covers(Map<String, Double> values)
+    {
+        return point(values) != null;
+    }
+
+    // Outputs at values, from the emulator inside its ranges and from the
+    // full model outside them, see covers(). token may be null.
+    public double[] evaluate(Map<String, Double> values,
+                             CancellationToken token)
+    {
+        double[] x = point(values);
+        return x != null ? predict(x) : solve(thysim, values, token);
+    }
+
+    // P0(u) - Pdegree(u)
+    private static double[] legendre(double u, int degree)
+    {
+        double[] p = new double[degree + 1];
+        p[0] = 1;
+        if (degree > 0) {
+            p[1] = u;
+        }
+        for (int k = 1; k < degree; k++) {
+            p[k + 1] = ((2 * k + 1) * u * p[k] - k * p[k - 1]) / (k + 1);
+        }
+        return p;
+    }
+
+    //--------------------------------------------------------------------
+    // Training
+    //--------------------------------------------------------------------
+
+    // Fit the emulator from train solves and validate it with test more,
+    // solved on threads workers
+    public static Surrogate train(String name, final String thysim,
+                                  final String[] inputs, double[] lo,
+                                  double[] hi, int degree, int train, int test,
+                                  int threads, long seed)
+    {
+        for (int i = 0; i < inputs.length; i++) {
+            defaultValue(thysim, inputs[i]); // Checks the name
+            if (!(hi[i] > lo[i])) {
+                throw new IllegalArgumentException("Empty range: "
+                                                   + inputs[i]);
+            }
+        }
+        final Surrogate s = new Surrogate(name, thysim, inputs, lo.clone(),
+                                          hi.clone(), degree, null);
+        int nterms = s.terms.length;
+
+        Random rnd = new Random(seed);
+        final double[][] xs = new double[train + test][];
+        hypercube(xs, 0, train, s, rnd);
+        hypercube(xs, train, test, s, rnd);
+        final double[][] ys = new double[xs.length][];
+        final AtomicInteger next = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        try {
+            for (int w = 0; w < threads; w++) {
+                futures.add(pool.submit(new Callable<Void>() {
+                    public Void call()
+                    {
+                        int k;
+                        while ((k = next.getAndIncrement()) < xs.length) {
+                            Map<String, Double> in =
+                                new HashMap<String, Double>();
+                            for (int i = 0; i < inputs.length; i++) {
+                                in.put(inputs[i], xs[k][i]);
+                            }
+                            try {
+                                double[] y = solve(thysim, in, null);
+                                if (positive(y)) {
+                                    ys[k] = y;
+                                }
+                            } catch (IllegalStateException ex) {
+                                // No periodic steady state, left out
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // Least squares fit of the training points
+        List<Integer> rows = new ArrayList<Integer>();
+        for (int k = 0; k < train; k++) {
+            if (ys[k] != null) {
+                rows.add(k);
+            }
+        }
+        if (rows.size() < nterms) {
+            throw new IllegalStateException(rows.size() + " training points"
+                                            + " for " + nterms + " terms");
+        }
+        RealMatrix a = new Array2DRowRealMatrix(rows.size(), nterms);
+        RealMatrix b = new Array2DRowRealMatrix(rows.size(),
+                                                ResponseSurface.OUTPUTS);
+        for (int r = 0; r < rows.size(); r++) {
+            int k = rows.get(r);
+            a.setRow(r, s.basis(xs[k]));
+            for (int o = 0; o < ResponseSurface.OUTPUTS; o++) {
+                b.setEntry(r, o, Math.log(ys[k][o]));
+            }
+        }
+        RealMatrix c = new QRDecomposition(a).getSolver().solve(b);
+        final double[][] coef = c.transpose().getData();
+        Surrogate fitted = new Surrogate(name, thysim, inputs, s.lo, s.hi,
+                                         degree, coef);
+
+        // Validation against the held-out solves
+        fitted.trained = rows.size();
+        for (int k = train; k < xs.length; k++) {
+            if (ys[k] == null) {
+                continue;
+            }
+            fitted.tested++;
+            double[] p = fitted.predict(xs[k]);
+            for (int o = 0; o < ResponseSurface.OUTPUTS; o++) {
+                double e = Math.abs(p[o] - ys[k][o]) / ys[k][o];
+                fitted.errors[o][0] += e * e;
+                fitted.errors[o][1] = Math.max(fitted.errors[o][1], e);
+            }
+        }
+        for (int o = 0; o < ResponseSurface.OUTPUTS; o++) {
+            fitted.errors[o][0] = Math.sqrt(fitted.errors[o][0]
+                                            / Math.max(1, fitted.tested));
+        }
+        fitted.failed = xs.length - fitted.trained - fitted.tested;
+        return fitted;
+    }
+
+    // n points of a Latin hypercube over the ranges into xs[from...]
+    private static void hypercube(double[][] xs, int from, int n, Surrogate s,
+                                  Random rnd)
+    {
+        for (int k = 0; k < n; k++) {
+            xs[from + k] = new double[s.inputs.length];
+        }
+        int[] perm = new int[n];
+        for (int i = 0; i < s.inputs.length; i++) {
+            for (int k = 0; k < n; k++) {
+                perm[k] = k;
+            }
+            for (int k = n - 1; k > 0; k--) {
+                int j = rnd.nextInt(k + 1);
+                int t = perm[k];
+                perm[k] = perm[j];
+                perm[j] = t;
+            }
+            for (int k = 0; k < n; k++) {
+                double u = (perm[k] + rnd.nextDouble()) / n;
+                xs[from + k][i] = s.lo[i] + u * (s.hi[i] - s.lo[i]);
+            }
+        }
+    }
+
+    private static boolean positive(double[] y)
+    {
+        for (double v : y) {
+            if (!(v > 0) || Double.isInfinite(v)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The values of all terms at x
+    private double[] basis(double[] x)
+    {
+        double[][] leg = new double[inputs.length][];
+        for (int i = 0; i < inputs.length; i++) {
+            leg[i] = legendre(2 * (x[i] - lo[i]) / (hi[i] - lo[i]) - 1,
+                              degree);
+        }
+        double[] b = new double[terms.length];
+        for (int t = 0; t < terms.length; t++) {
+            b[t] = 1;
+            for (int i = 0; i < inputs.length; i++) {
+                b[t] *= leg[i][terms[t][i]];
+            }
+        }
+        return b;
+    }
+
+    //--------------------------------------------------------------------
+    // Files and JSON
+    //--------------------------------------------------------------------
+
+    // The emulator NAME from the config directory, loaded once. Throws
+    // IllegalStateException if it has not been trained.
+    public static Surrogate get(String name)
+    {
+        synchronized (LOADED) {
+            Surrogate s = LOADED.get(name);
+            if (s == null) {
+                File f = file(name);
+                if (!f.isFile()) {
+                    throw new IllegalStateException("No surrogate " + name);
+                }
+                try {
+                    s = read(f);
+                } catch (IOException ex) {
+                    throw new IllegalStateException("Can't read " + f, ex);
+                }
+                LOADED.put(name, s);
+            }
+            return s;
+        }
+    }
+
+    public static File file(String name)
+    {
+        if (!name.matches("[\\w.-]+")) {
+            throw new IllegalArgumentException("Bad surrogate name: " + name);
+        }
+        return new File(ModelRegistry.configDir(), name + ".surrogate");
+    }
+
+    public void write(File f) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(f)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(name);
+            out.writeUTF(thysim);
+            out.writeInt(inputs.length);
+            for (int i = 0; i < inputs.length; i++) {
+                out.writeUTF(inputs[i]);
+                out.writeDouble(lo[i]);
+                out.writeDouble(hi[i]);
+            }
+            out.writeInt(degree);
+            for (double[] c : coef) {
+                for (double v : c) {
+                    out.writeDouble(v);
+                }
+            }
+            out.writeInt(trained);
+            out.writeInt(tested);
+            out.writeInt(failed);
+            for (double[] e : errors) {
+                out.writeDouble(e[0]);
+                out.writeDouble(e[1]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    public static Surrogate read(File f) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(f)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a surrogate: " + f);
+            }
+            String name = in.readUTF();
+            String thysim = in.readUTF();
+            int n = in.readInt();
+            String[] inputs = new String[n];
+            double[] lo = new double[n];
+            double[] hi = new double[n];
+            for (int i = 0; i < n; i++) {
+                inputs[i] = in.readUTF();
+                lo[i] = in.readDouble();
+                hi[i] = in.readDouble();
+            }
+            int degree = in.readInt();
+            int nterms = terms(n, degree).length;
+            double[][] coef = new double[ResponseSurface.OUTPUTS][nterms];
+            for (double[] c : coef) {
+                for (int t = 0; t < nterms; t++) {
+                    c[t] = in.readDouble();
+                }
+            }
+            Surrogate s = new Surrogate(name, thysim, inputs, lo, hi, degree,
+                                        coef);
+            s.trained = in.readInt();
+            s.tested  = in.readInt();
+            s.failed  = in.readInt();
+            for (double[] e : s.errors) {
+                e[0] = in.readDouble();
+                e[1] = in.readDouble();
+            }
+            return s;
+        } finally {
+            in.close();
+        }
+    }
+
+    // The emulator as
+    //   {"name":"..","thysim":"..","degree":D,"terms":T,
+    //    "ranges":{"t4dose":["..",".."],...},"trained":N,"tested":M,
+    //    "failed":F,"validation":{"tsh":{"mean":{"rms":"..","max":".."},...},
+    //    ...}}
+    public StringBuilder toJson()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        Json.appendKey(sb, "name");
+        Json.appendString(sb, name);
+        sb.append(',');
+        Json.appendKey(sb, "thysim");
+        Json.appendString(sb, thysim);
+        sb.append(',');
+        Json.appendKey(sb, "degree");
+        sb.append(degree).append(',');
+        Json.appendKey(sb, "terms");
+        sb.append(terms.length).append(',');
+        Json.appendKey(sb, "ranges");
+        sb.append('{');
+        for (int i = 0; i < inputs.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            Json.appendKey(sb, inputs[i]);
+            sb.append('[');
+            Json.appendString(sb, String.valueOf(lo[i]));
+            sb.append(',');
+            Json.appendString(sb, String.valueOf(hi[i]));
+            sb.append(']');
+        }
+        sb.append("},");
+        Json.appendKey(sb, "trained");
+        sb.append(trained).append(',');
+        Json.appendKey(sb, "tested");
+        sb.append(tested).append(',');
+        Json.appendKey(sb, "failed");
+        sb.append(failed).append(',');
+        Json.appendKey(sb, "validation");
+        sb.append('{');
+        for (int h = 0; h < ResponseSurface.HORMONES.length; h++) {
+            if (h > 0) {
+                sb.append(',');
+            }
+            Json.appendKey(sb, ResponseSurface.HORMONES[h]);
+            sb.append('{');
+            for (int st = 0; st < ResponseSurface.STATS.length; st++) {
+                if (st > 0) {
+                    sb.append(',');
+                }
+                double[] e = errors[h * 3 + st];
+                Json.appendKey(sb, ResponseSurface.STATS[st]);
+                sb.append('{');
+                Json.appendKey(sb, "rms");
+                Json.appendQuoted4(sb, e[0]);
+                sb.append(',');
+                Json.appendKey(sb, "max");
+                Json.appendQuoted4(sb, e[1]);
+                sb.append('}');
+            }
+            sb.append('}');
+        }
+        sb.append("}}");
+        return sb;
+    }
+
+    // Outputs at inputs as
+    //   {"inputs":{"t4dose":"..",...},"exact":false,"tsh":{...},...}
+    // like ResponseSurface.toJson()
+    public static StringBuilder toJson(Map<String, Double> values,
+                                       double[] out, boolean exact)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        Json.appendKey(sb, "inputs");
+        sb.append('{');
+        boolean first = true;
+        for (Map.Entry<String, Double> e : values.entrySet()) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            Json.appendKey(sb, e.getKey());
+            Json.appendString(sb, String.valueOf(e.getValue()));
+        }
+        sb.append("},");
+        Json.appendKey(sb, "exact");
+        sb.append(exact);
+        ResponseSurface.appendOutputs(sb, out);
+        sb.append('}');
+        return sb;
+    }
+
+    //--------------------------------------------------------------------
+    // Requests
+    //--------------------------------------------------------------------
+
+    // Modes handled by execute()
+    public static boolean isMode(String mode)
+    {
+        return mode.equals("emulate") || mode.equals("exact");
+    }
+
+    // Answer an emulate or exact request: { mode, name, name=value... }.
+    // token may be null.
+    public static StringBuilder execute(String[] args, CancellationToken token)
+    {
+        if (args.length < 2 || !isMode(args[0])) {
+            throw new IllegalArgumentException(
+                "Expected emulate|exact NAME [name=value]...");
+        }
+        Surrogate s = get(args[1]);
+        Map<String, Double> values = new LinkedHashMap<String, Double>();
+        for (int i = 2; i < args.length; i++) {
+            int eq = args[i].indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Bad input: " + args[i]);
+            }
+            String n = args[i].substring(0, eq);
+            defaultValue(s.thysim, n); // Checks the name
+            values.put(n, Double.parseDouble(args[i].substring(eq + 1)));
+        }
+        double[] x = args[0].equals("emulate") ? s.point(values) : null;
+        if (x != null) {
+            return toJson(values, s.predict(x), false);
+        }
+        return toJson(values, solve(s.thysim, values, token), true);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length > 0 && args[0].equals("train")) {
+            if (args.length < 4) {
+                throw new IllegalArgumentException(
+                    "Expected train NAME THYSIM RANGE,... [DEGREE [TRAIN"
+                    + " [TEST [THREADS]]]]");
+            }
+            String[] ranges = args[3].split(",");
+            String[] inputs = new String[ranges.length];
+            double[] lo = new double[ranges.length];
+            double[] hi = new double[ranges.length];
+            for (int i = 0; i < ranges.length; i++) {
+                String[] f = ranges[i].split(":");
+                if (f.length != 3) {
+                    throw new IllegalArgumentException("Bad range: "
+                                                       + ranges[i]);
+                }
+                inputs[i] = f[0];
+                lo[i] = Double.parseDouble(f[1]);
+                hi[i] = Double.parseDouble(f[2]);
+            }
+            int degree = args.length > 4 ? Integer.parseInt(args[4])
+                       : DEFAULT_DEGREE;
+            int train = args.length > 5 ? Integer.parseInt(args[5])
+                      : 3 * terms(inputs.length, degree).length;
+            int test = args.length > 6 ? Integer.parseInt(args[6])
+                     : DEFAULT_TEST;
+            int threads = args.length > 7 ? Integer.parseInt(args[7])
+                        : Runtime.getRuntime().availableProcessors();
+            long start = System.nanoTime();
+            Surrogate s = train(args[1], args[2], inputs, lo, hi, degree,
+                                train, test, threads, 1);
+            File f = file(args[1]);
+            s.write(f);
+            System.err.println("Wrote " + f + " in "
+                               + (System.nanoTime() - start) / 1000000 + " ms");
+            System.out.print(s.toJson());
+        } else if (args.length == 2 && args[0].equals("info")) {
+            System.out.print(get(args[1]).toJson());
+        } else {
+            System.out.print(execute(args, null));
+        }
+        System.out.flush();
+    }
+}
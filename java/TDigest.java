@@ -0,0 +1,185 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+// Streaming quantile sketch (merging t-digest, Dunning & Ertl). Values are
+// buffered and periodically merged into at most about compression centroids,
+// which are kept small near the tails so that e.g. the 5th and 95th
+// percentiles stay accurate. Digests built on different threads can be merged.
+// Arrays grow on demand, so a digest that has seen few values is small.
+// Not thread safe.
+public class TDigest
+{
+    private final double compression;
+    private final int bufferLimit;
+
+    // Centroids, sorted by mean after compress()
+    private double[] mean = new double[8];
+    private double[] weight = new double[8];
+    private int centroids;
+
+    // Unmerged values and weights
+    private double[] bufMean = new double[8];
+    private double[] bufWeight = new double[8];
+    private int buffered;
+
+    private double total;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public TDigest(double compression)
+    {
+        this.compression = compression;
+        this.bufferLimit = (int) Math.ceil(compression * 4);
+    }
+
+    public void add(double x)
+    {
+        add(x, 1);
+    }
+
+    private void add(double x, double w)
+    {
+        if (Double.isNaN(x)) {
+            return;
+        }
+        if (buffered == bufMean.length) {
+            if (buffered >= bufferLimit) {
+                compress();
+            } else {
+                bufMean   = java.util.Arrays.copyOf(bufMean,   buffered * 2);
+                bufWeight = java.util.Arrays.copyOf(bufWeight, buffered * 2);
+            }
+        }
+        bufMean[buffered]   = x;
+        bufWeight[buffered] = w;
+        buffered++;
+        total += w;
+        if (x < min) min = x;
+        if (x > max) max = x;
+    }
+
+    // Add everything in other to this digest
+    public void merge(TDigest other)
+    {
+        other.compress();
+        for (int i = 0; i < other.centroids; i++) {
+            add(other.mean[i], other.weight[i]);
+        }
+        if (other.min < min) min = other.min;
+        if (other.max > max) max = other.max;
+    }
+
+    public double size()
+    {
+        return total;
+    }
+
+    // Estimate the q-th quantile, 0 <= q <= 1. NaN if empty.
+    public double quantile(double q)
+    {
+        compress();
+        if (centroids == 0) {
+            return Double.NaN;
+        }
+        if (centroids == 1) {
+            return mean[0];
+        }
+        double index = q * total;
+        if (index <= weight[0] / 2) {
+            // Between min and the first centroid's center
+            return min + (mean[0] - min) * index / (weight[0] / 2);
+        }
+        double cum = weight[0] / 2; // Weight up to the center of centroid i
+        for (int i = 0; i < centroids - 1; i++) {
+            double dw = (weight[i] + weight[i + 1]) / 2;
+            if (cum + dw >= index) {
+                double f = (index - cum) / dw;
+                return mean[i] + f * (mean[i + 1] - mean[i]);
+            }
+            cum += dw;
+        }
+        // Between the last centroid's center and max
+        double last = weight[centroids - 1] / 2;
+        double f = Math.min(1, (index - cum) / last);
+        return mean[centroids - 1] + f * (max - mean[centroids - 1]);
+    }
+
+    // Merge buffered values into the centroids
+    private void compress()
+    {
+        if (buffered == 0) {
+            return;
+        }
+        int n = centroids + buffered;
+        double[] m = java.util.Arrays.copyOf(mean, n);
+        double[] w = java.util.Arrays.copyOf(weight, n);
+        System.arraycopy(bufMean,   0, m, centroids, buffered);
+        System.arraycopy(bufWeight, 0, w, centroids, buffered);
+        sort(m, w, 0, n - 1);
+        buffered = 0;
+
+        // Walk in order and merge neighbours while the merged centroid stays
+        // under the size limit at its quantile: 4 * total * q * (1 - q) / d
+        int out = 0;
+        double cm = m[0];
+        double cw = w[0];
+        double before = 0; // Weight of all centroids before the current one
+        for (int i = 1; i < n; i++) {
+            double proposed = cw + w[i];
+            double q = (before + proposed / 2) / total;
+            double limit = 4 * total * q * (1 - q) / compression;
+            if (proposed <= Math.max(1, limit)) {
+                cm += (m[i] - cm) * w[i] / proposed;
+                cw = proposed;
+            } else {
+                m[out] = cm;
+                w[out] = cw;
+                out++;
+                before += cw;
+                cm = m[i];
+                cw = w[i];
+            }
+        }
+        m[out] = cm;
+        w[out] = cw;
+        out++;
+        mean = java.util.Arrays.copyOf(m, out);
+        weight = java.util.Arrays.copyOf(w, out);
+        centroids = out;
+    }
+
+    // Sort m ascending, carrying w along
+    private static void sort(double[] m, double[] w, int lo, int hi)
+    {
+        while (hi - lo > 16) {
+            double pivot = m[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (m[i] < pivot) i++;
+                while (m[j] > pivot) j--;
+                if (i <= j) {
+                    swap(m, w, i++, j--);
+                }
+            }
+            // Recurse into the smaller half
+            if (j - lo < hi - i) {
+                sort(m, w, lo, j);
+                lo = i;
+            } else {
+                sort(m, w, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && m[j - 1] > m[j]; j--) {
+                swap(m, w, j, j - 1);
+            }
+        }
+    }
+
+    private static void swap(double[] m, double[] w, int i, int j)
+    {
+        double t = m[i]; m[i] = m[j]; m[j] = t;
+        t = w[i]; w[i] = w[j]; w[j] = t;
+    }
+}
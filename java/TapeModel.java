@@ -0,0 +1,68 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+// Interpreter for a ModelCompiler schedule, used when no Java compiler is
+// available at runtime. The reachable nodes are evaluated in id order into a
+// value array: invariant ones in updateInvariants(), the rest on every call.
+class TapeModel extends CompiledModel
+{
+    private final ExprGraph g;
+    private final int[] roots;
+    private final int[] invTape; // Invariant operators
+    private final int[] tape;    // Everything else that is not a constant
+    private final double[] v;    // Value per node
+
+    TapeModel(SbmlModel model, ModelCompiler.Schedule s)
+    {
+        super(model, 0);
+        g     = s.g;
+        roots = s.roots;
+        v     = new double[g.size()];
+        int[] inv = new int[g.size()];
+        int[] var = new int[g.size()];
+        int ni = 0;
+        int nv = 0;
+        for (int i = 0; i < g.size(); i++) {
+            if (!s.reachable[i]) {
+                continue;
+            }
+            if (g.isConst(i)) {
+                v[i] = g.value(i);
+            } else if (g.isInvariant(i)) {
+                inv[ni++] = i;
+            } else {
+                var[nv++] = i;
+            }
+        }
+        invTape = java.util.Arrays.copyOf(inv, ni);
+        tape    = java.util.Arrays.copyOf(var, nv);
+    }
+
+    protected void updateInvariants()
+    {
+        // Called from the factory, after the constructor
+        run(invTape, 0, null);
+    }
+
+    public void computeDerivatives(double t, double[] y, double[] yDot)
+    {
+        run(tape, t, y);
+        for (int r = 0; r < roots.length; r++) {
+            yDot[r] = v[roots[r]];
+        }
+    }
+
+    private void run(int[] nodes, double t, double[] y)
+    {
+        for (int n : nodes) {
+            int op = g.op(n);
+            switch (op) {
+                case ExprGraph.TIME:  v[n] = t;            break;
+                case ExprGraph.STATE: v[n] = y[g.a(n)];    break;
+                case ExprGraph.PARAM: v[n] = p[g.a(n)];    break;
+                default:
+                    v[n] = ExprGraph.eval(op, v[g.a(n)], v[g.b(n)]);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+
+// ODE systems the solver can run integrations i0 - iX on: the hand-written
+// Thyrosim and models compiled from SBML, see CompiledModel. State layout and
+// parameters follow Thyrosim: q1 - q19, kdelay, p1 - p48 and dials d1 - d4.
+public interface ThyroidModel extends FirstOrderDifferentialEquations
+{
+    // Infusion values are set per integration
+    void setInfusion(double inf1, double inf4);
+}
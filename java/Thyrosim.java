@@ -1,17 +1,16 @@
 package edu.ucla.distefanolab.thyrosim.algorithm;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.InputStream;
+import java.awt.GraphicsEnvironment;
 import java.io.IOException;
-import java.util.Properties;
-import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import org.apache.commons.math3.ode.FirstOrderIntegrator;
 import org.apache.commons.math3.ode.nonstiff.ClassicalRungeKuttaIntegrator;
 import org.apache.commons.math3.ode.nonstiff.DormandPrince853Integrator;
 import org.apache.commons.math3.ode.sampling.StepHandler;
 import org.apache.commons.math3.ode.sampling.StepInterpolator;
 
-public class Thyrosim implements FirstOrderDifferentialEquations
+public class Thyrosim implements ThyroidModel
 {
 
     private double p1,  p2,  p3,  p4,  p5,  p6,  p7,  p8,  p9,  p10;
@@ -21,7 +20,39 @@ public class Thyrosim implements FirstOrderDifferentialEquations
     private double p41, p42, p43, p44, p45, p46, p47, p48;
     private double kdelay, u1, u4, d1, d2, d3, d4;
 
-    private Plotter t4_plotter, t3_plotter, tsh_plotter;
+    // VARIABLES VINH INSERTING DURING CONVERSION PROCESS
+    // may already exist in code somewhere, must ask later
+    private static final double p49 = 3.00101; // K_circ     umol
+    private static final double p50 = 3.0947;  // K_srTSH    umol
+    private static final double p51 = 5.6747;  // n_hillcirc (hill exponent)
+    private static final double p52 = 6.2908;  // m_hillcirc (hill exponent)
+    private static final double p53 = 8.4983;  // K_f4       umol
+    private static final double p54 = 14.366;  // l_hillf3   (hill exponent)
+
+    // Powers that only depend on parameters, computed once
+    private static final double KSR_tshmhillTSH = Math.pow(p50, p52);
+    private static final double Kf4lhillf3 = Math.pow(p53, p54);
+    private static final double Kcirchillcirc = Math.pow(p49, p51);
+    private double p42Pow11;
+
+    // Names of dials, infusions, kdelay and p1 - p48, the way SBML models
+    // call them
+    public static final String[] PARAM_NAMES = new String[55];
+    static {
+        String[] first = { "d1", "d2", "d3", "d4", "u1", "u4", "kdelay" };
+        System.arraycopy(first, 0, PARAM_NAMES, 0, first.length);
+        for (int i = 1; i <= 48; i++) {
+            PARAM_NAMES[6 + i] = "p" + i;
+        }
+    }
+
+    // Solver settings of full and preview runs, see newIntegrator()
+    private static final double MIN_STEP = 1.0e-8;
+    private static final double MAX_STEP = 100.0;
+    private static final double ABS_TOL  = 1.0e-10;
+    private static final double REL_TOL  = 1.0e-10;
+    private static final double PREVIEW_STEP = 0.25;
+    private static final int PREVIEW_REFRESH = 5;
 
     // Functions that Java ODE solver needs
     // Declare parameters
@@ -101,10 +132,14 @@ public class Thyrosim implements FirstOrderDifferentialEquations
         // Post param load modification
         p44 = p44 * d2;
         p46 = p46 * d4;
+        p42Pow11 = Math.pow(p42, 11);
+    }
 
-        t4_plotter = new Plotter();
-        t3_plotter = new Plotter();
-        tsh_plotter = new Plotter();
+    // Infusion values are set per integration
+    public void setInfusion(double inf1, double inf4)
+    {
+        u1 = inf1;
+        u4 = inf4;
     }
 
     public int getDimension()
@@ -133,32 +168,21 @@ double q5 = q[4] * recScalar75;   //   scale t3fast pool by 1/fast scale
 double q6 = q[5] * recScalar74;   //   scale t3slow pool by 1/slow scale
 double q7 = q[6] * recScalar69;   //   scale TSH plasma by 1/PV ratio
 
-// VARIABLES VINH INSERTING DURING CONVERSION PROCESS
-// may already exist in code somewhere, must ask later
-double p49 = 3.00101; //  K_circ        umol
-double p50 = 3.0947; // K_srTSH       umol
-double p51 = 5.6747; // n_hillcirc    scalar (hill exponent)
-double p52 = 6.2908; // m_hillcirc    scalar (hill exponent)
-double p53 = 8.4983; // K_f4          umol
-double p54 = 14.366; // l_hillf3      scalar (hill exponent)
-
 // Auxillary equations
 // speed up due to repetition
 double q1Squared = Math.pow(q1, 2);
 double q1Cubed = Math.pow(q1, 3);
 double T3Blagtonhilleire = Math.pow(q[8], p51);
-double KSR_tshmhillTSH = Math.pow(p50, p52);
 double TwoT3B11 = Math.pow(q[7], 11);
-double Kf4lhillf3 = Math.pow(p53, p54);
 
 q4F = (p24 + p25 * q1 + p26 * q1Squared + p27 * q1Cubed) * q4; // FT3p
 q1F = (p7 + p8 * q1 + p9 * q1Squared + p10 * q1Cubed) * q1; // FT4p
 SR3 = (p19 * q[18]) * d3; // Brain delay
 SR4 = (p1 * q[18]) * d1; // Brain delay
-fCIRC = T3Blagtonhilleire / ((T3Blagtonhilleire + Math.pow(p49, p51)));
+fCIRC = T3Blagtonhilleire / ((T3Blagtonhilleire + Kcirchillcirc));
 SRTSH = (p30 + p31 * fCIRC * Math.sin(((Math.PI * t) / 12) - p33)) * (KSR_tshmhillTSH / (KSR_tshmhillTSH + Math.pow(q[8], p52)));
 fdegTSH = p34 + p35/(p36 + q7);
-fLAG = p41 + 2 * TwoT3B11/(Math.pow(p42,11) + TwoT3B11);
+fLAG = p41 + 2 * TwoT3B11/(p42Pow11 + TwoT3B11);
 // f4 = p37+5*p37/(1+Math.exp(2*q[7]-7)); // VERY DIFF, WILL OVERHAUL
 f4 = p37 * (1 + 5 * (Kf4lhillf3) / (Kf4lhillf3 + Math.pow(q[7], p54)));
 NL = p13/(p14+q2);
@@ -194,24 +218,18 @@ qDot[15] = kdelay*(q[14] - q[15]);                                  // delay3
 qDot[16] = kdelay*(q[15] - q[16]);                                  // delay4
 qDot[17] = kdelay*(q[16] - q[17]);                                  // delay5
 qDot[18] = kdelay*(q[17] - q[18]);                                  // delay6
-    
-t4_plotter.add_value(t, qDot[0]);
-t3_plotter.add_value(t, qDot[3]);
-tsh_plotter.add_value(t, qDot[6]);
-
-    }
 
-    public void plot_all(){
-        // Very iffy about this code
-        // IAN PLEASE TELL ME HOW TO DEAL WITH PLOT OUTPUT
-
-        t4_plotter.plot();
-        t3_plotter.plot();
-        tsh_plotter.plot();
     }
 
     public static void main(String[] args)
     {
+        // Browser and bands modes print one JSON object. See execute().
+        if (args.length > 28 && isJsonMode(args[28])) {
+            System.out.print(execute(args, null));
+            System.out.flush();
+            return;
+        }
+
         // Parse input arguments
         double IC1    = Double.parseDouble(args[0]);
         double IC2    = Double.parseDouble(args[1]);
@@ -292,16 +310,17 @@ tsh_plotter.add_value(t, qDot[6]);
         double _p47    = Double.parseDouble(args[76]);
         double _p48    = Double.parseDouble(args[77]);
 
-        // Get ODEs and parameters
-        Thyrosim ode = new Thyrosim(dial1, dial2, dial3, dial4, inf1, inf4,
-                                    _kdelay,
-                                    _p1,  _p2,  _p3,  _p4,  _p5,  _p6,  _p7,
-                                    _p8,  _p9,  _p10, _p11, _p12, _p13, _p14,
-                                    _p15, _p16, _p17, _p18, _p19, _p20, _p21,
-                                    _p22, _p23, _p24, _p25, _p26, _p27, _p28,
-                                    _p29, _p30, _p31, _p32, _p33, _p34, _p35,
-                                    _p36, _p37, _p38, _p39, _p40, _p41, _p42,
-                                    _p43, _p44, _p45, _p46, _p47, _p48);
+        // Get ODEs and parameters. The ODEs depend on thysim, see ModelRegistry.
+        double[] kp = new double[] { _kdelay,
+                                     _p1,  _p2,  _p3,  _p4,  _p5,  _p6,  _p7,
+                                     _p8,  _p9,  _p10, _p11, _p12, _p13, _p14,
+                                     _p15, _p16, _p17, _p18, _p19, _p20, _p21,
+                                     _p22, _p23, _p24, _p25, _p26, _p27, _p28,
+                                     _p29, _p30, _p31, _p32, _p33, _p34, _p35,
+                                     _p36, _p37, _p38, _p39, _p40, _p41, _p42,
+                                     _p43, _p44, _p45, _p46, _p47, _p48 };
+        ThyroidModel ode = ModelRegistry.get(thysim).create(
+            new double[] { dial1, dial2, dial3, dial4 }, inf1, inf4, kp);
         int t1 = (int)Math.round(t1d);
         int t2 = (int)Math.round(t2d);
         double[] q = new double[] {IC1, IC2, IC3, IC4, IC5, IC6,
@@ -312,6 +331,25 @@ tsh_plotter.add_value(t, qDot[6]);
         // then only print the end values. Otherwise, print all values.
         final double[] p = new double[] { _p7,  _p8,  _p9,  _p10,
                                           _p24, _p25, _p26, _p27 };
+
+        // Line modes may also take show=... after the parameters to print only
+        // some columns. initic always prints the full state for chaining.
+        // plot opens windows plotting the T4, T3 and TSH derivatives at each
+        // step, if there is a display.
+        int[] show = Projection.ALL;
+        boolean plot = false;
+        for (int i = 78; i < args.length; i++) {
+            if (args[i].startsWith("show=")) {
+                show = Projection.parse(args[i].substring(5));
+            } else if (args[i].equals("plot")) {
+                plot = !GraphicsEnvironment.isHeadless();
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        final int[] cols = initic.equals("initic") ? Projection.ALL : show;
+        final StringBuilder line = new StringBuilder();
+
         StepHandler stepHandler = new StepHandler()
         {
             public void init(double t0, double[] y0, double t)
@@ -324,10 +362,10 @@ tsh_plotter.add_value(t, qDot[6]);
                 double[] y = interpolator.getInterpolatedState();
                 if (initic.equals("initic")) { // Print only end values
                     if (isLast) {
-                        System.out.println(getLine(t,y,p));
+                        printLine(line,t,y,p,cols);
                     }
                 } else { // Print everything
-                    System.out.println(getLine(t,y,p));
+                    printLine(line,t,y,p,cols);
                 }
             }
         };
@@ -336,102 +374,410 @@ tsh_plotter.add_value(t, qDot[6]);
         double[] o = new double[]{ 1.0e-8, 100.0, 1.0e-10, 1.0e-10 };
         FirstOrderIntegrator foi = new DormandPrince853Integrator(o[0],o[1],o[2],o[3]);
         foi.addStepHandler(stepHandler);
+        Plotter[] plotters = null;
+        if (plot) {
+            plotters = new Plotter[] { new Plotter(), new Plotter(),
+                                       new Plotter() };
+            foi.addStepHandler(plotHandler(ode, plotters));
+        }
         foi.integrate(ode,t1,q,t2,q);
+        if (plotters != null) {
+            for (Plotter plotter : plotters) {
+                plotter.plot();
+            }
+        }
 
         // There are other integrators, e.g., GraggBulirschStoerIntegrator
     }
 
+    // Step handler for the plot option of main(). Adds the T4, T3 and TSH
+    // derivatives (q1, q4 and q7) at each step to plotters[0], [1] and [2].
+    // Plotting stays out of the model, so other callers never open windows.
+    private static StepHandler plotHandler(final ThyroidModel ode,
+                                           final Plotter[] plotters)
+    {
+        final int[] cols = new int[] { 0, 3, 6 };
+        final double[] qDot = new double[ode.getDimension()];
+        return new StepHandler()
+        {
+            public void init(double t0, double[] y0, double t)
+            {
+            }
+
+            public void handleStep(StepInterpolator interpolator, boolean isLast)
+            {
+                double t = interpolator.getCurrentTime();
+                ode.computeDerivatives(t, interpolator.getInterpolatedState(),
+                                       qDot);
+                for (int i = 0; i < cols.length; i++) {
+                    plotters[i].add_value(t, qDot[cols[i]]);
+                }
+            }
+        };
+    }
+
+    // Modes that return one JSON object instead of printing lines
+    public static boolean isJsonMode(String mode)
+    {
+        return mode.equals("browser") || mode.equals("bands");
+    }
+
+    // Run a browser or bands mode request and return its JSON. Arguments are
+    // the same as for main(). token may be null; otherwise the run stops with
+    // SimulationCancelledException once the token is cancelled or expires.
+    //   browser: runs i0 - iX in one go and returns the browser object
+    //   bands:   runs i0 - iX over perturbed parameter draws and returns
+    //            percentile curves, see UncertaintyBands
+    public static StringBuilder execute(String[] args, CancellationToken token)
+    {
+        if (args.length < 78) {
+            throw new IllegalArgumentException("Expected at least 78 arguments");
+        }
+        double[] q = new double[19];
+        for (int i = 0; i < q.length; i++) {
+            q[i] = Double.parseDouble(args[i]);
+        }
+        double t1 = Math.round(Double.parseDouble(args[19]));
+        double t2 = Math.round(Double.parseDouble(args[20]));
+        double[] dials = new double[4];
+        for (int i = 0; i < dials.length; i++) {
+            dials[i] = Double.parseDouble(args[21 + i]);
+        }
+        double inf1 = Double.parseDouble(args[25]);
+        double inf4 = Double.parseDouble(args[26]);
+        String thysim = args[27];
+        String mode = args[28];
+        double[] kp = new double[49];
+        for (int i = 0; i < kp.length; i++) {
+            kp[i] = Double.parseDouble(args[29 + i]);
+        }
+
+        RunOptions opts = RunOptions.parse(args, 78);
+        if (mode.equals("bands")) {
+            UncertaintyBands ub = new UncertaintyBands(thysim, dials, kp, q,
+                                                       t1, t2, opts, token);
+            return ub.run();
+        }
+        if (mode.equals("browser")) {
+            ThyroidModel ode = create(thysim, dials, inf1, inf4, kp,
+                                      opts.model);
+            return runBrowser(ode, q, t1, t2, freeCoefficients(kp),
+                              new ConversionFactors(kp[47], kp[48]),
+                              opts, token);
+        }
+        throw new IllegalArgumentException("Unknown mode: " + mode);
+    }
+
+    // Run all integrations and return the browser object, replacing
+    // processResults() and getBrowserObj() in THYROSIM.pm. opts holds the
+    // name=value options after the parameters, see RunOptions. q holds the full end state
+    // of iX afterwards, for chaining.
+    public static StringBuilder runBrowser(ThyroidModel ode, double[] q,
+                                           double t1, double t2, double[] p,
+                                           ConversionFactors cfs,
+                                           RunOptions opts,
+                                           CancellationToken token)
+    {
+        List<MetricAccumulator> metrics = newMetrics(opts, cfs, p);
+        ResultProcessor rp = new ResultProcessor(opts.show, cfs, p);
+        boolean budget = opts.accuracy.equals(RunOptions.BUDGET);
+        FirstOrderIntegrator foi = newIntegrator(warmupAccuracy(opts.accuracy));
+        if (token != null) {
+            foi.addStepHandler(token);
+        }
+
+        // i0: only the end values are used
+        if (opts.warmup) {
+            foi.integrate(ode,t1,q,t2,q);
+        }
+        boolean seeded = opts.warmup || opts.warmed;
+        if (seeded) {
+            rp.seed(t2, q);
+        }
+
+        // i1 - iX, within the accuracy budget if there is one. i0 is always
+        // run in full, as only its end state is used.
+        AccuracyBudget ab = null;
+        double[] maxError = null;
+        boolean fallback = false;
+        if (!budget) {
+            runInputs(ode, foi, q, opts, rp, metrics, null);
+        } else {
+            ab = new AccuracyBudget(opts.decimals, opts.show, cfs, p, q);
+            double[] q0 = q.clone();
+            FirstOrderIntegrator bfoi = ab.newIntegrator();
+            if (token != null) {
+                bfoi.addStepHandler(token);
+            }
+            if (!opts.verify) {
+                runInputs(ode, bfoi, q, opts, rp, metrics, null);
+            } else {
+                // Run it both ways and compare, see AccuracyBudget
+                ReferenceTrack track = new ReferenceTrack(
+                    shownStates(opts.show), cfs, p);
+                ResultProcessor rpFull = new ResultProcessor(opts.show, cfs,
+                                                             p);
+                List<MetricAccumulator> metricsFull =
+                    newMetrics(opts, cfs, p);
+                if (seeded) {
+                    rpFull.seed(t2, q0);
+                }
+                runInputs(ode, foi, q0, opts, rpFull, metricsFull, track);
+                track.compare();
+                runInputs(ode, bfoi, q, opts, rp, metrics, track);
+                maxError = track.getMaxError();
+                if (!ab.holds(maxError)) {
+                    fallback = true;
+                    rp = rpFull;
+                    metrics = metricsFull;
+                    System.arraycopy(q0, 0, q, 0, q.length);
+                }
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        Json.appendKey(sb, "simTime");
+        Json.appendString(sb, opts.simTime);
+        sb.append(',');
+        boolean packed = opts.encoding.equals(DeltaCodec.ENCODING);
+        if (packed) {
+            Json.appendKey(sb, "encoding");
+            Json.appendString(sb, DeltaCodec.ENCODING);
+            sb.append(',');
+        }
+        if (ab != null) {
+            Json.appendKey(sb, "accuracy");
+            ab.appendTo(sb, maxError, fallback);
+            sb.append(',');
+        } else if (!opts.accuracy.equals(RunOptions.FULL)) {
+            Json.appendKey(sb, "accuracy");
+            appendAccuracy(sb, opts.accuracy);
+            sb.append(',');
+        }
+        rp.appendData(sb, packed);
+        if (!metrics.isEmpty()) {
+            sb.append(',');
+            Json.appendKey(sb, "metrics");
+            sb.append('[');
+            for (int i = 0; i < metrics.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                metrics.get(i).appendSummary(sb);
+            }
+            sb.append(']');
+        }
+        sb.append('}');
+        return sb;
+    }
+
+    private static List<MetricAccumulator> newMetrics(RunOptions opts,
+                                                      ConversionFactors cfs,
+                                                      double[] p)
+    {
+        List<MetricAccumulator> metrics = new ArrayList<MetricAccumulator>();
+        for (String spec : opts.metrics) {
+            metrics.add(MetricAccumulator.parse(spec, cfs, p));
+        }
+        return metrics;
+    }
+
+    // Run i1 - iX of opts with foi into rp and metrics, and track if it is
+    // not null. The handlers are added to foi.
+    private static void runInputs(ThyroidModel ode, FirstOrderIntegrator foi,
+                                  double[] q, RunOptions opts,
+                                  ResultProcessor rp,
+                                  List<MetricAccumulator> metrics,
+                                  ReferenceTrack track)
+    {
+        List<SegmentListener> listeners = new ArrayList<SegmentListener>();
+        listeners.add(rp);
+        listeners.addAll(metrics);
+        foi.addStepHandler(rp);
+        for (MetricAccumulator m : metrics) {
+            foi.addStepHandler(m);
+        }
+        if (track != null) {
+            listeners.add(track);
+            foi.addStepHandler(track);
+        }
+        runSegments(ode, foi, q, opts.segments, listeners);
+    }
+
+    // Shown columns other than t, which budgets are checked on
+    private static int[] shownStates(int[] show)
+    {
+        int n = 0;
+        int[] cols = new int[show.length];
+        for (int c : show) {
+            if (c != 0) {
+                cols[n++] = c;
+            }
+        }
+        return Arrays.copyOf(cols, n);
+    }
+
+    // Run integrations i1 - iX from state q, which holds the end state
+    // afterwards. Time is continuous over integrations, which all start at 0.
+    // Step handlers must already be added to foi.
+    public static void runSegments(ThyroidModel ode, FirstOrderIntegrator foi,
+                                   double[] q, List<Segment> segments,
+                                   List<? extends SegmentListener> listeners)
+    {
+        double offset = 0;
+        for (Segment seg : segments) {
+            seg.applyInputs(q);
+            ode.setInfusion(seg.getU1(), seg.getU4());
+            for (SegmentListener l : listeners) {
+                l.beginSegment(seg, offset);
+            }
+            if (seg.getEnd() > seg.getStart()) {
+                foi.integrate(ode,seg.getStart(),q,seg.getEnd(),q);
+            }
+            offset += seg.getEnd();
+        }
+    }
+
+    // The integrator used for all runs
+    public static FirstOrderIntegrator newIntegrator()
+    {
+        return newIntegrator(RunOptions.FULL);
+    }
+
+    // The integrator for accuracy=full or preview, see RunOptions. The model
+    // is stiff, so looser tolerances do not let DormandPrince853 take longer
+    // steps; previews use a fixed step implicit method instead. Budgets
+    // depend on the run, see AccuracyBudget.newIntegrator().
+    public static FirstOrderIntegrator newIntegrator(String accuracy)
+    {
+        if (accuracy.equals(RunOptions.BUDGET)) {
+            throw new IllegalArgumentException(
+                "A budget needs an AccuracyBudget");
+        }
+        if (accuracy.equals(RunOptions.PREVIEW)) {
+            return new RosenbrockIntegrator(PREVIEW_STEP, PREVIEW_REFRESH);
+        }
+        return new DormandPrince853Integrator(MIN_STEP, MAX_STEP,
+                                              ABS_TOL, REL_TOL);
+    }
+
+    // The accuracy i0 is run at: a budget only covers what is shown
+    public static String warmupAccuracy(String accuracy)
+    {
+        return accuracy.equals(RunOptions.BUDGET) ? RunOptions.FULL
+                                                  : accuracy;
+    }
+
+    // Append how newIntegrator(accuracy) integrates, as a JSON object
+    public static void appendAccuracy(StringBuilder sb, String accuracy)
+    {
+        FirstOrderIntegrator foi = newIntegrator(accuracy);
+        sb.append('{');
+        Json.appendKey(sb, "accuracy");
+        Json.appendString(sb, accuracy);
+        sb.append(',');
+        Json.appendKey(sb, "method");
+        Json.appendString(sb, foi.getName());
+        sb.append(',');
+        if (accuracy.equals(RunOptions.PREVIEW)) {
+            Json.appendKey(sb, "step");
+            sb.append(PREVIEW_STEP);
+        } else {
+            Json.appendKey(sb, "absTol");
+            sb.append(ABS_TOL).append(',');
+            Json.appendKey(sb, "relTol");
+            sb.append(REL_TOL);
+        }
+        sb.append('}');
+    }
+
+    // Build the ODEs from dials, infusions and kp = { kdelay, p1 - p48 }
+    public static Thyrosim create(double[] dials, double inf1, double inf4,
+                                  double[] kp)
+    {
+        return new Thyrosim(dials[0], dials[1], dials[2], dials[3], inf1, inf4,
+                            kp[0],
+                            kp[1],  kp[2],  kp[3],  kp[4],  kp[5],  kp[6],
+                            kp[7],  kp[8],  kp[9],  kp[10], kp[11], kp[12],
+                            kp[13], kp[14], kp[15], kp[16], kp[17], kp[18],
+                            kp[19], kp[20], kp[21], kp[22], kp[23], kp[24],
+                            kp[25], kp[26], kp[27], kp[28], kp[29], kp[30],
+                            kp[31], kp[32], kp[33], kp[34], kp[35], kp[36],
+                            kp[37], kp[38], kp[39], kp[40], kp[41], kp[42],
+                            kp[43], kp[44], kp[45], kp[46], kp[47], kp[48]);
+    }
+
+    // The ODEs of variant thysim (see ModelRegistry), or of the SBML model at
+    // path sbml (see SbmlModel) if it is not null. The SBML model takes the
+    // same parameters by name.
+    public static ThyroidModel create(String thysim, double[] dials,
+                                      double inf1, double inf4, double[] kp,
+                                      String sbml)
+    {
+        if (sbml == null) {
+            return ModelRegistry.get(thysim).create(dials, inf1, inf4, kp);
+        }
+        CompiledModel m;
+        try {
+            m = SbmlModel.load(sbml).newInstance();
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Can't load model " + sbml
+                                               + ": " + ex.getMessage(), ex);
+        }
+        if (m.getDimension() != 19) {
+            throw new IllegalArgumentException("Model " + sbml
+                                               + " does not have 19 states");
+        }
+        double[] values = new double[PARAM_NAMES.length];
+        System.arraycopy(dials, 0, values, 0, 4);
+        values[4] = inf1;
+        values[5] = inf4;
+        System.arraycopy(kp, 0, values, 6, kp.length);
+        m.setParameters(PARAM_NAMES, values);
+        return m;
+    }
+
+    // FT4/FT3 coefficients p7-p10 and p24-p27 from kp = { kdelay, p1 - p48 }
+    public static double[] freeCoefficients(double[] kp)
+    {
+        return new double[] { kp[7],  kp[8],  kp[9],  kp[10],
+                              kp[24], kp[25], kp[26], kp[27] };
+    }
+
     // Generate the output per time point. In addition, recalculate FT4 and FT3
     // values here because unfortunately can't figure out how to extract q1F and
     // q4F values directly.
     public static String getLine(double t, double[] y, double[] p)
     {
         StringBuilder sb = new StringBuilder();
-        sb.append(Double.toString(t)+" ");
-        for (double v : y)
-        {
-            sb.append(Double.toString(v)+" ");
-        }
-        double y0Squared = Math.pow(y[0], 2);
-        double y0Cubed = Math.pow(y[0], 3);
-        double ft4 = (p[0]+p[1]*y[0]+p[2]*y0Squared+p[3]*y0Cubed)*y[0];
-        double ft3 = (p[4]+p[5]*y[0]+p[6]*y0Squared+p[7]*y0Cubed)*y[3];
-        sb.append(Double.toString(ft4)+" ");
-        sb.append(Double.toString(ft3)+" ");
+        appendLine(sb, t, y, p, Projection.ALL);
         return sb.toString();
     }
 
-    // Can alternatively read parameter values in from the config file. Not
-    // currently used.
-    public double[] readConfig(String thysim)
+    // Same as getLine(), but only for the given columns. See Projection.
+    public static void appendLine(StringBuilder sb, double t, double[] y,
+                                  double[] p, int[] cols)
     {
-        // Load properties
-        Properties prop = new Properties();
-        String configFile = "../config/" + thysim + ".params";
-        InputStream pis = null; // Param InputStream
-
-        try {
-            pis = new FileInputStream(configFile);
-        } catch (FileNotFoundException ex) {
-            System.out.println("File not found: " + configFile);
+        for (int c : cols)
+        {
+            sb.append(Projection.value(c, t, y, p)).append(' ');
         }
+    }
 
-        try {
-            prop.load(pis);
-        } catch (IOException io) {
-            io.printStackTrace();
-        }
+    private static void printLine(StringBuilder sb, double t, double[] y,
+                                  double[] p, int[] cols)
+    {
+        sb.setLength(0);
+        appendLine(sb, t, y, p, cols);
+        System.out.println(sb);
+    }
 
-        double[] p = new double[] { Double.valueOf(prop.getProperty("kdelay")),
-                                    Double.valueOf(prop.getProperty("p1")),
-                                    Double.valueOf(prop.getProperty("p2")),
-                                    Double.valueOf(prop.getProperty("p3")),
-                                    Double.valueOf(prop.getProperty("p4")),
-                                    Double.valueOf(prop.getProperty("p5")),
-                                    Double.valueOf(prop.getProperty("p6")),
-                                    Double.valueOf(prop.getProperty("p7")),
-                                    Double.valueOf(prop.getProperty("p8")),
-                                    Double.valueOf(prop.getProperty("p9")),
-                                    Double.valueOf(prop.getProperty("p10")),
-                                    Double.valueOf(prop.getProperty("p11")),
-                                    Double.valueOf(prop.getProperty("p12")),
-                                    Double.valueOf(prop.getProperty("p13")),
-                                    Double.valueOf(prop.getProperty("p14")),
-                                    Double.valueOf(prop.getProperty("p15")),
-                                    Double.valueOf(prop.getProperty("p16")),
-                                    Double.valueOf(prop.getProperty("p17")),
-                                    Double.valueOf(prop.getProperty("p18")),
-                                    Double.valueOf(prop.getProperty("p19")),
-                                    Double.valueOf(prop.getProperty("p20")),
-                                    Double.valueOf(prop.getProperty("p21")),
-                                    Double.valueOf(prop.getProperty("p22")),
-                                    Double.valueOf(prop.getProperty("p23")),
-                                    Double.valueOf(prop.getProperty("p24")),
-                                    Double.valueOf(prop.getProperty("p25")),
-                                    Double.valueOf(prop.getProperty("p26")),
-                                    Double.valueOf(prop.getProperty("p27")),
-                                    Double.valueOf(prop.getProperty("p28")),
-                                    Double.valueOf(prop.getProperty("p29")),
-                                    Double.valueOf(prop.getProperty("p30")),
-                                    Double.valueOf(prop.getProperty("p31")),
-                                    Double.valueOf(prop.getProperty("p32")),
-                                    Double.valueOf(prop.getProperty("p33")),
-                                    Double.valueOf(prop.getProperty("p34")),
-                                    Double.valueOf(prop.getProperty("p35")),
-                                    Double.valueOf(prop.getProperty("p36")),
-                                    Double.valueOf(prop.getProperty("p37")),
-                                    Double.valueOf(prop.getProperty("p38")),
-                                    Double.valueOf(prop.getProperty("p39")),
-                                    Double.valueOf(prop.getProperty("p40")),
-                                    Double.valueOf(prop.getProperty("p41")),
-                                    Double.valueOf(prop.getProperty("p42")),
-                                    Double.valueOf(prop.getProperty("p43")),
-                                    Double.valueOf(prop.getProperty("p44")),
-                                    Double.valueOf(prop.getProperty("p45")),
-                                    Double.valueOf(prop.getProperty("p46")),
-                                    Double.valueOf(prop.getProperty("p47")),
-                                    Double.valueOf(prop.getProperty("p48"))};
-        return p;
+    // Parameter values { kdelay, p1 - p48 } from config/<thysim>.params. The
+    // files are read once, see ModelRegistry. Not currently used.
+    public double[] readConfig(String thysim)
+    {
+        return ModelRegistry.get(thysim).getParameters();
     }
 }
 
@@ -0,0 +1,129 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+// The hyperthyroid variant of Thyrosim, ported from octave/thyrosim_hyper.m.
+// It differs from Thyrosim in the D1 deiodination of T4 in the fast and slow
+// pools, which is a Hill function with exponent n = 2 instead of
+// Michaelis-Menten, to deal with absorption after very large T4 doses
+// (~3000 mcg). p13 and p15 in config/ThyrosimHyper.params already include the
+// rescaling done in the Octave file. Infusions u1 and u4 go into plasma T4
+// and T3. Equations, including their signs, follow the Octave file.
+public class ThyrosimHyper implements ThyroidModel
+{
+    private final double kdelay;
+    private final double d1, d3;
+    private final double p1,  p3,  p4,  p5,  p6,  p7,  p8,  p9,  p10;
+    private final double p11, p12, p13, p15, p17, p18, p19, p20;
+    private final double p21, p22, p23, p24, p25, p26, p27, p28, p29, p30;
+    private final double p31, p32, p33, p34, p35, p36, p37, p38, p39, p40;
+    private final double p41, p43, p45;
+
+    // Rate constants and powers that only depend on parameters
+    private final double k1out;  // p5 + p6
+    private final double k2out;  // p3 + p12
+    private final double k4out;  // p22 + p23
+    private final double k5out;  // p20 + p29
+    private final double k11out; // p44 * d2 + p11
+    private final double k13out; // p46 * d4 + p28
+    private final double p14n;   // p14^2
+    private final double p16n;   // p16^2
+    private final double p42n;   // p42^11
+    private final double p37p39; // p37 / p39
+
+    private double u1, u4;
+
+    // kp = { kdelay, p1 - p48 }
+    public ThyrosimHyper(double[] dials, double inf1, double inf4, double[] kp)
+    {
+        u1 = inf1;
+        u4 = inf4;
+        d1 = dials[0];
+        d3 = dials[2];
+
+        kdelay = kp[0];
+        p1  = kp[1];  p3  = kp[3];  p4  = kp[4];  p5  = kp[5];
+        p6  = kp[6];  p7  = kp[7];  p8  = kp[8];  p9  = kp[9];
+        p10 = kp[10]; p11 = kp[11]; p12 = kp[12]; p13 = kp[13];
+        p15 = kp[15]; p17 = kp[17]; p18 = kp[18]; p19 = kp[19];
+        p20 = kp[20]; p21 = kp[21]; p22 = kp[22]; p23 = kp[23];
+        p24 = kp[24]; p25 = kp[25]; p26 = kp[26]; p27 = kp[27];
+        p28 = kp[28]; p29 = kp[29]; p30 = kp[30]; p31 = kp[31];
+        p32 = kp[32]; p33 = kp[33]; p34 = kp[34]; p35 = kp[35];
+        p36 = kp[36]; p37 = kp[37]; p38 = kp[38]; p39 = kp[39];
+        p40 = kp[40]; p41 = kp[41]; p43 = kp[43]; p45 = kp[45];
+
+        k1out  = p5 + p6;
+        k2out  = p3 + p12;
+        k4out  = p22 + p23;
+        k5out  = p20 + p29;
+        k11out = kp[44] * dials[1] + p11;
+        k13out = kp[46] * dials[3] + p28;
+        p14n   = kp[14] * kp[14];
+        p16n   = kp[16] * kp[16];
+        double p42sq = kp[42] * kp[42];
+        double p42p4 = p42sq * p42sq;
+        p42n   = p42p4 * p42p4 * p42sq * kp[42];
+        p37p39 = p37 / p39;
+    }
+
+    public void setInfusion(double inf1, double inf4)
+    {
+        u1 = inf1;
+        u4 = inf4;
+    }
+
+    public int getDimension()
+    {
+        return 19;
+    }
+
+    public void computeDerivatives(double t, double[] q, double[] qDot)
+    {
+        double q1 = q[0];
+        double q1sq = q1 * q1;
+        double q4F = (p24 + p25 * q1 + p26 * q1sq + p27 * q1sq * q1) * q[3];
+        double q1F = (p7  + p8  * q1 + p9  * q1sq + p10 * q1sq * q1) * q1;
+        double SR3 = p19 * q[18] * d3;
+        double SR4 = p1  * q[18] * d1;
+        double eq9 = Math.exp(-q[8]);
+        double fCIRC = 1 + (p32 / (p31 * eq9) - 1)
+                         * (1 / (1 + Math.exp(10 * q[8] - 55)));
+        double SRTSH = (p30 + p31 * fCIRC * Math.sin(Math.PI / 12 * t - p33))
+                     * eq9;
+        double fdegTSH = p34 + p35 / (p36 + q[6]);
+        double q8sq = q[7] * q[7];
+        double q8p4 = q8sq * q8sq;
+        double q8p11 = q8p4 * q8p4 * q8sq * q[7];
+        double fLAG = p41 + 2 * q8p11 / (p42n + q8p11);
+        double f4 = p37 + 5 * p37 / (1 + Math.exp(2 * q[7] - 7));
+
+        // Hill kinetics, n = 2
+        double q2sq = q[1] * q[1];
+        double q3sq = q[2] * q[2];
+        double NL3  = p13 * q2sq / (p14n + q2sq);
+        double D1s  = p15 * q3sq / (p16n + q3sq);
+        double D2s  = p17 * q[2] / (p18 + q[2]);
+
+        qDot[0]  = SR4 + p3 * q[1] + p4 * q[2] - k1out * q1F + p11 * q[10] + u1;
+        qDot[1]  = p6 * q1F - k2out * q[1] + NL3;
+        qDot[2]  = p5 * q1F - (p4 * q[2] + D1s + D2s);
+        qDot[3]  = SR3 + p20 * q[4] + p21 * q[5] - k4out * q4F + p28 * q[12]
+                 + u4;
+        qDot[4]  = p23 * q4F + NL3 - k5out * q[4];
+        qDot[5]  = p22 * q4F + D1s + D2s - p21 * q[5];
+        qDot[6]  = SRTSH - fdegTSH * q[6];
+        qDot[7]  = f4 / p38 * q1 + p37p39 * q[3] - p40 * q[7];
+        qDot[8]  = fLAG * (q[7] - q[8]);
+        qDot[9]  = -p43 * q[9];
+        qDot[10] =  p43 * q[9] - k11out * q[10];
+        qDot[11] = -p45 * q[11];
+        qDot[12] =  p45 * q[11] - k13out * q[12];
+
+        // Delay ODEs
+        qDot[13] = q[6] - kdelay * q[13];
+        qDot[14] = kdelay * (q[13] - q[14]);
+        qDot[15] = kdelay * (q[14] - q[15]);
+        qDot[16] = kdelay * (q[15] - q[16]);
+        qDot[17] = kdelay * (q[16] - q[17]);
+        qDot[18] = kdelay * (q[17] - q[18]);
+    }
+}
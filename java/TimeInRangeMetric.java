@@ -0,0 +1,116 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import org.apache.commons.math3.ode.sampling.StepInterpolator;
+
+// Time spent below, within and above a normal range [lo, hi]. Each step is
+// sampled at the Gauss-Legendre nodes, and where the range is crossed between
+// samples the crossing time is found by bisection on the step interpolator.
+public class TimeInRangeMetric extends MetricAccumulator
+{
+    private static final int BELOW  = 0;
+    private static final int WITHIN = 1;
+    private static final int ABOVE  = 2;
+    private static final int BISECTIONS = 40;
+
+    private final double lo;
+    private final double hi;
+    private final double[] hours = new double[3];
+
+    private double prevT; // Local time and value of the last sample
+    private double prevV;
+
+    public TimeInRangeMetric(int col, ConversionFactors cfs, double[] p,
+                             double lo, double hi)
+    {
+        super(col, cfs, p);
+        if (!(lo <= hi)) {
+            throw new IllegalArgumentException("Bad range: " + lo + " " + hi);
+        }
+        this.lo = lo;
+        this.hi = hi;
+    }
+
+    protected void start(double t, double v)
+    {
+        prevT = t - offset;
+        prevV = v;
+    }
+
+    protected void step(StepInterpolator interpolator, double t0, double t1)
+    {
+        double half = 0.5 * (t1 - t0);
+        double mid  = 0.5 * (t1 + t0);
+        for (int i = 0; i < GL_NODES.length; i++) {
+            double t = mid + half * GL_NODES[i];
+            advance(interpolator, t, valueAt(interpolator, t));
+        }
+        advance(interpolator, t1, valueAt(interpolator, t1));
+    }
+
+    // Attribute the time from the last sample to (t, v)
+    private void advance(StepInterpolator interpolator, double t, double v)
+    {
+        int r  = region(prevV);
+        int rb = region(v);
+        double ta = prevT;
+        while (r != rb) {
+            int next = rb > r ? r + 1 : r - 1;
+            double thr = Math.max(r, next) == WITHIN ? lo : hi;
+            double tc = crossing(interpolator, ta, t, thr, r < next);
+            hours[r] += tc - ta;
+            ta = tc;
+            r  = next;
+        }
+        hours[r] += t - ta;
+        prevT = t;
+        prevV = v;
+    }
+
+    private int region(double v)
+    {
+        if (v < lo) return BELOW;
+        if (v > hi) return ABOVE;
+        return WITHIN;
+    }
+
+    // Time in [a, b] where the value crosses thr, going up if rising
+    private double crossing(StepInterpolator interpolator, double a, double b,
+                            double thr, boolean rising)
+    {
+        for (int i = 0; i < BISECTIONS; i++) {
+            double m = 0.5 * (a + b);
+            boolean past = rising ? valueAt(interpolator, m) > thr
+                                  : valueAt(interpolator, m) < thr;
+            if (past) {
+                b = m;
+            } else {
+                a = m;
+            }
+        }
+        return 0.5 * (a + b);
+    }
+
+    public void appendSummary(StringBuilder sb)
+    {
+        double total = hours[BELOW] + hours[WITHIN] + hours[ABOVE];
+        appendHeader(sb, "range");
+        Json.appendKey(sb, "lo");
+        Json.appendQuoted4(sb, lo);
+        sb.append(',');
+        Json.appendKey(sb, "hi");
+        Json.appendQuoted4(sb, hi);
+        sb.append(',');
+        Json.appendKey(sb, "below");
+        Json.appendQuoted4(sb, hours[BELOW]);
+        sb.append(',');
+        Json.appendKey(sb, "within");
+        Json.appendQuoted4(sb, hours[WITHIN]);
+        sb.append(',');
+        Json.appendKey(sb, "above");
+        Json.appendQuoted4(sb, hours[ABOVE]);
+        sb.append(',');
+        Json.appendKey(sb, "fraction");
+        Json.appendQuoted4(sb, total > 0 ? hours[WITHIN] / total : 0);
+        sb.append('}');
+    }
+}
@@ -0,0 +1,302 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.math3.ode.FirstOrderIntegrator;
+
+// Uncertainty bands: the same regimen run over K perturbed parameter draws,
+// summarized as 5th/50th/95th percentile curves on a fixed time grid.
+//
+// Each worker thread keeps one TDigest per grid point and output, and feeds
+// its draws into them as they are integrated. The workers' digests are merged
+// at the end. Memory is O(workers x grid x outputs x compression) no matter
+// how many draws are run; no trajectory is kept.
+//
+// Parameters are perturbed log-normally so that they stay positive, with mean
+// equal to the nominal value and the given coefficient of variation, e.g.
+//   cv=p1:0.1,p19:0.1,p47:0.05
+// Draw k always uses the same random numbers for a given seed, regardless of
+// the number of threads.
+//
+// With store=DIR every draw's grid values are also appended to a ColumnStore,
+// as patient "drawK", run 0, so single draws can be looked at later.
+public class UncertaintyBands
+{
+    public static final double[] QUANTILES = { 0.05, 0.5, 0.95 };
+    private static final String[] QUANTILE_KEYS = { "p5", "p50", "p95" };
+    private static final double COMPRESSION = 100;
+
+    private final String thysim;
+    private final double[] dials;
+    private final double[] kp; // kdelay, p1 - p48
+    private final double[] ic;
+    private final double t1, t2;
+    private final RunOptions opts;
+    private final int[] cols;
+    private final int[] cvIdx;
+    private final double[] sigma;
+    private final int points;
+    private final CancellationToken token; // May be null
+    private ColumnStoreWriter store;       // Null unless opts.store is set
+
+    public UncertaintyBands(String thysim, double[] dials, double[] kp,
+                            double[] ic, double t1, double t2, RunOptions opts,
+                            CancellationToken token)
+    {
+        this.thysim = thysim;
+        this.dials = dials.clone();
+        this.kp    = kp.clone();
+        this.ic    = ic.clone();
+        this.t1    = t1;
+        this.t2    = t2;
+        this.opts  = opts;
+        this.token = token;
+
+        // Time is the grid itself, so it is never an output
+        int n = 0;
+        int[] cols = new int[opts.show.length];
+        for (int c : opts.show) {
+            if (c != 0) {
+                cols[n++] = c;
+            }
+        }
+        this.cols = java.util.Arrays.copyOf(cols, n);
+
+        String[] cvs = opts.cv.isEmpty() ? new String[0] : opts.cv.split(",");
+        cvIdx = new int[cvs.length];
+        sigma = new double[cvs.length];
+        for (int i = 0; i < cvs.length; i++) {
+            String[] f = cvs[i].split(":");
+            if (f.length != 2) {
+                throw new IllegalArgumentException("Bad cv: " + cvs[i]);
+            }
+            cvIdx[i] = ModelRegistry.paramIndex(f[0]);
+            double cv = Double.parseDouble(f[1]);
+            sigma[i] = Math.sqrt(Math.log(1 + cv * cv));
+        }
+
+        points = (int) Math.floor(opts.totalHours() / opts.grid + 1e-9) + 1;
+    }
+
+    // Draws run on the SharedPool, split between at most threads workers.
+    // threads is capped at the pool size, which the client cannot change.
+    public StringBuilder run()
+    {
+        int workers = Math.max(1, Math.min(Math.min(opts.threads,
+                                                    SharedPool.SIZE),
+                                           opts.draws));
+        final AtomicInteger nextDraw = new AtomicInteger();
+        final AtomicBoolean stop = new AtomicBoolean();
+        final CountDownLatch stopped = new CountDownLatch(workers);
+        List<Future<TDigest[][]>> futures = new ArrayList<Future<TDigest[][]>>();
+        try {
+            if (opts.store != null) {
+                String[] names = new String[cols.length];
+                for (int o = 0; o < cols.length; o++) {
+                    names[o] = Projection.name(cols[o]);
+                }
+                store = new ColumnStoreWriter(new File(opts.store), names,
+                                              opts.storeBits);
+            }
+            for (int w = 0; w < workers; w++) {
+                futures.add(SharedPool.submit(new Callable<TDigest[][]>() {
+                    public TDigest[][] call()
+                    {
+                        try {
+                            TDigest[][] digests = newDigests();
+                            int k;
+                            while (!stop.get() && (k = nextDraw
+                                       .getAndIncrement()) < opts.draws) {
+                                if (token != null) {
+                                    token.check();
+                                }
+                                runDraw(k, digests);
+                            }
+                            return digests;
+                        } finally {
+                            stopped.countDown();
+                        }
+                    }
+                }));
+            }
+
+            // Merge all workers into the first one
+            TDigest[][] merged = futures.get(0).get();
+            for (int w = 1; w < workers; w++) {
+                TDigest[][] d = futures.get(w).get();
+                for (int i = 0; i < points; i++) {
+                    for (int o = 0; o < cols.length; o++) {
+                        merged[i][o].merge(d[i][o]);
+                    }
+                }
+            }
+            return toJson(merged);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SimulationCancelledException(false);
+        } catch (ExecutionException ex) {
+            // Rethrow what went wrong in the worker, e.g. a cancellation
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            // Workers that have not started yet still run, see stop and
+            // return, so that every worker counts down stopped
+            stop.set(true);
+            closeStore(stopped);
+        }
+    }
+
+    private void closeStore(CountDownLatch stopped)
+    {
+        if (store == null) {
+            return;
+        }
+        try {
+            // Workers that were stopped may still be writing a draw
+            stopped.await(1, TimeUnit.MINUTES);
+            store.close();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            store = null;
+        }
+    }
+
+    private TDigest[][] newDigests()
+    {
+        TDigest[][] d = new TDigest[points][cols.length];
+        for (int i = 0; i < points; i++) {
+            for (int o = 0; o < cols.length; o++) {
+                d[i][o] = new TDigest(COMPRESSION);
+            }
+        }
+        return d;
+    }
+
+    // Integrate draw k and add its grid values to digests, and to the store
+    private void runDraw(int k, final TDigest[][] digests)
+    {
+        final double[][] values = store == null ? null
+                                                : new double[cols.length][points];
+        double[] p = perturb(k);
+        ThyroidModel ode = Thyrosim.create(thysim, dials, 0, 0, p,
+                                           opts.model);
+        GridSampler sampler = new GridSampler(opts.grid, opts.totalHours(),
+                                              cols,
+                                              new ConversionFactors(p[47], p[48]),
+                                              Thyrosim.freeCoefficients(p));
+        sampler.reset(new GridSampler.Sink() {
+            public void sample(int i, int o, double v)
+            {
+                digests[i][o].add(v);
+                if (values != null) {
+                    values[o][i] = v;
+                }
+            }
+        });
+
+        double[] q = ic.clone();
+        FirstOrderIntegrator foi = Thyrosim.newIntegrator();
+        if (token != null) {
+            foi.addStepHandler(token);
+        }
+        if (opts.warmup) {
+            foi.integrate(ode, t1, q, t2, q);
+        }
+        foi.addStepHandler(sampler);
+        List<SegmentListener> listeners = new ArrayList<SegmentListener>();
+        listeners.add(sampler);
+        Thyrosim.runSegments(ode, foi, q, opts.segments, listeners);
+
+        if (values != null) {
+            double[] t = new double[points];
+            for (int i = 0; i < points; i++) {
+                t[i] = sampler.time(i);
+            }
+            try {
+                store.write("draw" + k, 0, t, values, points);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    // Parameters of draw k
+    private double[] perturb(int k)
+    {
+        long s = new SplittableRandom(opts.seed + 0x9E3779B97F4A7C15L * k)
+                     .nextLong();
+        Random rng = new Random(s);
+        double[] p = kp.clone();
+        for (int i = 0; i < cvIdx.length; i++) {
+            double z = rng.nextGaussian();
+            p[cvIdx[i]] *= Math.exp(sigma[i] * z - 0.5 * sigma[i] * sigma[i]);
+        }
+        return p;
+    }
+
+    private StringBuilder toJson(TDigest[][] d)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        Json.appendKey(sb, "simTime");
+        Json.appendString(sb, opts.simTime);
+        sb.append(',');
+        Json.appendKey(sb, "draws");
+        sb.append(opts.draws).append(',');
+        Json.appendKey(sb, "t");
+        sb.append('[');
+        for (int i = 0; i < points; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            Json.appendQuoted4(sb, i * opts.grid);
+        }
+        sb.append("],");
+        Json.appendKey(sb, "data");
+        sb.append('{');
+        for (int o = 0; o < cols.length; o++) {
+            if (o > 0) {
+                sb.append(',');
+            }
+            Json.appendKey(sb, Projection.name(cols[o]));
+            sb.append('{');
+            for (int qi = 0; qi < QUANTILES.length; qi++) {
+                if (qi > 0) {
+                    sb.append(',');
+                }
+                Json.appendKey(sb, QUANTILE_KEYS[qi]);
+                sb.append('[');
+                for (int i = 0; i < points; i++) {
+                    if (i > 0) {
+                        sb.append(',');
+                    }
+                    Json.appendQuoted4(sb, d[i][o].quantile(QUANTILES[qi]));
+                }
+                sb.append(']');
+            }
+            sb.append('}');
+        }
+        sb.append("}}");
+        return sb;
+    }
+}
@@ -0,0 +1,81 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.commons.math3.ode.FirstOrderIntegrator;
+
+// End states of i0, kept so that runs that differ only in their inputs or
+// simulation time skip it. i0 runs a variant from its IC for a fixed time
+// with the dials and no inputs, so its end state depends on nothing else. At
+// 1008 hours it is also the longest integration of most runs.
+//
+// States are kept per accuracy, see RunOptions. A preview takes the full
+// state when there is one, as it is the better start; a budget always takes
+// the full state.
+//
+// Holds up to size states, dropping the least recently used. Safe for
+// concurrent use. Two requests that miss the same state at the same time both
+// compute it; a computation that is cancelled stores nothing.
+public class WarmupCache
+{
+    private final Map<String, double[]> states;
+
+    public WarmupCache(final int size)
+    {
+        states = new LinkedHashMap<String, double[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, double[]> e)
+            {
+                return size() > size;
+            }
+        };
+    }
+
+    // The end state of i0 from q0 over hours, with the ODEs of thysim at the
+    // solver dials and kp = { kdelay, p1 - p48 }, integrated at accuracy.
+    // token may be null.
+    public double[] get(String thysim, double[] dials, double[] kp,
+                        double[] q0, double hours, String accuracy,
+                        CancellationToken token)
+    {
+        accuracy = Thyrosim.warmupAccuracy(accuracy);
+        String key = key(thysim, dials, kp, q0, hours);
+        double[] q;
+        synchronized (this) {
+            q = states.get(key + RunOptions.FULL);
+            if (q == null) {
+                q = states.get(key + accuracy);
+            }
+        }
+        if (q != null) {
+            return q.clone();
+        }
+
+        key += accuracy;
+        q = q0.clone();
+        ThyroidModel ode = Thyrosim.create(thysim, dials, 0, 0, kp, null);
+        FirstOrderIntegrator foi = Thyrosim.newIntegrator(accuracy);
+        if (token != null) {
+            foi.addStepHandler(token);
+        }
+        foi.integrate(ode, 0, q, hours, q);
+        synchronized (this) {
+            states.put(key, q.clone());
+        }
+        return q;
+    }
+
+    // Equal for the same i0, whatever the accuracy
+    public static String key(String thysim, double[] dials, double[] kp,
+                             double[] q0, double hours)
+    {
+        return thysim + Arrays.toString(dials) + Arrays.toString(kp)
+             + Arrays.toString(q0) + hours;
+    }
+
+    public synchronized int size()
+    {
+        return states.size();
+    }
+}
@@ -0,0 +1,145 @@
+package edu.ucla.distefanolab.thyrosim.algorithm;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.commons.math3.ode.FirstOrderIntegrator;
+
+// What one thread needs to run simulations, kept between runs: the
+// integrator, the state, the ODEs of the last model and the sampler of the
+// last output grid. Workspaces are not thread-safe; each thread uses its own,
+// e.g. forThread(). Models and regimens are immutable and shared, so many
+// simulations can run at once in one JVM.
+//
+// Results are sampled on the grid 0, h, 2h, ... hours (see GridSampler) into
+// arrays the caller owns, out[o][i] for column cols[o] (see Projection) at
+// point i, in display units. Running the same model on the same grid again,
+// e.g. with other regimens, allocates nothing here.
+public final class Workspace
+{
+    private static final ThreadLocal<Workspace> PER_THREAD =
+        new ThreadLocal<Workspace>() {
+            @Override
+            protected Workspace initialValue()
+            {
+                return new Workspace();
+            }
+        };
+
+    private final FirstOrderIntegrator foi;
+    private final double[] q = new double[19];
+
+    private SimulationModel model;
+    private ThyroidModel ode;
+
+    private GridSampler sampler;
+    private List<GridSampler> listeners;
+    private double step, hours;
+    private int[] cols;
+
+    private double[][] out;
+    private final GridSampler.Sink sink = new GridSampler.Sink() {
+        public void sample(int i, int o, double v)
+        {
+            out[o][i] = v;
+        }
+    };
+
+    // A workspace at full accuracy
+    public Workspace()
+    {
+        this(RunOptions.FULL);
+    }
+
+    // accuracy is full or preview, see RunOptions
+    public Workspace(String accuracy)
+    {
+        if (!accuracy.equals(RunOptions.FULL)
+            && !accuracy.equals(RunOptions.PREVIEW)) {
+            throw new IllegalArgumentException("Unknown accuracy: "
+                                               + accuracy);
+        }
+        foi = Thyrosim.newIntegrator(accuracy);
+    }
+
+    // The full accuracy workspace of the calling thread
+    public static Workspace forThread()
+    {
+        return PER_THREAD.get();
+    }
+
+    // Number of grid points of regimen every h hours
+    public static int points(Regimen regimen, double h)
+    {
+        return GridSampler.points(h, regimen.getHours());
+    }
+
+    // Run regimen on model from the model's start state and sample cols
+    // every h hours into out, see above. Returns the number of points. token
+    // may be null.
+    public int run(SimulationModel model, Regimen regimen, double h,
+                   int[] cols, double[][] out, CancellationToken token)
+    {
+        if (!(h > 0)) {
+            throw new IllegalArgumentException("Bad sampling step: " + h);
+        }
+        if (model != this.model) {
+            this.ode     = model.newOde();
+            this.model   = model;
+            this.sampler = null;
+        }
+        double hours = regimen.getHours();
+        if (sampler == null || h != step || hours != this.hours
+            || !Arrays.equals(cols, this.cols)) {
+            sampler = new GridSampler(h, hours, cols,
+                                      model.getConversionFactors(),
+                                      model.freeCoefficients());
+            listeners = Collections.singletonList(sampler);
+            this.step  = h;
+            this.hours = hours;
+            this.cols  = cols.clone();
+        }
+        int points = sampler.getPoints();
+        if (out.length < cols.length) {
+            throw new IllegalArgumentException("Expected " + cols.length
+                                               + " output arrays");
+        }
+        for (int o = 0; o < cols.length; o++) {
+            if (out[o].length < points) {
+                throw new IllegalArgumentException("Expected " + points
+                                                   + " points per output");
+            }
+        }
+
+        model.copyInitialState(q);
+        this.out = out;
+        sampler.reset(sink);
+        foi.clearStepHandlers();
+        foi.addStepHandler(sampler);
+        if (token != null) {
+            foi.addStepHandler(token);
+        }
+        try {
+            Thyrosim.runSegments(ode, foi, q, regimen.getSegments(),
+                                 listeners);
+        } finally {
+            this.out = null;
+        }
+        return points;
+    }
+
+    // Same, into new arrays
+    public double[][] run(SimulationModel model, Regimen regimen, double h,
+                          int[] cols)
+    {
+        double[][] out = new double[cols.length][points(regimen, h)];
+        run(model, regimen, h, cols, out, null);
+        return out;
+    }
+
+    // Copy the end state of the last run, q1 - q19, into y
+    public void getState(double[] y)
+    {
+        System.arraycopy(q, 0, y, 0, q.length);
+    }
+}
@@ -223,6 +223,15 @@ public class JFreeChart implements Drawable, TitleChangeListener,
      */
     private boolean notify;
 
+    /** The depth of nested {@link #batch(Runnable)} calls. */
+    private transient int batchDepth;
+
+    /**
+     * The change event to send when the outermost batch ends, or
+     * {@code null} if nothing has changed in the batch.
+     */
+    private transient ChartChangeEvent batchEvent;
+
     /** 
      * A flag that controls whether or not rendering hints that identify
      * chart element should be added during rendering.  This defaults to false
@@ -1036,6 +1045,57 @@ public class JFreeChart implements Drawable, TitleChangeListener,
         }
     }
 
+    /**
+     * Runs an update to the chart (for example, changes to the datasets,
+     * renderers and axes) as a batch: the change events raised during the
+     * update are merged and listeners receive at most one
+     * {@link ChartChangeEvent} when it finishes, so that a
+     * {@link ChartPanel} redraws the chart once.  If the update throws an
+     * exception, the event is still sent for the changes made before it.
+     * Batches can be nested, in which case the event is sent at the end of
+     * the outermost batch.  The event is subject to the {@code notify} flag
+     * at that time.
+     * <p>
+     * Datasets and plots still process their own change events during the
+     * batch (so that, for example, axis ranges are kept up to date); only
+     * the events sent on to the chart's listeners are merged.
+     *
+     * @param update  the update ({@code null} not permitted).
+     *
+     * @see #isBatchUpdate()
+     *
+     * @since 1.5.3
+     */
+    public void batch(Runnable update) {
+        Args.nullNotPermitted(update, "update");
+        this.batchDepth++;
+        try {
+            update.run();
+        }
+        finally {
+            this.batchDepth--;
+            if (this.batchDepth == 0 && this.batchEvent != null) {
+                ChartChangeEvent event = this.batchEvent;
+                this.batchEvent = null;
+                notifyListeners(event);
+            }
+        }
+    }
+
+    /**
+     * Returns {@code true} if the chart is running a batch update, in which
+     * case change events are held back until the batch ends.
+     *
+     * @return A boolean.
+     *
+     * @see #batch(Runnable)
+     *
+     * @since 1.5.3
+     */
+    public boolean isBatchUpdate() {
+        return this.batchDepth > 0;
+    }
+
     /**
      * Draws the chart on a Java 2D graphics device (such as the screen or a
      * printer).
@@ -1437,6 +1497,16 @@ public class JFreeChart implements Drawable, TitleChangeListener,
      *               notification.
      */
     protected void notifyListeners(ChartChangeEvent event) {
+        if (this.batchDepth > 0) {
+            // keep a single event, or a general one if there are several
+            if (this.batchEvent == null) {
+                this.batchEvent = event;
+            }
+            else if (this.batchEvent != event) {
+                this.batchEvent = new ChartChangeEvent(this, this);
+            }
+            return;
+        }
         if (this.notify) {
             Object[] listeners = this.changeListeners.getListenerList();
             for (int i = listeners.length - 2; i >= 0; i -= 2) {
@@ -1654,6 +1724,8 @@ public class JFreeChart implements Drawable, TitleChangeListener,
 
         chart.progressListeners = new EventListenerList();
         chart.changeListeners = new EventListenerList();
+        chart.batchDepth = 0;
+        chart.batchEvent = null;
         return chart;
     }
 
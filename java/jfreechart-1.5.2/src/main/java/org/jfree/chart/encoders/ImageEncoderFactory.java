@@ -62,13 +62,13 @@ public class ImageEncoderFactory {
     }
 
     /**
-     * Sets up default encoders (uses Sun PNG Encoder if JDK 1.4+ and the
-     * SunPNGEncoderAdapter class is available).
+     * Sets up default encoders (the {@link PNGEncoderAdapter} for PNG and
+     * ImageIO for JPEG).
      */
     private static void init() {
         encoders = new HashMap();
         encoders.put("jpeg", "org.jfree.chart.encoders.SunJPEGEncoderAdapter");
-        encoders.put("png", "org.jfree.chart.encoders.SunPNGEncoderAdapter");
+        encoders.put("png", "org.jfree.chart.encoders.PNGEncoderAdapter");
     }
 
     /**
@@ -0,0 +1,850 @@
+/* ===========================================================
+ * JFreeChart : a free chart library for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2000-2020, by Object Refinery Limited and Contributors.
+ *
+ * Project Info:  http://www.jfree.org/jfreechart/index.html
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * ----------------------
+ * PNGEncoderAdapter.java
+ * ----------------------
+ * (C) Copyright 2020, by Object Refinery Limited and Contributors.
+ *
+ * Original Author:  -;
+ * Contributor(s):   -;
+ *
+ */
+
+package org.jfree.chart.encoders;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import org.jfree.chart.util.Args;
+
+/**
+ * A PNG encoder that honours the compression level and alpha settings.
+ * Larger images are split into strips of rows that are filtered and
+ * compressed in parallel (as independent deflate blocks, in the manner of
+ * {@code pigz}) and written as one IDAT chunk each.  The scratch buffers and
+ * deflaters are pooled and reused between images.
+ * <p>
+ * Images without an alpha channel (such as {@code TYPE_INT_RGB}), and all
+ * images when alpha encoding is switched off, are written as 24-bit RGB.
+ * Other images are written as 32-bit RGBA.
+ * <p>
+ * This is the default PNG encoder returned by the
+ * {@link ImageEncoderFactory}, and so is used by
+ * {@link org.jfree.chart.ChartUtils} and the servlet utilities.
+ *
+ * @since 1.5.3
+ */
+public class PNGEncoderAdapter implements ImageEncoder {
+
+    /** The PNG file signature. */
+    private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10,
+            26, 10};
+
+    /** The IHDR chunk type. */
+    private static final byte[] IHDR = {'I', 'H', 'D', 'R'};
+
+    /** The IDAT chunk type. */
+    private static final byte[] IDAT = {'I', 'D', 'A', 'T'};
+
+    /** The IEND chunk type. */
+    private static final byte[] IEND = {'I', 'E', 'N', 'D'};
+
+    /** The number of (filtered) bytes in each strip compressed as a unit. */
+    private static final int STRIP_SIZE = 1 << 17;
+
+    /** The maximum number of scratch buffers kept in the pool. */
+    private static final int MAX_POOLED = 32;
+
+    /** The pool of scratch buffers. */
+    private static final Queue<Scratch> POOL
+            = new ConcurrentLinkedQueue<Scratch>();
+
+    /** The deflate compression level (0 to 9). */
+    private int compressionLevel;
+
+    /** A flag that controls whether the alpha channel is written. */
+    private boolean encodingAlpha;
+
+    /** The row filter strategy. */
+    private PNGFilterStrategy filterStrategy;
+
+    /** A flag that controls whether strips are compressed in parallel. */
+    private boolean parallel;
+
+    /**
+     * Creates a new encoder with compression level 6, alpha encoding on,
+     * the adaptive filter strategy and parallel compression.
+     */
+    public PNGEncoderAdapter() {
+        this.compressionLevel = 6;
+        this.encodingAlpha = true;
+        this.filterStrategy = PNGFilterStrategy.ADAPTIVE;
+        this.parallel = true;
+    }
+
+    /**
+     * Returns the compression level, as a float.
+     *
+     * @return The compression level (0 to 9).
+     */
+    @Override
+    public float getQuality() {
+        return this.compressionLevel;
+    }
+
+    /**
+     * Sets the compression level (this is how {@link EncoderUtil} passes on
+     * the PNG compression level).  The value is rounded and limited to the
+     * range 0 to 9.
+     *
+     * @param quality  the compression level.
+     */
+    @Override
+    public void setQuality(float quality) {
+        this.compressionLevel = Math.max(0, Math.min(9, Math.round(quality)));
+    }
+
+    /**
+     * Returns the deflate compression level.
+     *
+     * @return The compression level (0 to 9).
+     */
+    public int getCompressionLevel() {
+        return this.compressionLevel;
+    }
+
+    /**
+     * Sets the deflate compression level, from 0 (no compression, fastest)
+     * to 9 (best compression, slowest).
+     *
+     * @param level  the compression level (0 to 9).
+     */
+    public void setCompressionLevel(int level) {
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException(
+                    "Requires 0 <= level <= 9.");
+        }
+        this.compressionLevel = level;
+    }
+
+    /**
+     * Returns the flag that controls whether the alpha channel is written.
+     *
+     * @return A boolean.
+     */
+    @Override
+    public boolean isEncodingAlpha() {
+        return this.encodingAlpha;
+    }
+
+    /**
+     * Sets the flag that controls whether the alpha channel is written for
+     * images that have one.
+     *
+     * @param encodingAlpha  the new flag value.
+     */
+    @Override
+    public void setEncodingAlpha(boolean encodingAlpha) {
+        this.encodingAlpha = encodingAlpha;
+    }
+
+    /**
+     * Returns the row filter strategy.
+     *
+     * @return The strategy (never {@code null}).
+     */
+    public PNGFilterStrategy getFilterStrategy() {
+        return this.filterStrategy;
+    }
+
+    /**
+     * Sets the row filter strategy.
+     *
+     * @param strategy  the strategy ({@code null} not permitted).
+     */
+    public void setFilterStrategy(PNGFilterStrategy strategy) {
+        Args.nullNotPermitted(strategy, "strategy");
+        this.filterStrategy = strategy;
+    }
+
+    /**
+     * Returns the flag that controls whether the strips of larger images
+     * are compressed in parallel.
+     *
+     * @return A boolean.
+     */
+    public boolean isParallel() {
+        return this.parallel;
+    }
+
+    /**
+     * Sets the flag that controls whether the strips of larger images are
+     * compressed in parallel (using the common fork-join pool).  The output
+     * is the same either way.
+     *
+     * @param parallel  the new flag value.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Encodes an image in PNG format.
+     *
+     * @param bufferedImage  the image to be encoded ({@code null} not
+     *     permitted).
+     *
+     * @return The bytes of the encoded image.
+     *
+     * @throws IOException if there is an IO problem.
+     */
+    @Override
+    public byte[] encode(BufferedImage bufferedImage) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        encode(bufferedImage, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Encodes an image in PNG format and writes it to an output stream.
+     *
+     * @param bufferedImage  the image to be encoded ({@code null} not
+     *     permitted).
+     * @param outputStream  the output stream ({@code null} not permitted).
+     *
+     * @throws IOException if there is an IO problem.
+     */
+    @Override
+    public void encode(final BufferedImage bufferedImage,
+            OutputStream outputStream) throws IOException {
+        Args.nullNotPermitted(bufferedImage, "bufferedImage");
+        Args.nullNotPermitted(outputStream, "outputStream");
+        final boolean alpha = this.encodingAlpha
+                && bufferedImage.getColorModel().hasAlpha();
+        final int level = this.compressionLevel;
+        final PNGFilterStrategy strategy = this.filterStrategy;
+        int width = bufferedImage.getWidth();
+        int height = bufferedImage.getHeight();
+        int rowBytes = 1 + width * (alpha ? 4 : 3);
+        final int rowsPerStrip = Math.max(1, STRIP_SIZE / rowBytes);
+        final int strips = (height + rowsPerStrip - 1) / rowsPerStrip;
+
+        outputStream.write(SIGNATURE);
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;  // bit depth
+        header[9] = (byte) (alpha ? 6 : 2);  // colour type
+        writeChunk(outputStream, IHDR, null, header, header.length, null);
+
+        List<Future<Scratch>> futures = null;
+        if (this.parallel && strips > 1) {
+            futures = new ArrayList<Future<Scratch>>(strips);
+            for (int i = 0; i < strips; i++) {
+                final int y0 = i * rowsPerStrip;
+                final int y1 = Math.min(height, y0 + rowsPerStrip);
+                final boolean last = i == strips - 1;
+                futures.add(ForkJoinPool.commonPool().submit(
+                        new Callable<Scratch>() {
+                    @Override
+                    public Scratch call() {
+                        return compress(bufferedImage, alpha, y0, y1, last,
+                                level, strategy);
+                    }
+                }));
+            }
+        }
+        long adler = 1L;
+        int next = 0;  // the next strip to write
+        int taken = 0;  // the strips with buffers already taken
+        try {
+            for (; next < strips; next++) {
+                int y0 = next * rowsPerStrip;
+                int y1 = Math.min(height, y0 + rowsPerStrip);
+                boolean last = next == strips - 1;
+                Scratch s;
+                if (futures != null) {
+                    s = get(futures.get(next));
+                }
+                else {
+                    s = compress(bufferedImage, alpha, y0, y1, last, level,
+                            strategy);
+                }
+                taken = next + 1;
+                try {
+                    adler = combineAdler32(adler, s.adler, s.dataLength);
+                    byte[] head = null;
+                    if (next == 0) {
+                        head = zlibHeader(level);
+                    }
+                    byte[] tail = null;
+                    if (last) {
+                        tail = new byte[4];
+                        putInt(tail, 0, (int) adler);
+                    }
+                    writeChunk(outputStream, IDAT, head, s.out, s.outLength,
+                            tail);
+                }
+                finally {
+                    release(s);
+                }
+            }
+        }
+        finally {
+            if (futures != null) {
+                // after a failure, return the buffers of unwritten strips
+                for (int i = taken; i < strips; i++) {
+                    releaseWhenDone(futures.get(i));
+                }
+            }
+        }
+        writeChunk(outputStream, IEND, null, new byte[0], 0, null);
+    }
+
+    /**
+     * Waits for a strip to be compressed.
+     *
+     * @param future  the future result.
+     *
+     * @return The compressed strip.
+     *
+     * @throws IOException if the thread is interrupted.
+     */
+    private static Scratch get(Future<Scratch> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Waits for a strip that will not be written and returns its scratch
+     * buffer to the pool.  The wait is not cut short by an interrupt (the
+     * strips are short, and a buffer left behind would never free its
+     * deflater); the interrupt status is restored afterwards.
+     *
+     * @param future  the future result.
+     */
+    private static void releaseWhenDone(Future<Scratch> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    release(future.get());
+                    return;
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+                catch (ExecutionException e) {
+                    // the strip failed, and released its own buffer
+                    return;
+                }
+            }
+        }
+        finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Filters and compresses the rows {@code y0} to {@code y1 - 1} of an
+     * image into a pooled scratch buffer.  Strips other than the last end
+     * with a sync flush, so that the compressed strips can be joined into
+     * one deflate stream.
+     *
+     * @param image  the image.
+     * @param alpha  write the alpha channel?
+     * @param y0  the first row.
+     * @param y1  the row after the last row.
+     * @param last  is this the last strip?
+     * @param level  the compression level.
+     * @param strategy  the filter strategy.
+     *
+     * @return The scratch buffer holding the compressed strip.
+     */
+    private static Scratch compress(BufferedImage image, boolean alpha,
+            int y0, int y1, boolean last, int level,
+            PNGFilterStrategy strategy) {
+        Scratch s = acquire();
+        boolean done = false;
+        try {
+            int width = image.getWidth();
+            int bpp = alpha ? 4 : 3;
+            int n = width * bpp;
+            s.ensureCapacity(width, (y1 - y0) * (n + 1));
+            if (y0 > 0) {
+                readRow(image, y0 - 1, alpha, s.pixels, s.previous);
+            }
+            else {
+                Arrays.fill(s.previous, 0, n, (byte) 0);
+            }
+            int offset = 0;
+            for (int y = y0; y < y1; y++) {
+                readRow(image, y, alpha, s.pixels, s.current);
+                offset = filterRow(s, n, bpp, strategy, offset);
+                byte[] swap = s.previous;
+                s.previous = s.current;
+                s.current = swap;
+            }
+            s.dataLength = offset;
+            Adler32 checksum = new Adler32();
+            checksum.update(s.data, 0, offset);
+            s.adler = checksum.getValue();
+
+            Deflater deflater = s.getDeflater(level);
+            deflater.setInput(s.data, 0, offset);
+            int count = 0;
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    s.ensureOutputSpace(count);
+                    count += deflater.deflate(s.out, count,
+                            s.out.length - count);
+                }
+            }
+            else {
+                int space;
+                int written;
+                do {
+                    s.ensureOutputSpace(count);
+                    space = s.out.length - count;
+                    written = deflater.deflate(s.out, count, space,
+                            Deflater.SYNC_FLUSH);
+                    count += written;
+                } while (written == space);
+            }
+            s.outLength = count;
+            done = true;
+            return s;
+        }
+        finally {
+            if (!done) {
+                release(s);
+            }
+        }
+    }
+
+    /**
+     * Reads a row of an image as RGB or RGBA bytes.
+     *
+     * @param image  the image.
+     * @param y  the row.
+     * @param alpha  include the alpha channel?
+     * @param pixels  a buffer for the ARGB values of the row.
+     * @param row  the buffer for the bytes.
+     */
+    private static void readRow(BufferedImage image, int y, boolean alpha,
+            int[] pixels, byte[] row) {
+        int width = image.getWidth();
+        int type = image.getType();
+        if (type == BufferedImage.TYPE_INT_RGB
+                || type == BufferedImage.TYPE_INT_ARGB) {
+            // the packed pixel values are the ARGB values
+            image.getRaster().getDataElements(0, y, width, 1, pixels);
+        }
+        else {
+            image.getRGB(0, y, width, 1, pixels, 0, width);
+        }
+        int j = 0;
+        for (int i = 0; i < width; i++) {
+            int p = pixels[i];
+            row[j++] = (byte) (p >> 16);
+            row[j++] = (byte) (p >> 8);
+            row[j++] = (byte) p;
+            if (alpha) {
+                row[j++] = (byte) (p >>> 24);
+            }
+        }
+    }
+
+    /**
+     * Filters the current row of a strip into the strip data.
+     *
+     * @param s  the scratch buffer.
+     * @param n  the number of bytes in a row (without the filter type).
+     * @param bpp  the number of bytes per pixel.
+     * @param strategy  the filter strategy.
+     * @param offset  the offset of the row in the strip data.
+     *
+     * @return The offset of the next row.
+     */
+    private static int filterRow(Scratch s, int n, int bpp,
+            PNGFilterStrategy strategy, int offset) {
+        if (strategy != PNGFilterStrategy.ADAPTIVE) {
+            filter(strategy.getType(), s.current, s.previous, n, bpp, s.data,
+                    offset);
+            return offset + n + 1;
+        }
+        long bestCost = Long.MAX_VALUE;
+        for (int type = 0; type <= 4; type++) {
+            filter(type, s.current, s.previous, n, bpp, s.trial, 0);
+            long cost = 0;
+            for (int i = 1; i <= n && cost < bestCost; i++) {
+                cost += Math.abs(s.trial[i]);
+            }
+            if (cost < bestCost) {
+                bestCost = cost;
+                byte[] swap = s.best;
+                s.best = s.trial;
+                s.trial = swap;
+            }
+        }
+        System.arraycopy(s.best, 0, s.data, offset, n + 1);
+        return offset + n + 1;
+    }
+
+    /**
+     * Applies a PNG filter to a row.
+     *
+     * @param type  the filter type (0 to 4).
+     * @param row  the row.
+     * @param previous  the row above (all zero for the first row).
+     * @param n  the number of bytes in a row.
+     * @param bpp  the number of bytes per pixel.
+     * @param dest  the destination for the filter type and filtered bytes.
+     * @param offset  the offset in {@code dest}.
+     */
+    private static void filter(int type, byte[] row, byte[] previous, int n,
+            int bpp, byte[] dest, int offset) {
+        dest[offset++] = (byte) type;
+        for (int i = 0; i < n; i++) {
+            int x = row[i] & 0xFF;
+            int a = i >= bpp ? row[i - bpp] & 0xFF : 0;
+            int b = previous[i] & 0xFF;
+            int predictor;
+            switch (type) {
+                case 1:
+                    predictor = a;
+                    break;
+                case 2:
+                    predictor = b;
+                    break;
+                case 3:
+                    predictor = (a + b) >>> 1;
+                    break;
+                case 4:
+                    int c = i >= bpp ? previous[i - bpp] & 0xFF : 0;
+                    int p = a + b - c;
+                    int pa = Math.abs(p - a);
+                    int pb = Math.abs(p - b);
+                    int pc = Math.abs(p - c);
+                    if (pa <= pb && pa <= pc) {
+                        predictor = a;
+                    }
+                    else if (pb <= pc) {
+                        predictor = b;
+                    }
+                    else {
+                        predictor = c;
+                    }
+                    break;
+                default:
+                    predictor = 0;
+            }
+            dest[offset + i] = (byte) (x - predictor);
+        }
+    }
+
+    /**
+     * Returns the two-byte zlib stream header for a compression level.
+     *
+     * @param level  the compression level.
+     *
+     * @return The header.
+     */
+    private static byte[] zlibHeader(int level) {
+        int cmf = 0x78;  // deflate with a 32K window
+        int flevel;
+        if (level < 2) {
+            flevel = 0;
+        }
+        else if (level < 6) {
+            flevel = 1;
+        }
+        else if (level == 6) {
+            flevel = 2;
+        }
+        else {
+            flevel = 3;
+        }
+        int flg = flevel << 6;
+        flg += 31 - (cmf * 256 + flg) % 31;
+        return new byte[] {(byte) cmf, (byte) flg};
+    }
+
+    /**
+     * Returns the Adler-32 checksum of two blocks of data joined together,
+     * given the checksums of the blocks (as zlib's
+     * {@code adler32_combine}).
+     *
+     * @param adler1  the checksum of the first block.
+     * @param adler2  the checksum of the second block.
+     * @param length2  the length of the second block.
+     *
+     * @return The checksum.
+     */
+    static long combineAdler32(long adler1, long adler2, long length2) {
+        final long base = 65521L;
+        long rem = length2 % base;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (rem * sum1) % base;
+        sum1 += (adler2 & 0xFFFF) + base - 1;
+        sum2 += ((adler1 >> 16) & 0xFFFF) + ((adler2 >> 16) & 0xFFFF)
+                + base - rem;
+        if (sum1 >= base) {
+            sum1 -= base;
+        }
+        if (sum1 >= base) {
+            sum1 -= base;
+        }
+        if (sum2 >= (base << 1)) {
+            sum2 -= (base << 1);
+        }
+        if (sum2 >= base) {
+            sum2 -= base;
+        }
+        return sum1 | (sum2 << 16);
+    }
+
+    /**
+     * Writes a chunk made of up to three parts.
+     *
+     * @param out  the output stream.
+     * @param type  the chunk type.
+     * @param head  bytes before the data ({@code null} permitted).
+     * @param data  the data.
+     * @param length  the number of bytes of data.
+     * @param tail  bytes after the data ({@code null} permitted).
+     *
+     * @throws IOException if there is an IO problem.
+     */
+    private static void writeChunk(OutputStream out, byte[] type,
+            byte[] head, byte[] data, int length, byte[] tail)
+            throws IOException {
+        int total = length + (head == null ? 0 : head.length)
+                + (tail == null ? 0 : tail.length);
+        byte[] b = new byte[8];
+        putInt(b, 0, total);
+        System.arraycopy(type, 0, b, 4, 4);
+        out.write(b);
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        if (head != null) {
+            crc.update(head);
+            out.write(head);
+        }
+        crc.update(data, 0, length);
+        out.write(data, 0, length);
+        if (tail != null) {
+            crc.update(tail);
+            out.write(tail);
+        }
+        putInt(b, 0, (int) crc.getValue());
+        out.write(b, 0, 4);
+    }
+
+    /**
+     * Writes an int in big-endian order.
+     *
+     * @param b  the array.
+     * @param offset  the offset.
+     * @param value  the value.
+     */
+    private static void putInt(byte[] b, int offset, int value) {
+        b[offset] = (byte) (value >>> 24);
+        b[offset + 1] = (byte) (value >>> 16);
+        b[offset + 2] = (byte) (value >>> 8);
+        b[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Takes a scratch buffer from the pool, or creates one.
+     *
+     * @return A scratch buffer.
+     */
+    private static Scratch acquire() {
+        Scratch s = POOL.poll();
+        return s != null ? s : new Scratch();
+    }
+
+    /**
+     * Returns a scratch buffer to the pool, or frees its deflater if the
+     * pool is full.
+     *
+     * @param s  the scratch buffer.
+     */
+    private static void release(Scratch s) {
+        if (POOL.size() < MAX_POOLED) {
+            POOL.offer(s);
+        }
+        else {
+            s.endDeflater();
+        }
+    }
+
+    /**
+     * The buffers and deflater used to compress one strip.
+     */
+    private static final class Scratch {
+
+        /**
+         * The deflater (raw deflate, without a zlib wrapper), or
+         * {@code null}.
+         */
+        private Deflater deflater;
+
+        /** The compression level of the deflater. */
+        private int level;
+
+        /** The ARGB values of a row. */
+        int[] pixels = new int[0];
+
+        /** The bytes of the row above. */
+        byte[] previous = new byte[0];
+
+        /** The bytes of the current row. */
+        byte[] current = new byte[0];
+
+        /** A filtered row being tried by the adaptive strategy. */
+        byte[] trial = new byte[0];
+
+        /** The best filtered row so far for the adaptive strategy. */
+        byte[] best = new byte[0];
+
+        /** The filtered rows of the strip. */
+        byte[] data = new byte[0];
+
+        /** The number of bytes in {@code data}. */
+        int dataLength;
+
+        /** The Adler-32 checksum of the filtered rows. */
+        long adler;
+
+        /** The compressed strip. */
+        byte[] out = new byte[0];
+
+        /** The number of bytes in {@code out}. */
+        int outLength;
+
+        /**
+         * Returns a reset deflater for the specified level.  A deflater is
+         * never switched to a new level, as {@code Deflater.setLevel} only
+         * takes effect part way through the next stream and so corrupts it;
+         * a new deflater is created instead.
+         *
+         * @param level  the compression level.
+         *
+         * @return The deflater.
+         */
+        Deflater getDeflater(int level) {
+            if (this.deflater != null && this.level == level) {
+                this.deflater.reset();
+            }
+            else {
+                endDeflater();
+                this.deflater = new Deflater(level, true);
+                this.level = level;
+            }
+            return this.deflater;
+        }
+
+        /**
+         * Frees the deflater, if there is one.
+         */
+        void endDeflater() {
+            if (this.deflater != null) {
+                this.deflater.end();
+                this.deflater = null;
+            }
+        }
+
+        /**
+         * Makes sure the buffers are large enough for a strip.
+         *
+         * @param width  the image width.
+         * @param dataLength  the number of bytes of filtered rows.
+         */
+        void ensureCapacity(int width, int dataLength) {
+            int n = width * 4 + 1;
+            if (this.pixels.length < width) {
+                this.pixels = new int[width];
+            }
+            if (this.current.length < n) {
+                this.previous = new byte[n];
+                this.current = new byte[n];
+                this.trial = new byte[n];
+                this.best = new byte[n];
+            }
+            if (this.data.length < dataLength) {
+                this.data = new byte[dataLength];
+            }
+        }
+
+        /**
+         * Makes sure there is space for more compressed bytes.
+         *
+         * @param count  the number of compressed bytes so far.
+         */
+        void ensureOutputSpace(int count) {
+            if (this.out.length - count < 1024) {
+                this.out = Arrays.copyOf(this.out,
+                        Math.max(this.out.length * 2, count + 8192));
+            }
+        }
+    }
+
+}
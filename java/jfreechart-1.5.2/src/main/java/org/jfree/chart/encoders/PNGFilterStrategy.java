@@ -0,0 +1,89 @@
+/* ===========================================================
+ * JFreeChart : a free chart library for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2000-2020, by Object Refinery Limited and Contributors.
+ *
+ * Project Info:  http://www.jfree.org/jfreechart/index.html
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * ----------------------
+ * PNGFilterStrategy.java
+ * ----------------------
+ * (C) Copyright 2020, by Object Refinery Limited and Contributors.
+ *
+ * Original Author:  -;
+ * Contributor(s):   -;
+ *
+ */
+
+package org.jfree.chart.encoders;
+
+/**
+ * The strategy used by the {@link PNGEncoderAdapter} to choose the filter
+ * applied to each row of an image before compression.
+ *
+ * @since 1.5.3
+ */
+public enum PNGFilterStrategy {
+
+    /** No filter (fastest, and usually best for few colours). */
+    NONE(0),
+
+    /** Each byte less the byte to its left. */
+    SUB(1),
+
+    /** Each byte less the byte above it. */
+    UP(2),
+
+    /** Each byte less the average of the bytes to its left and above. */
+    AVERAGE(3),
+
+    /** The Paeth filter. */
+    PAETH(4),
+
+    /**
+     * For each row, the filter that gives the lowest sum of absolute
+     * differences (the heuristic recommended by the PNG specification).
+     */
+    ADAPTIVE(-1);
+
+    /** The PNG filter type, or -1 for the adaptive strategy. */
+    private final int type;
+
+    /**
+     * Private constructor.
+     *
+     * @param type  the PNG filter type.
+     */
+    private PNGFilterStrategy(int type) {
+        this.type = type;
+    }
+
+    /**
+     * Returns the PNG filter type (0 to 4), or -1 for the adaptive strategy.
+     *
+     * @return The filter type.
+     */
+    int getType() {
+        return this.type;
+    }
+
+}
@@ -0,0 +1,272 @@
+/* ===========================================================
+ * JFreeChart : a free chart library for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2000-2020, by Object Refinery Limited and Contributors.
+ *
+ * Project Info:  http://www.jfree.org/jfreechart/index.html
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * ---------------
+ * EntityGrid.java
+ * ---------------
+ * (C) Copyright 2020, by Object Refinery Limited and Contributors.
+ *
+ * Original Author:  -;
+ * Contributor(s):   -;
+ *
+ */
+
+package org.jfree.chart.entity;
+
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+
+/**
+ * A uniform grid over the bounds of a list of entities, used by
+ * {@link StandardEntityCollection} to find the entity at a point without
+ * testing every entity.  Each cell lists, in list order, the entities with
+ * bounds that overlap it; entities that cover many cells (such as the plot
+ * and chart entities) are kept in a separate list instead.  The grid does
+ * not follow changes to the list or to the entity areas.
+ */
+class EntityGrid {
+
+    /** The average number of entities per cell. */
+    private static final int ENTITIES_PER_CELL = 4;
+
+    /** Entities covering more cells than this go in the large list. */
+    private static final int MAX_CELLS_PER_ENTITY = 64;
+
+    /** An empty cell. */
+    private static final int[] NO_ENTITIES = new int[0];
+
+    /** The number of entities the grid was built for. */
+    private final int entityCount;
+
+    /** The bounds of the grid. */
+    private final double minX, minY, maxX, maxY;
+
+    /** The number of columns. */
+    private final int columns;
+
+    /** The number of rows. */
+    private final int rows;
+
+    /** The width of a cell. */
+    private final double cellWidth;
+
+    /** The height of a cell. */
+    private final double cellHeight;
+
+    /** The entity indices for each cell, in ascending order. */
+    private final int[][] cells;
+
+    /** The indices of the entities covering many cells, ascending. */
+    private final int[] large;
+
+    /**
+     * Builds a grid for the entities.
+     *
+     * @param entities  the entities ({@code null} not permitted).
+     */
+    EntityGrid(List entities) {
+        int n = entities.size();
+        this.entityCount = n;
+        Rectangle2D[] bounds = new Rectangle2D[n];
+        double x0 = Double.POSITIVE_INFINITY;
+        double y0 = Double.POSITIVE_INFINITY;
+        double x1 = Double.NEGATIVE_INFINITY;
+        double y1 = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            ChartEntity entity = (ChartEntity) entities.get(i);
+            Rectangle2D b = entity.getArea().getBounds2D();
+            if (isFinite(b)) {
+                bounds[i] = b;
+                x0 = Math.min(x0, b.getMinX());
+                y0 = Math.min(y0, b.getMinY());
+                x1 = Math.max(x1, b.getMaxX());
+                y1 = Math.max(y1, b.getMaxY());
+            }
+        }
+        if (x0 > x1) {  // no usable bounds
+            x0 = x1 = y0 = y1 = 0.0;
+        }
+        this.minX = x0;
+        this.minY = y0;
+        this.maxX = x1;
+        this.maxY = y1;
+
+        // cells about as wide as they are high
+        double w = Math.max(x1 - x0, 1.0);
+        double h = Math.max(y1 - y0, 1.0);
+        double cellCount = Math.max(1.0, (double) n / ENTITIES_PER_CELL);
+        this.columns = (int) Math.max(1, Math.min(1024,
+                Math.ceil(Math.sqrt(cellCount * w / h))));
+        this.rows = (int) Math.max(1, Math.min(1024,
+                Math.ceil(cellCount / this.columns)));
+        this.cellWidth = w / this.columns;
+        this.cellHeight = h / this.rows;
+
+        // count the entities in each cell, then fill the cells
+        int[] counts = new int[this.columns * this.rows];
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            if (isLarge(bounds[i])) {
+                largeCount++;
+                continue;
+            }
+            for (int r = row(bounds[i].getMinY());
+                    r <= row(bounds[i].getMaxY()); r++) {
+                for (int c = column(bounds[i].getMinX());
+                        c <= column(bounds[i].getMaxX()); c++) {
+                    counts[r * this.columns + c]++;
+                }
+            }
+        }
+        this.cells = new int[counts.length][];
+        for (int k = 0; k < counts.length; k++) {
+            this.cells[k] = new int[counts[k]];
+            counts[k] = 0;
+        }
+        this.large = new int[largeCount];
+        largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            if (isLarge(bounds[i])) {
+                this.large[largeCount++] = i;
+                continue;
+            }
+            for (int r = row(bounds[i].getMinY());
+                    r <= row(bounds[i].getMaxY()); r++) {
+                for (int c = column(bounds[i].getMinX());
+                        c <= column(bounds[i].getMaxX()); c++) {
+                    int k = r * this.columns + c;
+                    this.cells[k][counts[k]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entities the grid was built for.
+     *
+     * @return The entity count.
+     */
+    int getEntityCount() {
+        return this.entityCount;
+    }
+
+    /**
+     * Returns the index of the last entity with an area that contains the
+     * specified point, or -1.
+     *
+     * @param entities  the entities the grid was built for.
+     * @param x  the x-coordinate.
+     * @param y  the y-coordinate.
+     *
+     * @return The entity index, or -1.
+     */
+    int find(List entities, double x, double y) {
+        int[] cell;
+        if (x >= this.minX && x <= this.maxX && y >= this.minY
+                && y <= this.maxY) {
+            cell = this.cells[row(y) * this.columns + column(x)];
+        }
+        else {
+            cell = NO_ENTITIES;
+        }
+        // merge the cell and the large list, from the last entity back
+        int i = cell.length - 1;
+        int j = this.large.length - 1;
+        while (i >= 0 || j >= 0) {
+            int index;
+            if (j < 0 || (i >= 0 && cell[i] > this.large[j])) {
+                index = cell[i--];
+            }
+            else {
+                index = this.large[j--];
+            }
+            ChartEntity entity = (ChartEntity) entities.get(index);
+            if (entity.getArea().contains(x, y)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns {@code true} if an entity with the specified bounds goes in
+     * the large list.
+     *
+     * @param b  the bounds ({@code null} for unusable bounds).
+     *
+     * @return A boolean.
+     */
+    private boolean isLarge(Rectangle2D b) {
+        if (b == null) {
+            return true;
+        }
+        long c = column(b.getMaxX()) - column(b.getMinX()) + 1;
+        long r = row(b.getMaxY()) - row(b.getMinY()) + 1;
+        return c * r > MAX_CELLS_PER_ENTITY;
+    }
+
+    /**
+     * Returns the column for an x-coordinate, clamped to the grid.
+     *
+     * @param x  the x-coordinate.
+     *
+     * @return The column.
+     */
+    private int column(double x) {
+        int c = (int) Math.floor((x - this.minX) / this.cellWidth);
+        return Math.max(0, Math.min(this.columns - 1, c));
+    }
+
+    /**
+     * Returns the row for a y-coordinate, clamped to the grid.
+     *
+     * @param y  the y-coordinate.
+     *
+     * @return The row.
+     */
+    private int row(double y) {
+        int r = (int) Math.floor((y - this.minY) / this.cellHeight);
+        return Math.max(0, Math.min(this.rows - 1, r));
+    }
+
+    /**
+     * Returns {@code true} if all the coordinates of a rectangle are finite.
+     *
+     * @param b  the rectangle.
+     *
+     * @return A boolean.
+     */
+    private static boolean isFinite(Rectangle2D b) {
+        return !Double.isNaN(b.getMinX()) && !Double.isInfinite(b.getMinX())
+                && !Double.isNaN(b.getMaxX())
+                && !Double.isInfinite(b.getMaxX())
+                && !Double.isNaN(b.getMinY())
+                && !Double.isInfinite(b.getMinY())
+                && !Double.isNaN(b.getMaxY())
+                && !Double.isInfinite(b.getMaxY());
+    }
+
+}
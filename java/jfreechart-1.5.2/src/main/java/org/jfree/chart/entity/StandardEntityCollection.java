@@ -54,9 +54,21 @@ public class StandardEntityCollection implements EntityCollection,
     /** For serialization. */
     private static final long serialVersionUID = 5384773031184897047L;
 
+    /**
+     * Collections with fewer entities than this are searched without a
+     * grid.
+     */
+    private static final int GRID_THRESHOLD = 32;
+
     /** Storage for the entities. */
     private List entities;
 
+    /**
+     * A grid for finding the entity at a point, built on the first search
+     * after the entities change ({@code null} until then).
+     */
+    private transient EntityGrid grid;
+
     /**
      * Constructs a new entity collection (initially empty).
      */
@@ -94,6 +106,7 @@ public class StandardEntityCollection implements EntityCollection,
     @Override
     public void clear() {
         this.entities.clear();
+        this.grid = null;
     }
 
     /**
@@ -105,6 +118,7 @@ public class StandardEntityCollection implements EntityCollection,
     public void add(ChartEntity entity) {
         Args.nullNotPermitted(entity, "entity");
         this.entities.add(entity);
+        this.grid = null;
     }
 
     /**
@@ -116,11 +130,18 @@ public class StandardEntityCollection implements EntityCollection,
     @Override
     public void addAll(EntityCollection collection) {
         this.entities.addAll(collection.getEntities());
+        this.grid = null;
     }
 
     /**
      * Returns the last entity in the list with an area that encloses the
      * specified coordinates, or {@code null} if there is no such entity.
+     * <p>
+     * For larger collections the first call after entities are added builds
+     * a grid over the entity bounds, so that later calls only test the
+     * entities near the point.  The grid is rebuilt after entities are added
+     * or removed, but not after the area of an entity already in the
+     * collection is changed.
      *
      * @param x  the x coordinate.
      * @param y  the y coordinate.
@@ -130,6 +151,15 @@ public class StandardEntityCollection implements EntityCollection,
     @Override
     public ChartEntity getEntity(double x, double y) {
         int entityCount = this.entities.size();
+        if (entityCount >= GRID_THRESHOLD) {
+            // the count also catches removals through the iterator
+            if (this.grid == null
+                    || this.grid.getEntityCount() != entityCount) {
+                this.grid = new EntityGrid(this.entities);
+            }
+            int index = this.grid.find(this.entities, x, y);
+            return index < 0 ? null : (ChartEntity) this.entities.get(index);
+        }
         for (int i = entityCount - 1; i >= 0; i--) {
             ChartEntity entity = (ChartEntity) this.entities.get(i);
             if (entity.getArea().contains(x, y)) {
@@ -189,6 +219,7 @@ public class StandardEntityCollection implements EntityCollection,
     public Object clone() throws CloneNotSupportedException {
         StandardEntityCollection clone
                 = (StandardEntityCollection) super.clone();
+        clone.grid = null;
         clone.entities = new java.util.ArrayList(this.entities.size());
         for (int i = 0; i < this.entities.size(); i++) {
             ChartEntity entity = (ChartEntity) this.entities.get(i);
@@ -73,6 +73,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -80,6 +81,7 @@ import java.util.Map.Entry;
 import java.util.ResourceBundle;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.function.DoubleToIntFunction;
 import org.jfree.chart.JFreeChart;
 
 import org.jfree.chart.LegendItem;
@@ -115,9 +117,11 @@ import org.jfree.chart.util.PublicCloneable;
 import org.jfree.chart.util.ResourceBundleWrapper;
 import org.jfree.chart.util.SerialUtils;
 import org.jfree.chart.util.ShadowGenerator;
+import org.jfree.data.DomainOrder;
 import org.jfree.data.Range;
 import org.jfree.data.general.DatasetChangeEvent;
 import org.jfree.data.general.DatasetUtils;
+import org.jfree.data.xy.M4Pyramid;
 import org.jfree.data.xy.XYDataset;
 
 /**
@@ -421,6 +425,20 @@ public class XYPlot extends Plot implements ValueAxisPlot, Pannable, Zoomable,
      */
     private ShadowGenerator shadowGenerator;
 
+    /**
+     * A flag that controls whether series with many items per pixel are
+     * drawn from a reduced set of items (see {@link M4Pyramid}).
+     *
+     * @since 1.5.3
+     */
+    private boolean levelOfDetail;
+
+    /**
+     * The level-of-detail indices for each dataset, created when first
+     * needed ({@code null} until then).
+     */
+    private transient Map<XYDataset, M4Pyramid[]> levelOfDetailIndices;
+
     /**
      * Creates a new {@code XYPlot} instance with no dataset, no axes and
      * no renderer.  You should specify these items before using the plot.
@@ -1200,6 +1218,9 @@ public class XYPlot extends Plot implements ValueAxisPlot, Pannable, Zoomable,
         XYDataset existing = getDataset(index);
         if (existing != null) {
             existing.removeChangeListener(this);
+            if (this.levelOfDetailIndices != null) {
+                this.levelOfDetailIndices.remove(existing);
+            }
         }
         this.datasets.put(index, dataset);
         if (dataset != null) {
@@ -2781,6 +2802,49 @@ public class XYPlot extends Plot implements ValueAxisPlot, Pannable, Zoomable,
         fireChangeEvent();
     }
 
+    /**
+     * Returns the flag that controls whether series with many items per
+     * pixel are drawn from a reduced set of items.  The default value is
+     * {@code false}.
+     *
+     * @return A boolean.
+     *
+     * @since 1.5.3
+     *
+     * @see #setLevelOfDetail(boolean)
+     */
+    public boolean isLevelOfDetail() {
+        return this.levelOfDetail;
+    }
+
+    /**
+     * Sets the flag that controls whether series with many items per pixel
+     * are drawn from a reduced set of items, and sends a
+     * {@link PlotChangeEvent} to all registered listeners.
+     * <P>
+     * When the flag is set, and the renderer allows it (see
+     * {@link XYItemRendererState#isLevelOfDetailAllowed()}), only the first,
+     * last, lowest and highest item in each pixel column of a series are
+     * passed to the renderer.  A line through these items looks the same as
+     * a line through all the items, so drawing time depends on the width of
+     * the plot rather than the size of the dataset.  The items are found
+     * with an {@link M4Pyramid} for each series, which is built on first use
+     * and rebuilt after the dataset changes.  This applies only to datasets
+     * with the x-values in ascending order, and entities (for tooltips) are
+     * created only for the items passed to the renderer.
+     *
+     * @param flag  the new flag value.
+     *
+     * @since 1.5.3
+     */
+    public void setLevelOfDetail(boolean flag) {
+        this.levelOfDetail = flag;
+        if (!flag) {
+            this.levelOfDetailIndices = null;
+        }
+        fireChangeEvent();
+    }
+
     /**
      * Calculates the space required for all the axes in the plot.
      *
@@ -3540,15 +3604,9 @@ public class XYPlot extends Plot implements ValueAxisPlot, Pannable, Zoomable,
                             firstItem = Math.max(itemBounds[0] - 1, 0);
                             lastItem = Math.min(itemBounds[1] + 1, lastItem);
                         }
-                        state.startSeriesPass(dataset, series, firstItem,
-                                lastItem, pass, passCount);
-                        for (int item = firstItem; item <= lastItem; item++) {
-                            renderer.drawItem(g2, state, dataArea, info,
-                                    this, xAxis, yAxis, dataset, series, item,
-                                    crosshairState, pass);
-                        }
-                        state.endSeriesPass(dataset, series, firstItem,
-                                lastItem, pass, passCount);
+                        renderSeries(g2, dataArea, info, crosshairState,
+                                renderer, state, xAxis, yAxis, dataset,
+                                series, firstItem, lastItem, pass, passCount);
                     }
                 }
             }
@@ -3566,15 +3624,9 @@ public class XYPlot extends Plot implements ValueAxisPlot, Pannable, Zoomable,
                             firstItem = Math.max(itemBounds[0] - 1, 0);
                             lastItem = Math.min(itemBounds[1] + 1, lastItem);
                         }
-                        state.startSeriesPass(dataset, series, firstItem,
-                                lastItem, pass, passCount);
-                        for (int item = firstItem; item <= lastItem; item++) {
-                            renderer.drawItem(g2, state, dataArea, info,
-                                    this, xAxis, yAxis, dataset, series, item,
-                                    crosshairState, pass);
-                        }
-                        state.endSeriesPass(dataset, series, firstItem,
-                                lastItem, pass, passCount);
+                        renderSeries(g2, dataArea, info, crosshairState,
+                                renderer, state, xAxis, yAxis, dataset,
+                                series, firstItem, lastItem, pass, passCount);
                     }
                 }
             }
@@ -3582,6 +3634,100 @@ public class XYPlot extends Plot implements ValueAxisPlot, Pannable, Zoomable,
         return foundData;
     }
 
+    /**
+     * Draws one pass through the items {@code firstItem} to
+     * {@code lastItem} of a series.  If level-of-detail rendering applies
+     * (see {@link #setLevelOfDetail(boolean)}) only some of the items are
+     * passed to the renderer.
+     *
+     * @param g2  the graphics device.
+     * @param dataArea  the region in which the data is to be drawn.
+     * @param info  an optional object for collection dimension information.
+     * @param crosshairState  collects crosshair information
+     *                        ({@code null} permitted).
+     * @param renderer  the renderer.
+     * @param state  the renderer state.
+     * @param xAxis  the domain axis.
+     * @param yAxis  the range axis.
+     * @param dataset  the dataset.
+     * @param series  the series index.
+     * @param firstItem  the index of the first item.
+     * @param lastItem  the index of the last item.
+     * @param pass  the pass index.
+     * @param passCount  the number of passes.
+     */
+    private void renderSeries(Graphics2D g2, Rectangle2D dataArea,
+            PlotRenderingInfo info, CrosshairState crosshairState,
+            XYItemRenderer renderer, XYItemRendererState state,
+            ValueAxis xAxis, ValueAxis yAxis, XYDataset dataset, int series,
+            int firstItem, int lastItem, int pass, int passCount) {
+        int[] items = null;
+        if (this.levelOfDetail && state.isLevelOfDetailAllowed()
+                && dataset.getDomainOrder() == DomainOrder.ASCENDING) {
+            items = selectItems(dataArea, xAxis, dataset, series, firstItem,
+                    lastItem);
+        }
+        state.startSeriesPass(dataset, series, firstItem, lastItem, pass,
+                passCount);
+        int count = items != null ? items.length : lastItem - firstItem + 1;
+        for (int i = 0; i < count; i++) {
+            int item = items != null ? items[i] : firstItem + i;
+            renderer.drawItem(g2, state, dataArea, info, this, xAxis, yAxis,
+                    dataset, series, item, crosshairState, pass);
+        }
+        state.endSeriesPass(dataset, series, firstItem, lastItem, pass,
+                passCount);
+    }
+
+    /**
+     * Returns the items of a series to pass to the renderer for
+     * level-of-detail rendering, or {@code null} if all the items should be
+     * passed.
+     *
+     * @param dataArea  the region in which the data is to be drawn.
+     * @param xAxis  the domain axis.
+     * @param dataset  the dataset.
+     * @param series  the series index.
+     * @param firstItem  the index of the first item.
+     * @param lastItem  the index of the last item.
+     *
+     * @return The item indices in ascending order, or {@code null}.
+     */
+    private int[] selectItems(final Rectangle2D dataArea,
+            final ValueAxis xAxis, XYDataset dataset, int series,
+            int firstItem, int lastItem) {
+        int columns = (int) Math.ceil(this.orientation
+                == PlotOrientation.HORIZONTAL ? dataArea.getHeight()
+                : dataArea.getWidth());
+        if (columns <= 0 || lastItem - firstItem < columns * 2) {
+            return null;
+        }
+        if (this.levelOfDetailIndices == null) {
+            this.levelOfDetailIndices
+                    = new IdentityHashMap<XYDataset, M4Pyramid[]>();
+        }
+        M4Pyramid[] indices = this.levelOfDetailIndices.get(dataset);
+        if (indices == null || indices.length != dataset.getSeriesCount()) {
+            indices = new M4Pyramid[dataset.getSeriesCount()];
+            this.levelOfDetailIndices.put(dataset, indices);
+        }
+        M4Pyramid index = indices[series];
+        if (index == null
+                || index.getItemCount() != dataset.getItemCount(series)) {
+            index = new M4Pyramid(dataset, series);
+            indices[series] = index;
+        }
+        final RectangleEdge edge = getDomainAxisEdge();
+        return index.select(firstItem, lastItem, columns,
+                new DoubleToIntFunction() {
+            @Override
+            public int applyAsInt(double x) {
+                return (int) Math.floor(xAxis.valueToJava2D(x, dataArea,
+                        edge));
+            }
+        });
+    }
+
     /**
      * Returns the domain axis for a dataset.
      *
@@ -4335,6 +4481,9 @@ public class XYPlot extends Plot implements ValueAxisPlot, Pannable, Zoomable,
      */
     @Override
     public void datasetChanged(DatasetChangeEvent event) {
+        if (this.levelOfDetailIndices != null) {
+            this.levelOfDetailIndices.remove(event.getDataset());
+        }
         configureDomainAxes();
         configureRangeAxes();
         if (getParent() != null) {
@@ -5316,6 +5465,9 @@ public class XYPlot extends Plot implements ValueAxisPlot, Pannable, Zoomable,
                 that.shadowGenerator)) {
             return false;
         }
+        if (this.levelOfDetail != that.levelOfDetail) {
+            return false;
+        }
         return super.equals(obj);
     }
 
@@ -5330,6 +5482,7 @@ public class XYPlot extends Plot implements ValueAxisPlot, Pannable, Zoomable,
     @Override
     public Object clone() throws CloneNotSupportedException {
         XYPlot clone = (XYPlot) super.clone();
+        clone.levelOfDetailIndices = null;
         clone.domainAxes = CloneUtils.cloneMapValues(this.domainAxes);
         for (ValueAxis axis : clone.domainAxes.values()) {
             if (axis != null) {
@@ -197,6 +197,7 @@ public class SamplingXYLineRenderer extends AbstractXYItemRenderer
         state.seriesPath = new GeneralPath();
         state.intervalPath = new GeneralPath();
         state.dX = 72.0 / dpi;
+        state.setLevelOfDetailAllowed(true);
         return state;
     }
 
@@ -77,6 +77,14 @@ public class XYItemRendererState extends RendererState {
      */
     private boolean processVisibleItemsOnly;
 
+    /**
+     * A flag that controls whether the plot may pass only the items needed
+     * to draw each series as a line, when there are many items per pixel.
+     *
+     * @since 1.5.3
+     */
+    private boolean levelOfDetailAllowed;
+
     /**
      * Creates a new state.
      *
@@ -115,6 +123,36 @@ public class XYItemRendererState extends RendererState {
         this.processVisibleItemsOnly = flag;
     }
 
+    /**
+     * Returns the flag that controls whether the plot may pass only the
+     * items needed to draw each series as a line (the first, last, lowest
+     * and highest item in each pixel column) rather than all the visible
+     * items.  The plot does this only if its level-of-detail flag is also
+     * set.  The default value is {@code false}, renderers that draw each
+     * series as a single line set it in their {@code initialise()} method.
+     *
+     * @return A boolean.
+     *
+     * @since 1.5.3
+     *
+     * @see XYPlot#setLevelOfDetail(boolean)
+     */
+    public boolean isLevelOfDetailAllowed() {
+        return this.levelOfDetailAllowed;
+    }
+
+    /**
+     * Sets the flag that controls whether the plot may pass only the items
+     * needed to draw each series as a line.
+     *
+     * @param flag  the new flag value.
+     *
+     * @since 1.5.3
+     */
+    public void setLevelOfDetailAllowed(boolean flag) {
+        this.levelOfDetailAllowed = flag;
+    }
+
     /**
      * Returns the first item index (this is updated with each call to
      * {@link #startSeriesPass(XYDataset, int, int, int, int, int)}.
@@ -56,6 +56,7 @@ import org.jfree.chart.plot.CrosshairState;
 import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.chart.plot.PlotRenderingInfo;
 import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.AbstractRenderer;
 import org.jfree.chart.ui.RectangleEdge;
 import org.jfree.chart.util.BooleanList;
 import org.jfree.chart.util.LineUtils;
@@ -670,7 +671,59 @@ public class XYLineAndShapeRenderer extends AbstractXYItemRenderer
     @Override
     public XYItemRendererState initialise(Graphics2D g2, Rectangle2D dataArea,
             XYPlot plot, XYDataset data, PlotRenderingInfo info) {
-        return new State(info);
+        State state = new State(info);
+        state.setLevelOfDetailAllowed(this.drawSeriesLineAsPath
+                && !anyShapesVisible(data));
+        return state;
+    }
+
+    /**
+     * Returns {@code true} if shapes or item labels may be drawn for any
+     * series in the dataset.  Used to decide whether the plot may pass only
+     * some of the items (see
+     * {@link XYItemRendererState#isLevelOfDetailAllowed()}).  The flags are
+     * checked per series, so a subclass that overrides
+     * {@link #getItemShapeVisible(int, int)} or
+     * {@link #isItemLabelVisible(int, int)} to vary them by item is always
+     * treated as drawing shapes.
+     *
+     * @param dataset  the dataset ({@code null} permitted).
+     *
+     * @return A boolean.
+     */
+    private boolean anyShapesVisible(XYDataset dataset) {
+        if (dataset == null) {
+            return false;
+        }
+        if (overridesItemFlags()) {
+            return true;
+        }
+        for (int series = 0; series < dataset.getSeriesCount(); series++) {
+            if (getItemShapeVisible(series, 0)
+                    || isSeriesItemLabelsVisible(series)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns {@code true} if this renderer's class overrides the methods
+     * that control the shape and item label visibility of single items.
+     *
+     * @return A boolean.
+     */
+    private boolean overridesItemFlags() {
+        try {
+            Class<?> c = getClass();
+            return c.getMethod("getItemShapeVisible", int.class, int.class)
+                    .getDeclaringClass() != XYLineAndShapeRenderer.class
+                    || c.getMethod("isItemLabelVisible", int.class, int.class)
+                    .getDeclaringClass() != AbstractRenderer.class;
+        }
+        catch (NoSuchMethodException e) {
+            return true;
+        }
     }
 
     /**
@@ -0,0 +1,362 @@
+/* ===========================================================
+ * JFreeChart : a free chart library for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2000-2020, by Object Refinery Limited and Contributors.
+ *
+ * Project Info:  http://www.jfree.org/jfreechart/index.html
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * ---------------
+ * RangeIndex.java
+ * ---------------
+ * (C) Copyright 2020, by Object Refinery Limited and Contributors.
+ *
+ * Original Author:  -;
+ * Contributor(s):   -;
+ *
+ */
+
+package org.jfree.data;
+
+import java.util.Arrays;
+
+/**
+ * A list of values (typically the y-values of a series, by item index) that
+ * can return the range of the values between two indices in
+ * {@code O(log n)} time.  The values are held in a segment tree of minima
+ * and maxima, so adding or removing values at either end, or changing a
+ * value, also takes {@code O(log n)} time.  Inserting or removing values
+ * elsewhere takes {@code O(n)} time.
+ * <p>
+ * {@code Double.NaN} values are held but ignored by
+ * {@link #getRange(int, int)}.
+ *
+ * @since 1.5.3
+ */
+public class RangeIndex {
+
+    /** The number of leaves in the tree, a power of two. */
+    private int capacity;
+
+    /** The leaf holding the value at index 0. */
+    private int start;
+
+    /** The number of values. */
+    private int size;
+
+    /** The values, by leaf. */
+    private double[] values;
+
+    /**
+     * The minimum of each subtree, with the root at 1 and the leaves at
+     * {@code capacity} onwards.  Empty and NaN leaves hold
+     * {@code Double.POSITIVE_INFINITY}.
+     */
+    private double[] min;
+
+    /**
+     * The maximum of each subtree.  Empty and NaN leaves hold
+     * {@code Double.NEGATIVE_INFINITY}.
+     */
+    private double[] max;
+
+    /**
+     * Creates a new empty index.
+     */
+    public RangeIndex() {
+        rebuild(new double[0], 0);
+    }
+
+    /**
+     * Creates a new index holding the specified values.
+     *
+     * @param values  the values ({@code null} not permitted).
+     */
+    public RangeIndex(double[] values) {
+        rebuild(values.clone(), values.length);
+    }
+
+    /**
+     * Returns the number of values in the index.
+     *
+     * @return The number of values.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns a value.
+     *
+     * @param index  the index (in the range {@code 0} to
+     *     {@code size() - 1}).
+     *
+     * @return The value.
+     */
+    public double get(int index) {
+        checkIndex(index, this.size - 1);
+        return this.values[leaf(index)];
+    }
+
+    /**
+     * Adds a value at the end of the index.
+     *
+     * @param value  the value.
+     */
+    public void add(double value) {
+        insert(this.size, value);
+    }
+
+    /**
+     * Inserts a value at the specified index, moving the value at that index
+     * (if any) and the values after it up by one.
+     *
+     * @param index  the index (in the range {@code 0} to {@code size()}).
+     * @param value  the value.
+     */
+    public void insert(int index, double value) {
+        checkIndex(index, this.size);
+        if (this.size == this.capacity) {
+            rebuild(toArray(this.size + 1), this.size);
+        }
+        if (index == this.size) {
+            this.size++;
+            setLeaf(leaf(index), value);
+        }
+        else if (index == 0) {
+            this.start = (this.start + this.capacity - 1) % this.capacity;
+            this.size++;
+            setLeaf(this.start, value);
+        }
+        else {
+            double[] v = toArray(this.size + 1);
+            System.arraycopy(v, index, v, index + 1, this.size - index);
+            v[index] = value;
+            rebuild(v, this.size + 1);
+        }
+    }
+
+    /**
+     * Replaces a value.
+     *
+     * @param index  the index (in the range {@code 0} to
+     *     {@code size() - 1}).
+     * @param value  the new value.
+     */
+    public void set(int index, double value) {
+        checkIndex(index, this.size - 1);
+        setLeaf(leaf(index), value);
+    }
+
+    /**
+     * Removes the values from {@code start} to {@code end} inclusive,
+     * moving the values after them down.
+     *
+     * @param start  the index of the first value to remove.
+     * @param end  the index of the last value to remove.
+     */
+    public void remove(int start, int end) {
+        checkIndex(start, this.size - 1);
+        checkIndex(end, this.size - 1);
+        if (start > end) {
+            throw new IllegalArgumentException("Requires start <= end.");
+        }
+        if (start == 0) {
+            for (int i = start; i <= end; i++) {
+                setLeaf(this.start, Double.NaN);
+                this.start = (this.start + 1) % this.capacity;
+            }
+            this.size -= end - start + 1;
+        }
+        else if (end == this.size - 1) {
+            for (int i = start; i <= end; i++) {
+                setLeaf(leaf(i), Double.NaN);
+            }
+            this.size = start;
+        }
+        else {
+            double[] v = toArray(this.size);
+            System.arraycopy(v, end + 1, v, start, this.size - end - 1);
+            rebuild(v, this.size - (end - start + 1));
+        }
+    }
+
+    /**
+     * Removes all values.
+     */
+    public void clear() {
+        rebuild(new double[0], 0);
+    }
+
+    /**
+     * Returns the range of the values from {@code start} to {@code end}
+     * inclusive, ignoring {@code Double.NaN} values.
+     *
+     * @param start  the index of the first value.
+     * @param end  the index of the last value.
+     *
+     * @return The range, or {@code null} if there are no values (other than
+     *     {@code Double.NaN}) in the range of indices.
+     */
+    public Range getRange(int start, int end) {
+        if (start > end) {
+            return null;
+        }
+        checkIndex(start, this.size - 1);
+        checkIndex(end, this.size - 1);
+        double[] result = {Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY};
+        int first = leaf(start);
+        int last = leaf(end);
+        if (first <= last) {
+            query(first, last, result);
+        }
+        else {
+            query(first, this.capacity - 1, result);
+            query(0, last, result);
+        }
+        if (result[0] == Double.POSITIVE_INFINITY) {
+            return null;
+        }
+        return new Range(result[0], result[1]);
+    }
+
+    /**
+     * Updates {@code result} with the minimum and maximum of the leaves
+     * {@code first} to {@code last}.
+     *
+     * @param first  the first leaf.
+     * @param last  the last leaf.
+     * @param result  the minimum and maximum so far.
+     */
+    private void query(int first, int last, double[] result) {
+        int lo = first + this.capacity;
+        int hi = last + this.capacity + 1;
+        while (lo < hi) {
+            if ((lo & 1) == 1) {
+                result[0] = Math.min(result[0], this.min[lo]);
+                result[1] = Math.max(result[1], this.max[lo]);
+                lo++;
+            }
+            if ((hi & 1) == 1) {
+                hi--;
+                result[0] = Math.min(result[0], this.min[hi]);
+                result[1] = Math.max(result[1], this.max[hi]);
+            }
+            lo >>= 1;
+            hi >>= 1;
+        }
+    }
+
+    /**
+     * Returns the leaf holding the value at an index.
+     *
+     * @param index  the index.
+     *
+     * @return The leaf.
+     */
+    private int leaf(int index) {
+        return (this.start + index) & (this.capacity - 1);
+    }
+
+    /**
+     * Sets the value of a leaf and updates the minima and maxima above it.
+     *
+     * @param leaf  the leaf.
+     * @param value  the value.
+     */
+    private void setLeaf(int leaf, double value) {
+        this.values[leaf] = value;
+        int node = leaf + this.capacity;
+        boolean nan = Double.isNaN(value);
+        this.min[node] = nan ? Double.POSITIVE_INFINITY : value;
+        this.max[node] = nan ? Double.NEGATIVE_INFINITY : value;
+        for (node >>= 1; node > 0; node >>= 1) {
+            this.min[node] = Math.min(this.min[2 * node],
+                    this.min[2 * node + 1]);
+            this.max[node] = Math.max(this.max[2 * node],
+                    this.max[2 * node + 1]);
+        }
+    }
+
+    /**
+     * Returns the values in index order, in an array of the specified
+     * length.
+     *
+     * @param length  the array length (at least {@code size()}).
+     *
+     * @return The values.
+     */
+    private double[] toArray(int length) {
+        double[] result = new double[length];
+        for (int i = 0; i < this.size; i++) {
+            result[i] = this.values[leaf(i)];
+        }
+        return result;
+    }
+
+    /**
+     * Rebuilds the tree from the specified values.
+     *
+     * @param v  the values (the array is kept).
+     * @param count  the number of values.
+     */
+    private void rebuild(double[] v, int count) {
+        int c = 16;
+        while (c < v.length) {
+            c *= 2;
+        }
+        if (v.length < c) {
+            v = Arrays.copyOf(v, c);
+        }
+        this.capacity = c;
+        this.start = 0;
+        this.size = count;
+        this.values = v;
+        this.min = new double[2 * c];
+        this.max = new double[2 * c];
+        for (int i = 0; i < c; i++) {
+            boolean empty = i >= count || Double.isNaN(v[i]);
+            this.min[c + i] = empty ? Double.POSITIVE_INFINITY : v[i];
+            this.max[c + i] = empty ? Double.NEGATIVE_INFINITY : v[i];
+        }
+        for (int node = c - 1; node > 0; node--) {
+            this.min[node] = Math.min(this.min[2 * node],
+                    this.min[2 * node + 1]);
+            this.max[node] = Math.max(this.max[2 * node],
+                    this.max[2 * node + 1]);
+        }
+    }
+
+    /**
+     * Checks that an index is in the range {@code 0} to {@code last}.
+     *
+     * @param index  the index.
+     * @param last  the last valid index.
+     */
+    private static void checkIndex(int index, int last) {
+        if (index < 0 || index > last) {
+            throw new IndexOutOfBoundsException("Index " + index
+                    + " out of range 0 - " + last + ".");
+        }
+    }
+
+}
@@ -52,6 +52,7 @@ import org.jfree.chart.util.ObjectUtils;
 
 import org.jfree.chart.util.Args;
 import org.jfree.data.Range;
+import org.jfree.data.RangeIndex;
 import org.jfree.data.general.Series;
 import org.jfree.data.general.SeriesChangeEvent;
 import org.jfree.data.general.SeriesException;
@@ -109,6 +110,20 @@ public class TimeSeries extends Series implements Cloneable, Serializable {
      */
     private double maxY;
 
+    /**
+     * A flag that controls whether the values are indexed, see
+     * {@link #setRangeIndexed(boolean)}.
+     *
+     * @since 1.5.3
+     */
+    private boolean rangeIndexed;
+
+    /**
+     * The index of the values, by item ({@code null} if the series is not
+     * indexed or the index needs rebuilding).
+     */
+    private transient RangeIndex rangeIndex;
+
     /**
      * Creates a new (empty) time series.  By default, a daily time series is
      * created.  Use one of the other constructors if you require a different
@@ -361,8 +376,11 @@ public class TimeSeries extends Series implements Cloneable, Serializable {
      */
     public Range findValueRange(Range xRange, TimePeriodAnchor xAnchor, 
             Calendar calendar) {
-        // since the items are ordered, we could be more clever here and avoid
-        // iterating over all the data
+        if (this.rangeIndexed) {
+            Range result = findValueRangeByIndex(xRange, xAnchor, calendar);
+            return result != null ? result
+                    : new Range(Double.NaN, Double.NaN);
+        }
         double lowY = Double.POSITIVE_INFINITY;
         double highY = Double.NEGATIVE_INFINITY;
         for (int i = 0; i < this.data.size(); i++) {
@@ -387,6 +405,146 @@ public class TimeSeries extends Series implements Cloneable, Serializable {
         return new Range(lowY, highY);
     }
 
+    /**
+     * Finds the range of y-values that fall within the specified range of
+     * x-values using the range index, which is built if necessary.
+     * 
+     * @param xRange  the subset of x-values to use.
+     * @param xAnchor  the anchor point for the x-values.
+     * @param calendar  the calendar.
+     * 
+     * @return The range of y-values, or {@code null} if there are none.
+     */
+    private Range findValueRangeByIndex(Range xRange, TimePeriodAnchor xAnchor,
+            Calendar calendar) {
+        int count = this.data.size();
+        if (this.rangeIndex == null || this.rangeIndex.size() != count) {
+            double[] y = new double[count];
+            for (int i = 0; i < count; i++) {
+                y[i] = valueOf((TimeSeriesDataItem) this.data.get(i));
+            }
+            this.rangeIndex = new RangeIndex(y);
+        }
+        // the items are ordered by time period, so the x-values ascend: find
+        // the first item with x >= lower, and the last with x <= upper
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getTimePeriod(mid).getMillisecond(xAnchor, calendar)
+                    < xRange.getLowerBound()) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        int first = low;
+        high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getTimePeriod(mid).getMillisecond(xAnchor, calendar)
+                    <= xRange.getUpperBound()) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return this.rangeIndex.getRange(first, low - 1);
+    }
+
+    /**
+     * Returns the flag that controls whether the values of the series are
+     * indexed.  The default value is {@code false}.
+     *
+     * @return A boolean.
+     *
+     * @see #setRangeIndexed(boolean)
+     *
+     * @since 1.5.3
+     */
+    public boolean getRangeIndexed() {
+        return this.rangeIndexed;
+    }
+
+    /**
+     * Sets the flag that controls whether the values of the series are
+     * indexed.  The index lets
+     * {@link #findValueRange(Range, TimePeriodAnchor, Calendar)}, and so the
+     * automatic range of an axis showing part of the series, find the range
+     * of the values between two x-values in {@code O(log n)} time rather than
+     * by visiting every item.  The index is built on first use and is then
+     * kept up to date as items are added, updated and removed, at a cost of
+     * four {@code double} values per item.  Changes made to data items
+     * obtained from the {@code data} list are not tracked.
+     *
+     * @param indexed  the new flag value.
+     *
+     * @since 1.5.3
+     */
+    public void setRangeIndexed(boolean indexed) {
+        this.rangeIndexed = indexed;
+        this.rangeIndex = null;
+    }
+
+    /**
+     * Returns the value of a data item as a {@code double}.
+     *
+     * @param item  the data item.
+     *
+     * @return The value ({@code Double.NaN} for a {@code null} value).
+     */
+    private static double valueOf(TimeSeriesDataItem item) {
+        Number n = item.getValue();
+        return n != null ? n.doubleValue() : Double.NaN;
+    }
+
+    /**
+     * Inserts a value in the range index, if there is one.
+     *
+     * @param index  the item index.
+     */
+    private void rangeIndexInsert(int index) {
+        if (this.rangeIndex != null && index > this.rangeIndex.size()) {
+            this.rangeIndex = null;  // out of step, rebuild when needed
+        }
+        if (this.rangeIndex != null) {
+            this.rangeIndex.insert(index,
+                    valueOf((TimeSeriesDataItem) this.data.get(index)));
+        }
+    }
+
+    /**
+     * Removes values from the range index, if there is one.
+     *
+     * @param start  the index of the first item removed.
+     * @param end  the index of the last item removed.
+     */
+    private void rangeIndexRemove(int start, int end) {
+        if (this.rangeIndex != null && end >= this.rangeIndex.size()) {
+            this.rangeIndex = null;  // out of step, rebuild when needed
+        }
+        if (this.rangeIndex != null) {
+            this.rangeIndex.remove(start, end);
+        }
+    }
+
+    /**
+     * Updates a value in the range index, if there is one.
+     *
+     * @param index  the item index.
+     */
+    private void rangeIndexSet(int index) {
+        if (this.rangeIndex != null && index >= this.rangeIndex.size()) {
+            this.rangeIndex = null;  // out of step, rebuild when needed
+        }
+        if (this.rangeIndex != null) {
+            this.rangeIndex.set(index,
+                    valueOf((TimeSeriesDataItem) this.data.get(index)));
+        }
+    }
+
     /**
      * Returns the smallest y-value in the series, ignoring any 
      * {@code null} and {@code Double.NaN} values.  This method 
@@ -642,18 +800,21 @@ public class TimeSeries extends Series implements Cloneable, Serializable {
         int count = getItemCount();
         if (count == 0) {
             this.data.add(item);
+            rangeIndexInsert(0);
             added = true;
         }
         else {
             RegularTimePeriod last = getTimePeriod(getItemCount() - 1);
             if (item.getPeriod().compareTo(last) > 0) {
                 this.data.add(item);
+                rangeIndexInsert(count);
                 added = true;
             }
             else {
                 int index = Collections.binarySearch(this.data, item);
                 if (index < 0) {
                     this.data.add(-index - 1, item);
+                    rangeIndexInsert(-index - 1);
                     added = true;
                 }
                 else {
@@ -673,6 +834,7 @@ public class TimeSeries extends Series implements Cloneable, Serializable {
             // check if this addition will exceed the maximum item count...
             if (getItemCount() > this.maximumItemCount) {
                 TimeSeriesDataItem d = (TimeSeriesDataItem) this.data.remove(0);
+                rangeIndexRemove(0, 0);
                 updateBoundsForRemovedItem(d);
             }
 
@@ -786,6 +948,7 @@ public class TimeSeries extends Series implements Cloneable, Serializable {
             }
         }
         item.setValue(value);
+        rangeIndexSet(index);
         if (iterate) {
             updateMinMaxYByIteration();
         }
@@ -891,6 +1054,7 @@ public class TimeSeries extends Series implements Cloneable, Serializable {
                 iterate = oldY <= this.minY || oldY >= this.maxY;
             }
             existing.setValue(item.getValue());
+            rangeIndexSet(index);
             if (iterate) {
                 updateMinMaxYByIteration();
             }
@@ -903,11 +1067,13 @@ public class TimeSeries extends Series implements Cloneable, Serializable {
         else {
             item = (TimeSeriesDataItem) item.clone();
             this.data.add(-index - 1, item);
+            rangeIndexInsert(-index - 1);
             updateBoundsForAddedItem(item);
 
             // check if this addition will exceed the maximum item count...
             if (getItemCount() > this.maximumItemCount) {
                 TimeSeriesDataItem d = (TimeSeriesDataItem) this.data.remove(0);
+                rangeIndexRemove(0, 0);
                 updateBoundsForRemovedItem(d);
             }
         }
@@ -936,6 +1102,7 @@ public class TimeSeries extends Series implements Cloneable, Serializable {
             while ((latest - getTimePeriod(0).getSerialIndex())
                     > this.maximumItemAge) {
                 this.data.remove(0);
+                rangeIndexRemove(0, 0);
                 removed = true;
             }
             if (removed) {
@@ -988,6 +1155,7 @@ public class TimeSeries extends Series implements Cloneable, Serializable {
         while (getItemCount() > 0 && (index
                 - getTimePeriod(0).getSerialIndex()) > this.maximumItemAge) {
             this.data.remove(0);
+            rangeIndexRemove(0, 0);
             removed = true;
         }
         if (removed) {
@@ -1005,6 +1173,7 @@ public class TimeSeries extends Series implements Cloneable, Serializable {
     public void clear() {
         if (this.data.size() > 0) {
             this.data.clear();
+            this.rangeIndex = null;
             this.timePeriodClass = null;
             this.minY = Double.NaN;
             this.maxY = Double.NaN;
@@ -1025,6 +1194,7 @@ public class TimeSeries extends Series implements Cloneable, Serializable {
         if (index >= 0) {
             TimeSeriesDataItem item = (TimeSeriesDataItem) this.data.remove(
                     index);
+            rangeIndexRemove(index, index);
             updateBoundsForRemovedItem(item);
             if (this.data.isEmpty()) {
                 this.timePeriodClass = null;
@@ -1059,6 +1229,7 @@ public class TimeSeries extends Series implements Cloneable, Serializable {
         for (int i = 0; i <= (end - start); i++) {
             this.data.remove(start);
         }
+        rangeIndexRemove(start, end);
         updateMinMaxYByIteration();
         if (this.data.isEmpty()) {
             this.timePeriodClass = null;
@@ -1087,6 +1258,7 @@ public class TimeSeries extends Series implements Cloneable, Serializable {
     public Object clone() throws CloneNotSupportedException {
         TimeSeries clone = (TimeSeries) super.clone();
         clone.data = (List) ObjectUtils.deepClone(this.data);
+        clone.rangeIndex = null;
         return clone;
     }
 
@@ -1114,6 +1286,7 @@ public class TimeSeries extends Series implements Cloneable, Serializable {
         copy.minY = Double.NaN;
         copy.maxY = Double.NaN;
         copy.data = new java.util.ArrayList();
+        copy.rangeIndex = null;
         if (this.data.size() > 0) {
             for (int index = start; index <= end; index++) {
                 TimeSeriesDataItem item
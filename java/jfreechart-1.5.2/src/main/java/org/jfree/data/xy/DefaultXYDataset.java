@@ -45,11 +45,16 @@ package org.jfree.data.xy;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import org.jfree.chart.util.Args;
 import org.jfree.chart.util.PublicCloneable;
 
 import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+import org.jfree.data.RangeIndex;
 import org.jfree.data.general.DatasetChangeEvent;
+import org.jfree.data.general.DatasetUtils;
 
 /**
  * A default implementation of the {@link XYDataset} interface that stores
@@ -58,7 +63,7 @@ import org.jfree.data.general.DatasetChangeEvent;
  * @since 1.0.2
  */
 public class DefaultXYDataset extends AbstractXYDataset
-        implements XYDataset, PublicCloneable {
+        implements XYDataset, XYRangeInfo, PublicCloneable {
 
     /**
      * Storage for the series keys.  This list must be kept in sync with the
@@ -73,6 +78,20 @@ public class DefaultXYDataset extends AbstractXYDataset
      */
     private List seriesList;
 
+    /**
+     * A flag that controls whether the y-values of series with ascending
+     * x-values are indexed, see {@link #setRangeIndexed(boolean)}.
+     */
+    private boolean rangeIndexed;
+
+    /**
+     * The {@link RangeIndex} for each series, or {@code null} for a series
+     * with x-values that are not in ascending order.  This list is
+     * {@code null} until needed and must then be kept in sync with the
+     * seriesList.
+     */
+    private transient List rangeIndices;
+
     /**
      * Creates a new {@code DefaultXYDataset} instance, initially
      * containing no data.
@@ -276,10 +295,16 @@ public class DefaultXYDataset extends AbstractXYDataset
         if (seriesIndex == -1) {  // add a new series
             this.seriesKeys.add(seriesKey);
             this.seriesList.add(data);
+            if (this.rangeIndices != null) {
+                this.rangeIndices.add(createRangeIndex(data));
+            }
         }
         else {  // replace an existing series
             this.seriesList.remove(seriesIndex);
             this.seriesList.add(seriesIndex, data);
+            if (this.rangeIndices != null) {
+                this.rangeIndices.set(seriesIndex, createRangeIndex(data));
+            }
         }
         notifyListeners(new DatasetChangeEvent(this, this));
     }
@@ -296,10 +321,138 @@ public class DefaultXYDataset extends AbstractXYDataset
         if (seriesIndex >= 0) {
             this.seriesKeys.remove(seriesIndex);
             this.seriesList.remove(seriesIndex);
+            if (this.rangeIndices != null) {
+                this.rangeIndices.remove(seriesIndex);
+            }
             notifyListeners(new DatasetChangeEvent(this, this));
         }
     }
 
+    /**
+     * Returns the flag that controls whether the y-values of the series are
+     * indexed.  The default value is {@code false}.
+     *
+     * @return A boolean.
+     *
+     * @see #setRangeIndexed(boolean)
+     *
+     * @since 1.5.3
+     */
+    public boolean getRangeIndexed() {
+        return this.rangeIndexed;
+    }
+
+    /**
+     * Sets the flag that controls whether the y-values of the series are
+     * indexed.  For series with the x-values in ascending order, the index
+     * lets {@link #getRangeBounds(List, Range, boolean)}, and so the
+     * automatic range of an axis showing part of the data, find the range of
+     * the y-values between two x-values in {@code O(log n)} time rather than
+     * by visiting every item.  The index for a series is built when the
+     * series is added, so if you change the arrays of a series after adding
+     * it, add the series again.
+     *
+     * @param indexed  the new flag value.
+     *
+     * @since 1.5.3
+     */
+    public void setRangeIndexed(boolean indexed) {
+        this.rangeIndexed = indexed;
+        this.rangeIndices = null;
+    }
+
+    /**
+     * Returns the range of the y-values of the items in the visible series
+     * with x-values in the specified range.
+     *
+     * @param visibleSeriesKeys  the keys of the visible series
+     *     ({@code null} not permitted).
+     * @param xRange  the x-range ({@code null} not permitted).
+     * @param includeInterval  ignored.
+     *
+     * @return The range (or {@code null} if there are no values).
+     *
+     * @since 1.5.3
+     */
+    @Override
+    public Range getRangeBounds(List visibleSeriesKeys, Range xRange,
+            boolean includeInterval) {
+        if (!this.rangeIndexed) {
+            return DatasetUtils.iterateToFindRangeBounds(this,
+                    visibleSeriesKeys, xRange, includeInterval);
+        }
+        Args.nullNotPermitted(visibleSeriesKeys, "visibleSeriesKeys");
+        Args.nullNotPermitted(xRange, "xRange");
+        if (this.rangeIndices == null) {
+            this.rangeIndices = new ArrayList(this.seriesList.size());
+            for (Object data : this.seriesList) {
+                this.rangeIndices.add(createRangeIndex((double[][]) data));
+            }
+        }
+        Range result = null;
+        for (Object key : visibleSeriesKeys) {
+            int series = indexOf((Comparable) key);
+            double[][] data = (double[][]) this.seriesList.get(series);
+            RangeIndex index = (RangeIndex) this.rangeIndices.get(series);
+            Range r;
+            if (index != null) {
+                int first = lowerBound(data[0], xRange.getLowerBound(), false);
+                int last = lowerBound(data[0], xRange.getUpperBound(), true);
+                r = index.getRange(first, last - 1);
+            }
+            else {
+                r = DatasetUtils.iterateToFindRangeBounds(this,
+                        Collections.singletonList(key), xRange, false);
+            }
+            result = Range.combineIgnoringNaN(result, r);
+        }
+        return result;
+    }
+
+    /**
+     * Returns an index of the y-values of a series, or {@code null} if the
+     * x-values are not in ascending order.
+     *
+     * @param data  the series data.
+     *
+     * @return The index (possibly {@code null}).
+     */
+    private static RangeIndex createRangeIndex(double[][] data) {
+        double[] x = data[0];
+        for (int i = 1; i < x.length; i++) {
+            if (!(x[i - 1] <= x[i])) {
+                return null;
+            }
+        }
+        return new RangeIndex(data[1]);
+    }
+
+    /**
+     * Returns the index of the first value in {@code x} (in ascending
+     * order) that is greater than or equal to {@code value}, or greater than
+     * {@code value} if {@code after} is {@code true}.
+     *
+     * @param x  the values.
+     * @param value  the value to find.
+     * @param after  skip values equal to {@code value}?
+     *
+     * @return The index, {@code x.length} if there is no such value.
+     */
+    private static int lowerBound(double[] x, double value, boolean after) {
+        int low = 0;
+        int high = x.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (x[mid] < value || (after && x[mid] == value)) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
     /**
      * Tests this {@code DefaultXYDataset} instance for equality with an
      * arbitrary object.  This method returns {@code true} if and only if:
@@ -368,6 +521,7 @@ public class DefaultXYDataset extends AbstractXYDataset
     @Override
     public Object clone() throws CloneNotSupportedException {
         DefaultXYDataset clone = (DefaultXYDataset) super.clone();
+        clone.rangeIndices = null;
         clone.seriesKeys = new java.util.ArrayList(this.seriesKeys);
         clone.seriesList = new ArrayList(this.seriesList.size());
         for (int i = 0; i < this.seriesList.size(); i++) {
@@ -0,0 +1,884 @@
+/* ===========================================================
+ * JFreeChart : a free chart library for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2000-2020, by Object Refinery Limited and Contributors.
+ *
+ * Project Info:  http://www.jfree.org/jfreechart/index.html
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * -------------------
+ * DoubleXYSeries.java
+ * -------------------
+ * (C) Copyright 2020, by Object Refinery Limited and Contributors.
+ *
+ * Original Author:  -;
+ * Contributor(s):   -;
+ *
+ */
+
+package org.jfree.data.xy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.jfree.chart.util.Args;
+
+import org.jfree.data.general.SeriesChangeEvent;
+import org.jfree.data.general.SeriesException;
+
+/**
+ * An {@link XYSeries} that keeps its x and y-values in two {@code double}
+ * arrays instead of a list of {@link XYDataItem} objects.  A series with a
+ * million items takes 16 MB instead of several times that, and adding items
+ * or reading them with {@link #getXValue(int)} and {@link #getYValue(int)}
+ * creates no objects.  The {@code autoSort}, {@code allowDuplicateXValues}
+ * and {@code maximumItemCount} settings work as for {@link XYSeries}, and the
+ * series can be added to an {@link XYSeriesCollection}.
+ * <p>
+ * {@code null} y-values are kept as {@code Double.NaN}, so {@link #getY(int)}
+ * never returns {@code null}.  Methods that return {@link XYDataItem}
+ * objects create them on every call, and the inherited {@code data} list
+ * is not used.
+ *
+ * @since 1.5.3
+ */
+public class DoubleXYSeries extends XYSeries {
+
+    /** For serialization. */
+    private static final long serialVersionUID = 4207350817442924154L;
+
+    /** The initial capacity of the arrays. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** The x-values, from index {@code start}. */
+    private double[] xValues;
+
+    /** The y-values, from index {@code start}. */
+    private double[] yValues;
+
+    /**
+     * The array index of the first item.  Items are removed from the front
+     * when the maximum item count is reached, this avoids shifting the
+     * remaining items every time.
+     */
+    private int start;
+
+    /** The number of items in the series. */
+    private int count;
+
+    /** The maximum number of items for the series. */
+    private int maximumItemCount = Integer.MAX_VALUE;
+
+    /** The lowest x-value in the series, excluding Double.NaN values. */
+    private double minX;
+
+    /** The highest x-value in the series, excluding Double.NaN values. */
+    private double maxX;
+
+    /** The lowest y-value in the series, excluding Double.NaN values. */
+    private double minY;
+
+    /** The highest y-value in the series, excluding Double.NaN values. */
+    private double maxY;
+
+    /**
+     * Creates a new empty series.  By default, items added to the series will
+     * be sorted into ascending order by x-value, and duplicate x-values will
+     * be allowed.
+     *
+     * @param key  the series key ({@code null} not permitted).
+     */
+    public DoubleXYSeries(Comparable key) {
+        this(key, true, true);
+    }
+
+    /**
+     * Constructs a new empty series, with the auto-sort flag set as requested,
+     * and duplicate values allowed.
+     *
+     * @param key  the series key ({@code null} not permitted).
+     * @param autoSort  a flag that controls whether or not the items in the
+     *                  series are sorted.
+     */
+    public DoubleXYSeries(Comparable key, boolean autoSort) {
+        this(key, autoSort, true);
+    }
+
+    /**
+     * Constructs a new empty series.
+     *
+     * @param key  the series key ({@code null} not permitted).
+     * @param autoSort  a flag that controls whether or not the items in the
+     *                  series are sorted.
+     * @param allowDuplicateXValues  a flag that controls whether duplicate
+     *                               x-values are allowed.
+     */
+    public DoubleXYSeries(Comparable key, boolean autoSort,
+            boolean allowDuplicateXValues) {
+        super(key, autoSort, allowDuplicateXValues);
+        this.xValues = new double[INITIAL_CAPACITY];
+        this.yValues = new double[INITIAL_CAPACITY];
+        this.minX = Double.NaN;
+        this.maxX = Double.NaN;
+        this.minY = Double.NaN;
+        this.maxY = Double.NaN;
+    }
+
+    @Override
+    public double getMinX() {
+        return this.minX;
+    }
+
+    @Override
+    public double getMaxX() {
+        return this.maxX;
+    }
+
+    @Override
+    public double getMinY() {
+        return this.minY;
+    }
+
+    @Override
+    public double getMaxY() {
+        return this.maxY;
+    }
+
+    /**
+     * Updates the cached bounds for an added item.
+     *
+     * @param x  the x-value.
+     * @param y  the y-value.
+     */
+    private void updateBoundsForAddedItem(double x, double y) {
+        if (!Double.isNaN(x)) {
+            this.minX = Double.isNaN(this.minX) ? x : Math.min(this.minX, x);
+            this.maxX = Double.isNaN(this.maxX) ? x : Math.max(this.maxX, x);
+        }
+        if (!Double.isNaN(y)) {
+            this.minY = Double.isNaN(this.minY) ? y : Math.min(this.minY, y);
+            this.maxY = Double.isNaN(this.maxY) ? y : Math.max(this.maxY, y);
+        }
+    }
+
+    /**
+     * Updates the cached bounds on the basis that an item with the specified
+     * values has just been removed.
+     *
+     * @param x  the x-value.
+     * @param y  the y-value.
+     */
+    private void updateBoundsForRemovedItem(double x, double y) {
+        boolean xBounds = x <= this.minX || x >= this.maxX;
+        boolean yBounds = y <= this.minY || y >= this.maxY;
+        if (yBounds) {
+            findBoundsByIteration();
+        }
+        else if (xBounds) {
+            if (getAutoSort() && this.count > 0) {
+                this.minX = this.xValues[this.start];
+                this.maxX = this.xValues[this.start + this.count - 1];
+            }
+            else {
+                findBoundsByIteration();
+            }
+        }
+    }
+
+    /**
+     * Finds the bounds of the x and y values for the series, by iterating
+     * through all the data items.
+     */
+    private void findBoundsByIteration() {
+        this.minX = Double.NaN;
+        this.maxX = Double.NaN;
+        this.minY = Double.NaN;
+        this.maxY = Double.NaN;
+        int end = this.start + this.count;
+        for (int i = this.start; i < end; i++) {
+            updateBoundsForAddedItem(this.xValues[i], this.yValues[i]);
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return this.count;
+    }
+
+    /**
+     * Returns a list of new {@link XYDataItem} objects for the items in the
+     * series.  Changing the items does not change the series.
+     *
+     * @return The list of data items (unmodifiable).
+     */
+    @Override
+    public List getItems() {
+        List result = new ArrayList(this.count);
+        for (int i = 0; i < this.count; i++) {
+            result.add(getDataItem(i));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    @Override
+    public int getMaximumItemCount() {
+        return this.maximumItemCount;
+    }
+
+    @Override
+    public void setMaximumItemCount(int maximum) {
+        this.maximumItemCount = maximum;
+        int remove = this.count - maximum;
+        if (remove > 0) {
+            removeFirst(remove);
+            findBoundsByIteration();
+            fireSeriesChanged();
+        }
+    }
+
+    /**
+     * Adds a data item to the series and, if requested, sends a
+     * {@link SeriesChangeEvent} to all registered listeners.  The item is
+     * not kept, only its values.
+     *
+     * @param item  the (x, y) item ({@code null} not permitted).
+     * @param notify  a flag that controls whether or not a
+     *                {@link SeriesChangeEvent} is sent to all registered
+     *                listeners.
+     */
+    @Override
+    public void add(XYDataItem item, boolean notify) {
+        Args.nullNotPermitted(item, "item");
+        add(item.getXValue(), item.getYValue(), notify);
+    }
+
+    /**
+     * Adds new data to the series and, if requested, sends a
+     * {@link SeriesChangeEvent} to all registered listeners.
+     *
+     * @param x  the x-value ({@code null} not permitted).
+     * @param y  the y-value ({@code null} permitted).
+     * @param notify  a flag the controls whether or not a
+     *                {@link SeriesChangeEvent} is sent to all registered
+     *                listeners.
+     */
+    @Override
+    public void add(Number x, Number y, boolean notify) {
+        Args.nullNotPermitted(x, "x");
+        add(x.doubleValue(), y == null ? Double.NaN : y.doubleValue(),
+                notify);
+    }
+
+    /**
+     * Adds a data item to the series (in the correct position if the
+     * {@code autoSort} flag is set for the series) and, if requested, sends a
+     * {@link SeriesChangeEvent} to all registered listeners.
+     *
+     * @param x  the x-value.
+     * @param y  the y-value ({@code Double.NaN} for a missing value).
+     * @param notify  a flag that controls whether or not a
+     *                {@link SeriesChangeEvent} is sent to all registered
+     *                listeners.
+     *
+     * @throws SeriesException if the x-value is a duplicate and the
+     *     {@code allowDuplicateXValues} flag is not set for this series.
+     */
+    @Override
+    public void add(double x, double y, boolean notify) {
+        int index;
+        if (getAutoSort()) {
+            // after any items with the same x-value
+            index = upperBound(x);
+            if (!getAllowDuplicateXValues() && index > 0
+                    && compare(getXValue(index - 1), x) == 0) {
+                throw new SeriesException("X-value already exists.");
+            }
+        }
+        else {
+            if (!getAllowDuplicateXValues() && indexOf(x) >= 0) {
+                throw new SeriesException("X-value already exists.");
+            }
+            index = this.count;
+        }
+        insert(index, x, y);
+        updateBoundsForAddedItem(x, y);
+        if (this.count > this.maximumItemCount) {
+            double removedX = this.xValues[this.start];
+            double removedY = this.yValues[this.start];
+            removeFirst(1);
+            updateBoundsForRemovedItem(removedX, removedY);
+        }
+        if (notify) {
+            fireSeriesChanged();
+        }
+    }
+
+    /**
+     * Adds the items (x[i], y[i]) to the series and, if requested, sends a
+     * single {@link SeriesChangeEvent} to all registered listeners, see
+     * {@link XYSeries#addAll(double[], double[], boolean)}.  In a sorted
+     * series the new items are sorted (unless they already are) and merged
+     * with the existing ones in place.
+     *
+     * @param x  the x-values ({@code null} not permitted).
+     * @param y  the y-values ({@code null} not permitted, the same length as
+     *     {@code x}).
+     * @param notify  a flag that controls whether or not a
+     *                {@link SeriesChangeEvent} is sent to all registered
+     *                listeners.
+     *
+     * @throws SeriesException if an x-value is a duplicate and the
+     *     {@code allowDuplicateXValues} flag is not set for this series.
+     */
+    @Override
+    public void addAll(double[] x, double[] y, boolean notify) {
+        checkArrays(x, y);
+        int n = x.length;
+        if (n == 0) {
+            return;
+        }
+        int oldCount = this.count;
+        if (getAutoSort()) {
+            if (!isSorted(x)) {
+                x = x.clone();
+                y = y.clone();
+                sort(x, y);
+            }
+            if (oldCount > 0 && compare(x[0], getXValue(oldCount - 1)) < 0) {
+                // items are merged in, simpler to rebuild the index
+                rangeIndexReset();
+            }
+            if (!getAllowDuplicateXValues()) {
+                for (int i = 0; i < n; i++) {
+                    if ((i > 0 && compare(x[i - 1], x[i]) == 0)
+                            || indexOf(x[i]) >= 0) {
+                        throw new SeriesException("X-value already exists.");
+                    }
+                }
+            }
+            ensureCapacity(this.count + n);
+            // merge from the back, new items after existing equal ones
+            int i = this.count - 1;
+            int k = this.count + n - 1;
+            for (int j = n - 1; j >= 0; j--) {
+                while (i >= 0 && compare(this.xValues[i], x[j]) > 0) {
+                    this.xValues[k] = this.xValues[i];
+                    this.yValues[k--] = this.yValues[i--];
+                }
+                this.xValues[k] = x[j];
+                this.yValues[k--] = y[j];
+            }
+        }
+        else {
+            if (!getAllowDuplicateXValues()) {
+                Set<Double> xs = new HashSet<Double>();
+                for (int i = 0; i < this.count; i++) {
+                    xs.add(getXValue(i));
+                }
+                for (int i = 0; i < n; i++) {
+                    if (!xs.add(x[i])) {
+                        throw new SeriesException("X-value already exists.");
+                    }
+                }
+            }
+            ensureCapacity(this.count + n);
+            System.arraycopy(x, 0, this.xValues, this.count, n);
+            System.arraycopy(y, 0, this.yValues, this.count, n);
+        }
+        this.count += n;
+        for (int i = 0; i < n; i++) {
+            rangeIndexInsert(oldCount + i, y[i]);
+        }
+        if (this.count > this.maximumItemCount) {
+            removeFirst(this.count - this.maximumItemCount);
+            findBoundsByIteration();
+        }
+        else {
+            for (int i = 0; i < n; i++) {
+                updateBoundsForAddedItem(x[i], y[i]);
+            }
+        }
+        if (notify) {
+            fireSeriesChanged();
+        }
+    }
+
+    /**
+     * Returns {@code true} if the values are in ascending order.
+     *
+     * @param x  the values.
+     *
+     * @return A boolean.
+     */
+    private static boolean isSorted(double[] x) {
+        for (int i = 1; i < x.length; i++) {
+            if (compare(x[i - 1], x[i]) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sorts the pairs (x[i], y[i]) by x-value with a stable merge sort.
+     *
+     * @param x  the x-values.
+     * @param y  the y-values.
+     */
+    private static void sort(double[] x, double[] y) {
+        int n = x.length;
+        double[] xs = x;
+        double[] ys = y;
+        double[] xt = new double[n];
+        double[] yt = new double[n];
+        for (int width = 1; width < n; width *= 2) {
+            for (int lo = 0; lo < n; lo += 2 * width) {
+                int mid = Math.min(lo + width, n);
+                int hi = Math.min(lo + 2 * width, n);
+                int i = lo;
+                int j = mid;
+                for (int k = lo; k < hi; k++) {
+                    if (i < mid && (j >= hi || compare(xs[i], xs[j]) <= 0)) {
+                        xt[k] = xs[i];
+                        yt[k] = ys[i++];
+                    }
+                    else {
+                        xt[k] = xs[j];
+                        yt[k] = ys[j++];
+                    }
+                }
+            }
+            double[] swap = xs;
+            xs = xt;
+            xt = swap;
+            swap = ys;
+            ys = yt;
+            yt = swap;
+        }
+        if (xs != x) {
+            System.arraycopy(xs, 0, x, 0, n);
+            System.arraycopy(ys, 0, y, 0, n);
+        }
+    }
+
+    /**
+     * Moves the items to the front of the arrays, growing them if they have
+     * room for fewer than {@code capacity} items.
+     *
+     * @param capacity  the number of items needed.
+     */
+    private void ensureCapacity(int capacity) {
+        int length = this.xValues.length;
+        if (capacity > length) {
+            length = Math.max(capacity, length + (length >> 1));
+        }
+        this.xValues = moveTo(this.xValues, length);
+        this.yValues = moveTo(this.yValues, length);
+        this.start = 0;
+    }
+
+    /**
+     * Compares two x-values the way {@link XYDataItem#compareTo(Object)}
+     * does.
+     *
+     * @param x1  the first value.
+     * @param x2  the second value.
+     *
+     * @return -1, 0 or 1.
+     */
+    private static int compare(double x1, double x2) {
+        double d = x1 - x2;
+        if (d > 0.0) {
+            return 1;
+        }
+        return d < 0.0 ? -1 : 0;
+    }
+
+    /**
+     * Returns the index of the first item with an x-value greater than
+     * {@code x}, in a sorted series.
+     *
+     * @param x  the x-value.
+     *
+     * @return The index (between 0 and the item count).
+     */
+    private int upperBound(double x) {
+        int low = 0;
+        int high = this.count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(this.xValues[this.start + mid], x) <= 0) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Inserts an item at the specified index, making room for it.
+     *
+     * @param index  the index (between 0 and the item count).
+     * @param x  the x-value.
+     * @param y  the y-value.
+     */
+    private void insert(int index, double x, double y) {
+        if (this.start + this.count == this.xValues.length) {
+            int capacity = this.xValues.length;
+            if (this.count + 1 > capacity / 2) {
+                capacity = Math.max(INITIAL_CAPACITY, capacity * 2);
+            }
+            this.xValues = moveTo(this.xValues, capacity);
+            this.yValues = moveTo(this.yValues, capacity);
+            this.start = 0;
+        }
+        int i = this.start + index;
+        int tail = this.count - index;
+        if (tail > 0) {
+            System.arraycopy(this.xValues, i, this.xValues, i + 1, tail);
+            System.arraycopy(this.yValues, i, this.yValues, i + 1, tail);
+        }
+        this.xValues[i] = x;
+        this.yValues[i] = y;
+        this.count++;
+        rangeIndexInsert(index, y);
+    }
+
+    /**
+     * Returns the items of {@code values} moved to the front of an array
+     * with the specified capacity (which may be the same array).
+     *
+     * @param values  the values.
+     * @param capacity  the capacity.
+     *
+     * @return The array.
+     */
+    private double[] moveTo(double[] values, int capacity) {
+        double[] result = values;
+        if (capacity != values.length) {
+            result = new double[capacity];
+        }
+        System.arraycopy(values, this.start, result, 0, this.count);
+        return result;
+    }
+
+    /**
+     * Removes the specified number of items from the front of the series,
+     * without updating the bounds.
+     *
+     * @param n  the number of items.
+     */
+    private void removeFirst(int n) {
+        if (n > 0) {
+            rangeIndexRemove(0, n - 1);
+        }
+        this.start += n;
+        this.count -= n;
+        if (this.count == 0) {
+            this.start = 0;
+        }
+    }
+
+    /**
+     * Removes the items from index {@code from} to index {@code to} - 1,
+     * without updating the bounds.
+     *
+     * @param from  the first index.
+     * @param to  the index after the last.
+     */
+    private void removeRange(int from, int to) {
+        checkIndex(from);
+        if (to < from || to > this.count) {
+            throw new IndexOutOfBoundsException("Index: " + (to - 1)
+                    + ", Size: " + this.count);
+        }
+        if (from == 0) {
+            removeFirst(to);
+            return;
+        }
+        if (to > from) {
+            rangeIndexRemove(from, to - 1);
+        }
+        int tail = this.count - to;
+        System.arraycopy(this.xValues, this.start + to, this.xValues,
+                this.start + from, tail);
+        System.arraycopy(this.yValues, this.start + to, this.yValues,
+                this.start + from, tail);
+        this.count -= to - from;
+    }
+
+    /**
+     * Checks that an index refers to an item in the series.
+     *
+     * @param index  the index.
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= this.count) {
+            throw new IndexOutOfBoundsException("Index: " + index
+                    + ", Size: " + this.count);
+        }
+    }
+
+    @Override
+    public void delete(int start, int end) {
+        removeRange(start, end + 1);
+        findBoundsByIteration();
+        fireSeriesChanged();
+    }
+
+    @Override
+    public XYDataItem remove(int index) {
+        XYDataItem removed = getDataItem(index);
+        removeRange(index, index + 1);
+        updateBoundsForRemovedItem(removed.getXValue(), removed.getYValue());
+        fireSeriesChanged();
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        if (this.count > 0) {
+            this.start = 0;
+            this.count = 0;
+            rangeIndexReset();
+            this.minX = Double.NaN;
+            this.maxX = Double.NaN;
+            this.minY = Double.NaN;
+            this.maxY = Double.NaN;
+            fireSeriesChanged();
+        }
+    }
+
+    /**
+     * Returns a new data item with the values at the specified index.
+     *
+     * @param index  the index.
+     *
+     * @return The data item.
+     */
+    @Override
+    public XYDataItem getDataItem(int index) {
+        return new XYDataItem(getXValue(index), getYValue(index));
+    }
+
+    @Override
+    XYDataItem getRawDataItem(int index) {
+        return getDataItem(index);
+    }
+
+    @Override
+    public Number getX(int index) {
+        return getXValue(index);
+    }
+
+    /**
+     * Returns the y-value at the specified index.
+     *
+     * @param index  the index (zero-based).
+     *
+     * @return The y-value (never {@code null}).
+     */
+    @Override
+    public Number getY(int index) {
+        return getYValue(index);
+    }
+
+    @Override
+    public double getXValue(int index) {
+        checkIndex(index);
+        return this.xValues[this.start + index];
+    }
+
+    @Override
+    public double getYValue(int index) {
+        checkIndex(index);
+        return this.yValues[this.start + index];
+    }
+
+    @Override
+    public void updateByIndex(int index, Number y) {
+        checkIndex(index);
+        double yy = y == null ? Double.NaN : y.doubleValue();
+        int i = this.start + index;
+        double oldY = this.yValues[i];
+        this.yValues[i] = yy;
+        rangeIndexSet(index, yy);
+        if (oldY <= this.minY || oldY >= this.maxY) {
+            findBoundsByIteration();
+        }
+        else {
+            updateBoundsForAddedItem(Double.NaN, yy);
+        }
+        fireSeriesChanged();
+    }
+
+    @Override
+    public XYDataItem addOrUpdate(XYDataItem item) {
+        Args.nullNotPermitted(item, "item");
+        if (getAllowDuplicateXValues()) {
+            add(item);
+            return null;
+        }
+        int index = indexOf(item.getXValue());
+        if (index < 0) {
+            // for a sorted series this is where the item goes
+            add(item);
+            return null;
+        }
+        XYDataItem overwritten = getDataItem(index);
+        updateByIndex(index, item.getY());
+        return overwritten;
+    }
+
+    @Override
+    public int indexOf(Number x) {
+        Args.nullNotPermitted(x, "x");
+        return indexOf(x.doubleValue());
+    }
+
+    /**
+     * Returns the index of an item with the specified x-value, or a negative
+     * index if there is none.  For a sorted series the negative index is
+     * {@code (-(insertion point) - 1)}, as for
+     * {@link Collections#binarySearch(List, Object)}.
+     *
+     * @param x  the x-value.
+     *
+     * @return The index.
+     */
+    private int indexOf(double x) {
+        if (getAutoSort()) {
+            int low = 0;
+            int high = this.count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int c = compare(this.xValues[this.start + mid], x);
+                if (c < 0) {
+                    low = mid + 1;
+                }
+                else if (c > 0) {
+                    high = mid - 1;
+                }
+                else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+        int end = this.start + this.count;
+        for (int i = this.start; i < end; i++) {
+            if (this.xValues[i] == x) {
+                return i - this.start;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public double[][] toArray() {
+        double[][] result = new double[2][];
+        result[0] = Arrays.copyOfRange(this.xValues, this.start,
+                this.start + this.count);
+        result[1] = Arrays.copyOfRange(this.yValues, this.start,
+                this.start + this.count);
+        return result;
+    }
+
+    @Override
+    public Object clone() throws CloneNotSupportedException {
+        DoubleXYSeries clone = (DoubleXYSeries) super.clone();
+        clone.xValues = this.xValues.clone();
+        clone.yValues = this.yValues.clone();
+        return clone;
+    }
+
+    @Override
+    public XYSeries createCopy(int start, int end)
+            throws CloneNotSupportedException {
+        DoubleXYSeries copy = (DoubleXYSeries) super.clone();
+        copy.start = 0;
+        copy.count = 0;
+        copy.xValues = new double[INITIAL_CAPACITY];
+        copy.yValues = new double[INITIAL_CAPACITY];
+        if (this.count > 0) {
+            for (int i = start; i <= end; i++) {
+                copy.add(getXValue(i), getYValue(i), false);
+            }
+        }
+        copy.findBoundsByIteration();
+        return copy;
+    }
+
+    /**
+     * Tests this series for equality with an arbitrary object.
+     *
+     * @param obj  the object to test against for equality
+     *             ({@code null} permitted).
+     *
+     * @return A boolean.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof DoubleXYSeries)) {
+            return false;
+        }
+        if (!super.equals(obj)) {
+            return false;
+        }
+        DoubleXYSeries that = (DoubleXYSeries) obj;
+        if (this.maximumItemCount != that.maximumItemCount) {
+            return false;
+        }
+        if (this.count != that.count) {
+            return false;
+        }
+        for (int i = 0; i < this.count; i++) {
+            if (Double.compare(this.xValues[this.start + i],
+                    that.xValues[that.start + i]) != 0) {
+                return false;
+            }
+            if (Double.compare(this.yValues[this.start + i],
+                    that.yValues[that.start + i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a hash code.
+     *
+     * @return A hash code.
+     */
+    @Override
+    public int hashCode() {
+        return 29 * super.hashCode() + this.maximumItemCount;
+    }
+
+}
@@ -0,0 +1,413 @@
+/* ===========================================================
+ * JFreeChart : a free chart library for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2000-2020, by Object Refinery Limited and Contributors.
+ *
+ * Project Info:  http://www.jfree.org/jfreechart/index.html
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * ---------------
+ * M4Pyramid.java
+ * ---------------
+ * (C) Copyright 2020, by Object Refinery Limited and Contributors.
+ *
+ * Original Author:  -;
+ * Contributor(s):   -;
+ *
+ */
+
+package org.jfree.data.xy;
+
+import java.util.Arrays;
+import java.util.function.DoubleToIntFunction;
+import org.jfree.chart.util.Args;
+
+/**
+ * A level-of-detail index for one series of an {@link XYDataset} with
+ * ascending x-values.  For buckets of 2, 4, 8, ... consecutive items it
+ * records the items with the lowest and highest y-value, so that the items
+ * needed to draw a line through a range of many items can be found without
+ * visiting them all.
+ * <p>
+ * {@link #select(int, int, int, DoubleToIntFunction)} returns, for each
+ * column (typically a pixel column), the first, last, lowest and highest
+ * item (the M4 aggregation).  A line drawn through these items alone looks
+ * the same as a line drawn through all the items, and takes time in
+ * proportion to the number of columns rather than the number of items.
+ * <p>
+ * The index is built once and does not follow changes to the dataset.
+ *
+ * @see org.jfree.chart.plot.XYPlot#setLevelOfDetail(boolean)
+ *
+ * @since 1.5.3
+ */
+public class M4Pyramid {
+
+    /** Ranges with fewer items per column than this are not reduced. */
+    private static final int MIN_ITEMS_PER_COLUMN = 8;
+
+    /** The dataset. */
+    private final XYDataset dataset;
+
+    /** The series index. */
+    private final int series;
+
+    /** The number of items in the series when the index was built. */
+    private final int itemCount;
+
+    /**
+     * The item with the lowest y-value in each bucket of level k, where
+     * level k has buckets of 2^(k + 1) items, or -1 if all are NaN.
+     */
+    private final int[][] minItems;
+
+    /** The item with the highest y-value in each bucket, or -1. */
+    private final int[][] maxItems;
+
+    /** The first item with a NaN y-value in each bucket, or -1. */
+    private final int[][] gapItems;
+
+    /**
+     * Builds an index for a series.  The x-values must be in ascending
+     * order.
+     *
+     * @param dataset  the dataset ({@code null} not permitted).
+     * @param series  the series index (zero-based).
+     */
+    public M4Pyramid(XYDataset dataset, int series) {
+        Args.nullNotPermitted(dataset, "dataset");
+        this.dataset = dataset;
+        this.series = series;
+        this.itemCount = dataset.getItemCount(series);
+        int levels = 0;
+        for (int n = this.itemCount; n > 1; n = (n + 1) / 2) {
+            levels++;
+        }
+        this.minItems = new int[levels][];
+        this.maxItems = new int[levels][];
+        this.gapItems = new int[levels][];
+        int n = this.itemCount;
+        for (int k = 0; k < levels; k++) {
+            int buckets = (n + 1) / 2;
+            int[] min = new int[buckets];
+            int[] max = new int[buckets];
+            int[] gap = new int[buckets];
+            for (int b = 0; b < buckets; b++) {
+                int i = 2 * b;
+                int j = Math.min(i + 1, n - 1);
+                if (k == 0) {
+                    min[b] = lower(valid(i), valid(j));
+                    max[b] = higher(valid(i), valid(j));
+                    gap[b] = valid(i) < 0 ? i : (valid(j) < 0 ? j : -1);
+                }
+                else {
+                    int[] pmin = this.minItems[k - 1];
+                    int[] pmax = this.maxItems[k - 1];
+                    int[] pgap = this.gapItems[k - 1];
+                    min[b] = lower(pmin[i], pmin[j]);
+                    max[b] = higher(pmax[i], pmax[j]);
+                    gap[b] = pgap[i] >= 0 ? pgap[i] : pgap[j];
+                }
+            }
+            this.minItems[k] = min;
+            this.maxItems[k] = max;
+            this.gapItems[k] = gap;
+            n = buckets;
+        }
+    }
+
+    /**
+     * Returns the dataset.
+     *
+     * @return The dataset (never {@code null}).
+     */
+    public XYDataset getDataset() {
+        return this.dataset;
+    }
+
+    /**
+     * Returns the series index.
+     *
+     * @return The series index.
+     */
+    public int getSeries() {
+        return this.series;
+    }
+
+    /**
+     * Returns the number of items in the series when the index was built.
+     * If the series has a different count now, the index is out of date.
+     *
+     * @return The item count.
+     */
+    public int getItemCount() {
+        return this.itemCount;
+    }
+
+    /**
+     * Returns the items needed to draw the items {@code first} to
+     * {@code last} as a line: for each column, the first and last item in
+     * it, the items with the lowest and highest y-values and the first item
+     * with a NaN y-value (so that gaps in the line are kept).  If there are
+     * few items per column, all items are returned.
+     *
+     * @param first  the index of the first item.
+     * @param last  the index of the last item.
+     * @param columns  the number of columns (for example, the width of the
+     *     data area in pixels).
+     * @param column  gives the column of an x-value ({@code null} not
+     *     permitted).
+     *
+     * @return The item indices, in ascending order, starting with
+     *     {@code first} and ending with {@code last}.
+     */
+    public int[] select(int first, int last, int columns,
+            DoubleToIntFunction column) {
+        Args.nullNotPermitted(column, "column");
+        if (first < 0 || last >= this.itemCount || first > last) {
+            throw new IllegalArgumentException("Invalid item range "
+                    + first + " - " + last + ".");
+        }
+        int n = last - first + 1;
+        if (columns <= 0 || n / columns < MIN_ITEMS_PER_COLUMN) {
+            int[] result = new int[n];
+            for (int i = 0; i < n; i++) {
+                result[i] = first + i;
+            }
+            return result;
+        }
+
+        // buckets of at most a quarter of the items per column, so that a
+        // column is made of several buckets
+        int k = -1;
+        while (k + 1 < this.minItems.length
+                && (2 << (k + 1)) <= n / columns / 4) {
+            k++;
+        }
+        Selection s = new Selection(columns * 4 + 8, column);
+        int item = first;
+        while (item <= last) {
+            // the largest aligned bucket that starts at the item, ends in
+            // the range and lies in one column (the x-values ascend, so the
+            // first and last items decide this)
+            int level = k;
+            int size = 2 << level;
+            while (level >= 0 && (item % size != 0
+                    || item + size - 1 > last
+                    || column.applyAsInt(x(item)) != column.applyAsInt(
+                    x(item + size - 1)))) {
+                level--;
+                size >>= 1;
+            }
+            if (level >= 0) {
+                int b = item / size;
+                s.add(item, item + size - 1, this.minItems[level][b],
+                        this.maxItems[level][b], this.gapItems[level][b]);
+                item += size;
+            }
+            else {
+                int v = valid(item);
+                s.add(item, item, v, v, v < 0 ? item : -1);
+                item++;
+            }
+        }
+        return s.finish();
+    }
+
+    /**
+     * Returns {@code item}, or -1 if its y-value is NaN.
+     *
+     * @param item  the item index.
+     *
+     * @return The item index or -1.
+     */
+    private int valid(int item) {
+        return Double.isNaN(y(item)) ? -1 : item;
+    }
+
+    /**
+     * Returns the x-value of an item.
+     *
+     * @param item  the item index.
+     *
+     * @return The x-value.
+     */
+    private double x(int item) {
+        return this.dataset.getXValue(this.series, item);
+    }
+
+    /**
+     * Returns the y-value of an item.
+     *
+     * @param item  the item index.
+     *
+     * @return The y-value.
+     */
+    private double y(int item) {
+        return this.dataset.getYValue(this.series, item);
+    }
+
+    /**
+     * Returns the item with the lower y-value, where -1 is no item.
+     *
+     * @param i  the first item index, or -1.
+     * @param j  the second item index, or -1.
+     *
+     * @return The item index, or -1.
+     */
+    private int lower(int i, int j) {
+        if (i < 0) {
+            return j;
+        }
+        if (j < 0) {
+            return i;
+        }
+        return y(j) < y(i) ? j : i;
+    }
+
+    /**
+     * Returns the item with the higher y-value, where -1 is no item.
+     *
+     * @param i  the first item index, or -1.
+     * @param j  the second item index, or -1.
+     *
+     * @return The item index, or -1.
+     */
+    private int higher(int i, int j) {
+        if (i < 0) {
+            return j;
+        }
+        if (j < 0) {
+            return i;
+        }
+        return y(j) > y(i) ? j : i;
+    }
+
+    /**
+     * Collects the M4 items column by column.
+     */
+    private class Selection {
+
+        /** Gives the column of an x-value. */
+        private final DoubleToIntFunction column;
+
+        /** The selected items. */
+        private int[] items;
+
+        /** The number of selected items. */
+        private int count;
+
+        /** The current column. */
+        private int current;
+
+        /** The first item in the current column, or -1 before any. */
+        private int first = -1;
+
+        /** The last item in the current column. */
+        private int last;
+
+        /** The item with the lowest y-value in the column, or -1. */
+        private int min;
+
+        /** The item with the highest y-value in the column, or -1. */
+        private int max;
+
+        /** The first item with a NaN y-value in the column, or -1. */
+        private int gap;
+
+        /**
+         * Creates a new selection.
+         *
+         * @param capacity  the initial capacity.
+         * @param column  gives the column of an x-value.
+         */
+        Selection(int capacity, DoubleToIntFunction column) {
+            this.items = new int[capacity];
+            this.column = column;
+        }
+
+        /**
+         * Adds a run of items, with their lowest, highest and first NaN
+         * items.
+         *
+         * @param from  the first item.
+         * @param to  the last item.
+         * @param lowest  the item with the lowest y-value, or -1.
+         * @param highest  the item with the highest y-value, or -1.
+         * @param nan  the first item with a NaN y-value, or -1.
+         */
+        void add(int from, int to, int lowest, int highest, int nan) {
+            int c = this.column.applyAsInt(
+                    M4Pyramid.this.dataset.getXValue(
+                    M4Pyramid.this.series, from));
+            if (this.first < 0 || c != this.current) {
+                flush();
+                this.current = c;
+                this.first = from;
+                this.min = lowest;
+                this.max = highest;
+                this.gap = nan;
+            }
+            else {
+                this.min = lower(this.min, lowest);
+                this.max = higher(this.max, highest);
+                if (this.gap < 0) {
+                    this.gap = nan;
+                }
+            }
+            this.last = to;
+        }
+
+        /**
+         * Appends the items of the current column.
+         */
+        private void flush() {
+            if (this.first < 0) {
+                return;
+            }
+            int[] column = {this.first, this.min, this.max, this.gap,
+                    this.last};
+            Arrays.sort(column);
+            if (this.count + column.length > this.items.length) {
+                this.items = Arrays.copyOf(this.items,
+                        this.items.length * 2 + column.length);
+            }
+            int previous = -1;
+            for (int item : column) {
+                if (item >= 0 && item != previous) {
+                    this.items[this.count++] = item;
+                    previous = item;
+                }
+            }
+        }
+
+        /**
+         * Returns the selected items.
+         *
+         * @return The item indices.
+         */
+        int[] finish() {
+            flush();
+            return Arrays.copyOf(this.items, this.count);
+        }
+    }
+
+}
@@ -41,12 +41,18 @@
 package org.jfree.data.xy;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import org.jfree.chart.util.ObjectUtils;
 import org.jfree.chart.util.Args;
 
+import org.jfree.data.Range;
+import org.jfree.data.RangeIndex;
 import org.jfree.data.general.Series;
 import org.jfree.data.general.SeriesChangeEvent;
 import org.jfree.data.general.SeriesException;
@@ -94,6 +100,18 @@ public class XYSeries extends Series implements Cloneable, Serializable {
     /** The highest y-value in the series, excluding Double.NaN values. */
     private double maxY;
 
+    /**
+     * A flag that controls whether the y-values of a sorted series are
+     * indexed, see {@link #setRangeIndexed(boolean)}.
+     */
+    private boolean rangeIndexed;
+
+    /**
+     * The index of the y-values, by item ({@code null} if the series is not
+     * indexed or the index needs rebuilding).
+     */
+    private transient RangeIndex rangeIndex;
+
     /**
      * Creates a new empty series.  By default, items added to the series will
      * be sorted into ascending order by x-value, and duplicate x-values will
@@ -295,6 +313,158 @@ public class XYSeries extends Series implements Cloneable, Serializable {
         return this.allowDuplicateXValues;
     }
 
+    /**
+     * Returns the flag that controls whether the y-values of the series are
+     * indexed.  The default value is {@code false}.
+     *
+     * @return A boolean.
+     *
+     * @see #setRangeIndexed(boolean)
+     *
+     * @since 1.5.3
+     */
+    public boolean getRangeIndexed() {
+        return this.rangeIndexed;
+    }
+
+    /**
+     * Sets the flag that controls whether the y-values of the series are
+     * indexed.  For a sorted series, the index lets
+     * {@link #findValueRange(Range)}, and so the automatic range of an axis
+     * showing part of the series, find the range of the y-values between
+     * two x-values in {@code O(log n)} time rather than by visiting every
+     * item.  The index is built on first use and is then kept up to date as
+     * items are added, updated and removed, at a cost of four
+     * {@code double} values per item.  Changes made to data items obtained
+     * from the {@code data} list are not tracked.
+     *
+     * @param indexed  the new flag value.
+     *
+     * @since 1.5.3
+     */
+    public void setRangeIndexed(boolean indexed) {
+        this.rangeIndexed = indexed;
+        this.rangeIndex = null;
+    }
+
+    /**
+     * Returns the range of the y-values of the items with x-values in the
+     * specified range, ignoring {@code null} and {@code Double.NaN}
+     * y-values.
+     *
+     * @param xRange  the range of x-values ({@code null} not permitted).
+     *
+     * @return The range of y-values, or {@code null} if there are none.
+     *
+     * @see #setRangeIndexed(boolean)
+     *
+     * @since 1.5.3
+     */
+    public Range findValueRange(Range xRange) {
+        Args.nullNotPermitted(xRange, "xRange");
+        int count = getItemCount();
+        if (this.autoSort && this.rangeIndexed) {
+            if (this.rangeIndex == null || this.rangeIndex.size() != count) {
+                double[] y = new double[count];
+                for (int i = 0; i < count; i++) {
+                    y[i] = getYValue(i);
+                }
+                this.rangeIndex = new RangeIndex(y);
+            }
+            // the first item with x >= lower, and the last with x <= upper
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (getXValue(mid) < xRange.getLowerBound()) {
+                    low = mid + 1;
+                }
+                else {
+                    high = mid;
+                }
+            }
+            int first = low;
+            high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (getXValue(mid) <= xRange.getUpperBound()) {
+                    low = mid + 1;
+                }
+                else {
+                    high = mid;
+                }
+            }
+            return this.rangeIndex.getRange(first, low - 1);
+        }
+        double lower = Double.POSITIVE_INFINITY;
+        double upper = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            double y = getYValue(i);
+            if (xRange.contains(getXValue(i)) && !Double.isNaN(y)) {
+                lower = Math.min(lower, y);
+                upper = Math.max(upper, y);
+            }
+        }
+        if (lower == Double.POSITIVE_INFINITY) {
+            return null;
+        }
+        return new Range(lower, upper);
+    }
+
+    /**
+     * Inserts a y-value in the range index, if there is one.
+     *
+     * @param index  the item index.
+     * @param y  the y-value.
+     */
+    void rangeIndexInsert(int index, double y) {
+        if (this.rangeIndex != null && index > this.rangeIndex.size()) {
+            this.rangeIndex = null;  // out of step, rebuild when needed
+        }
+        if (this.rangeIndex != null) {
+            this.rangeIndex.insert(index, y);
+        }
+    }
+
+    /**
+     * Removes y-values from the range index, if there is one.
+     *
+     * @param start  the index of the first item removed.
+     * @param end  the index of the last item removed.
+     */
+    void rangeIndexRemove(int start, int end) {
+        if (this.rangeIndex != null && end >= this.rangeIndex.size()) {
+            this.rangeIndex = null;  // out of step, rebuild when needed
+        }
+        if (this.rangeIndex != null) {
+            this.rangeIndex.remove(start, end);
+        }
+    }
+
+    /**
+     * Updates a y-value in the range index, if there is one.
+     *
+     * @param index  the item index.
+     * @param y  the new y-value.
+     */
+    void rangeIndexSet(int index, double y) {
+        if (this.rangeIndex != null && index >= this.rangeIndex.size()) {
+            this.rangeIndex = null;  // out of step, rebuild when needed
+        }
+        if (this.rangeIndex != null) {
+            this.rangeIndex.set(index, y);
+        }
+    }
+
+    /**
+     * Drops the range index, so that it is rebuilt when next needed.  This
+     * is used after changes that would take as long to apply to the index
+     * as to rebuild it.
+     */
+    void rangeIndexReset() {
+        this.rangeIndex = null;
+    }
+
     /**
      * Returns the number of items in the series.
      *
@@ -348,6 +518,7 @@ public class XYSeries extends Series implements Cloneable, Serializable {
         int remove = this.data.size() - maximum;
         if (remove > 0) {
             this.data.subList(0, remove).clear();
+            rangeIndexRemove(0, remove - 1);
             findBoundsByIteration();
             fireSeriesChanged();
         }
@@ -466,10 +637,11 @@ public class XYSeries extends Series implements Cloneable, Serializable {
     public void add(XYDataItem item, boolean notify) {
         Args.nullNotPermitted(item, "item");
         item = (XYDataItem) item.clone();
+        int position;
         if (this.autoSort) {
             int index = Collections.binarySearch(this.data, item);
             if (index < 0) {
-                this.data.add(-index - 1, item);
+                position = -index - 1;
             }
             else {
                 if (this.allowDuplicateXValues) {
@@ -479,12 +651,7 @@ public class XYSeries extends Series implements Cloneable, Serializable {
                             this.data.get(index)) == 0) {
                         index++;
                     }
-                    if (index < this.data.size()) {
-                        this.data.add(index, item);
-                    }
-                    else {
-                        this.data.add(item);
-                    }
+                    position = index;
                 }
                 else {
                     throw new SeriesException("X-value already exists.");
@@ -500,11 +667,14 @@ public class XYSeries extends Series implements Cloneable, Serializable {
                     throw new SeriesException("X-value already exists.");
                 }
             }
-            this.data.add(item);
+            position = this.data.size();
         }
+        this.data.add(position, item);
+        rangeIndexInsert(position, item.getYValue());
         updateBoundsForAddedItem(item);
         if (getItemCount() > this.maximumItemCount) {
             XYDataItem removed = (XYDataItem) this.data.remove(0);
+            rangeIndexRemove(0, 0);
             updateBoundsForRemovedItem(removed);
         }
         if (notify) {
@@ -512,6 +682,166 @@ public class XYSeries extends Series implements Cloneable, Serializable {
         }
     }
 
+    /**
+     * Adds the specified items to the series and sends a single
+     * {@link SeriesChangeEvent} to all registered listeners.  See
+     * {@link #addAll(double[], double[], boolean)}.
+     *
+     * @param x  the x-values ({@code null} not permitted).
+     * @param y  the y-values ({@code null} not permitted).
+     *
+     * @since 1.5.3
+     */
+    public void addAll(double[] x, double[] y) {
+        addAll(x, y, true);
+    }
+
+    /**
+     * Adds the items (x[i], y[i]) to the series and, if requested, sends a
+     * single {@link SeriesChangeEvent} to all registered listeners.  The
+     * series ends up with the same items as when they are added one by one,
+     * but a sorted series sorts the new items once and merges them with the
+     * existing ones, instead of inserting them one at a time.  If the
+     * maximum item count is exceeded, the first items are removed.
+     * <P>
+     * If the {@code allowDuplicateXValues} flag is not set and an x-value is
+     * already in the series or repeated in {@code x}, an exception is thrown
+     * and no items are added.
+     *
+     * @param x  the x-values ({@code null} not permitted).
+     * @param y  the y-values ({@code null} not permitted, the same length as
+     *     {@code x}).
+     * @param notify  a flag that controls whether or not a
+     *                {@link SeriesChangeEvent} is sent to all registered
+     *                listeners.
+     *
+     * @throws SeriesException if an x-value is a duplicate and the
+     *     {@code allowDuplicateXValues} flag is not set for this series.
+     *
+     * @since 1.5.3
+     */
+    public void addAll(double[] x, double[] y, boolean notify) {
+        checkArrays(x, y);
+        XYDataItem[] items = new XYDataItem[x.length];
+        for (int i = 0; i < x.length; i++) {
+            items[i] = new XYDataItem(x[i], y[i]);
+        }
+        addAll(items, notify);
+    }
+
+    /**
+     * Adds the items of one series in a dataset to this series and sends a
+     * single {@link SeriesChangeEvent} to all registered listeners.  See
+     * {@link #addAll(double[], double[], boolean)}.  {@code null} y-values
+     * are added as {@code Double.NaN}.
+     *
+     * @param dataset  the dataset ({@code null} not permitted).
+     * @param series  the series index in the dataset (zero-based).
+     *
+     * @since 1.5.3
+     */
+    public void addAll(XYDataset dataset, int series) {
+        Args.nullNotPermitted(dataset, "dataset");
+        int itemCount = dataset.getItemCount(series);
+        double[] x = new double[itemCount];
+        double[] y = new double[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            x[i] = dataset.getXValue(series, i);
+            y[i] = dataset.getYValue(series, i);
+        }
+        addAll(x, y, true);
+    }
+
+    /**
+     * Checks the arguments of {@link #addAll(double[], double[], boolean)}.
+     *
+     * @param x  the x-values.
+     * @param y  the y-values.
+     *
+     * @since 1.5.3
+     */
+    protected static void checkArrays(double[] x, double[] y) {
+        Args.nullNotPermitted(x, "x");
+        Args.nullNotPermitted(y, "y");
+        if (x.length != y.length) {
+            throw new IllegalArgumentException(
+                    "The 'x' and 'y' arrays must have the same length.");
+        }
+    }
+
+    /**
+     * Adds new data items to the series, see
+     * {@link #addAll(double[], double[], boolean)}.  The items are not
+     * cloned.
+     *
+     * @param items  the items.
+     * @param notify  notify listeners?
+     */
+    private void addAll(XYDataItem[] items, boolean notify) {
+        if (items.length == 0) {
+            return;
+        }
+        int oldCount = this.data.size();
+        if (this.autoSort) {
+            // a stable sort, so duplicates stay in the order given
+            Arrays.sort(items);
+            if (oldCount > 0 && items[0].compareTo(
+                    this.data.get(oldCount - 1)) < 0) {
+                // items are merged in, simpler to rebuild the index
+                rangeIndexReset();
+            }
+            List merged = new ArrayList(this.data.size() + items.length);
+            int i = 0;
+            for (XYDataItem item : items) {
+                while (i < this.data.size()
+                        && ((XYDataItem) this.data.get(i)).compareTo(item)
+                        <= 0) {
+                    merged.add(this.data.get(i++));
+                }
+                if (!this.allowDuplicateXValues && !merged.isEmpty()
+                        && item.compareTo(merged.get(merged.size() - 1))
+                        == 0) {
+                    throw new SeriesException("X-value already exists.");
+                }
+                merged.add(item);
+            }
+            merged.addAll(this.data.subList(i, this.data.size()));
+            this.data.clear();
+            this.data.addAll(merged);
+        }
+        else {
+            if (!this.allowDuplicateXValues) {
+                Set xValues = new HashSet();
+                for (Object obj : this.data) {
+                    xValues.add(((XYDataItem) obj).getX());
+                }
+                for (XYDataItem item : items) {
+                    if (!xValues.add(item.getX())) {
+                        throw new SeriesException("X-value already exists.");
+                    }
+                }
+            }
+            this.data.addAll(Arrays.asList(items));
+        }
+        for (int i = oldCount; i < this.data.size(); i++) {
+            rangeIndexInsert(i, getYValue(i));
+        }
+        int remove = this.data.size() - this.maximumItemCount;
+        if (remove > 0) {
+            this.data.subList(0, remove).clear();
+            rangeIndexRemove(0, remove - 1);
+            findBoundsByIteration();
+        }
+        else {
+            for (XYDataItem item : items) {
+                updateBoundsForAddedItem(item);
+            }
+        }
+        if (notify) {
+            fireSeriesChanged();
+        }
+    }
+
     /**
      * Deletes a range of items from the series and sends a
      * {@link SeriesChangeEvent} to all registered listeners.
@@ -521,6 +851,7 @@ public class XYSeries extends Series implements Cloneable, Serializable {
      */
     public void delete(int start, int end) {
         this.data.subList(start, end + 1).clear();
+        rangeIndexRemove(start, end);
         findBoundsByIteration();
         fireSeriesChanged();
     }
@@ -535,6 +866,7 @@ public class XYSeries extends Series implements Cloneable, Serializable {
      */
     public XYDataItem remove(int index) {
         XYDataItem removed = (XYDataItem) this.data.remove(index);
+        rangeIndexRemove(index, index);
         updateBoundsForRemovedItem(removed);
         fireSeriesChanged();
         return removed;
@@ -561,6 +893,7 @@ public class XYSeries extends Series implements Cloneable, Serializable {
     public void clear() {
         if (this.data.size() > 0) {
             this.data.clear();
+            rangeIndexReset();
             this.minX = Double.NaN;
             this.maxX = Double.NaN;
             this.minY = Double.NaN;
@@ -616,6 +949,33 @@ public class XYSeries extends Series implements Cloneable, Serializable {
         return getRawDataItem(index).getY();
     }
 
+    /**
+     * Returns the x-value at the specified index as a {@code double}.
+     *
+     * @param index  the index (zero-based).
+     *
+     * @return The x-value.
+     *
+     * @since 1.5.3
+     */
+    public double getXValue(int index) {
+        return getRawDataItem(index).getXValue();
+    }
+
+    /**
+     * Returns the y-value at the specified index as a {@code double}, or
+     * {@code Double.NaN} if the y-value is {@code null}.
+     *
+     * @param index  the index (zero-based).
+     *
+     * @return The y-value.
+     *
+     * @since 1.5.3
+     */
+    public double getYValue(int index) {
+        return getRawDataItem(index).getYValue();
+    }
+
     /**
      * A function to find the minimum of two values, but ignoring any
      * Double.NaN values.
@@ -673,6 +1033,7 @@ public class XYSeries extends Series implements Cloneable, Serializable {
             iterate = oldY <= this.minY || oldY >= this.maxY;
         }
         item.setY(y);
+        rangeIndexSet(index, item.getYValue());
 
         if (iterate) {
             findBoundsByIteration();
@@ -763,6 +1124,7 @@ public class XYSeries extends Series implements Cloneable, Serializable {
                 iterate = oldY <= this.minY || oldY >= this.maxY;
             }
             existing.setY(item.getY());
+            rangeIndexSet(index, existing.getYValue());
 
             if (iterate) {
                 findBoundsByIteration();
@@ -779,17 +1141,15 @@ public class XYSeries extends Series implements Cloneable, Serializable {
             // new item...otherwise it will be just -1 and we should just
             // append the value to the list...
             item = (XYDataItem) item.clone();
-            if (this.autoSort) {
-                this.data.add(-index - 1, item);
-            }
-            else {
-                this.data.add(item);
-            }
+            int position = this.autoSort ? -index - 1 : this.data.size();
+            this.data.add(position, item);
+            rangeIndexInsert(position, item.getYValue());
             updateBoundsForAddedItem(item);
 
             // check if this addition will exceed the maximum item count...
             if (getItemCount() > this.maximumItemCount) {
                 XYDataItem removed = (XYDataItem) this.data.remove(0);
+                rangeIndexRemove(0, 0);
                 updateBoundsForRemovedItem(removed);
             }
         }
@@ -856,6 +1216,7 @@ public class XYSeries extends Series implements Cloneable, Serializable {
     public Object clone() throws CloneNotSupportedException {
         XYSeries clone = (XYSeries) super.clone();
         clone.data = (List) ObjectUtils.deepClone(this.data);
+        clone.rangeIndex = null;
         return clone;
     }
 
@@ -874,6 +1235,7 @@ public class XYSeries extends Series implements Cloneable, Serializable {
 
         XYSeries copy = (XYSeries) super.clone();
         copy.data = new java.util.ArrayList();
+        copy.rangeIndex = null;
         if (this.data.size() > 0) {
             for (int index = start; index <= end; index++) {
                 XYDataItem item = (XYDataItem) this.data.get(index);
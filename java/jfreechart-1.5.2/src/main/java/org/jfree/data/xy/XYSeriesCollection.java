@@ -58,10 +58,11 @@ import org.jfree.data.general.Series;
 
 /**
  * Represents a collection of {@link XYSeries} objects that can be used as a
- * dataset.
+ * dataset.  The series can also be {@link DoubleXYSeries} objects, which
+ * hold large numbers of items more compactly.
  */
 public class XYSeriesCollection extends AbstractIntervalXYDataset
-        implements IntervalXYDataset, DomainInfo, RangeInfo, 
+        implements IntervalXYDataset, DomainInfo, RangeInfo, XYRangeInfo,
         VetoableChangeListener, PublicCloneable, Serializable {
 
     /** For serialization. */
@@ -135,6 +136,38 @@ public class XYSeriesCollection extends AbstractIntervalXYDataset
         fireDatasetChanged();
     }
 
+    /**
+     * Replaces a series in the collection and sends a single
+     * {@link DatasetChangeEvent} to all registered listeners.  Use this to
+     * swap in a series filled with {@link XYSeries#addAll(double[],
+     * double[])} instead of removing and adding series, which sends an event
+     * for each change.
+     *
+     * @param index  the series index (zero-based).
+     * @param series  the new series ({@code null} not permitted).
+     *
+     * @throws IllegalArgumentException if {@code index} is out of bounds, or
+     *     another series in the dataset has the same key as {@code series}.
+     *
+     * @since 1.5.3
+     */
+    public void setSeries(int index, XYSeries series) {
+        Args.nullNotPermitted(series, "series");
+        XYSeries old = getSeries(index);
+        int existing = getSeriesIndex(series.getKey());
+        if (existing >= 0 && existing != index) {
+            throw new IllegalArgumentException(
+                "This dataset already contains a series with the key "
+                + series.getKey());
+        }
+        old.removeChangeListener(this);
+        old.removeVetoableChangeListener(this);
+        this.data.set(index, series);
+        series.addChangeListener(this);
+        series.addVetoableChangeListener(this);
+        fireDatasetChanged();
+    }
+
     /**
      * Removes a series from the collection and sends a
      * {@link DatasetChangeEvent} to all registered listeners.
@@ -329,6 +362,20 @@ public class XYSeriesCollection extends AbstractIntervalXYDataset
         return s.getX(item);
     }
 
+    /**
+     * Returns the x-value for the specified series and item.
+     *
+     * @param series  the series (zero-based index).
+     * @param item  the item (zero-based index).
+     *
+     * @return The value.
+     */
+    @Override
+    public double getXValue(int series, int item) {
+        XYSeries s = (XYSeries) this.data.get(series);
+        return s.getXValue(item);
+    }
+
     /**
      * Returns the starting X value for the specified series and item.
      *
@@ -369,6 +416,20 @@ public class XYSeriesCollection extends AbstractIntervalXYDataset
         return s.getY(index);
     }
 
+    /**
+     * Returns the y-value for the specified series and item.
+     *
+     * @param series  the series (zero-based index).
+     * @param item  the item (zero-based index).
+     *
+     * @return The value ({@code Double.NaN} for a {@code null} y-value).
+     */
+    @Override
+    public double getYValue(int series, int item) {
+        XYSeries s = (XYSeries) this.data.get(series);
+        return s.getYValue(item);
+    }
+
     /**
      * Returns the starting Y value for the specified series and item.
      *
@@ -643,6 +704,35 @@ public class XYSeriesCollection extends AbstractIntervalXYDataset
         }
     }
 
+    /**
+     * Returns the range of the y-values of the items in the visible series
+     * with x-values in the specified range.  Series with the
+     * {@code rangeIndexed} flag set answer this without visiting every item
+     * (see {@link XYSeries#setRangeIndexed(boolean)}).
+     *
+     * @param visibleSeriesKeys  the keys of the visible series
+     *     ({@code null} not permitted).
+     * @param xRange  the x-range ({@code null} not permitted).
+     * @param includeInterval  ignored (the y-interval is the y-value).
+     *
+     * @return The range (or {@code null} if there are no values).
+     *
+     * @since 1.5.3
+     */
+    @Override
+    public Range getRangeBounds(List visibleSeriesKeys, Range xRange,
+            boolean includeInterval) {
+        Args.nullNotPermitted(visibleSeriesKeys, "visibleSeriesKeys");
+        Args.nullNotPermitted(xRange, "xRange");
+        Range result = null;
+        for (Object key : visibleSeriesKeys) {
+            XYSeries series = getSeries((Comparable) key);
+            result = Range.combineIgnoringNaN(result,
+                    series.findValueRange(xRange));
+        }
+        return result;
+    }
+
     /**
      * Returns the minimum y-value in the dataset.
      *
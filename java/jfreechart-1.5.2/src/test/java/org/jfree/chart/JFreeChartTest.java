@@ -460,6 +460,46 @@ public class JFreeChartTest implements ChartChangeListener {
         this.lastChartChangeEvent = null;
     }
 
+    /**
+     * Changes made in a batch send a single event when the batch ends.
+     */
+    @Test
+    public void testBatch() {
+        DefaultPieDataset dataset = new DefaultPieDataset();
+        JFreeChart chart = ChartFactory.createPieChart("title", dataset);
+        final List<ChartChangeEvent> events = new java.util.ArrayList<>();
+        chart.addChangeListener(events::add);
+        chart.batch(() -> {
+            assertTrue(chart.isBatchUpdate());
+            dataset.setValue("A", 1.0);
+            dataset.setValue("B", 2.0);
+            chart.getTitle().setFont(new Font("Dialog", Font.BOLD, 9));
+            chart.batch(() -> chart.getLegend().setPosition(
+                    RectangleEdge.TOP));
+        });
+        assertFalse(chart.isBatchUpdate());
+        assertEquals(1, events.size());
+
+        // a batch without changes sends no event
+        events.clear();
+        chart.batch(() -> { });
+        assertEquals(0, events.size());
+
+        // the event is sent when the update fails part way
+        try {
+            chart.batch(() -> {
+                dataset.setValue("C", 3.0);
+                throw new IllegalStateException();
+            });
+            fail("Expected an IllegalStateException.");
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(1, events.size());
+        assertFalse(chart.isBatchUpdate());
+    }
+
     @Test
     public void testBug942() throws Exception {
         final String title = "Pie Chart Demo 1\n\n\ntestnew line";
@@ -0,0 +1,241 @@
+/* ===========================================================
+ * JFreeChart : a free chart library for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2000-2020, by Object Refinery Limited and Contributors.
+ *
+ * Project Info:  http://www.jfree.org/jfreechart/index.html
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * --------------------------
+ * PNGEncoderAdapterTest.java
+ * --------------------------
+ * (C) Copyright 2020, by Object Refinery Limited and Contributors.
+ *
+ * Original Author:  -;
+ * Contributor(s):   -;
+ *
+ */
+
+package org.jfree.chart.encoders;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Random;
+import java.util.zip.Adler32;
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the {@link PNGEncoderAdapter} class.
+ */
+public class PNGEncoderAdapterTest {
+
+    /**
+     * Creates an image with some drawing and some noise.
+     */
+    private static BufferedImage createImage(int width, int height,
+            int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Graphics2D g2 = image.createGraphics();
+        g2.setColor(Color.WHITE);
+        g2.fillRect(0, 0, width, height / 2);
+        g2.setColor(new Color(255, 0, 0, 128));
+        g2.drawLine(0, 0, width, height);
+        g2.dispose();
+        Random random = new Random(50L);
+        for (int i = 0; i < width * height / 10; i++) {
+            image.setRGB(random.nextInt(width), random.nextInt(height),
+                    random.nextInt());
+        }
+        return image;
+    }
+
+    /**
+     * Checks that an image decodes to the expected pixels.
+     */
+    private static void checkDecoded(BufferedImage expected, byte[] png,
+            boolean alpha) throws IOException {
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(png));
+        assertEquals(expected.getWidth(), decoded.getWidth());
+        assertEquals(expected.getHeight(), decoded.getHeight());
+        assertEquals(alpha, decoded.getColorModel().hasAlpha());
+        int mask = alpha ? 0xFFFFFFFF : 0x00FFFFFF;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y) & mask,
+                        decoded.getRGB(x, y) & mask);
+            }
+        }
+    }
+
+    /**
+     * Encoded images decode to the same pixels for all filters and
+     * compression levels.
+     */
+    @Test
+    public void testEncode() throws IOException {
+        BufferedImage image = createImage(67, 45,
+                BufferedImage.TYPE_INT_ARGB);
+        PNGEncoderAdapter encoder = new PNGEncoderAdapter();
+        for (PNGFilterStrategy strategy : PNGFilterStrategy.values()) {
+            for (int level = 0; level <= 9; level += 3) {
+                encoder.setFilterStrategy(strategy);
+                encoder.setCompressionLevel(level);
+                encoder.setEncodingAlpha(true);
+                checkDecoded(image, encoder.encode(image), true);
+                encoder.setEncodingAlpha(false);
+                checkDecoded(image, encoder.encode(image), false);
+            }
+        }
+    }
+
+    /**
+     * Images without alpha, and other image types, are supported.
+     */
+    @Test
+    public void testImageTypes() throws IOException {
+        PNGEncoderAdapter encoder = new PNGEncoderAdapter();
+        BufferedImage rgb = createImage(40, 30, BufferedImage.TYPE_INT_RGB);
+        checkDecoded(rgb, encoder.encode(rgb), false);
+        BufferedImage bgr = createImage(40, 30, BufferedImage.TYPE_3BYTE_BGR);
+        checkDecoded(bgr, encoder.encode(bgr), false);
+        BufferedImage abgr = createImage(40, 30,
+                BufferedImage.TYPE_4BYTE_ABGR);
+        checkDecoded(abgr, encoder.encode(abgr), true);
+    }
+
+    /**
+     * A large image is split into strips, and compressing them in parallel
+     * gives the same output as compressing them one at a time.
+     */
+    @Test
+    public void testParallel() throws IOException {
+        BufferedImage image = createImage(500, 400,
+                BufferedImage.TYPE_INT_ARGB);
+        PNGEncoderAdapter encoder = new PNGEncoderAdapter();
+        assertTrue(encoder.isParallel());
+        byte[] parallel = encoder.encode(image);
+        encoder.setParallel(false);
+        byte[] serial = encoder.encode(image);
+        assertArrayEquals(serial, parallel);
+        checkDecoded(image, parallel, true);
+
+        // again, with the pooled buffers in use
+        encoder.setParallel(true);
+        assertArrayEquals(serial, encoder.encode(image));
+    }
+
+    /**
+     * Multi-strip images encoded one after another at different levels and
+     * with different strategies (so that pooled deflaters are reused with a
+     * different level) all decode correctly.
+     */
+    @Test
+    public void testChangingLevels() throws IOException {
+        BufferedImage rgb = createImage(600, 400, BufferedImage.TYPE_INT_RGB);
+        BufferedImage argb = createImage(350, 300,
+                BufferedImage.TYPE_INT_ARGB);
+        PNGEncoderAdapter encoder = new PNGEncoderAdapter();
+        int[] levels = {0, 6, 9, 1, 6, 0, 3};
+        for (boolean parallel : new boolean[] {true, false}) {
+            encoder.setParallel(parallel);
+            for (PNGFilterStrategy strategy : PNGFilterStrategy.values()) {
+                encoder.setFilterStrategy(strategy);
+                for (int level : levels) {
+                    encoder.setCompressionLevel(level);
+                    checkDecoded(rgb, encoder.encode(rgb), false);
+                    checkDecoded(argb, encoder.encode(argb), true);
+                }
+            }
+        }
+    }
+
+    /**
+     * An interrupted parallel encode fails with an InterruptedIOException,
+     * keeps the interrupt status and leaves the encoder usable.
+     */
+    @Test
+    public void testInterrupted() throws IOException {
+        final BufferedImage image = createImage(600, 400,
+                BufferedImage.TYPE_INT_ARGB);
+        final PNGEncoderAdapter encoder = new PNGEncoderAdapter();
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(InterruptedIOException.class,
+                    () -> encoder.encode(image));
+            assertTrue(Thread.currentThread().isInterrupted());
+        }
+        finally {
+            Thread.interrupted();
+        }
+        checkDecoded(image, encoder.encode(image), true);
+    }
+
+    /**
+     * The quality is the compression level, limited to 0 - 9.
+     */
+    @Test
+    public void testQuality() {
+        PNGEncoderAdapter encoder = new PNGEncoderAdapter();
+        assertEquals(6.0f, encoder.getQuality());
+        encoder.setQuality(9.0f);
+        assertEquals(9, encoder.getCompressionLevel());
+        encoder.setQuality(20.0f);
+        assertEquals(9, encoder.getCompressionLevel());
+        encoder.setQuality(-1.0f);
+        assertEquals(0, encoder.getCompressionLevel());
+        assertTrue(encoder.isEncodingAlpha());
+        encoder.setEncodingAlpha(false);
+        assertFalse(encoder.isEncodingAlpha());
+        assertTrue(ImageEncoderFactory.newInstance(ImageFormat.PNG)
+                instanceof PNGEncoderAdapter);
+    }
+
+    /**
+     * Checks the Adler-32 combination against a checksum of the joined
+     * data.
+     */
+    @Test
+    public void testCombineAdler32() {
+        byte[] data = new byte[200000];
+        new Random(1L).nextBytes(data);
+        Adler32 all = new Adler32();
+        all.update(data);
+        Adler32 a = new Adler32();
+        a.update(data, 0, 70000);
+        Adler32 b = new Adler32();
+        b.update(data, 70000, 130000);
+        assertEquals(all.getValue(), PNGEncoderAdapter.combineAdler32(
+                a.getValue(), b.getValue(), 130000));
+    }
+
+}
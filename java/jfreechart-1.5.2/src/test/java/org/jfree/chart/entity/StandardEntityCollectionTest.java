@@ -42,9 +42,14 @@ package org.jfree.chart.entity;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.awt.geom.Ellipse2D;
 import java.awt.geom.Rectangle2D;
+import java.util.Iterator;
+import java.util.Random;
 
 import org.jfree.chart.TestUtils;
 
@@ -114,4 +119,59 @@ public class StandardEntityCollectionTest {
         assertEquals(c1, c2);
     }
 
+    /**
+     * Returns the last entity containing the point, by checking them all.
+     */
+    private static ChartEntity findByScan(StandardEntityCollection c,
+            double x, double y) {
+        for (int i = c.getEntityCount() - 1; i >= 0; i--) {
+            if (c.getEntity(i).getArea().contains(x, y)) {
+                return c.getEntity(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The point search in a large collection must find the same entity as a
+     * scan of the list from the end, including where entities overlap.
+     */
+    @Test
+    public void testGetEntityAtPoint() {
+        Random random = new Random(48L);
+        StandardEntityCollection c = new StandardEntityCollection();
+        c.add(new ChartEntity(new Rectangle2D.Double(0, 0, 500, 400)));
+        for (int i = 0; i < 2000; i++) {
+            double x = random.nextDouble() * 500.0;
+            double y = random.nextDouble() * 400.0;
+            double w = random.nextDouble() * (i % 50 == 0 ? 300.0 : 20.0);
+            double h = random.nextDouble() * 20.0;
+            if (i % 3 == 0) {
+                c.add(new ChartEntity(new Ellipse2D.Double(x, y, w, h)));
+            }
+            else {
+                c.add(new ChartEntity(new Rectangle2D.Double(x, y, w, h)));
+            }
+        }
+        for (int i = 0; i < 5000; i++) {
+            double x = random.nextDouble() * 600.0 - 50.0;
+            double y = random.nextDouble() * 500.0 - 50.0;
+            assertSame(findByScan(c, x, y), c.getEntity(x, y));
+        }
+
+        // entities added, or removed through the iterator, after a search
+        ChartEntity top = new ChartEntity(new Rectangle2D.Double(10, 10, 5, 5));
+        c.add(top);
+        assertSame(top, c.getEntity(12, 12));
+        Iterator iterator = c.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() == top) {
+                iterator.remove();
+            }
+        }
+        assertSame(findByScan(c, 12, 12), c.getEntity(12, 12));
+        c.clear();
+        assertNull(c.getEntity(12, 12));
+    }
+
 }
@@ -79,13 +79,16 @@ import org.jfree.chart.annotations.XYTextAnnotation;
 import org.jfree.chart.axis.AxisLocation;
 import org.jfree.chart.axis.DateAxis;
 import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.axis.ValueAxis;
 import org.jfree.chart.date.MonthConstants;
 import org.jfree.chart.event.MarkerChangeListener;
 import org.jfree.chart.labels.StandardXYToolTipGenerator;
 import org.jfree.chart.renderer.xy.DefaultXYItemRenderer;
+import org.jfree.chart.renderer.xy.SamplingXYLineRenderer;
 import org.jfree.chart.renderer.xy.StandardXYItemRenderer;
 import org.jfree.chart.renderer.xy.XYBarRenderer;
 import org.jfree.chart.renderer.xy.XYItemRenderer;
+import org.jfree.chart.renderer.xy.XYItemRendererState;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.chart.ui.Layer;
 import org.jfree.chart.ui.RectangleInsets;
@@ -425,6 +428,12 @@ public class XYPlotTest {
         plot2.setShadowGenerator(null);
         assertTrue(plot1.equals(plot2));
 
+        // levelOfDetail
+        plot1.setLevelOfDetail(true);
+        assertFalse(plot1.equals(plot2));
+        plot2.setLevelOfDetail(true);
+        assertTrue(plot1.equals(plot2));
+
         LegendItemCollection lic1 = new LegendItemCollection();
         lic1.add(new LegendItem("XYZ", Color.RED));
         plot1.setFixedLegendItems(lic1);
@@ -1430,4 +1439,57 @@ public class XYPlotTest {
         assertEquals(new Range(1.0, 6.0), plot.getDataRange(xAxis));
         assertEquals(new Range(2.0, 10.0), plot.getDataRange(yAxis)); // only y-values for items in the x-range        
     }    
+
+    /**
+     * A renderer that counts the items it is asked to draw.
+     */
+    static class CountingRenderer extends SamplingXYLineRenderer {
+
+        int count;
+
+        @Override
+        public void drawItem(Graphics2D g2, XYItemRendererState state,
+                Rectangle2D dataArea, PlotRenderingInfo info, XYPlot plot,
+                ValueAxis domainAxis, ValueAxis rangeAxis, XYDataset dataset,
+                int series, int item, CrosshairState crosshairState,
+                int pass) {
+            this.count++;
+            super.drawItem(g2, state, dataArea, info, plot, domainAxis,
+                    rangeAxis, dataset, series, item, crosshairState, pass);
+        }
+    }
+
+    /**
+     * With level-of-detail rendering, a large series is drawn from a few
+     * items per pixel column, and the dataset changes are picked up.
+     */
+    @Test
+    public void testLevelOfDetail() {
+        XYSeries series = new XYSeries("S1");
+        for (int i = 0; i < 100000; i++) {
+            series.add(i, Math.sin(i / 100.0));
+        }
+        XYSeriesCollection dataset = new XYSeriesCollection(series);
+        CountingRenderer renderer = new CountingRenderer();
+        XYPlot plot = new XYPlot(dataset, new NumberAxis("X"),
+                new NumberAxis("Y"), renderer);
+        JFreeChart chart = new JFreeChart(plot);
+        BufferedImage image = new BufferedImage(200, 100,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = image.createGraphics();
+        chart.draw(g2, new Rectangle2D.Double(0, 0, 200, 100), null, null);
+        assertEquals(100000, renderer.count);
+
+        plot.setLevelOfDetail(true);
+        renderer.count = 0;
+        chart.draw(g2, new Rectangle2D.Double(0, 0, 200, 100), null, null);
+        assertTrue(renderer.count > 0);
+        assertTrue(renderer.count <= 5 * 200);
+
+        series.add(100000, 5.0);
+        renderer.count = 0;
+        chart.draw(g2, new Rectangle2D.Double(0, 0, 200, 100), null, null);
+        assertTrue(renderer.count <= 5 * 200);
+        g2.dispose();
+    }
 }
@@ -48,8 +48,10 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 
+import java.awt.Graphics2D;
 import java.awt.geom.Line2D;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.JFreeChart;
@@ -298,4 +300,47 @@ public class XYLineAndShapeRendererTest {
         assertEquals(2, li.getSeriesIndex());
     }
 
+    /**
+     * Returns the level-of-detail flag of the state created by a renderer.
+     */
+    private static boolean levelOfDetailAllowed(XYLineAndShapeRenderer r,
+            XYSeriesCollection dataset) {
+        XYPlot plot = new XYPlot(dataset, new NumberAxis("x"),
+                new NumberAxis("y"), r);
+        Graphics2D g2 = new BufferedImage(10, 10,
+                BufferedImage.TYPE_INT_RGB).createGraphics();
+        try {
+            return r.initialise(g2, new Rectangle2D.Double(0, 0, 10, 10),
+                    plot, dataset, null).isLevelOfDetailAllowed();
+        }
+        finally {
+            g2.dispose();
+        }
+    }
+
+    /**
+     * Level-of-detail rendering is only allowed for lines drawn as a path
+     * without shapes or item labels, including per-item overrides.
+     */
+    @Test
+    public void testLevelOfDetailAllowed() {
+        XYSeriesCollection dataset = new XYSeriesCollection(
+                new XYSeries("S1"));
+        XYLineAndShapeRenderer r = new XYLineAndShapeRenderer(true, false);
+        assertFalse(levelOfDetailAllowed(r, dataset));
+        r.setDrawSeriesLineAsPath(true);
+        assertTrue(levelOfDetailAllowed(r, dataset));
+        r.setSeriesItemLabelsVisible(0, true);
+        assertFalse(levelOfDetailAllowed(r, dataset));
+
+        XYLineAndShapeRenderer r2 = new XYLineAndShapeRenderer(true, false) {
+            @Override
+            public boolean getItemShapeVisible(int series, int item) {
+                return item % 100 == 99;
+            }
+        };
+        r2.setDrawSeriesLineAsPath(true);
+        assertFalse(levelOfDetailAllowed(r2, dataset));
+    }
+
 }
@@ -0,0 +1,162 @@
+/* ===========================================================
+ * JFreeChart : a free chart library for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2000-2020, by Object Refinery Limited and Contributors.
+ *
+ * Project Info:  http://www.jfree.org/jfreechart/index.html
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * -------------------
+ * RangeIndexTest.java
+ * -------------------
+ * (C) Copyright 2020, by Object Refinery Limited and Contributors.
+ *
+ * Original Author:  -;
+ * Contributor(s):   -;
+ *
+ */
+
+package org.jfree.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the {@link RangeIndex} class.
+ */
+public class RangeIndexTest {
+
+    /**
+     * Returns the range of some values by visiting them all.
+     *
+     * @param values  the values.
+     * @param start  the first index.
+     * @param end  the last index.
+     *
+     * @return The range, or {@code null}.
+     */
+    private static Range bruteForce(List<Double> values, int start,
+            int end) {
+        double lower = Double.POSITIVE_INFINITY;
+        double upper = Double.NEGATIVE_INFINITY;
+        for (int i = start; i <= end; i++) {
+            double v = values.get(i);
+            if (!Double.isNaN(v)) {
+                lower = Math.min(lower, v);
+                upper = Math.max(upper, v);
+            }
+        }
+        return lower == Double.POSITIVE_INFINITY ? null
+                : new Range(lower, upper);
+    }
+
+    /**
+     * Random changes at both ends and in the middle give the same ranges as
+     * a plain list.
+     */
+    @Test
+    public void testRandomChanges() {
+        Random random = new Random(1L);
+        RangeIndex index = new RangeIndex();
+        List<Double> values = new ArrayList<>();
+        for (int step = 0; step < 5000; step++) {
+            double v = random.nextInt(20) == 0 ? Double.NaN
+                    : random.nextGaussian();
+            int n = values.size();
+            int op = random.nextInt(10);
+            if (op < 4 || n == 0) {
+                index.add(v);
+                values.add(v);
+            }
+            else if (op == 4) {
+                index.insert(0, v);
+                values.add(0, v);
+            }
+            else if (op == 5) {
+                int i = random.nextInt(n + 1);
+                index.insert(i, v);
+                values.add(i, v);
+            }
+            else if (op == 6) {
+                int i = random.nextInt(n);
+                index.set(i, v);
+                values.set(i, v);
+            }
+            else if (op == 7) {
+                int end = random.nextInt(Math.min(n, 3));
+                index.remove(0, end);
+                values.subList(0, end + 1).clear();
+            }
+            else {
+                int start = random.nextInt(n);
+                int end = start + random.nextInt(n - start);
+                index.remove(start, end);
+                values.subList(start, end + 1).clear();
+            }
+            assertEquals(values.size(), index.size());
+            if (!values.isEmpty()) {
+                int a = random.nextInt(values.size());
+                int b = a + random.nextInt(values.size() - a);
+                assertEquals(bruteForce(values, a, b), index.getRange(a, b));
+                assertEquals(values.get(b), index.get(b), 0.0);
+            }
+        }
+    }
+
+    /**
+     * An index created from an array.
+     */
+    @Test
+    public void testConstructor() {
+        RangeIndex index = new RangeIndex(new double[] {3.0, Double.NaN,
+                -1.0, 7.0});
+        assertEquals(4, index.size());
+        assertEquals(new Range(-1.0, 7.0), index.getRange(0, 3));
+        assertEquals(new Range(3.0, 3.0), index.getRange(0, 1));
+        assertNull(index.getRange(1, 1));
+        assertNull(index.getRange(2, 1));
+        index.clear();
+        assertEquals(0, index.size());
+    }
+
+    /**
+     * Indices out of range are rejected.
+     */
+    @Test
+    public void testInvalidIndices() {
+        final RangeIndex index = new RangeIndex(new double[] {1.0, 2.0});
+        assertThrows(IndexOutOfBoundsException.class, () -> index.get(2));
+        assertThrows(IndexOutOfBoundsException.class,
+                () -> index.insert(3, 1.0));
+        assertThrows(IndexOutOfBoundsException.class,
+                () -> index.getRange(0, 2));
+        assertThrows(IllegalArgumentException.class,
+                () -> index.remove(1, 0));
+    }
+
+}
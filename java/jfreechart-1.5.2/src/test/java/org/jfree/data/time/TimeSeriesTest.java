@@ -65,6 +65,7 @@ import static org.junit.jupiter.api.Assertions.fail;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.Locale;
+import java.util.Random;
 import java.util.TimeZone;
 
 import org.jfree.chart.TestUtils;
@@ -1248,4 +1249,64 @@ public class TimeSeriesTest implements SeriesChangeListener {
                 ts.findValueRange(range, TimePeriodAnchor.END, tzone));
 
     }
+
+    /**
+     * With the {@code rangeIndexed} flag set, findValueRange() gives the same
+     * results as without, as the series changes.
+     */
+    @Test
+    public void testFindValueRangeIndexed() {
+        Calendar calendar = new GregorianCalendar(
+                TimeZone.getTimeZone("Europe/London"), Locale.UK);
+        Random random = new Random(1L);
+        TimeSeries indexed = new TimeSeries("S1");
+        TimeSeries plain = new TimeSeries("S2");
+        indexed.setRangeIndexed(true);
+        for (int step = 0; step < 1000; step++) {
+            int n = indexed.getItemCount();
+            int op = random.nextInt(10);
+            Day day = new Day(1 + random.nextInt(28), 1 + random.nextInt(12),
+                    2000 + random.nextInt(5));
+            Double value = random.nextInt(20) == 0 ? null
+                    : random.nextGaussian();
+            if (op < 5 || n == 0) {
+                indexed.addOrUpdate(day, value);
+                plain.addOrUpdate(day, value);
+            }
+            else if (op < 7) {
+                int i = random.nextInt(n);
+                indexed.update(i, value);
+                plain.update(i, value);
+            }
+            else if (op == 7) {
+                int start = random.nextInt(n);
+                int end = start + random.nextInt(Math.min(n - start, 5));
+                indexed.delete(start, end);
+                plain.delete(start, end);
+            }
+            else if (op == 8) {
+                indexed.delete(day);
+                plain.delete(day);
+            }
+            else {
+                int max = 100 + random.nextInt(300);
+                indexed.setMaximumItemCount(max);
+                plain.setMaximumItemCount(max);
+            }
+            long lower = new Day(1, 1 + random.nextInt(12),
+                    2000 + random.nextInt(5)).getFirstMillisecond(calendar);
+            Range xRange = new Range(lower,
+                    lower + random.nextInt(400) * 86400000.0);
+            Range expected = plain.findValueRange(xRange,
+                    TimePeriodAnchor.MIDDLE, calendar);
+            Range r = indexed.findValueRange(xRange, TimePeriodAnchor.MIDDLE,
+                    calendar);
+            if (expected.isNaNRange()) {
+                assertTrue(r.isNaNRange());
+            }
+            else {
+                assertEquals(expected, r);
+            }
+        }
+    }
 }
@@ -45,9 +45,15 @@ package org.jfree.data.xy;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
 
 import org.jfree.chart.TestUtils;
 import org.jfree.chart.util.PublicCloneable;
+import org.jfree.data.Range;
+import org.jfree.data.general.DatasetUtils;
 
 import org.junit.jupiter.api.Test;
 
@@ -206,6 +212,38 @@ public class DefaultXYDatasetTest {
         assertTrue(pass);
     }
 
+    /**
+     * With the {@code rangeIndexed} flag set, the range of y-values within
+     * an x-range is the same as found by iterating over the items, also
+     * after series are added, replaced and removed.
+     */
+    @Test
+    public void testGetRangeBoundsIndexed() {
+        DefaultXYDataset d = new DefaultXYDataset();
+        d.setRangeIndexed(true);
+        d.addSeries("S1", new double[][] {{1.0, 2.0, 2.0, 3.0},
+                {4.0, Double.NaN, 9.0, 6.0}});
+        d.addSeries("S2", new double[][] {{3.0, 1.0, 2.0},
+                {-1.0, 5.0, 7.0}});
+        List keys = Arrays.asList("S1", "S2");
+        Range[] xRanges = {new Range(1.0, 2.0), new Range(2.5, 3.0),
+                new Range(5.0, 6.0), new Range(0.0, 10.0)};
+        for (Range xRange : xRanges) {
+            assertEquals(DatasetUtils.iterateToFindRangeBounds(d, keys,
+                    xRange, false), d.getRangeBounds(keys, xRange, false));
+        }
+        assertEquals(new Range(4.0, 9.0),
+                d.getRangeBounds(keys, new Range(1.0, 2.0), false));
+        d.addSeries("S2", new double[][] {{1.0, 2.0}, {-2.0, 0.0}});
+        assertEquals(new Range(-2.0, 9.0),
+                d.getRangeBounds(keys, new Range(1.0, 2.0), false));
+        d.removeSeries("S1");
+        assertEquals(new Range(-2.0, 0.0), d.getRangeBounds(
+                Arrays.asList("S2"), new Range(1.0, 2.0), false));
+        assertNull(d.getRangeBounds(Arrays.asList("S2"),
+                new Range(5.0, 6.0), false));
+    }
+
     /**
      * Creates a sample dataset for testing.
      *
@@ -0,0 +1,400 @@
+/* ===========================================================
+ * JFreeChart : a free chart library for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2000-2020, by Object Refinery Limited and Contributors.
+ *
+ * Project Info:  http://www.jfree.org/jfreechart/index.html
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * -----------------------
+ * DoubleXYSeriesTest.java
+ * -----------------------
+ * (C) Copyright 2020, by Object Refinery Limited and Contributors.
+ *
+ * Original Author:  -;
+ * Contributor(s):   -;
+ *
+ */
+
+package org.jfree.data.xy;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.Random;
+
+import org.jfree.chart.TestUtils;
+
+import org.jfree.data.Range;
+import org.jfree.data.general.SeriesException;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the {@link DoubleXYSeries} class.
+ */
+public class DoubleXYSeriesTest {
+
+    /**
+     * Checks that a series holds the same items as an {@link XYSeries}.
+     *
+     * @param expected  the expected items.
+     * @param s  the series.
+     */
+    private static void assertSameItems(XYSeries expected, XYSeries s) {
+        assertEquals(expected.getItemCount(), s.getItemCount());
+        for (int i = 0; i < s.getItemCount(); i++) {
+            assertEquals(expected.getXValue(i), s.getXValue(i), 0.0);
+            assertEquals(expected.getYValue(i), s.getYValue(i), 0.0);
+        }
+        assertEquals(expected.getMinX(), s.getMinX(), 0.0);
+        assertEquals(expected.getMaxX(), s.getMaxX(), 0.0);
+        assertEquals(expected.getMinY(), s.getMinY(), 0.0);
+        assertEquals(expected.getMaxY(), s.getMaxY(), 0.0);
+    }
+
+    /**
+     * Confirm that the equals method can distinguish all the required fields.
+     */
+    @Test
+    public void testEquals() {
+        DoubleXYSeries s1 = new DoubleXYSeries("Series");
+        s1.add(1.0, 1.1);
+        DoubleXYSeries s2 = new DoubleXYSeries("Series");
+        s2.add(1.0, 1.1);
+        assertTrue(s1.equals(s2));
+        assertTrue(s2.equals(s1));
+
+        s1.setKey("Series X");
+        assertFalse(s1.equals(s2));
+        s2.setKey("Series X");
+        assertTrue(s1.equals(s2));
+
+        s1.add(2.0, 2.2);
+        assertFalse(s1.equals(s2));
+        s2.add(2.0, 2.2);
+        assertTrue(s1.equals(s2));
+
+        s1.setMaximumItemCount(5);
+        assertFalse(s1.equals(s2));
+        s2.setMaximumItemCount(5);
+        assertTrue(s1.equals(s2));
+        assertEquals(s1.hashCode(), s2.hashCode());
+    }
+
+    /**
+     * Confirm that cloning works and that the clone is independent.
+     *
+     * @throws java.lang.CloneNotSupportedException
+     */
+    @Test
+    public void testCloning() throws CloneNotSupportedException {
+        DoubleXYSeries s1 = new DoubleXYSeries("S1");
+        s1.add(1.0, 100.0);
+        s1.add(2.0, null);
+        s1.add(3.0, 200.0);
+        DoubleXYSeries s2 = (DoubleXYSeries) s1.clone();
+        assertTrue(s1 != s2);
+        assertTrue(s1.equals(s2));
+
+        s2.add(4.0, 300.0);
+        assertFalse(s1.equals(s2));
+        s1.add(4.0, 300.0);
+        assertTrue(s1.equals(s2));
+    }
+
+    /**
+     * Serialize an instance, restore it, and check for equality.
+     */
+    @Test
+    public void testSerialization() {
+        DoubleXYSeries s1 = new DoubleXYSeries("Series");
+        s1.add(1.0, 1.1);
+        s1.add(2.0, null);
+        DoubleXYSeries s2 = (DoubleXYSeries) TestUtils.serialised(s1);
+        assertEquals(s1, s2);
+    }
+
+    /**
+     * Items are sorted and duplicates are added after the existing ones, as
+     * in {@link XYSeries}.
+     */
+    @Test
+    public void testAddSorted() {
+        XYSeries expected = new XYSeries("S");
+        DoubleXYSeries s = new DoubleXYSeries("S");
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            double x = random.nextInt(200);
+            double y = random.nextGaussian();
+            expected.add(x, y);
+            s.add(x, y);
+        }
+        assertSameItems(expected, s);
+        for (int i = 0; i < 200; i++) {
+            assertEquals(expected.indexOf(i) >= 0, s.indexOf(i) >= 0);
+        }
+        assertEquals(-1, s.indexOf(-5.0));
+        assertEquals(-1001, s.indexOf(500.0));
+    }
+
+    /**
+     * An unsorted series keeps the items in the order they were added.
+     */
+    @Test
+    public void testAddUnsorted() {
+        DoubleXYSeries s = new DoubleXYSeries("S", false);
+        s.add(3.0, 30.0);
+        s.add(1.0, 10.0);
+        s.add(2.0, 20.0);
+        assertEquals(3.0, s.getXValue(0), 0.0);
+        assertEquals(1.0, s.getXValue(1), 0.0);
+        assertEquals(2.0, s.getXValue(2), 0.0);
+        assertEquals(1, s.indexOf(1.0));
+        assertEquals(-1, s.indexOf(4.0));
+        assertEquals(1.0, s.getMinX(), 0.0);
+        assertEquals(30.0, s.getMaxY(), 0.0);
+    }
+
+    /**
+     * Duplicate x-values are refused when they are not allowed.
+     */
+    @Test
+    public void testAddDuplicate() {
+        DoubleXYSeries s = new DoubleXYSeries("S", true, false);
+        s.add(1.0, 1.0);
+        s.add(2.0, 2.0);
+        try {
+            s.add(2.0, 3.0);
+            fail("Duplicate x-value should be refused.");
+        }
+        catch (SeriesException e) {
+            // expected
+        }
+        DoubleXYSeries u = new DoubleXYSeries("U", false, false);
+        u.add(2.0, 2.0);
+        try {
+            u.add(2.0, 3.0);
+            fail("Duplicate x-value should be refused.");
+        }
+        catch (SeriesException e) {
+            // expected
+        }
+        assertEquals(2, s.getItemCount());
+        assertEquals(1, u.getItemCount());
+    }
+
+    /**
+     * {@code null} y-values are kept as Double.NaN and ignored by the bounds.
+     */
+    @Test
+    public void testNullY() {
+        DoubleXYSeries s = new DoubleXYSeries("S");
+        s.add(1.0, null);
+        assertTrue(Double.isNaN(s.getMinY()));
+        assertTrue(Double.isNaN(s.getY(0).doubleValue()));
+        s.add(2.0, 5.0);
+        assertEquals(5.0, s.getMinY(), 0.0);
+        assertEquals(5.0, s.getMaxY(), 0.0);
+        assertTrue(Double.isNaN(s.toArray()[1][0]));
+    }
+
+    /**
+     * Adding beyond the maximum item count drops the oldest items, and the
+     * bounds follow.
+     */
+    @Test
+    public void testMaximumItemCount() {
+        XYSeries expected = new XYSeries("S");
+        DoubleXYSeries s = new DoubleXYSeries("S");
+        expected.setMaximumItemCount(50);
+        s.setMaximumItemCount(50);
+        Random random = new Random(2);
+        for (int i = 0; i < 1000; i++) {
+            double y = random.nextDouble();
+            expected.add(i, y);
+            s.add(i, y);
+        }
+        assertSameItems(expected, s);
+
+        // some added items are older than the ones kept
+        for (int i = 0; i < 100; i++) {
+            double x = random.nextInt(1100);
+            expected.add(x, (double) i);
+            s.add(x, i);
+        }
+        assertSameItems(expected, s);
+
+        expected.setMaximumItemCount(10);
+        s.setMaximumItemCount(10);
+        assertSameItems(expected, s);
+    }
+
+    /**
+     * Removing items keeps the same items and bounds as {@link XYSeries}.
+     */
+    @Test
+    public void testRemove() {
+        XYSeries expected = new XYSeries("S");
+        DoubleXYSeries s = new DoubleXYSeries("S");
+        for (int i = 0; i < 20; i++) {
+            expected.add(i, (double) (i * 7 % 11));
+            s.add(i, i * 7 % 11);
+        }
+        assertEquals(expected.remove(0), s.remove(0));
+        assertEquals(expected.remove(5), s.remove(5));
+        assertEquals(expected.remove(17), s.remove(17));
+        assertEquals(expected.remove(Double.valueOf(9.0)),
+                s.remove(Double.valueOf(9.0)));
+        assertSameItems(expected, s);
+        expected.delete(3, 8);
+        s.delete(3, 8);
+        assertSameItems(expected, s);
+        s.clear();
+        assertEquals(0, s.getItemCount());
+        assertTrue(Double.isNaN(s.getMaxX()));
+    }
+
+    /**
+     * Checks addOrUpdate() and updateByIndex().
+     */
+    @Test
+    public void testAddOrUpdate() {
+        DoubleXYSeries s = new DoubleXYSeries("S", true, false);
+        assertEquals(null, s.addOrUpdate(2.0, 20.0));
+        assertEquals(null, s.addOrUpdate(1.0, 10.0));
+        XYDataItem old = s.addOrUpdate(2.0, 5.0);
+        assertEquals(new XYDataItem(2.0, 20.0), old);
+        assertEquals(2, s.getItemCount());
+        assertEquals(1.0, s.getXValue(0), 0.0);
+        assertEquals(5.0, s.getMinY(), 0.0);
+        assertEquals(10.0, s.getMaxY(), 0.0);
+
+        s.updateByIndex(1, 30.0);
+        assertEquals(30.0, s.getMaxY(), 0.0);
+        assertEquals(10.0, s.getMinY(), 0.0);
+        s.update(1.0, null);
+        assertEquals(30.0, s.getMinY(), 0.0);
+    }
+
+    /**
+     * A copy holds the requested items only.
+     *
+     * @throws java.lang.CloneNotSupportedException
+     */
+    @Test
+    public void testCreateCopy() throws CloneNotSupportedException {
+        DoubleXYSeries s = new DoubleXYSeries("S");
+        for (int i = 0; i < 10; i++) {
+            s.add(i, i * 10.0);
+        }
+        XYSeries copy = s.createCopy(2, 4);
+        assertTrue(copy instanceof DoubleXYSeries);
+        assertEquals(3, copy.getItemCount());
+        assertEquals(2.0, copy.getMinX(), 0.0);
+        assertEquals(40.0, copy.getMaxY(), 0.0);
+        assertEquals(10, s.getItemCount());
+    }
+
+    /**
+     * An {@link XYSeriesCollection} can host the series.
+     */
+    @Test
+    public void testCollection() {
+        DoubleXYSeries s1 = new DoubleXYSeries("S1");
+        s1.add(1.0, 5.0);
+        s1.add(2.0, -5.0);
+        XYSeries s2 = new XYSeries("S2");
+        s2.add(0.5, 1.0);
+        XYSeriesCollection dataset = new XYSeriesCollection(s1);
+        dataset.addSeries(s2);
+        assertEquals(2.0, dataset.getXValue(0, 1), 0.0);
+        assertEquals(-5.0, dataset.getYValue(0, 1), 0.0);
+        assertEquals(-5.0, dataset.getY(0, 1).doubleValue(), 0.0);
+        assertEquals(new Range(-5.0, 5.0), dataset.getRangeBounds(false));
+        assertEquals(new Range(0.5, 2.0), dataset.getDomainBounds(false));
+    }
+
+
+    /**
+     * Adding items in bulk gives the same series as {@link XYSeries}, with a
+     * single change event.
+     */
+    @Test
+    public void testAddAll() {
+        Random random = new Random(3);
+        for (boolean autoSort : new boolean[] {true, false}) {
+            XYSeries expected = new XYSeries("S", autoSort);
+            DoubleXYSeries s = new DoubleXYSeries("S", autoSort);
+            expected.setMaximumItemCount(700);
+            s.setMaximumItemCount(700);
+            int[] count = new int[1];
+            s.addChangeListener(XYSeriesTest.counter(count));
+            for (int round = 0; round < 3; round++) {
+                double[] x = new double[300];
+                double[] y = new double[300];
+                for (int i = 0; i < x.length; i++) {
+                    x[i] = random.nextInt(1000);
+                    y[i] = random.nextGaussian();
+                }
+                expected.addAll(x, y);
+                s.addAll(x, y);
+                assertSameItems(expected, s);
+            }
+            assertEquals(3, count[0]);
+        }
+    }
+
+    /**
+     * A bulk add with a duplicate x-value fails without adding anything.
+     */
+    @Test
+    public void testAddAllDuplicates() {
+        DoubleXYSeries s = new DoubleXYSeries("S", true, false);
+        s.add(2.0, 2.0);
+        try {
+            s.addAll(new double[] {1.0, 2.0}, new double[] {1.0, 2.0});
+            fail("Expected a SeriesException.");
+        }
+        catch (SeriesException e) {
+            // expected
+        }
+        DoubleXYSeries u = new DoubleXYSeries("U", false, false);
+        try {
+            u.addAll(new double[] {3.0, 3.0}, new double[] {1.0, 2.0});
+            fail("Expected a SeriesException.");
+        }
+        catch (SeriesException e) {
+            // expected
+        }
+        assertEquals(1, s.getItemCount());
+        assertEquals(0, u.getItemCount());
+    }
+
+    /**
+     * The range index follows changes to the series.
+     */
+    @Test
+    public void testFindValueRangeIndexed() {
+        XYSeriesTest.checkRangeIndex(new DoubleXYSeries("S"), 2L);
+    }
+}
@@ -0,0 +1,220 @@
+/* ===========================================================
+ * JFreeChart : a free chart library for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2000-2020, by Object Refinery Limited and Contributors.
+ *
+ * Project Info:  http://www.jfree.org/jfreechart/index.html
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * ------------------
+ * M4PyramidTest.java
+ * ------------------
+ * (C) Copyright 2020, by Object Refinery Limited and Contributors.
+ *
+ * Original Author:  -;
+ * Contributor(s):   -;
+ *
+ */
+
+package org.jfree.data.xy;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.DoubleToIntFunction;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the {@link M4Pyramid} class.
+ */
+public class M4PyramidTest {
+
+    /** Puts 64 consecutive x-values (0, 1, 2, ...) in each column. */
+    private static final DoubleToIntFunction COLUMN
+            = new DoubleToIntFunction() {
+        @Override
+        public int applyAsInt(double x) {
+            return (int) Math.floor(x / 64.0);
+        }
+    };
+
+    /**
+     * Creates a series with x-values 0, 1, 2, ... and random y-values, some
+     * of them NaN.
+     *
+     * @param count  the number of items.
+     * @param seed  the random seed.
+     *
+     * @return The series.
+     */
+    private static XYSeries createSeries(int count, long seed) {
+        Random random = new Random(seed);
+        XYSeries series = new XYSeries("S", true, true);
+        for (int i = 0; i < count; i++) {
+            double y = random.nextInt(50) == 0 ? Double.NaN
+                    : random.nextGaussian();
+            series.add(i, y);
+        }
+        return series;
+    }
+
+    /**
+     * Returns the M4 items of a range by visiting every item.
+     *
+     * @param s  the series.
+     * @param first  the first item.
+     * @param last  the last item.
+     * @param column  gives the column of an x-value.
+     *
+     * @return The item indices.
+     */
+    private static int[] bruteForce(XYSeries s, int first, int last,
+            DoubleToIntFunction column) {
+        TreeSet<Integer> result = new TreeSet<>();
+        int start = first;
+        while (start <= last) {
+            int c = column.applyAsInt(s.getXValue(start));
+            int end = start;
+            while (end + 1 <= last
+                    && column.applyAsInt(s.getXValue(end + 1)) == c) {
+                end++;
+            }
+            result.add(start);
+            result.add(end);
+            int min = -1;
+            int max = -1;
+            int gap = -1;
+            for (int i = start; i <= end; i++) {
+                double y = s.getYValue(i);
+                if (Double.isNaN(y)) {
+                    if (gap < 0) {
+                        gap = i;
+                    }
+                    continue;
+                }
+                if (min < 0 || y < s.getYValue(min)) {
+                    min = i;
+                }
+                if (max < 0 || y > s.getYValue(max)) {
+                    max = i;
+                }
+            }
+            for (int i : new int[] {min, max, gap}) {
+                if (i >= 0) {
+                    result.add(i);
+                }
+            }
+            start = end + 1;
+        }
+        int[] items = new int[result.size()];
+        int i = 0;
+        for (int item : result) {
+            items[i++] = item;
+        }
+        return items;
+    }
+
+    /**
+     * The selection matches the M4 items found by visiting every item.
+     */
+    @Test
+    public void testSelect() {
+        XYSeries s = createSeries(10000, 1L);
+        M4Pyramid pyramid = new M4Pyramid(new XYSeriesCollection(s), 0);
+        assertEquals(10000, pyramid.getItemCount());
+        int[][] ranges = {{0, 9999}, {5, 9998}, {63, 64 * 40 + 1},
+                {1000, 1999}, {1, 9000}};
+        for (int[] r : ranges) {
+            int columns = (r[1] - r[0] + 1) / 64 + 1;
+            assertArrayEquals(bruteForce(s, r[0], r[1], COLUMN),
+                    pyramid.select(r[0], r[1], columns, COLUMN));
+        }
+    }
+
+    /**
+     * With column widths that do not line up with the buckets, buckets that
+     * cross a column boundary are split, so that each column still gets its
+     * own first, last, lowest and highest items.
+     */
+    @Test
+    public void testSelectUnalignedColumns() {
+        XYSeries s = createSeries(10000, 4L);
+        M4Pyramid pyramid = new M4Pyramid(new XYSeriesCollection(s), 0);
+        for (final double width : new double[] {50.0, 37.3, 100.5, 999.0}) {
+            DoubleToIntFunction column = new DoubleToIntFunction() {
+                @Override
+                public int applyAsInt(double x) {
+                    return (int) Math.floor((x + 3.0) / width);
+                }
+            };
+            int[][] ranges = {{0, 9999}, {17, 9876}, {501, 2222}};
+            for (int[] r : ranges) {
+                int columns = (int) ((r[1] - r[0] + 1) / width) + 1;
+                assertArrayEquals(bruteForce(s, r[0], r[1], column),
+                        pyramid.select(r[0], r[1], columns, column));
+            }
+        }
+    }
+
+    /**
+     * With few items per column, all the items are selected.
+     */
+    @Test
+    public void testSelectFewItems() {
+        XYSeries s = createSeries(100, 2L);
+        M4Pyramid pyramid = new M4Pyramid(new XYSeriesCollection(s), 0);
+        int[] items = pyramid.select(10, 59, 10, COLUMN);
+        assertEquals(50, items.length);
+        assertEquals(10, items[0]);
+        assertEquals(59, items[49]);
+    }
+
+    /**
+     * Single items and empty series.
+     */
+    @Test
+    public void testSmallSeries() {
+        XYSeries s = new XYSeries("S");
+        M4Pyramid pyramid = new M4Pyramid(new XYSeriesCollection(s), 0);
+        assertEquals(0, pyramid.getItemCount());
+        s.add(1.0, 2.0);
+        pyramid = new M4Pyramid(new XYSeriesCollection(s), 0);
+        assertArrayEquals(new int[] {0}, pyramid.select(0, 0, 100, COLUMN));
+    }
+
+    /**
+     * An invalid item range is rejected.
+     */
+    @Test
+    public void testSelectInvalidRange() {
+        final M4Pyramid pyramid = new M4Pyramid(
+                new XYSeriesCollection(createSeries(10, 3L)), 0);
+        assertThrows(IllegalArgumentException.class,
+                () -> pyramid.select(5, 10, 1, COLUMN));
+        assertThrows(IllegalArgumentException.class,
+                () -> pyramid.select(6, 5, 1, COLUMN));
+    }
+
+}
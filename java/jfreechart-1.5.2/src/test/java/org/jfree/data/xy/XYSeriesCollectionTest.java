@@ -57,10 +57,16 @@ import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.jfree.chart.TestUtils;
 import org.jfree.chart.util.PublicCloneable;
 import org.jfree.data.Range;
 import org.jfree.data.UnknownKeyException;
+import org.jfree.data.general.DatasetChangeEvent;
+import org.jfree.data.general.DatasetChangeListener;
+import org.jfree.data.general.DatasetUtils;
 
 import org.junit.jupiter.api.Test;
 
@@ -534,4 +540,74 @@ public class XYSeriesCollectionTest {
         // change because "C" is already the key for the other series in the
         // collection
     }
+
+    /**
+     * Replacing a series sends one event and moves the listeners.
+     */
+    @Test
+    public void testSetSeries() {
+        XYSeries s1 = new XYSeries("A");
+        XYSeries s2 = new XYSeries("B");
+        XYSeriesCollection c = new XYSeriesCollection(s1);
+        c.addSeries(s2);
+        final int[] count = new int[1];
+        c.addChangeListener(new DatasetChangeListener() {
+            @Override
+            public void datasetChanged(DatasetChangeEvent event) {
+                count[0]++;
+            }
+        });
+        DoubleXYSeries s3 = new DoubleXYSeries("A");
+        s3.addAll(new double[] {1.0, 2.0}, new double[] {3.0, 4.0});
+        c.setSeries(0, s3);
+        assertEquals(1, count[0]);
+        assertSame(s3, c.getSeries(0));
+        assertEquals(new Range(3.0, 4.0), c.getRangeBounds(false));
+
+        s1.add(1.0, 1.0);
+        assertEquals(1, count[0]);
+        s3.add(3.0, 5.0);
+        assertEquals(2, count[0]);
+
+        try {
+            c.setSeries(0, new XYSeries("B"));
+            fail("Expected an IllegalArgumentException.");
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * The range of y-values for the visible series within an x-range is the
+     * same as found by iterating over the items.
+     */
+    @Test
+    public void testGetRangeBoundsForXRange() {
+        XYSeries s1 = new XYSeries("S1");
+        XYSeries s2 = new XYSeries("S2", false);
+        DoubleXYSeries s3 = new DoubleXYSeries("S3");
+        s1.setRangeIndexed(true);
+        s3.setRangeIndexed(true);
+        for (int i = 0; i < 100; i++) {
+            s1.add(i, Math.sin(i));
+            s2.add(100 - i, i % 7 == 0 ? Double.NaN : Math.cos(i));
+            s3.add(i / 2.0, i);
+        }
+        XYSeriesCollection c = new XYSeriesCollection(s1);
+        c.addSeries(s2);
+        c.addSeries(s3);
+        List keys = Arrays.asList("S1", "S3");
+        Range[] xRanges = {new Range(10.0, 20.0), new Range(-5.0, 0.5),
+                new Range(200.0, 300.0), new Range(0.0, 100.0)};
+        for (Range xRange : xRanges) {
+            assertEquals(DatasetUtils.iterateToFindRangeBounds(c, keys,
+                    xRange, true), c.getRangeBounds(keys, xRange, true));
+            assertEquals(DatasetUtils.iterateToFindRangeBounds(c,
+                    Arrays.asList("S2"), xRange, false),
+                    DatasetUtils.findRangeBounds(c, Arrays.asList("S2"),
+                    xRange, false));
+        }
+        assertNull(c.getRangeBounds(keys, new Range(200.0, 300.0), true));
+    }
 }
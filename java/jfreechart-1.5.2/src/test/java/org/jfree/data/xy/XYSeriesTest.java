@@ -48,9 +48,15 @@ package org.jfree.data.xy;
 
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Random;
 
 import org.jfree.chart.TestUtils;
+import org.jfree.data.Range;
 
+import org.jfree.data.general.SeriesChangeEvent;
+import org.jfree.data.general.SeriesChangeListener;
 import org.jfree.data.general.SeriesException;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -809,4 +815,214 @@ public class XYSeriesTest {
         c.removeSeries(1);
         s1.setKey("S2");
     }
+
+    /**
+     * Returns a listener that counts the change events it receives in
+     * count[0].
+     *
+     * @param count  the counter.
+     *
+     * @return The listener.
+     */
+    static SeriesChangeListener counter(final int[] count) {
+        return new SeriesChangeListener() {
+            @Override
+            public void seriesChanged(SeriesChangeEvent event) {
+                count[0]++;
+            }
+        };
+    }
+
+    /**
+     * Adding items in bulk gives the same series as adding them one by one,
+     * with a single change event.
+     */
+    @Test
+    public void testAddAll() {
+        double[] x = {5.0, 1.0, 3.0, 3.0, 9.0, 1.0, 7.0};
+        double[] y = {50.0, 10.0, 30.0, 31.0, 90.0, 11.0, Double.NaN};
+        XYSeries expected = new XYSeries("S");
+        expected.add(3.0, 300.0);
+        XYSeries s = new XYSeries("S");
+        s.add(3.0, 300.0);
+        for (int i = 0; i < x.length; i++) {
+            expected.add(x[i], y[i]);
+        }
+        int[] count = new int[1];
+        s.addChangeListener(counter(count));
+        s.addAll(x, y);
+        assertEquals(1, count[0]);
+        assertEquals(expected, s);
+        assertEquals(1.0, s.getMinX(), 0.0);
+        assertEquals(9.0, s.getMaxX(), 0.0);
+        assertEquals(10.0, s.getMinY(), 0.0);
+        assertEquals(300.0, s.getMaxY(), 0.0);
+
+        // unsorted series keep the order given
+        XYSeries u = new XYSeries("U", false);
+        u.addAll(x, y);
+        assertEquals(5.0, u.getXValue(0), 0.0);
+        assertEquals(7.0, u.getXValue(6), 0.0);
+
+        // nothing to add, no event
+        s.addAll(new double[0], new double[0]);
+        assertEquals(1, count[0]);
+    }
+
+    /**
+     * Bulk adds respect the maximum item count.
+     */
+    @Test
+    public void testAddAllMaximumItemCount() {
+        XYSeries expected = new XYSeries("S");
+        XYSeries s = new XYSeries("S");
+        expected.setMaximumItemCount(3);
+        s.setMaximumItemCount(3);
+        double[] x = {4.0, 8.0, 2.0, 6.0, 1.0};
+        double[] y = {40.0, 80.0, 20.0, 60.0, 10.0};
+        for (int i = 0; i < x.length; i++) {
+            expected.add(x[i], y[i]);
+        }
+        s.addAll(x, y);
+        assertEquals(expected, s);
+        assertEquals(40.0, s.getMinY(), 0.0);
+        assertEquals(80.0, s.getMaxY(), 0.0);
+    }
+
+    /**
+     * A bulk add with a duplicate x-value fails without adding anything.
+     */
+    @Test
+    public void testAddAllDuplicates() {
+        XYSeries s = new XYSeries("S", true, false);
+        s.add(2.0, 2.0);
+        try {
+            s.addAll(new double[] {1.0, 2.0}, new double[] {1.0, 2.0});
+            fail("Expected a SeriesException.");
+        }
+        catch (SeriesException e) {
+            // expected
+        }
+        try {
+            s.addAll(new double[] {3.0, 3.0}, new double[] {1.0, 2.0});
+            fail("Expected a SeriesException.");
+        }
+        catch (SeriesException e) {
+            // expected
+        }
+        XYSeries u = new XYSeries("U", false, false);
+        try {
+            u.addAll(new double[] {3.0, 3.0}, new double[] {1.0, 2.0});
+            fail("Expected a SeriesException.");
+        }
+        catch (SeriesException e) {
+            // expected
+        }
+        assertEquals(1, s.getItemCount());
+        assertEquals(0, u.getItemCount());
+    }
+
+    /**
+     * Items can be added in bulk from a dataset.
+     */
+    @Test
+    public void testAddAllFromDataset() {
+        DefaultXYDataset dataset = new DefaultXYDataset();
+        dataset.addSeries("D", new double[][] {{2.0, 1.0}, {20.0, 10.0}});
+        XYSeries s = new XYSeries("S");
+        s.addAll(dataset, 0);
+        assertEquals(2, s.getItemCount());
+        assertEquals(1.0, s.getXValue(0), 0.0);
+        assertEquals(20.0, s.getYValue(1), 0.0);
+    }
+
+    /**
+     * Applies the same random changes to a series with the
+     * {@code rangeIndexed} flag set and to a plain {@link XYSeries}, and
+     * checks that {@code findValueRange()} gives the same results.
+     *
+     * @param s  the series (sorted, empty).
+     * @param seed  the random seed.
+     */
+    static void checkRangeIndex(XYSeries s, long seed) {
+        Random random = new Random(seed);
+        XYSeries plain = new XYSeries("Plain");
+        s.setRangeIndexed(true);
+        for (int step = 0; step < 2000; step++) {
+            int n = s.getItemCount();
+            int op = random.nextInt(20);
+            double x = random.nextInt(1000);
+            double y = random.nextInt(20) == 0 ? Double.NaN
+                    : random.nextGaussian();
+            if (op < 10 || n == 0) {
+                s.add(x, y);
+                plain.add(x, y);
+            }
+            else if (op < 12 && n > 1) {
+                int i = random.nextInt(n);
+                s.remove(i);
+                plain.remove(i);
+            }
+            else if (op < 15) {
+                int i = random.nextInt(n);
+                s.updateByIndex(i, y);
+                plain.updateByIndex(i, y);
+            }
+            else if (op == 15) {
+                int start = random.nextInt(n);
+                int end = start + random.nextInt(Math.min(n - start, 5));
+                s.delete(start, end);
+                plain.delete(start, end);
+            }
+            else if (op == 16) {
+                double[] xs = {x, x + 1, 1000 + step};
+                double[] ys = {y, -y, y / 2};
+                s.addAll(xs, ys);
+                plain.addAll(xs, ys);
+            }
+            else if (op == 17) {
+                int max = 50 + random.nextInt(200);
+                s.setMaximumItemCount(max);
+                plain.setMaximumItemCount(max);
+            }
+            else if (op == 18) {
+                s.setMaximumItemCount(Integer.MAX_VALUE);
+                plain.setMaximumItemCount(Integer.MAX_VALUE);
+            }
+            else if (random.nextInt(10) == 0) {
+                s.clear();
+                plain.clear();
+            }
+            double lower = random.nextInt(1200) - 100;
+            Range xRange = new Range(lower, lower + random.nextInt(400));
+            assertEquals(plain.findValueRange(xRange),
+                    s.findValueRange(xRange));
+        }
+    }
+
+    /**
+     * The range index follows changes to the series.
+     */
+    @Test
+    public void testFindValueRangeIndexed() {
+        checkRangeIndex(new XYSeries("S"), 1L);
+    }
+
+    /**
+     * The range of y-values within a range of x-values.
+     */
+    @Test
+    public void testFindValueRange() {
+        XYSeries s = new XYSeries("S", false);
+        s.add(3.0, 30.0);
+        s.add(1.0, 10.0);
+        s.add(2.0, null);
+        s.add(4.0, -4.0);
+        assertEquals(new Range(10.0, 30.0),
+                s.findValueRange(new Range(1.0, 3.0)));
+        assertNull(s.findValueRange(new Range(2.0, 2.5)));
+        s.setRangeIndexed(true);  // ignored, the series is not sorted
+        assertEquals(new Range(-4.0, 30.0),
+                s.findValueRange(new Range(0.0, 5.0)));
+    }
 }
@@ -47,11 +47,16 @@ function ajax_getplot(exp) {
     var msgColor;
     var time1 = new Date().getTime();
     $.ajaxSetup({timeout:120000}); // No run should take more than 2 mins
-    $.post('ajax_getplot.cgi', { data: formdata })
+    // Ask for packed values when the browser can decode them
+    var post = { data: formdata };
+    if (typeof Float64Array !== 'undefined' && typeof atob !== 'undefined') {
+        post.encoding = 'delta4';
+    }
+    $.post('ajax_getplot.cgi', post)
       .done(function( data ) {
 
         // Graph results from this run
-        var rdata = JSON.parse(data); // Run data
+        var rdata = decodeRun(JSON.parse(data)); // Run data
         var color = $('input:radio[name=runRadio]:checked').val();
         ThyrosimGraph.setRun(color,rdata);
         graphAll();
@@ -72,6 +77,108 @@ function ajax_getplot(exp) {
       });
 }
 
+//===================================================================
+// DESC:    Run several serialized forms in one request and graph them in the
+//          run colors, in order. The server shares i0 between forms and runs
+//          them in parallel, see java/MultiRun.java.
+// ARGS:
+//   forms: Serialized forms, at most one per run color
+//===================================================================
+function ajax_getmulti(forms) {
+    showLoadingMsg();
+
+    var msg;
+    var msgColor;
+    var time1 = new Date().getTime();
+    $.ajaxSetup({timeout:120000});
+    var post = { data: forms };
+    if (typeof Float64Array !== 'undefined' && typeof atob !== 'undefined') {
+        post.encoding = 'delta4';
+    }
+    $.ajax({ type: 'POST', url: 'ajax_getmulti.cgi', data: post,
+             traditional: true }) // data=...&data=...
+      .done(function( data ) {
+        var res = JSON.parse(data);
+        if (res.error) {
+            msg = '<b>Error!</b> '+res.error+' (sec):';
+            msgColor = 'red';
+            return;
+        }
+        var colors = Object.keys(ThyrosimGraph.colors);
+        msg = '<b>Success!</b> Execution time (sec):';
+        msgColor = 'green';
+        $.each(res.runs,function(i,run) {
+            if (i >= colors.length) return false;
+            if (run.error) {
+                msg = '<b>Error!</b> '+run.error+' (sec):';
+                msgColor = 'red';
+                return;
+            }
+            ThyrosimGraph.setRun(colors[i],decodeRun(run));
+        });
+        graphAll();
+      })
+      .fail(function (data ) {
+        msg = '<b>Error!</b> Operation timed out (sec):';
+        msgColor = 'red';
+      })
+      .always(function() {
+        hideLoadingMsg(); // Hide loading message
+        var time2 = new Date().getTime();
+        var timeE = Math.floor((time2 - time1)/1000); // Time elapsed
+        showOverlayMsg(msg+' '+timeE, msgColor);
+      });
+}
+
+//===================================================================
+// DESC:    Unpack the values of a run sent with encoding=delta4. Packed
+//          compartments have 'packed' instead of 'values'; their values
+//          become a Float64Array. Other runs are returned as they are.
+// ARGS:
+//   rdata: The parsed run data
+//===================================================================
+function decodeRun(rdata) {
+    if (rdata.encoding !== 'delta4') {
+        return rdata;
+    }
+    $.each(rdata.data,function(comp,o) {
+        if (typeof o.packed !== 'undefined') {
+            o.values = decodeDelta4(o.packed,o.count);
+            delete o.packed;
+        }
+    });
+    return rdata;
+}
+
+//===================================================================
+// DESC:    Decode a base64 string of zigzag varint deltas in units of
+//          0.0001 into a Float64Array. See DeltaCodec.java. Arithmetic is
+//          used instead of bit operations, which would cut values to 32
+//          bits.
+// ARGS:
+//   b64:   The packed values
+//   count: The number of values
+//===================================================================
+function decodeDelta4(b64,count) {
+    var bin = atob(b64);
+    var values = new Float64Array(count);
+    var pos = 0;
+    var prev = 0;
+    for (var i = 0; i < count; i++) {
+        var z = 0;
+        var mul = 1;
+        var b;
+        do {
+            b = bin.charCodeAt(pos++);
+            z += (b & 0x7f) * mul;
+            mul *= 128;
+        } while (b & 0x80);
+        prev += (z % 2) ? -(z + 1) / 2 : z / 2;
+        values[i] = prev / 10000;
+    }
+    return values;
+}
+
 //========================================================================
 // TASK:    Functions for graphing.
 //========================================================================
@@ -1056,6 +1163,8 @@ function deleteInput(n) {
         $('#input-'+i).attr('id','input-'+j);
 
     } // Outer loop end.
+
+    liveSend();
 }
 
 //===================================================================
@@ -1202,6 +1311,7 @@ function togInput(n) {
             }
         });
     }
+    liveSend();
 }
 
 //===================================================================
@@ -1312,6 +1422,134 @@ var sliderObj = {
     '4':{'min':0,'max':100,'value':88, 'range':'min','animate':'fast'}
 };
 
+//===================================================================
+// DESC:    Show the predicted steady state for the current dials while the
+//          sliders move. Requests are spaced out by previewDelay ms and only
+//          the latest answer is shown. 'exact' asks the server to solve
+//          instead of interpolating the precomputed surface. Both only
+//          know the dials, so with inputs that are on the steady state is
+//          labelled as being without doses.
+// ARGS:
+//   exact: Optional, solve the steady state
+//===================================================================
+var previewTimer;
+var previewSeq = 0;
+var previewDelay = 100;
+function previewDials(exact) {
+    clearTimeout(previewTimer);
+    previewTimer = setTimeout(function() {
+        var seq = ++previewSeq;
+        var data = { data: $('form').serialize() };
+        if (exact) {
+            data.exact = 1;
+            $('#dialpreview').html('Solving steady state...');
+        }
+        $.post('ajax_preview.cgi', data)
+          .done(function(res) {
+            if (seq != previewSeq) return; // A newer request was sent
+            var r = JSON.parse(res);
+            if (r.error || isNaN(r.tsh.mean)) {
+                $('#dialpreview').html('');
+                return;
+            }
+            var fmt = function(h,unit) {
+                return Number(h.mean).toFixed(2) + ' (' +
+                       Number(h.min).toFixed(2) + '-' +
+                       Number(h.max).toFixed(2) + ') ' + unit;
+            };
+            $('#dialpreview').html(
+                (r.exact ? 'Steady state' : 'Predicted steady state') +
+                (hasInputsOn() ? ' without doses' : '') +
+                ': TSH ' + fmt(r.tsh,'mU/L') +
+                ', FT4 ' + fmt(r.ft4,'ng/L') +
+                ', FT3 ' + fmt(r.ft3,'ng/L') +
+                (r.exact ? '' : ' <a href="javascript:previewDials(1)">' +
+                                'exact</a>'));
+          });
+    }, exact ? 0 : previewDelay);
+}
+
+//===================================================================
+// DESC:    Whether any input is on, see addOnOff().
+//===================================================================
+function hasInputsOn() {
+    return $('input[id^="disabled-"]').filter(function() {
+        return this.value != '1';
+    }).length > 0;
+}
+
+//===================================================================
+// DESC:    Live mode. While the Live switch is on, a WebSocket to the live
+//          server (java/LiveServer.java) stays open and the form is sent
+//          whenever a dial, an input or the simulation time changes. The
+//          server only runs the latest form and cancels runs that are
+//          superseded. Each form is answered with a quick preview and then
+//          the full result, which both replace the run of the selected
+//          color. liveUrl is where the live server is reachable.
+//===================================================================
+var liveUrl = 'ws://' + location.hostname + ':8712/';
+var liveSocket;
+var liveTimer;
+var liveSeq = 0;
+var liveShown = 0;
+var liveFinal = true;
+var liveDelay = 50;
+function togLive() {
+    if (!$('#live').is(':checked')) {
+        if (liveSocket) liveSocket.close();
+        return;
+    }
+    if (typeof WebSocket === 'undefined') {
+        $('#live').prop('checked',false);
+        showOverlayMsg('<b>Error!</b> This browser has no WebSocket.','red');
+        return;
+    }
+    var ws = new WebSocket(liveUrl);
+    ws.onopen = function() {
+        liveSocket = ws;
+        liveSend();
+    };
+    ws.onmessage = function(msg) {
+        var e = JSON.parse(msg.data);
+        // Skip what is older than what is shown, except the result of a
+        // shown preview
+        if (e.seq < liveShown || (e.seq === liveShown && liveFinal)) return;
+        liveShown = e.seq;
+        liveFinal = e.event !== 'preview';
+        if (e.event === 'error') {
+            showOverlayMsg('<b>Error!</b> '+e.error,'red');
+            return;
+        }
+        var color = $('input:radio[name=runRadio]:checked').val();
+        ThyrosimGraph.setRun(color,decodeRun(e.run));
+        graphAll();
+    };
+    ws.onclose = function() {
+        if (!liveSocket) {
+            showOverlayMsg('<b>Error!</b> Live mode is not available.','red');
+        }
+        liveSocket = undefined;
+        $('#live').prop('checked',false);
+    };
+}
+
+//===================================================================
+// DESC:    Send the form to the live server, at most every liveDelay ms.
+//          Nothing is sent while a text input is not a number.
+//===================================================================
+function liveSend() {
+    if (!liveSocket) return;
+    clearTimeout(liveTimer);
+    liveTimer = setTimeout(function() {
+        if (!liveSocket || liveSocket.readyState !== 1) return;
+        var ok = true;
+        $.each($('form input[type=text]').serializeArray(), function(i,f) {
+            if (!/^-?\+?[0-9]*\.?[0-9]+$/.test(f.value)) ok = false;
+        });
+        if (ok) liveSocket.send(++liveSeq + ' ' + $('form').serialize());
+    }, liveDelay);
+}
+
 //===================================================================
 // DESC:    Function to show/hide an id. Takes an optional time argument.
 // NOTE:    ms cannot be 0; use 1 for shortest possible toggle.
@@ -1412,16 +1650,24 @@ $(function() {
             range:   o.range,
             animate: o.animate,
             // Change dialinput's value to match slider's value
-            slide:   function(event,ui) { $(d).val(ui.value); }
+            slide:   function(event,ui) {
+                $(d).val(ui.value);
+                previewDials();
+                liveSend();
+            }
         });
         // Set defaultValue property
         $(d).prop('defaultValue',$(s).slider('value'));
         // Changes slider value when changing dialinput
         $(d).keyup(function() {
             $(s).slider('value',this.value);
+            previewDials();
         });
     });
 
+    // Re-run in live mode when any input changes, see togLive()
+    $('form').on('keyup change','input',liveSend);
+
     // Initialize button groups. Apply an "active" class on the checked input.
     // Require the following construction:
     // <span/div class="btn-group">
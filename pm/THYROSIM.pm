@@ -134,6 +134,28 @@ sub new {
     $self->{ICKey}->{ThyrosimJr}->{1000088010000880}->{18} = 12.443498542246873;
     $self->{ICKey}->{ThyrosimJr}->{1000088010000880}->{19} = 11.75608393106433;
 
+    # Thysim: ThyrosimHyper
+    # Calculated by running ThyrosimHyper.java for 1008 hours from the Thyrosim SS
+    $self->{ICKey}->{ThyrosimHyper}->{1000088010000880}->{1}  = 0.3675975497719688;
+    $self->{ICKey}->{ThyrosimHyper}->{1000088010000880}->{2}  = 0.23968767296462798;
+    $self->{ICKey}->{ThyrosimHyper}->{1000088010000880}->{3}  = 0.7571590207690494;
+    $self->{ICKey}->{ThyrosimHyper}->{1000088010000880}->{4}  = 0.0058546354781447785;
+    $self->{ICKey}->{ThyrosimHyper}->{1000088010000880}->{5}  = 0.010126179356829195;
+    $self->{ICKey}->{ThyrosimHyper}->{1000088010000880}->{6}  = 0.05992936429933151;
+    $self->{ICKey}->{ThyrosimHyper}->{1000088010000880}->{7}  = 1.6374141724055578;
+    $self->{ICKey}->{ThyrosimHyper}->{1000088010000880}->{8}  = 7.145813346097558;
+    $self->{ICKey}->{ThyrosimHyper}->{1000088010000880}->{9}  = 7.145695481229129;
+    $self->{ICKey}->{ThyrosimHyper}->{1000088010000880}->{10} = 0;
+    $self->{ICKey}->{ThyrosimHyper}->{1000088010000880}->{11} = 0;
+    $self->{ICKey}->{ThyrosimHyper}->{1000088010000880}->{12} = 0;
+    $self->{ICKey}->{ThyrosimHyper}->{1000088010000880}->{13} = 0;
+    $self->{ICKey}->{ThyrosimHyper}->{1000088010000880}->{14} = 3.0623730808917884;
+    $self->{ICKey}->{ThyrosimHyper}->{1000088010000880}->{15} = 3.384687436945591;
+    $self->{ICKey}->{ThyrosimHyper}->{1000088010000880}->{16} = 3.557528937510119;
+    $self->{ICKey}->{ThyrosimHyper}->{1000088010000880}->{17} = 3.5784625201014553;
+    $self->{ICKey}->{ThyrosimHyper}->{1000088010000880}->{18} = 3.4677517871957235;
+    $self->{ICKey}->{ThyrosimHyper}->{1000088010000880}->{19} = 3.2617932012806947;
+
     #--------------------------------------------------
     # Define input types and hormones
     #--------------------------------------------------
@@ -673,9 +695,6 @@ sub setInitialIC {
 # SUBROUTINE:   setAdjustedIC
 # DESCRIPTION:
 #   Adjust IC with input quantity as appropriate.
-# NOTES:
-#   Input types: 1 = Oral, 2 = IV, 3 = Infusion
-#   Hormone: 3 = T3, 4 = T4
 #====================================================================
 sub setAdjustedIC {
     my ($self,$iThis) = @_;
@@ -685,8 +704,29 @@ sub setAdjustedIC {
     # Check whether there is a next iteration, skip if there isn't
     return 1 if !exists $self->{trueStep}->{$iNext};
 
+    my $adj = $self->getInputAdjustments($iNext);
+    foreach my $c (keys %$adj) {
+        my $newIC = $self->getLvl3('IC',$iNext,$c) + $adj->{$c};
+        $self->setLvl3('IC',$iNext,$c,$newIC);
+    }
+}
+
+#====================================================================
+# SUBROUTINE:   getInputAdjustments
+# DESCRIPTION:
+#   Returns a hashRef of compartment => amount (mols) for all inputs given at
+#   the start of $iThis.
+# NOTES:
+#   Input types: 1 = Oral, 2 = IV, 3 = Infusion
+#   Hormone: 3 = T3, 4 = T4
+#====================================================================
+sub getInputAdjustments {
+    my ($self,$iThis) = @_;
+
+    my $adj = {};
+
     # Find all inputs given at $trueStart
-    my $trueStart = $self->getIntStart('trueStep',$iNext);
+    my $trueStart = $self->getIntStart('trueStep',$iThis);
     foreach my $inputNum (keys %{$self->{inputTime}->{$trueStart}}) {
 
         # Initialized inputTime->0 is an empty hashRef
@@ -700,41 +740,46 @@ sub setAdjustedIC {
         # Get the conversion factor
         my $toMols = $self->getLvl2('toMols',$hormone);
 
-        # Initialize newIC variables
-        my $newIC = 0;
-
         # T3 input
         if ($hormone == 3) {
-
-            # Update T3 oral compartment
-            if ($type == 1) {
-                $newIC = $self->getLvl3('IC',$iNext,12) + $dose/$toMols;
-                $self->setLvl3('IC',$iNext,12,$newIC);
-            }
-
-            # Update T3 IV compartment
-            if ($type == 2) {
-                $newIC = $self->getLvl3('IC',$iNext,4) + $dose/$toMols;
-                $self->setLvl3('IC',$iNext,4,$newIC);
-            }
+            $adj->{12} += $dose/$toMols if $type == 1; # T3 oral compartment
+            $adj->{4}  += $dose/$toMols if $type == 2; # T3 IV compartment
         }
 
         # T4 input
         if ($hormone == 4) {
+            $adj->{10} += $dose/$toMols if $type == 1; # T4 oral compartment
+            $adj->{1}  += $dose/$toMols if $type == 2; # T4 IV compartment
+        }
+    }
 
-            # Update T4 oral compartment
-            if ($type == 1) {
-                $newIC = $self->getLvl3('IC',$iNext,10) + $dose/$toMols;
-                $self->setLvl3('IC',$iNext,10,$newIC);
-            }
+    return $adj;
+}
 
-            # Update T4 IV compartment
-            if ($type == 2) {
-                $newIC = $self->getLvl3('IC',$iNext,1) + $dose/$toMols;
-                $self->setLvl3('IC',$iNext,1,$newIC);
-            }
+#====================================================================
+# SUBROUTINE:   getSegmentString
+# DESCRIPTION:
+#   Describe integrations i1 - iX for the solver's browser mode, which runs all
+#   integrations in one go and returns the browser object. Each integration is
+#   passed as:
+#     seg=start:end:u1:u4[:c=amount]...
+#   where start/end are in hours and c=amount are the inputs given at the start
+#   of the integration. See java/Segment.java.
+#====================================================================
+sub getSegmentString {
+    my ($self) = @_;
+    my $str = "";
+    foreach my $iThis (@{$self->getIntCount()}) {
+        my $start = $self->toHour($self->getIntStart('thisStep',$iThis));
+        my $end   = $self->toHour($self->getIntBound('thisStep',$iThis));
+        my ($u1,$u4) = split / /, $self->getInfValue($iThis);
+        $str .= " seg=$start:$end:$u1:$u4";
+        my $adj = $self->getInputAdjustments($iThis);
+        foreach my $c (sort {$a <=> $b} keys %$adj) {
+            $str .= ":$c=$adj->{$c}";
         }
     }
+    return $str;
 }
 
 #====================================================================
@@ -945,6 +990,36 @@ sub getICString {
     return $str;
 }
 
+#====================================================================
+# SUBROUTINE:   getShowString
+# DESCRIPTION:
+#   Comma separated list of show compartments, ordered like the solver's
+#   output. The solver only computes and returns these. See
+#   java/Projection.java.
+#====================================================================
+sub getShowString {
+    my ($self) = @_;
+    my @shows = sort { $self->getCompIdx($a) <=> $self->getCompIdx($b) }
+                keys %{$self->{show}};
+    return join(",",@shows);
+}
+
+#====================================================================
+# SUBROUTINE:   getKeyICString
+# DESCRIPTION:
+#   Same as getICString(), but with the values of an $ickey. Inputs are not
+#   added here.
+#====================================================================
+sub getKeyICString {
+    my ($self,$ickey) = @_;
+    my $qs = $self->getLvl3('ICKey',$self->getThysim(),$ickey);
+    my $str = "";
+    foreach my $c ( @{$self->{qdots}} ) {
+        $str .= $qs->{$c}." ";
+    }
+    return $str;
+}
+
 #====================================================================
 # SUBROUTINE:   getDialString
 # DESCRIPTION:
@@ -1288,17 +1363,19 @@ sub printToLog {
 # SUBROUTINE:   getSolver
 # DESCRIPTION:
 #   Get the base command line argument for the solver. Currently, the acceptable
-#   solver is Java only.
+#   solver is Java only. $class is the main class, Thyrosim by default, e.g.
+#   ResponseSurface for dial previews.
 #====================================================================
 sub getSolver {
-    my ($self) = @_;
+    my ($self,$class) = @_;
+    $class //= 'Thyrosim';
 
     my $docRoot = $self->{docRoot};
     my $fRoot   = $self->{fRoot};
 
     return "java -cp .:$docRoot/$fRoot/java/commons-math3-3.6.1.jar:"
          . "$docRoot/$fRoot/java/ "
-         . "edu.ucla.distefanolab.thyrosim.algorithm.Thyrosim";
+         . "edu.ucla.distefanolab.thyrosim.algorithm.$class";
 }
 
 #====================================================================
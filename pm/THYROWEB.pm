@@ -668,6 +668,10 @@ EOF
     <div id="slidercontainer4" class="sliders"><div id="slider4"></div></div>
   </div>
 </div>
+
+<div class="container slider-row">
+  <div id="dialpreview"></div>
+</div>
 EOF
 ;
 
@@ -699,6 +703,26 @@ EOF
   </label>
 </span>
 EOF
+;
+
+    my $live = <<EOF
+<span class="switch">
+  Live:
+  <label>
+    Off
+    <input type="checkbox" value="1" id="live" onchange="togLive();">
+    <span class="lever"></span>
+    On
+  </label>
+</span>
+<span>
+  <label title="When this switch is on, the simulation is re-run as soon as
+  the dials, inputs or simulation time change, and replaces the run of the
+  selected color.">
+    <img class="info-icon-l" src="../img/info.svg" alt="info">
+  </label>
+</span>
+EOF
 ;
 
     my $nextRunColor = <<EOF
@@ -841,6 +865,8 @@ $paramEditor
 
       <div class="container textcenter pad-t-1em">$recalcIC</div>
 
+      <div class="container textcenter pad-t-1em">$live</div>
+
       <div class="container textcenter pad-t-1em">$nextRunColor</div>
 
       <div class="container textcenter pad-t-1em">$buttonControls</div>